@@ -49,6 +49,8 @@ import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.common.msg.tools.TbRateLimits;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.stats.TbApiUsageReportClient;
 import org.thingsboard.server.dao.asset.AssetService;
 import org.thingsboard.server.dao.attributes.AttributesService;
@@ -81,6 +83,7 @@ import org.thingsboard.server.dao.widget.WidgetsBundleService;
 import org.thingsboard.server.queue.discovery.PartitionService;
 import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
 import org.thingsboard.server.queue.util.DataDecodingEncodingService;
+import org.thingsboard.server.queue.util.TbMsgTracingService;
 import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 import org.thingsboard.server.service.component.ComponentDiscoveryService;
 import org.thingsboard.server.service.edge.rpc.EdgeRpcService;
@@ -126,14 +129,17 @@ public class ActorSystemContext {
             log.error("Could not save debug Event for Rule Chain", th);
         }
     };
-    private static final FutureCallback<Void> RULE_NODE_DEBUG_EVENT_ERROR_CALLBACK = new FutureCallback<>() {
+    private static final String RULE_NODE_DEBUG_EVENTS_STATS_KEY = "ruleNodeDebugEvents";
+
+    private final FutureCallback<Void> ruleNodeDebugEventCallback = new FutureCallback<>() {
         @Override
         public void onSuccess(@Nullable Void event) {
-
+            debugEventsPersistedCounter.increment();
         }
 
         @Override
         public void onFailure(Throwable th) {
+            debugEventsFailedCounter.increment();
             log.error("Could not save debug Event for Node", th);
         }
     };
@@ -142,10 +148,22 @@ public class ActorSystemContext {
 
     private final ConcurrentMap<TenantId, DebugTbRateLimits> debugPerTenantLimits = new ConcurrentHashMap<>();
 
+    private final ConcurrentMap<EntityId, TbRateLimits> debugPerRuleNodeLimits = new ConcurrentHashMap<>();
+
+    private DefaultCounter debugEventsPersistedCounter;
+    private DefaultCounter debugEventsFailedCounter;
+    private DefaultCounter debugEventsTenantLimitCounter;
+    private DefaultCounter debugEventsRuleNodeLimitCounter;
+    private DefaultCounter passivatedDeviceActorsCounter;
+
     public ConcurrentMap<TenantId, DebugTbRateLimits> getDebugPerTenantLimits() {
         return debugPerTenantLimits;
     }
 
+    public void removeDebugPerRuleNodeLimits(EntityId ruleNodeId) {
+        debugPerRuleNodeLimits.remove(ruleNodeId);
+    }
+
     @Autowired
     @Getter
     private TbApiUsageStateService apiUsageStateService;
@@ -154,6 +172,9 @@ public class ActorSystemContext {
     @Getter
     private TbApiUsageReportClient apiUsageClient;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
     @Autowired
     @Getter
     @Setter
@@ -172,6 +193,10 @@ public class ActorSystemContext {
     @Getter
     private DataDecodingEncodingService encodingService;
 
+    @Autowired
+    @Getter
+    private TbMsgTracingService msgTracingService;
+
     @Autowired
     @Getter
     private DeviceService deviceService;
@@ -399,6 +424,14 @@ public class ActorSystemContext {
     @Getter
     private long syncSessionTimeout;
 
+    @Value("${actors.device.passivation.enabled:false}")
+    @Getter
+    private boolean devicePassivationEnabled;
+
+    @Value("${actors.device.passivation.idle_timeout_ms:3600000}")
+    @Getter
+    private long devicePassivationIdleTimeout;
+
     @Value("${actors.rule.chain.error_persist_frequency:3000}")
     @Getter
     private long ruleChainErrorPersistFrequency;
@@ -429,6 +462,15 @@ public class ActorSystemContext {
     @PostConstruct
     public void init() {
         this.localCacheType = "caffeine".equals(cacheType);
+        this.debugEventsPersistedCounter = statsFactory.createDefaultCounter(RULE_NODE_DEBUG_EVENTS_STATS_KEY, "result", "persisted");
+        this.debugEventsFailedCounter = statsFactory.createDefaultCounter(RULE_NODE_DEBUG_EVENTS_STATS_KEY, "result", "failed");
+        this.debugEventsTenantLimitCounter = statsFactory.createDefaultCounter(RULE_NODE_DEBUG_EVENTS_STATS_KEY, "result", "droppedByTenantLimit");
+        this.debugEventsRuleNodeLimitCounter = statsFactory.createDefaultCounter(RULE_NODE_DEBUG_EVENTS_STATS_KEY, "result", "droppedByRuleNodeLimit");
+        this.passivatedDeviceActorsCounter = statsFactory.createDefaultCounter("deviceActorsPassivated");
+    }
+
+    public void onDeviceActorPassivated() {
+        passivatedDeviceActorsCounter.increment();
     }
 
     @Scheduled(fixedDelayString = "${actors.statistics.js_print_interval_ms}")
@@ -470,6 +512,14 @@ public class ActorSystemContext {
     @Getter
     private String debugPerTenantLimitsConfiguration;
 
+    @Value("${actors.rule.chain.debug_mode_rate_limits_per_rule_node.enabled:false}")
+    @Getter
+    private boolean debugPerRuleNodeEnabled;
+
+    @Value("${actors.rule.chain.debug_mode_rate_limits_per_rule_node.configuration:1000:60}")
+    @Getter
+    private String debugPerRuleNodeLimitsConfiguration;
+
     @Value("${actors.rpc.sequential:false}")
     @Getter
     private boolean rpcSequential;
@@ -573,7 +623,7 @@ public class ActorSystemContext {
     }
 
     private void persistDebugAsync(TenantId tenantId, EntityId entityId, String type, TbMsg tbMsg, String relationType, Throwable error, String failureMessage) {
-        if (checkLimits(tenantId, tbMsg, error)) {
+        if (checkLimits(tenantId, entityId, tbMsg, error)) {
             try {
                 RuleNodeDebugEvent.RuleNodeDebugEventBuilder event = RuleNodeDebugEvent.builder()
                         .tenantId(tenantId)
@@ -595,14 +645,25 @@ public class ActorSystemContext {
                 }
 
                 ListenableFuture<Void> future = eventService.saveAsync(event.build());
-                Futures.addCallback(future, RULE_NODE_DEBUG_EVENT_ERROR_CALLBACK, MoreExecutors.directExecutor());
+                Futures.addCallback(future, ruleNodeDebugEventCallback, MoreExecutors.directExecutor());
             } catch (IOException ex) {
                 log.warn("Failed to persist rule node debug message", ex);
             }
         }
     }
 
-    private boolean checkLimits(TenantId tenantId, TbMsg tbMsg, Throwable error) {
+    private boolean checkLimits(TenantId tenantId, EntityId ruleNodeId, TbMsg tbMsg, Throwable error) {
+        if (debugPerRuleNodeEnabled) {
+            // checked before the tenant limit so that a single noisy rule node does not exhaust the tenant budget
+            TbRateLimits ruleNodeLimits = debugPerRuleNodeLimits.computeIfAbsent(ruleNodeId, id -> new TbRateLimits(debugPerRuleNodeLimitsConfiguration));
+            if (!ruleNodeLimits.tryConsume()) {
+                debugEventsRuleNodeLimitCounter.increment();
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}][{}] Rule node level debug mode rate limit detected: {}", tenantId, ruleNodeId, tbMsg);
+                }
+                return false;
+            }
+        }
         if (debugPerTenantEnabled) {
             DebugTbRateLimits debugTbRateLimits = debugPerTenantLimits.computeIfAbsent(tenantId, id ->
                     new DebugTbRateLimits(new TbRateLimits(debugPerTenantLimitsConfiguration), false));
@@ -612,6 +673,7 @@ public class ActorSystemContext {
                     persistRuleChainDebugModeEvent(tenantId, tbMsg.getRuleChainId(), error);
                     debugTbRateLimits.setRuleChainEventSaved(true);
                 }
+                debugEventsTenantLimitCounter.increment();
                 if (log.isTraceEnabled()) {
                     log.trace("[{}] Tenant level debug mode rate limit detected: {}", tenantId, tbMsg);
                 }
@@ -36,10 +36,20 @@ import org.thingsboard.server.service.transport.msg.TransportToDeviceActorMsgWra
 public class DeviceActor extends ContextAwareActor {
 
     private final DeviceActorMessageProcessor processor;
+    private final long generation;
+    private final boolean passivationEnabled;
+    private final long passivationIdleTimeout;
 
-    DeviceActor(ActorSystemContext systemContext, TenantId tenantId, DeviceId deviceId) {
+    private long processedMsgs;
+    private long lastActivityTime;
+
+    DeviceActor(ActorSystemContext systemContext, TenantId tenantId, DeviceId deviceId, long generation) {
         super(systemContext);
         this.processor = new DeviceActorMessageProcessor(systemContext, tenantId, deviceId);
+        this.generation = generation;
+        this.passivationEnabled = systemContext.isDevicePassivationEnabled();
+        this.passivationIdleTimeout = systemContext.getDevicePassivationIdleTimeout();
+        this.lastActivityTime = System.currentTimeMillis();
     }
 
     @Override
@@ -57,6 +67,9 @@ public class DeviceActor extends ContextAwareActor {
 
     @Override
     protected boolean doProcess(TbActorMsg msg) {
+        if (passivationEnabled) {
+            onMsg(msg);
+        }
         switch (msg.getMsgType()) {
             case TRANSPORT_TO_DEVICE_ACTOR_MSG:
                 processor.process(ctx, (TransportToDeviceActorMsgWrapper) msg);
@@ -81,6 +94,9 @@ public class DeviceActor extends ContextAwareActor {
                 break;
             case SESSION_TIMEOUT_MSG:
                 processor.checkSessionsTimeout();
+                if (passivationEnabled) {
+                    checkIdle();
+                }
                 break;
             case DEVICE_EDGE_UPDATE_TO_DEVICE_ACTOR_MSG:
                 processor.processEdgeUpdate((DeviceEdgeUpdateMsg) msg);
@@ -94,4 +110,24 @@ public class DeviceActor extends ContextAwareActor {
         return true;
     }
 
+    private void onMsg(TbActorMsg msg) {
+        // every message taken from the mailbox is counted, to compare with the number of messages the mailbox received
+        processedMsgs++;
+        switch (msg.getMsgType()) {
+            case SESSION_TIMEOUT_MSG:
+            case DEVICE_ACTOR_SERVER_SIDE_RPC_TIMEOUT_MSG:
+                // sent by the scheduler, not an activity of the device
+                break;
+            default:
+                lastActivityTime = System.currentTimeMillis();
+        }
+    }
+
+    private void checkIdle() {
+        if (System.currentTimeMillis() - lastActivityTime > passivationIdleTimeout && processor.isIdle()) {
+            log.trace("[{}][{}] Device actor is idle, processed {} messages", processor.tenantId, processor.deviceId, processedMsgs);
+            ctx.getParentRef().tell(new DeviceActorIdleMsg(processor.deviceId, generation, processedMsgs, ctx));
+        }
+    }
+
 }
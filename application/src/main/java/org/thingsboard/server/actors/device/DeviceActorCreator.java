@@ -27,11 +27,13 @@ public class DeviceActorCreator extends ContextBasedCreator {
 
     private final TenantId tenantId;
     private final DeviceId deviceId;
+    private final long generation;
 
-    public DeviceActorCreator(ActorSystemContext context, TenantId tenantId, DeviceId deviceId) {
+    public DeviceActorCreator(ActorSystemContext context, TenantId tenantId, DeviceId deviceId, long generation) {
         super(context);
         this.tenantId = tenantId;
         this.deviceId = deviceId;
+        this.generation = generation;
     }
 
     @Override
@@ -41,7 +43,7 @@ public class DeviceActorCreator extends ContextBasedCreator {
 
     @Override
     public TbActor createActor() {
-        return new DeviceActor(context, tenantId, deviceId);
+        return new DeviceActor(context, tenantId, deviceId, generation);
     }
 
 }
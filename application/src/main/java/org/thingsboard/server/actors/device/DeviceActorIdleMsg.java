@@ -0,0 +1,41 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.device;
+
+import lombok.Data;
+import org.thingsboard.server.actors.TbActorRef;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.MsgType;
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+/**
+ * Sent by the idle device actor to the tenant actor. The tenant actor stops the device actor
+ * only if the message comes from the current generation of the device actor
+ * and its mailbox has not received any messages after the processed ones.
+ */
+@Data
+public class DeviceActorIdleMsg implements TbActorMsg {
+
+    private final DeviceId deviceId;
+    private final long generation;
+    private final long processedMsgs;
+    private final TbActorRef actorRef;
+
+    @Override
+    public MsgType getMsgType() {
+        return MsgType.DEVICE_ACTOR_IDLE_MSG;
+    }
+}
@@ -47,9 +47,6 @@ import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.AttributeKey;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.common.data.kv.KvEntry;
-import org.thingsboard.server.common.data.page.PageData;
-import org.thingsboard.server.common.data.page.PageLink;
-import org.thingsboard.server.common.data.page.SortOrder;
 import org.thingsboard.server.common.data.relation.EntityRelation;
 import org.thingsboard.server.common.data.relation.RelationTypeGroup;
 import org.thingsboard.server.common.data.rpc.Rpc;
@@ -107,7 +104,6 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -194,19 +190,15 @@ class DeviceActorMessageProcessor extends AbstractContextAwareMsgProcessor {
                 createRpc(request, RpcStatus.EXPIRED);
             }
             return;
-        } else if (persisted) {
-            createRpc(request, RpcStatus.QUEUED);
         }
+        ListenableFuture<Void> rpcSaveFuture = persisted ? createRpc(request, RpcStatus.QUEUED) : null;
 
         boolean sent = false;
-        if (systemContext.isEdgesEnabled() && edgeId != null) {
+        boolean sentToEdge = systemContext.isEdgesEnabled() && edgeId != null;
+        if (sentToEdge) {
             log.debug("[{}][{}] device is related to edge [{}]. Saving RPC request to edge queue", tenantId, deviceId, edgeId.getId());
-            try {
-                saveRpcRequestToEdgeQueue(request, rpcRequest.getRequestId()).get();
-                sent = true;
-            } catch (InterruptedException | ExecutionException e) {
-                log.error("[{}][{}][{}] Failed to save rpc request to edge queue {}", tenantId, deviceId, edgeId.getId(), request, e);
-            }
+            processRpcRequestToEdge(context, request, rpcRequest.getRequestId());
+            sent = true;
         } else if (isSendNewRpcAvailable()) {
             sent = rpcSubscriptions.size() > 0;
             Set<UUID> syncSessionSet = new HashSet<>();
@@ -221,14 +213,31 @@ class DeviceActorMessageProcessor extends AbstractContextAwareMsgProcessor {
         }
 
         if (persisted) {
+            // the rpc id is returned to the caller only once the RPC is persisted, so it can be fetched right away
             ObjectNode response = JacksonUtil.newObjectNode();
             response.put("rpcId", request.getId().toString());
-            systemContext.getTbCoreDeviceRpcService().processRpcResponseFromDeviceActor(new FromDeviceRpcResponse(msg.getMsg().getId(), JacksonUtil.toString(response), null));
+            FromDeviceRpcResponse rpcIdResponse = new FromDeviceRpcResponse(msg.getMsg().getId(), JacksonUtil.toString(response), null);
+            Futures.addCallback(rpcSaveFuture, new FutureCallback<>() {
+                @Override
+                public void onSuccess(@Nullable Void result) {
+                    systemContext.getTbCoreDeviceRpcService().processRpcResponseFromDeviceActor(rpcIdResponse);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    log.warn("[{}][{}] Failed to persist RPC request", deviceId, request.getId(), t);
+                    systemContext.getTbCoreDeviceRpcService().processRpcResponseFromDeviceActor(
+                            new FromDeviceRpcResponse(msg.getMsg().getId(), null, RpcError.INTERNAL));
+                }
+            }, MoreExecutors.directExecutor());
         }
 
         if (!persisted && request.isOneway() && sent) {
-            log.debug("[{}] Rpc command response sent [{}]!", deviceId, request.getId());
-            systemContext.getTbCoreDeviceRpcService().processRpcResponseFromDeviceActor(new FromDeviceRpcResponse(msg.getMsg().getId(), null, null));
+            // the edge RPC is replied once it is saved to the edge queue
+            if (!sentToEdge) {
+                log.debug("[{}] Rpc command response sent [{}]!", deviceId, request.getId());
+                systemContext.getTbCoreDeviceRpcService().processRpcResponseFromDeviceActor(new FromDeviceRpcResponse(msg.getMsg().getId(), null, null));
+            }
         } else {
             registerPendingRpcRequest(context, msg, sent, rpcRequest, timeout);
         }
@@ -239,11 +248,39 @@ class DeviceActorMessageProcessor extends AbstractContextAwareMsgProcessor {
         }
     }
 
+    private void processRpcRequestToEdge(TbActorCtx context, ToDeviceRpcRequest request, Integer requestId) {
+        EdgeId edgeId = this.edgeId;
+        boolean replyOnSave = !request.isPersisted() && request.isOneway();
+        Futures.addCallback(saveRpcRequestToEdgeQueue(request, requestId), new FutureCallback<>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+                if (replyOnSave) {
+                    log.debug("[{}] Rpc command response sent [{}]!", deviceId, request.getId());
+                    systemContext.getTbCoreDeviceRpcService().processRpcResponseFromDeviceActor(new FromDeviceRpcResponse(request.getId(), null, null));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("[{}][{}][{}] Failed to save rpc request to edge queue {}", tenantId, deviceId, edgeId.getId(), request, t);
+                if (request.isPersisted()) {
+                    systemContext.getTbRpcService().save(tenantId, new RpcId(request.getId()), RpcStatus.FAILED, null);
+                }
+                if (!replyOnSave) {
+                    // the pending request is removed by the actor itself, since the callback runs outside of it
+                    context.tell(new RemoveRpcActorMsg(tenantId, deviceId, request.getId()));
+                }
+                systemContext.getTbCoreDeviceRpcService().processRpcResponseFromDeviceActor(
+                        new FromDeviceRpcResponse(request.getId(), null, RpcError.INTERNAL));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
     private boolean isSendNewRpcAvailable() {
         return !rpcSequential || toDeviceRpcPendingMap.values().stream().filter(md -> !md.isDelivered()).findAny().isEmpty();
     }
 
-    private Rpc createRpc(ToDeviceRpcRequest request, RpcStatus status) {
+    private ListenableFuture<Void> createRpc(ToDeviceRpcRequest request, RpcStatus status) {
         Rpc rpc = new Rpc(new RpcId(request.getId()));
         rpc.setCreatedTime(System.currentTimeMillis());
         rpc.setTenantId(tenantId);
@@ -948,24 +985,20 @@ class DeviceActorMessageProcessor extends AbstractContextAwareMsgProcessor {
     }
 
     void init(TbActorCtx ctx) {
-        PageLink pageLink = new PageLink(1024, 0, null, new SortOrder("createdTime"));
-        PageData<Rpc> pageData;
-        do {
-            pageData = systemContext.getTbRpcService().findAllByDeviceIdAndStatus(tenantId, deviceId, RpcStatus.QUEUED, pageLink);
-            pageData.getData().forEach(rpc -> {
-                ToDeviceRpcRequest msg = JacksonUtil.convertValue(rpc.getRequest(), ToDeviceRpcRequest.class);
-                long timeout = rpc.getExpirationTime() - System.currentTimeMillis();
-                if (timeout <= 0) {
-                    rpc.setStatus(RpcStatus.EXPIRED);
-                    systemContext.getTbRpcService().save(tenantId, rpc);
-                } else {
-                    registerPendingRpcRequest(ctx, new ToDeviceRpcRequestActorMsg(systemContext.getServiceId(), msg), false, creteToDeviceRpcRequestMsg(msg), timeout);
-                }
-            });
-            if (pageData.hasNext()) {
-                pageLink = pageLink.nextPageLink();
+        // includes the RPCs that are not persisted yet, e.g. if the actor is re-created right after the RPC was queued
+        systemContext.getTbRpcService().findQueuedRpcs(tenantId, deviceId).forEach(rpc -> {
+            ToDeviceRpcRequest msg = JacksonUtil.convertValue(rpc.getRequest(), ToDeviceRpcRequest.class);
+            long timeout = rpc.getExpirationTime() - System.currentTimeMillis();
+            if (timeout <= 0) {
+                systemContext.getTbRpcService().save(tenantId, rpc.getId(), RpcStatus.EXPIRED, null);
+            } else {
+                registerPendingRpcRequest(ctx, new ToDeviceRpcRequestActorMsg(systemContext.getServiceId(), msg), false, creteToDeviceRpcRequestMsg(msg), timeout);
             }
-        } while (pageData.hasNext());
+        });
+    }
+
+    boolean isIdle() {
+        return sessions.isEmpty() && attributeSubscriptions.isEmpty() && rpcSubscriptions.isEmpty() && toDeviceRpcPendingMap.isEmpty();
     }
 
     void checkSessionsTimeout() {
@@ -143,6 +143,7 @@ class DefaultTbContext implements TbContext {
             relationTypes.forEach(relationType -> mainCtx.persistDebugOutput(nodeCtx.getTenantId(), nodeCtx.getSelf().getId(), msg, relationType, th));
         }
         msg.getCallback().onProcessingEnd(nodeCtx.getSelf().getId());
+        traceRuleNode(msg);
         nodeCtx.getChainActor().tell(new RuleNodeToRuleChainTellNextMsg(nodeCtx.getSelf().getRuleChainId(), nodeCtx.getSelf().getId(), relationTypes, msg, th != null ? th.getMessage() : null));
     }
 
@@ -287,9 +288,16 @@ class DefaultTbContext implements TbContext {
             mainCtx.persistDebugOutput(nodeCtx.getTenantId(), nodeCtx.getSelf().getId(), tbMsg, "ACK", null);
         }
         tbMsg.getCallback().onProcessingEnd(nodeCtx.getSelf().getId());
+        traceRuleNode(tbMsg);
         tbMsg.getCallback().onSuccess();
     }
 
+    private void traceRuleNode(TbMsg msg) {
+        if (msg.getTrace() != null) {
+            mainCtx.getMsgTracingService().onRuleNodeProcessed(nodeCtx.getTenantId(), nodeCtx.getSelf().getRuleChainId(), nodeCtx.getSelf().getType(), msg);
+        }
+    }
+
     @Override
     public boolean isLocalEntity(EntityId entityId) {
         return mainCtx.resolve(ServiceType.TB_RULE_ENGINE, getTenantId(), entityId).isMyPartition();
@@ -314,6 +322,7 @@ class DefaultTbContext implements TbContext {
         } else {
             failureMessage = null;
         }
+        traceRuleNode(msg);
         nodeCtx.getChainActor().tell(new RuleNodeToRuleChainTellNextMsg(nodeCtx.getSelf().getRuleChainId(),
                 nodeCtx.getSelf().getId(), Collections.singleton(TbRelationTypes.FAILURE),
                 msg, failureMessage));
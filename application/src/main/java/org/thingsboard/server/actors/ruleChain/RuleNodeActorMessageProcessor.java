@@ -91,6 +91,7 @@ public class RuleNodeActorMessageProcessor extends ComponentMsgProcessor<RuleNod
             tbNode.destroy();
             state = ComponentLifecycleState.SUSPENDED;
         }
+        systemContext.removeDebugPerRuleNodeLimits(entityId);
     }
 
     @Override
@@ -29,10 +29,12 @@ import org.thingsboard.server.actors.DefaultTbActorSystem;
 import org.thingsboard.server.actors.TbActorRef;
 import org.thingsboard.server.actors.TbActorSystem;
 import org.thingsboard.server.actors.TbActorSystemSettings;
+import org.thingsboard.server.actors.TbActorSystemStats;
 import org.thingsboard.server.actors.app.AppActor;
 import org.thingsboard.server.actors.app.AppInitMsg;
 import org.thingsboard.server.actors.stats.StatsActor;
 import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.queue.discovery.TbApplicationEventListener;
 import org.thingsboard.server.queue.discovery.event.PartitionChangeEvent;
 import org.thingsboard.server.queue.util.AfterStartUp;
@@ -54,6 +56,9 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     @Autowired
     private ActorSystemContext actorContext;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
     private TbActorSystem system;
 
     private TbActorRef appActor;
@@ -79,12 +84,22 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     @Value("${actors.system.rule_dispatcher_pool_size:4}")
     private int ruleDispatcherSize;
 
+    @Value("${metrics.enabled:false}")
+    private boolean metricsEnabled;
+
+    @Value("${actors.system.stats.update_interval_ms:10000}")
+    private long statsUpdateIntervalMs;
+
+    @Value("${actors.system.stats.top_mailboxes:10}")
+    private int statsTopMailboxes;
+
     @PostConstruct
     public void initActorSystem() {
         log.info("Initializing actor system.");
         actorContext.setActorService(this);
         TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts);
-        system = new DefaultTbActorSystem(settings);
+        TbActorSystemStats stats = metricsEnabled ? new TbActorSystemStats(statsFactory, statsUpdateIntervalMs, statsTopMailboxes) : null;
+        system = new DefaultTbActorSystem(settings, stats);
 
         system.createDispatcher(APP_DISPATCHER_NAME, initDispatcherExecutor(APP_DISPATCHER_NAME, appDispatcherSize));
         system.createDispatcher(TENANT_DISPATCHER_NAME, initDispatcherExecutor(TENANT_DISPATCHER_NAME, tenantDispatcherSize));
@@ -108,7 +123,8 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
             poolSize = Math.max(1, cores / 2);
         }
         if (poolSize == 1) {
-            return Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName(dispatcherName));
+            // unlike the single thread executor, the fixed thread pool exposes the active threads and queued tasks to the metrics
+            return Executors.newFixedThreadPool(1, ThingsBoardThreadFactory.forName(dispatcherName));
         } else {
             return ThingsBoardExecutors.newWorkStealingPool(poolSize, dispatcherName);
         }
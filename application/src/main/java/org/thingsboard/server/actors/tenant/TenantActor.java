@@ -26,6 +26,7 @@ import org.thingsboard.server.actors.TbActorRef;
 import org.thingsboard.server.actors.TbEntityActorId;
 import org.thingsboard.server.actors.TbEntityTypeActorIdPredicate;
 import org.thingsboard.server.actors.device.DeviceActorCreator;
+import org.thingsboard.server.actors.device.DeviceActorIdleMsg;
 import org.thingsboard.server.actors.ruleChain.RuleChainManagerActor;
 import org.thingsboard.server.actors.service.ContextBasedCreator;
 import org.thingsboard.server.actors.service.DefaultActorService;
@@ -56,7 +57,9 @@ import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.service.edge.rpc.EdgeRpcService;
 import org.thingsboard.server.service.transport.msg.TransportToDeviceActorMsgWrapper;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 public class TenantActor extends RuleChainManagerActor {
@@ -64,6 +67,9 @@ public class TenantActor extends RuleChainManagerActor {
     private boolean isRuleEngine;
     private boolean isCore;
     private ApiUsageState apiUsageState;
+    // generations of the live device actors, used to ignore the idle messages of the stopped ones
+    private final Map<DeviceId, Long> deviceActorGenerations = new HashMap<>();
+    private long lastDeviceActorGeneration;
 
     private TenantActor(ActorSystemContext systemContext, TenantId tenantId) {
         super(systemContext, tenantId);
@@ -136,7 +142,10 @@ public class TenantActor extends RuleChainManagerActor {
                             return super.testEntityId(entityId) && !isMyPartition(entityId);
                         }
                     });
-                    deviceActorIds.forEach(id -> ctx.stop(id));
+                    deviceActorIds.forEach(id -> {
+                        ctx.stop(id);
+                        deviceActorGenerations.remove(((TbEntityActorId) id).getEntityId());
+                    });
                 }
                 break;
             case COMPONENT_LIFE_CYCLE_MSG:
@@ -161,6 +170,9 @@ public class TenantActor extends RuleChainManagerActor {
             case SESSION_TIMEOUT_MSG:
                 ctx.broadcastToChildrenByType(msg, EntityType.DEVICE);
                 break;
+            case DEVICE_ACTOR_IDLE_MSG:
+                onDeviceActorIdleMsg((DeviceActorIdleMsg) msg);
+                break;
             case RULE_CHAIN_INPUT_MSG:
             case RULE_CHAIN_OUTPUT_MSG:
             case RULE_CHAIN_TO_RULE_CHAIN_MSG:
@@ -268,7 +280,29 @@ public class TenantActor extends RuleChainManagerActor {
     private TbActorRef getOrCreateDeviceActor(DeviceId deviceId) {
         return ctx.getOrCreateChildActor(new TbEntityActorId(deviceId),
                 () -> DefaultActorService.DEVICE_DISPATCHER_NAME,
-                () -> new DeviceActorCreator(systemContext, tenantId, deviceId));
+                () -> {
+                    long generation = ++lastDeviceActorGeneration;
+                    if (systemContext.isDevicePassivationEnabled()) {
+                        deviceActorGenerations.put(deviceId, generation);
+                    }
+                    return new DeviceActorCreator(systemContext, tenantId, deviceId, generation);
+                });
+    }
+
+    private void onDeviceActorIdleMsg(DeviceActorIdleMsg msg) {
+        DeviceId deviceId = msg.getDeviceId();
+        Long generation = deviceActorGenerations.get(deviceId);
+        if (generation == null || generation != msg.getGeneration()) {
+            log.trace("[{}][{}] Ignoring idle msg of a stopped device actor.", tenantId, deviceId);
+            return;
+        }
+        // the device actor is stopped only if there are no messages in its mailbox, otherwise they would be lost
+        if (msg.getActorRef().getReceivedMsgsCount() == msg.getProcessedMsgs()) {
+            log.debug("[{}][{}] Stopping idle device actor.", tenantId, deviceId);
+            ctx.stop(new TbEntityActorId(deviceId));
+            deviceActorGenerations.remove(deviceId);
+            systemContext.onDeviceActorPassivated();
+        }
     }
 
     private void onToEdgeSessionMsg(EdgeSessionMsg msg) {
@@ -58,6 +58,7 @@ import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.server.dao.usagerecord.ApiUsageStateService;
 import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsKVProto;
+import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsProto;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.discovery.PartitionService;
 import org.thingsboard.server.service.executors.DbCallbackExecutorService;
@@ -171,18 +172,28 @@ public class DefaultTbApiUsageStateService extends AbstractPartitionBasedService
     public void process(TbProtoQueueMsg<ToUsageStatsServiceMsg> msg, TbCallback callback) {
         ToUsageStatsServiceMsg statsMsg = msg.getValue();
 
-        TenantId tenantId = TenantId.fromUUID(new UUID(statsMsg.getTenantIdMSB(), statsMsg.getTenantIdLSB()));
-        EntityId entityId;
-        if (statsMsg.getCustomerIdMSB() != 0 && statsMsg.getCustomerIdLSB() != 0) {
-            entityId = new CustomerId(new UUID(statsMsg.getCustomerIdMSB(), statsMsg.getCustomerIdLSB()));
+        if (statsMsg.getMsgsCount() > 0) {
+            for (UsageStatsProto stats : statsMsg.getMsgsList()) {
+                TenantId tenantId = TenantId.fromUUID(new UUID(stats.getTenantIdMSB(), stats.getTenantIdLSB()));
+                EntityId entityId = getEntityId(tenantId, stats.getCustomerIdMSB(), stats.getCustomerIdLSB());
+                processEntityUsageStats(tenantId, entityId, stats.getValuesList());
+            }
         } else {
-            entityId = tenantId;
+            TenantId tenantId = TenantId.fromUUID(new UUID(statsMsg.getTenantIdMSB(), statsMsg.getTenantIdLSB()));
+            EntityId entityId = getEntityId(tenantId, statsMsg.getCustomerIdMSB(), statsMsg.getCustomerIdLSB());
+            processEntityUsageStats(tenantId, entityId, statsMsg.getValuesList());
         }
-
-        processEntityUsageStats(tenantId, entityId, statsMsg.getValuesList());
         callback.onSuccess();
     }
 
+    private static EntityId getEntityId(TenantId tenantId, long customerIdMSB, long customerIdLSB) {
+        if (customerIdMSB != 0 && customerIdLSB != 0) {
+            return new CustomerId(new UUID(customerIdMSB, customerIdLSB));
+        } else {
+            return tenantId;
+        }
+    }
+
     private void processEntityUsageStats(TenantId tenantId, EntityId entityId, List<UsageStatsKVProto> values) {
         if (deletedEntities.contains(entityId)) return;
 
@@ -29,4 +29,8 @@ public class EdgeEventStorageSettings {
     private long noRecordsSleepInterval;
     @Value("${edges.storage.sleep_between_batches}")
     private long sleepIntervalBetweenBatches;
+    @Value("${edges.storage.sync_max_concurrent_fetchers:4}")
+    private int syncMaxConcurrentFetchers;
+    @Value("${edges.storage.sync_max_prefetched_pages:2}")
+    private int syncMaxPrefetchedPages;
 }
@@ -0,0 +1,169 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.edge.rpc;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Timer;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.StringUtils;
+import org.thingsboard.server.gen.edge.v1.ResponseMsg;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Outbound queue of a single edge session.
+ * Messages are written to the gRPC stream by at most one task at a time and only while the stream is ready,
+ * so a slow edge keeps its messages queued instead of blocking sends to other edges.
+ */
+@Slf4j
+final class EdgeGrpcDownlinkPipeline {
+
+    private final UUID sessionId;
+    private final StreamObserver<ResponseMsg> outputStream;
+    private final ServerCallStreamObserver<ResponseMsg> serverCallStream;
+    private final Executor executor;
+    private final int maxBatchBytes;
+    private final Consumer<Throwable> errorHandler;
+    private final boolean compressionEnabled;
+
+    private final Queue<PendingResponse> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private volatile AtomicInteger queueSizeGauge;
+    private volatile Timer sendLatencyTimer;
+    private volatile boolean closed;
+
+    EdgeGrpcDownlinkPipeline(UUID sessionId, StreamObserver<ResponseMsg> outputStream, Executor executor,
+                             int maxBatchBytes, String compression, Consumer<Throwable> errorHandler) {
+        this.sessionId = sessionId;
+        this.outputStream = outputStream;
+        this.executor = executor;
+        this.maxBatchBytes = maxBatchBytes;
+        this.errorHandler = errorHandler;
+        if (outputStream instanceof ServerCallStreamObserver) {
+            this.serverCallStream = (ServerCallStreamObserver<ResponseMsg>) outputStream;
+            this.serverCallStream.setOnReadyHandler(this::scheduleDrain);
+        } else {
+            this.serverCallStream = null;
+        }
+        // compression is negotiated with the edge once per call and then enabled only for the messages that ask for it
+        this.compressionEnabled = serverCallStream != null && StringUtils.isNotEmpty(compression);
+        if (compressionEnabled) {
+            serverCallStream.setCompression(compression);
+            serverCallStream.setMessageCompression(false);
+        }
+    }
+
+    void initStats(AtomicInteger queueSizeGauge, Timer sendLatencyTimer) {
+        this.queueSizeGauge = queueSizeGauge;
+        this.sendLatencyTimer = sendLatencyTimer;
+        updateQueueSizeGauge();
+    }
+
+    void send(ResponseMsg msg, boolean compress) {
+        if (closed) {
+            log.trace("[{}] Pipeline is closed, dropping downlink msg [{}]", sessionId, msg);
+            return;
+        }
+        queue.add(new PendingResponse(msg, compress, System.nanoTime()));
+        queueSize.incrementAndGet();
+        updateQueueSizeGauge();
+        scheduleDrain();
+    }
+
+    int getQueueSize() {
+        return queueSize.get();
+    }
+
+    void close() {
+        closed = true;
+        queue.clear();
+        queueSize.set(0);
+        updateQueueSizeGauge();
+    }
+
+    private void scheduleDrain() {
+        if (!closed && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (Exception e) {
+                draining.set(false);
+                log.warn("[{}] Failed to schedule downlink msgs sending", sessionId, e);
+            }
+        }
+    }
+
+    private void drain() {
+        long sentBytes = 0;
+        try {
+            while (!closed && isReady() && sentBytes < maxBatchBytes) {
+                PendingResponse pending = queue.poll();
+                if (pending == null) {
+                    break;
+                }
+                queueSize.decrementAndGet();
+                if (compressionEnabled) {
+                    serverCallStream.setMessageCompression(pending.isCompress());
+                }
+                outputStream.onNext(pending.getMsg());
+                sentBytes += pending.getMsg().getSerializedSize();
+                Timer timer = sendLatencyTimer;
+                if (timer != null) {
+                    timer.record(System.nanoTime() - pending.getEnqueuedTs(), TimeUnit.NANOSECONDS);
+                }
+            }
+        } catch (Exception e) {
+            log.error("[{}] Failed to send downlink msg", sessionId, e);
+            close();
+            errorHandler.accept(e);
+        } finally {
+            updateQueueSizeGauge();
+            draining.set(false);
+        }
+        // either the size budget is exhausted or new messages arrived after the last poll
+        if (isReady()) {
+            scheduleDrain();
+        }
+    }
+
+    private boolean isReady() {
+        return serverCallStream == null || serverCallStream.isReady();
+    }
+
+    private void updateQueueSizeGauge() {
+        AtomicInteger gauge = queueSizeGauge;
+        if (gauge != null) {
+            gauge.set(queueSize.get());
+        }
+    }
+
+    @Data
+    private static class PendingResponse {
+        private final ResponseMsg msg;
+        private final boolean compress;
+        private final long enqueuedTs;
+    }
+}
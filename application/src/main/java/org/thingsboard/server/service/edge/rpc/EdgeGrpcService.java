@@ -39,6 +39,8 @@ import org.thingsboard.server.common.msg.edge.EdgeEventUpdateMsg;
 import org.thingsboard.server.common.msg.edge.EdgeSessionMsg;
 import org.thingsboard.server.common.msg.edge.FromEdgeSyncResponse;
 import org.thingsboard.server.common.msg.edge.ToEdgeSyncRequest;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.gen.edge.v1.EdgeRpcServiceGrpc;
 import org.thingsboard.server.gen.edge.v1.RequestMsg;
 import org.thingsboard.server.gen.edge.v1.ResponseMsg;
@@ -54,7 +56,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -62,6 +66,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -72,9 +77,16 @@ import java.util.function.Consumer;
 @TbCoreComponent
 public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase implements EdgeRpcService {
 
+    private static final String DOWNLINK_QUEUE_SIZE_STATS_KEY = "edges.downlink.queueSize";
+    private static final String DOWNLINK_SEND_LATENCY_STATS_KEY = "edges.downlink.sendLatency";
+    private static final String EVENTS_NOTIFICATIONS_STATS_KEY = "edges.events.notifications";
+    private static final String EVENTS_DELIVERY_LATENCY_STATS_KEY = "edges.events.deliveryLatency";
+    private static final String SYNC_PROGRESS_STATS_KEY = "edges.sync.progress";
+
     private final ConcurrentMap<EdgeId, EdgeGrpcSession> sessions = new ConcurrentHashMap<>();
     private final ConcurrentMap<EdgeId, Lock> sessionNewEventsLocks = new ConcurrentHashMap<>();
     private final Map<EdgeId, Boolean> sessionNewEvents = new HashMap<>();
+    private final Set<EdgeId> sessionEventsProcessing = new HashSet<>();
     private final ConcurrentMap<EdgeId, ScheduledFuture<?>> sessionEdgeEventChecks = new ConcurrentHashMap<>();
 
     private final ConcurrentMap<UUID, Consumer<FromEdgeSyncResponse>> localSyncEdgeRequests = new ConcurrentHashMap<>();
@@ -100,6 +112,12 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
     @Value("${edges.send_scheduler_pool_size}")
     private int sendSchedulerPoolSize;
 
+    @Value("${edges.rpc.max_downlink_batch_bytes:1048576}")
+    private int maxDownlinkBatchBytes;
+
+    @Value("${edges.rpc.sync_compression:gzip}")
+    private String syncCompression;
+
     @Autowired
     private EdgeContextComponent ctx;
 
@@ -109,6 +127,15 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
     @Autowired
     private TbClusterService clusterService;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
+    private final ConcurrentMap<EdgeId, AtomicInteger> downlinkQueueSizeGauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<EdgeId, AtomicInteger> syncProgressGauges = new ConcurrentHashMap<>();
+
+    private DefaultCounter processedNotificationsCounter;
+    private DefaultCounter coalescedNotificationsCounter;
+
     private Server server;
 
     private ScheduledExecutorService edgeEventProcessingExecutorService;
@@ -145,6 +172,8 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         this.edgeEventProcessingExecutorService = Executors.newScheduledThreadPool(schedulerPoolSize, ThingsBoardThreadFactory.forName("edge-event-check-scheduler"));
         this.sendDownlinkExecutorService = Executors.newScheduledThreadPool(sendSchedulerPoolSize, ThingsBoardThreadFactory.forName("edge-send-scheduler"));
         this.executorService = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("edge-service"));
+        this.processedNotificationsCounter = statsFactory.createDefaultCounter(EVENTS_NOTIFICATIONS_STATS_KEY, "result", "processed");
+        this.coalescedNotificationsCounter = statsFactory.createDefaultCounter(EVENTS_NOTIFICATIONS_STATS_KEY, "result", "coalesced");
         log.info("Edge RPC service initialized!");
     }
 
@@ -174,7 +203,7 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
 
     @Override
     public StreamObserver<RequestMsg> handleMsgs(StreamObserver<ResponseMsg> outputStream) {
-        return new EdgeGrpcSession(ctx, outputStream, this::onEdgeConnect, this::onEdgeDisconnect, sendDownlinkExecutorService).getInputStream();
+        return new EdgeGrpcSession(ctx, outputStream, this::onEdgeConnect, this::onEdgeDisconnect, sendDownlinkExecutorService, maxDownlinkBatchBytes, syncCompression).getInputStream();
     }
 
     @Override
@@ -225,10 +254,12 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
                 newEventLock.lock();
                 try {
                     sessionNewEvents.remove(edgeId);
+                    sessionEventsProcessing.remove(edgeId);
                 } finally {
                     newEventLock.unlock();
                 }
                 cancelScheduleEdgeEventsCheck(edgeId);
+                removeEdgeStats(edgeId);
             }
         });
     }
@@ -237,6 +268,7 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         EdgeGrpcSession session = sessions.get(edgeId);
         if (session != null && session.isConnected()) {
             log.trace("[{}] onEdgeEvent [{}]", tenantId, edgeId.getId());
+            boolean startProcessing;
             final Lock newEventLock = sessionNewEventsLocks.computeIfAbsent(edgeId, id -> new ReentrantLock());
             newEventLock.lock();
             try {
@@ -244,15 +276,29 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
                     log.trace("[{}] set session new events flag to true [{}]", tenantId, edgeId.getId());
                     sessionNewEvents.put(edgeId, true);
                 }
+                startProcessing = !sessionEventsProcessing.contains(edgeId);
             } finally {
                 newEventLock.unlock();
             }
+            if (startProcessing) {
+                processedNotificationsCounter.increment();
+                scheduleEdgeEventsCheck(session, 0);
+            } else {
+                // events will be picked up by the next read of the processing that is in progress
+                coalescedNotificationsCounter.increment();
+            }
         }
     }
 
     private void onEdgeConnect(EdgeId edgeId, EdgeGrpcSession edgeGrpcSession) {
         log.info("[{}] edge [{}] connected successfully.", edgeGrpcSession.getSessionId(), edgeId);
         sessions.put(edgeId, edgeGrpcSession);
+        edgeGrpcSession.getDownlinkPipeline().initStats(
+                downlinkQueueSizeGauges.computeIfAbsent(edgeId, id -> statsFactory.createGauge(DOWNLINK_QUEUE_SIZE_STATS_KEY, new AtomicInteger(), "edgeId", id.toString())),
+                statsFactory.createTimer(DOWNLINK_SEND_LATENCY_STATS_KEY, "edgeId", edgeId.toString()));
+        edgeGrpcSession.setDeliveryLatencyTimer(statsFactory.createTimer(EVENTS_DELIVERY_LATENCY_STATS_KEY, "edgeId", edgeId.toString()));
+        edgeGrpcSession.setSyncProgressGauge(syncProgressGauges.computeIfAbsent(edgeId,
+                id -> statsFactory.createGauge(SYNC_PROGRESS_STATS_KEY, new AtomicInteger(), "edgeId", id.toString())));
         final Lock newEventLock = sessionNewEventsLocks.computeIfAbsent(edgeId, id -> new ReentrantLock());
         newEventLock.lock();
         try {
@@ -263,7 +309,7 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         save(edgeId, DefaultDeviceStateService.ACTIVITY_STATE, true);
         save(edgeId, DefaultDeviceStateService.LAST_CONNECT_TIME, System.currentTimeMillis());
         cancelScheduleEdgeEventsCheck(edgeId);
-        scheduleEdgeEventsCheck(edgeGrpcSession);
+        scheduleEdgeEventsCheck(edgeGrpcSession, 0);
     }
 
     private void startSyncProcess(TenantId tenantId, EdgeId edgeId, UUID requestId) {
@@ -310,40 +356,47 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         }
     }
 
-    private void scheduleEdgeEventsCheck(EdgeGrpcSession session) {
+    /**
+     * Edge events are processed only when a notification about new events was received (or the edge has just connected).
+     * Notifications received while the events are being processed are coalesced into one more processing iteration.
+     */
+    private void scheduleEdgeEventsCheck(EdgeGrpcSession session, long delayMs) {
         EdgeId edgeId = session.getEdge().getId();
         UUID tenantId = session.getEdge().getTenantId().getId();
         if (sessions.containsKey(edgeId)) {
             ScheduledFuture<?> edgeEventCheckTask = edgeEventProcessingExecutorService.schedule(() -> {
                 try {
+                    boolean newEvents;
                     final Lock newEventLock = sessionNewEventsLocks.computeIfAbsent(edgeId, id -> new ReentrantLock());
                     newEventLock.lock();
                     try {
-                        if (Boolean.TRUE.equals(sessionNewEvents.get(edgeId))) {
+                        newEvents = Boolean.TRUE.equals(sessionNewEvents.get(edgeId)) && sessionEventsProcessing.add(edgeId);
+                        if (newEvents) {
                             log.trace("[{}] Set session new events flag to false", edgeId.getId());
                             sessionNewEvents.put(edgeId, false);
-                            Futures.addCallback(session.processEdgeEvents(), new FutureCallback<>() {
-                                @Override
-                                public void onSuccess(Void result) {
-                                    scheduleEdgeEventsCheck(session);
-                                }
-
-                                @Override
-                                public void onFailure(Throwable t) {
-                                    log.warn("[{}] Failed to process edge events for edge [{}]!", tenantId, session.getEdge().getId().getId(), t);
-                                    scheduleEdgeEventsCheck(session);
-                                }
-                            }, ctx.getGrpcCallbackExecutorService());
-                        } else {
-                            scheduleEdgeEventsCheck(session);
                         }
                     } finally {
                         newEventLock.unlock();
                     }
+                    if (newEvents) {
+                        Futures.addCallback(session.processEdgeEvents(), new FutureCallback<>() {
+                            @Override
+                            public void onSuccess(Void result) {
+                                onEdgeEventsProcessed(session, false);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable t) {
+                                log.warn("[{}] Failed to process edge events for edge [{}]!", tenantId, session.getEdge().getId().getId(), t);
+                                onEdgeEventsProcessed(session, true);
+                            }
+                        }, ctx.getGrpcCallbackExecutorService());
+                    }
                 } catch (Exception e) {
                     log.warn("[{}] Failed to process edge events for edge [{}]!", tenantId, session.getEdge().getId().getId(), e);
+                    onEdgeEventsProcessed(session, true);
                 }
-            }, ctx.getEdgeEventStorageSettings().getNoRecordsSleepInterval(), TimeUnit.MILLISECONDS);
+            }, delayMs, TimeUnit.MILLISECONDS);
             sessionEdgeEventChecks.put(edgeId, edgeEventCheckTask);
             log.trace("[{}] Check edge event scheduled for edge [{}]", tenantId, edgeId.getId());
         } else {
@@ -352,6 +405,28 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         }
     }
 
+    private void onEdgeEventsProcessed(EdgeGrpcSession session, boolean failed) {
+        EdgeId edgeId = session.getEdge().getId();
+        if (sessions.get(edgeId) != session) {
+            return;
+        }
+        boolean newEvents;
+        final Lock newEventLock = sessionNewEventsLocks.computeIfAbsent(edgeId, id -> new ReentrantLock());
+        newEventLock.lock();
+        try {
+            sessionEventsProcessing.remove(edgeId);
+            if (failed && sessionNewEvents.containsKey(edgeId)) {
+                sessionNewEvents.put(edgeId, true);
+            }
+            newEvents = Boolean.TRUE.equals(sessionNewEvents.get(edgeId));
+        } finally {
+            newEventLock.unlock();
+        }
+        if (newEvents) {
+            scheduleEdgeEventsCheck(session, failed ? ctx.getEdgeEventStorageSettings().getNoRecordsSleepInterval() : 0);
+        }
+    }
+
     private void cancelScheduleEdgeEventsCheck(EdgeId edgeId) {
         log.trace("[{}] cancelling edge event check for edge", edgeId);
         if (sessionEdgeEventChecks.containsKey(edgeId)) {
@@ -370,12 +445,24 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         newEventLock.lock();
         try {
             sessionNewEvents.remove(edgeId);
+            sessionEventsProcessing.remove(edgeId);
         } finally {
             newEventLock.unlock();
         }
         save(edgeId, DefaultDeviceStateService.ACTIVITY_STATE, false);
         save(edgeId, DefaultDeviceStateService.LAST_DISCONNECT_TIME, System.currentTimeMillis());
         cancelScheduleEdgeEventsCheck(edgeId);
+        removeEdgeStats(edgeId);
+    }
+
+    private void removeEdgeStats(EdgeId edgeId) {
+        downlinkQueueSizeGauges.remove(edgeId);
+        syncProgressGauges.remove(edgeId);
+        String edgeIdStr = edgeId.toString();
+        statsFactory.removeMeters(DOWNLINK_QUEUE_SIZE_STATS_KEY, "edgeId", edgeIdStr);
+        statsFactory.removeMeters(DOWNLINK_SEND_LATENCY_STATS_KEY, "edgeId", edgeIdStr);
+        statsFactory.removeMeters(EVENTS_DELIVERY_LATENCY_STATS_KEY, "edgeId", edgeIdStr);
+        statsFactory.removeMeters(SYNC_PROGRESS_STATS_KEY, "edgeId", edgeIdStr);
     }
 
     private void save(EdgeId edgeId, String key, long value) {
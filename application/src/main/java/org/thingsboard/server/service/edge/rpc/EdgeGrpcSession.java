@@ -15,12 +15,12 @@
  */
 package org.thingsboard.server.service.edge.rpc;
 
-import com.datastax.oss.driver.api.core.uuid.Uuids;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -73,9 +73,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -84,8 +85,6 @@ import java.util.stream.Collectors;
 @Data
 public final class EdgeGrpcSession implements Closeable {
 
-    private static final ReentrantLock downlinkMsgLock = new ReentrantLock();
-
     private static final int MAX_DOWNLINK_ATTEMPTS = 10; // max number of attemps to send downlink message if edge connected
 
     private static final String QUEUE_START_TS_ATTR_KEY = "queueStartTs";
@@ -100,6 +99,7 @@ public final class EdgeGrpcSession implements Closeable {
     private Edge edge;
     private StreamObserver<RequestMsg> inputStream;
     private StreamObserver<ResponseMsg> outputStream;
+    private EdgeGrpcDownlinkPipeline downlinkPipeline;
     private boolean connected;
     private boolean syncCompleted;
 
@@ -107,14 +107,23 @@ public final class EdgeGrpcSession implements Closeable {
 
     private ScheduledExecutorService sendDownlinkExecutorService;
 
+    private Long queueStartTs;
+    private UUID queueLastEventId;
+    private Timer deliveryLatencyTimer;
+    private AtomicInteger syncProgressGauge;
+    private volatile EdgeSyncPageReader syncPageReader;
+
     EdgeGrpcSession(EdgeContextComponent ctx, StreamObserver<ResponseMsg> outputStream, BiConsumer<EdgeId, EdgeGrpcSession> sessionOpenListener,
-                    Consumer<EdgeId> sessionCloseListener, ScheduledExecutorService sendDownlinkExecutorService) {
+                    Consumer<EdgeId> sessionCloseListener, ScheduledExecutorService sendDownlinkExecutorService, int maxDownlinkBatchBytes,
+                    String syncCompression) {
         this.sessionId = UUID.randomUUID();
         this.ctx = ctx;
         this.outputStream = outputStream;
         this.sessionOpenListener = sessionOpenListener;
         this.sessionCloseListener = sessionCloseListener;
         this.sendDownlinkExecutorService = sendDownlinkExecutorService;
+        this.downlinkPipeline = new EdgeGrpcDownlinkPipeline(sessionId, outputStream, sendDownlinkExecutorService,
+                maxDownlinkBatchBytes, syncCompression, this::onDownlinkPipelineError);
         initInputStream();
     }
 
@@ -143,6 +152,7 @@ public final class EdgeGrpcSession implements Closeable {
                             startSyncProcess(edge.getTenantId(), edge.getId(), fullSync);
                         } else {
                             syncCompleted = true;
+                            ctx.getClusterService().onEdgeEventUpdate(edge.getTenantId(), edge.getId());
                         }
                     }
                     if (requestMsg.getMsgType().equals(RequestMsgType.UPLINK_RPC_MESSAGE)) {
@@ -170,6 +180,7 @@ public final class EdgeGrpcSession implements Closeable {
 
             private void closeSession() {
                 connected = false;
+                downlinkPipeline.close();
                 if (edge != null) {
                     try {
                         sessionCloseListener.accept(edge.getId());
@@ -188,41 +199,80 @@ public final class EdgeGrpcSession implements Closeable {
         log.trace("[{}][{}] Staring edge sync process", tenantId, edgeId);
         syncCompleted = false;
         interruptGeneralProcessingOnSync(tenantId, edgeId);
-        doSync(new EdgeSyncCursor(ctx, edge, fullSync));
+        EdgeSyncPageReader previousReader = syncPageReader;
+        if (previousReader != null) {
+            previousReader.close();
+        }
+        EdgeEventStorageSettings settings = ctx.getEdgeEventStorageSettings();
+        EdgeSyncPageReader reader = new EdgeSyncPageReader(edge, new EdgeSyncCursor(ctx, edge, fullSync).getFetchers(),
+                ctx.getDbCallbackExecutor(), settings.getMaxReadRecordsCount(),
+                settings.getSyncMaxConcurrentFetchers(), settings.getSyncMaxPrefetchedPages());
+        syncPageReader = reader;
+        updateSyncProgress(reader);
+        doSync(reader);
     }
 
-    private void doSync(EdgeSyncCursor cursor) {
-        if (cursor.hasNext()) {
-            log.info("[{}][{}] starting sync process, cursor current idx = {}", edge.getTenantId(), edge.getId(), cursor.getCurrentIdx());
-            ListenableFuture<UUID> uuidListenableFuture = startProcessingEdgeEvents(cursor.getNext());
-            Futures.addCallback(uuidListenableFuture, new FutureCallback<>() {
-                @Override
-                public void onSuccess(@Nullable UUID result) {
-                    doSync(cursor);
+    private void doSync(EdgeSyncPageReader reader) {
+        Futures.addCallback(reader.next(), new FutureCallback<>() {
+            @Override
+            public void onSuccess(@Nullable List<EdgeEvent> edgeEvents) {
+                updateSyncProgress(reader);
+                if (!isConnected()) {
+                    log.debug("[{}][{}] Edge is disconnected, stopping sync process", edge.getTenantId(), edge.getId());
+                    reader.close();
+                } else if (edgeEvents == null || edgeEvents.isEmpty()) {
+                    log.info("[{}][{}] sync process fetched all [{}] entity groups", edge.getTenantId(), edge.getId(), reader.getFetchersCount());
+                    sendSyncCompleted();
+                } else {
+                    log.trace("[{}] [{}] sync event(s) are going to be processed.", sessionId, edgeEvents.size());
+                    Futures.addCallback(sendDownlinkMsgsPack(convertToDownlinkMsgsPack(edgeEvents)), new FutureCallback<>() {
+                        @Override
+                        public void onSuccess(@Nullable Void result) {
+                            doSync(reader);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            log.error("[{}][{}] Exception during sync process", edge.getTenantId(), edge.getId(), t);
+                            reader.close();
+                        }
+                    }, ctx.getGrpcCallbackExecutorService());
                 }
+            }
 
-                @Override
-                public void onFailure(Throwable t) {
+            @Override
+            public void onFailure(Throwable t) {
+                if (!(t instanceof CancellationException)) {
                     log.error("[{}][{}] Exception during sync process", edge.getTenantId(), edge.getId(), t);
                 }
-            }, ctx.getGrpcCallbackExecutorService());
-        } else {
-            DownlinkMsg syncCompleteDownlinkMsg = DownlinkMsg.newBuilder()
-                    .setDownlinkMsgId(EdgeUtils.nextPositiveInt())
-                    .setSyncCompletedMsg(SyncCompletedMsg.newBuilder().build())
-                    .build();
-            Futures.addCallback(sendDownlinkMsgsPack(Collections.singletonList(syncCompleteDownlinkMsg)), new FutureCallback<Void>() {
-                @Override
-                public void onSuccess(Void result) {
-                    syncCompleted = true;
-                    ctx.getClusterService().onEdgeEventUpdate(edge.getTenantId(), edge.getId());
-                }
+                reader.close();
+            }
+        }, ctx.getGrpcCallbackExecutorService());
+    }
 
-                @Override
-                public void onFailure(Throwable t) {
-                    log.error("[{}][{}] Exception during sending sync complete", edge.getTenantId(), edge.getId(), t);
-                }
-            }, ctx.getGrpcCallbackExecutorService());
+    private void sendSyncCompleted() {
+        DownlinkMsg syncCompleteDownlinkMsg = DownlinkMsg.newBuilder()
+                .setDownlinkMsgId(EdgeUtils.nextPositiveInt())
+                .setSyncCompletedMsg(SyncCompletedMsg.newBuilder().build())
+                .build();
+        Futures.addCallback(sendDownlinkMsgsPack(Collections.singletonList(syncCompleteDownlinkMsg)), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                syncCompleted = true;
+                ctx.getClusterService().onEdgeEventUpdate(edge.getTenantId(), edge.getId());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("[{}][{}] Exception during sending sync complete", edge.getTenantId(), edge.getId(), t);
+            }
+        }, ctx.getGrpcCallbackExecutorService());
+    }
+
+    private void updateSyncProgress(EdgeSyncPageReader reader) {
+        AtomicInteger gauge = syncProgressGauge;
+        if (gauge != null && reader.getFetchersCount() > 0) {
+            gauge.set(reader.getCompletedFetchers() * 100 / reader.getFetchersCount());
         }
     }
 
@@ -272,17 +322,15 @@ public final class EdgeGrpcSession implements Closeable {
     private void sendDownlinkMsg(ResponseMsg downlinkMsg) {
         log.trace("[{}] Sending downlink msg [{}]", this.sessionId, downlinkMsg);
         if (isConnected()) {
-            downlinkMsgLock.lock();
-            try {
-                outputStream.onNext(downlinkMsg);
-            } catch (Exception e) {
-                log.error("[{}] Failed to send downlink message [{}]", this.sessionId, downlinkMsg, e);
-                connected = false;
-                sessionCloseListener.accept(edge.getId());
-            } finally {
-                downlinkMsgLock.unlock();
-            }
-            log.trace("[{}] Response msg successfully sent [{}]", this.sessionId, downlinkMsg);
+            // messages sent before the sync is completed are the bulk entity packs
+            downlinkPipeline.send(downlinkMsg, !syncCompleted);
+        }
+    }
+
+    private void onDownlinkPipelineError(Throwable t) {
+        if (connected) {
+            connected = false;
+            sessionCloseListener.accept(edge.getId());
         }
     }
 
@@ -301,16 +349,21 @@ public final class EdgeGrpcSession implements Closeable {
         SettableFuture<Void> result = SettableFuture.create();
         log.trace("[{}] starting processing edge events", this.sessionId);
         if (isConnected() && isSyncCompleted()) {
-            Long queueStartTs = getQueueStartTs().get();
+            if (queueStartTs == null) {
+                queueStartTs = getQueueStartTs().get();
+            }
             GeneralEdgeEventFetcher fetcher = new GeneralEdgeEventFetcher(
                     queueStartTs,
+                    queueLastEventId,
                     ctx.getEdgeEventService());
             ListenableFuture<UUID> ifOffsetFuture = startProcessingEdgeEvents(fetcher);
             Futures.addCallback(ifOffsetFuture, new FutureCallback<>() {
                 @Override
                 public void onSuccess(@Nullable UUID ifOffset) {
                     if (ifOffset != null) {
-                        Long newStartTs = Uuids.unixTimestamp(ifOffset);
+                        long newStartTs = fetcher.getLastCreatedTime();
+                        queueStartTs = newStartTs;
+                        queueLastEventId = fetcher.getLastEventId();
                         ListenableFuture<List<String>> updateFuture = updateQueueStartTs(newStartTs);
                         Futures.addCallback(updateFuture, new FutureCallback<>() {
                             @Override
@@ -360,6 +413,7 @@ public final class EdgeGrpcSession implements Closeable {
                 Futures.addCallback(sendDownlinkMsgsPack(downlinkMsgsPack), new FutureCallback<Void>() {
                     @Override
                     public void onSuccess(@Nullable Void tmp) {
+                        recordDeliveryLatency(fetcher, pageData.getData());
                         if (isConnected() && pageData.hasNext()) {
                             processEdgeEvents(fetcher, pageLink.nextPageLink(), result);
                         } else {
@@ -384,6 +438,16 @@ public final class EdgeGrpcSession implements Closeable {
         }
     }
 
+    private void recordDeliveryLatency(EdgeEventFetcher fetcher, List<EdgeEvent> edgeEvents) {
+        Timer timer = deliveryLatencyTimer;
+        if (timer != null && fetcher instanceof GeneralEdgeEventFetcher) {
+            long now = System.currentTimeMillis();
+            for (EdgeEvent edgeEvent : edgeEvents) {
+                timer.record(Math.max(0, now - edgeEvent.getCreatedTime()), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
     private ListenableFuture<Void> sendDownlinkMsgsPack(List<DownlinkMsg> downlinkMsgsPack) {
         interruptPreviousSendDownlinkMsgsTask();
 
@@ -660,6 +724,7 @@ public final class EdgeGrpcSession implements Closeable {
     public void close() {
         log.debug("[{}] Closing session", sessionId);
         connected = false;
+        downlinkPipeline.close();
         try {
             outputStream.onCompleted();
         } catch (Exception e) {
@@ -85,4 +85,8 @@ public class EdgeSyncCursor {
     public int getCurrentIdx() {
         return currentIdx;
     }
+
+    public List<EdgeEventFetcher> getFetchers() {
+        return fetchers;
+    }
 }
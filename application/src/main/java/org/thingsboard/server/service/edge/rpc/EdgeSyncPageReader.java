@@ -0,0 +1,200 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.edge.rpc;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.common.util.ListeningExecutor;
+import org.thingsboard.server.common.data.edge.Edge;
+import org.thingsboard.server.common.data.edge.EdgeEvent;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.service.edge.rpc.fetch.EdgeEventFetcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Reads the pages of the edge sync fetchers ahead of sending.
+ * Up to {@code maxConcurrentFetchers} fetchers read their pages concurrently, each keeping at most
+ * {@code maxPrefetchedPages} pages in memory, while pages are still returned in the order of the fetchers,
+ * so entities are delivered to the edge after the entities they depend on.
+ */
+@Slf4j
+final class EdgeSyncPageReader {
+
+    private final Edge edge;
+    private final List<FetchTask> tasks = new ArrayList<>();
+    private final ListeningExecutor executor;
+    private final int pageSize;
+    private final int maxConcurrentFetchers;
+    private final int maxPrefetchedPages;
+
+    private int currentIdx;
+    private int startedIdx;
+    private SettableFuture<List<EdgeEvent>> pendingPage;
+    private boolean closed;
+
+    EdgeSyncPageReader(Edge edge, List<EdgeEventFetcher> fetchers, ListeningExecutor executor,
+                       int pageSize, int maxConcurrentFetchers, int maxPrefetchedPages) {
+        this.edge = edge;
+        this.executor = executor;
+        this.pageSize = pageSize;
+        this.maxConcurrentFetchers = Math.max(1, maxConcurrentFetchers);
+        this.maxPrefetchedPages = Math.max(1, maxPrefetchedPages);
+        for (EdgeEventFetcher fetcher : fetchers) {
+            tasks.add(new FetchTask(fetcher));
+        }
+    }
+
+    /**
+     * Returns the next page of edge events. Empty list means that all the fetchers are exhausted.
+     */
+    ListenableFuture<List<EdgeEvent>> next() {
+        SettableFuture<List<EdgeEvent>> result = SettableFuture.create();
+        synchronized (this) {
+            if (pendingPage != null) {
+                throw new IllegalStateException("Previous page is not read yet");
+            }
+            pendingPage = result;
+            startFetchers();
+        }
+        completePendingPage();
+        return result;
+    }
+
+    synchronized int getCompletedFetchers() {
+        return currentIdx;
+    }
+
+    int getFetchersCount() {
+        return tasks.size();
+    }
+
+    void close() {
+        SettableFuture<List<EdgeEvent>> pending;
+        synchronized (this) {
+            closed = true;
+            tasks.forEach(task -> task.pages.clear());
+            pending = pendingPage;
+            pendingPage = null;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    private void startFetchers() {
+        while (!closed && startedIdx < tasks.size() && startedIdx < currentIdx + maxConcurrentFetchers) {
+            FetchTask task = tasks.get(startedIdx++);
+            task.pageLink = task.fetcher.getPageLink(pageSize);
+            fetchNextPage(task);
+        }
+    }
+
+    private void fetchNextPage(FetchTask task) {
+        if (closed || task.finished || task.fetching || task.pages.size() >= maxPrefetchedPages) {
+            return;
+        }
+        task.fetching = true;
+        PageLink pageLink = task.pageLink;
+        executor.execute(() -> {
+            PageData<EdgeEvent> pageData = null;
+            Throwable error = null;
+            try {
+                pageData = task.fetcher.fetchEdgeEvents(edge.getTenantId(), edge, pageLink);
+            } catch (Throwable t) {
+                log.warn("[{}][{}] Failed to fetch sync page using [{}]", edge.getTenantId(), edge.getId(), task.fetcher.getClass().getSimpleName(), t);
+                error = t;
+            }
+            synchronized (this) {
+                task.fetching = false;
+                if (error != null) {
+                    task.error = error;
+                    task.finished = true;
+                } else {
+                    if (!pageData.getData().isEmpty()) {
+                        task.pages.add(pageData.getData());
+                    }
+                    if (pageData.hasNext()) {
+                        task.pageLink = pageLink.nextPageLink();
+                    } else {
+                        task.finished = true;
+                    }
+                    fetchNextPage(task);
+                }
+            }
+            completePendingPage();
+        });
+    }
+
+    private void completePendingPage() {
+        SettableFuture<List<EdgeEvent>> pending;
+        List<EdgeEvent> page = null;
+        Throwable error = null;
+        synchronized (this) {
+            if (pendingPage == null || closed) {
+                return;
+            }
+            while (true) {
+                if (currentIdx >= tasks.size()) {
+                    page = Collections.emptyList();
+                    break;
+                }
+                FetchTask task = tasks.get(currentIdx);
+                if (!task.pages.isEmpty()) {
+                    page = task.pages.poll();
+                    fetchNextPage(task);
+                    break;
+                }
+                if (task.error != null) {
+                    error = task.error;
+                    break;
+                }
+                if (!task.finished) {
+                    // the page of the current fetcher is still being read
+                    return;
+                }
+                currentIdx++;
+                startFetchers();
+            }
+            pending = pendingPage;
+            pendingPage = null;
+        }
+        if (error != null) {
+            pending.setException(error);
+        } else {
+            pending.set(page);
+        }
+    }
+
+    private static class FetchTask {
+        private final EdgeEventFetcher fetcher;
+        private final Deque<List<EdgeEvent>> pages = new ArrayDeque<>();
+        private PageLink pageLink;
+        private boolean fetching;
+        private boolean finished;
+        private Throwable error;
+
+        private FetchTask(EdgeEventFetcher fetcher) {
+            this.fetcher = fetcher;
+        }
+    }
+}
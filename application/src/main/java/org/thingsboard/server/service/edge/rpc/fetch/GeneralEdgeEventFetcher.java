@@ -15,35 +15,52 @@
  */
 package org.thingsboard.server.service.edge.rpc.fetch;
 
-import lombok.AllArgsConstructor;
+import lombok.Getter;
 import org.thingsboard.server.common.data.edge.Edge;
 import org.thingsboard.server.common.data.edge.EdgeEvent;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.PageLink;
-import org.thingsboard.server.common.data.page.SortOrder;
-import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.dao.edge.EdgeEventService;
 
-@AllArgsConstructor
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads the edge event queue using the position of the last read event (creation time and id)
+ * instead of an offset, so every page is a single index range scan without a count query.
+ */
 public class GeneralEdgeEventFetcher implements EdgeEventFetcher {
 
-    private final Long queueStartTs;
     private final EdgeEventService edgeEventService;
+    @Getter
+    private long lastCreatedTime;
+    @Getter
+    private UUID lastEventId;
+
+    public GeneralEdgeEventFetcher(Long queueStartTs, EdgeEventService edgeEventService) {
+        this(queueStartTs, null, edgeEventService);
+    }
+
+    public GeneralEdgeEventFetcher(Long queueStartTs, UUID lastEventId, EdgeEventService edgeEventService) {
+        this.lastCreatedTime = queueStartTs != null ? queueStartTs : 0L;
+        this.lastEventId = lastEventId;
+        this.edgeEventService = edgeEventService;
+    }
 
     @Override
     public PageLink getPageLink(int pageSize) {
-        return new TimePageLink(
-                pageSize,
-                0,
-                null,
-                new SortOrder("createdTime", SortOrder.Direction.ASC),
-                queueStartTs,
-                null);
+        return new PageLink(pageSize);
     }
 
     @Override
     public PageData<EdgeEvent> fetchEdgeEvents(TenantId tenantId, Edge edge, PageLink pageLink) {
-        return edgeEventService.findEdgeEvents(tenantId, edge.getId(), (TimePageLink) pageLink, true);
+        List<EdgeEvent> edgeEvents = edgeEventService.findEdgeEventsAfter(tenantId, edge.getId(), lastCreatedTime, lastEventId, pageLink.getPageSize());
+        if (!edgeEvents.isEmpty()) {
+            EdgeEvent lastEdgeEvent = edgeEvents.get(edgeEvents.size() - 1);
+            lastCreatedTime = lastEdgeEvent.getCreatedTime();
+            lastEventId = lastEdgeEvent.getUuidId();
+        }
+        return new PageData<>(edgeEvents, 0, edgeEvents.size(), edgeEvents.size() == pageLink.getPageSize());
     }
 }
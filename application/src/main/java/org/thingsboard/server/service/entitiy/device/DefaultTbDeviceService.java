@@ -82,6 +82,9 @@ public class DefaultTbDeviceService extends AbstractTbEntityService implements T
             Device savedDevice = checkNotNull(deviceService.saveDeviceWithCredentials(device, credentials));
             notificationEntityService.notifyCreateOrUpdateDevice(tenantId, savedDevice.getId(), savedDevice.getCustomerId(),
                     savedDevice, device, actionType, user);
+            if (ActionType.UPDATED.equals(actionType)) {
+                tbClusterService.onDeviceCredentialsUpdated(savedDevice, null);
+            }
 
             return savedDevice;
         } catch (Exception e) {
@@ -48,6 +48,7 @@ import org.thingsboard.server.common.data.id.RuleChainId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
 import org.thingsboard.server.common.data.queue.Queue;
+import org.thingsboard.server.common.data.security.DeviceCredentials;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.ToDeviceActorNotificationMsg;
 import org.thingsboard.server.common.msg.edge.EdgeEventUpdateMsg;
@@ -57,6 +58,7 @@ import org.thingsboard.server.common.msg.plugin.ComponentLifecycleMsg;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.common.msg.rpc.FromDeviceRpcResponse;
+import org.thingsboard.server.dao.device.DeviceCredentialsService;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.gen.transport.TransportProtos.FromDeviceRPCResponseProto;
 import org.thingsboard.server.gen.transport.TransportProtos.ToCoreMsg;
@@ -72,6 +74,7 @@ import org.thingsboard.server.queue.discovery.NotificationsTopicService;
 import org.thingsboard.server.queue.discovery.PartitionService;
 import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.queue.util.DataDecodingEncodingService;
+import org.thingsboard.server.queue.util.TbMsgTracingService;
 import org.thingsboard.server.service.gateway_device.GatewayNotificationsService;
 import org.thingsboard.server.service.ota.OtaPackageStateService;
 import org.thingsboard.server.service.profile.TbAssetProfileCache;
@@ -109,11 +112,16 @@ public class DefaultTbClusterService implements TbClusterService {
     @Lazy
     private OtaPackageStateService otaPackageStateService;
 
+    @Autowired
+    @Lazy
+    private DeviceCredentialsService deviceCredentialsService;
+
     private final NotificationsTopicService notificationsTopicService;
     private final DataDecodingEncodingService encodingService;
     private final TbDeviceProfileCache deviceProfileCache;
     private final TbAssetProfileCache assetProfileCache;
     private final GatewayNotificationsService gatewayNotificationsService;
+    private final TbMsgTracingService msgTracingService;
 
     @Override
     public void pushMsgToCore(TenantId tenantId, EntityId entityId, ToCoreMsg msg, TbQueueCallback callback) {
@@ -190,6 +198,7 @@ public class DefaultTbClusterService implements TbClusterService {
         }
         TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_RULE_ENGINE, tbMsg.getQueueName(), tenantId, entityId);
         log.trace("PUSHING msg: {} to:{}", tbMsg, tpi);
+        msgTracingService.startTrace(tbMsg);
         ToRuleEngineMsg msg = ToRuleEngineMsg.newBuilder()
                 .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
                 .setTenantIdLSB(tenantId.getId().getLeastSignificantBits())
@@ -308,6 +317,11 @@ public class DefaultTbClusterService implements TbClusterService {
         broadcastEntityStateChangeEvent(device.getTenantId(), device.getId(), ComponentLifecycleEvent.DELETED);
     }
 
+    @Override
+    public void onDeviceCredentialsUpdated(Device device, TbQueueCallback callback) {
+        broadcastDeviceChangeToTransport(device, true, callback);
+    }
+
     @Override
     public void onResourceChange(TbResource resource, TbQueueCallback callback) {
         TenantId tenantId = resource.getTenantId();
@@ -338,9 +352,28 @@ public class DefaultTbClusterService implements TbClusterService {
     public <T> void broadcastEntityChangeToTransport(TenantId tenantId, EntityId entityid, T entity, TbQueueCallback callback) {
         String entityName = (entity instanceof HasName) ? ((HasName) entity).getName() : entity.getClass().getName();
         log.trace("[{}][{}][{}] Processing [{}] change event", tenantId, entityid.getEntityType(), entityid.getId(), entityName);
-        TransportProtos.EntityUpdateMsg entityUpdateMsg = TransportProtos.EntityUpdateMsg.newBuilder()
+        broadcastEntityChangeToTransport(TransportProtos.EntityUpdateMsg.newBuilder()
                 .setEntityType(entityid.getEntityType().name())
-                .setData(ByteString.copyFrom(encodingService.encode(entity))).build();
+                .setData(ByteString.copyFrom(encodingService.encode(entity))), callback);
+    }
+
+    private void broadcastDeviceChangeToTransport(Device device, boolean credentialsUpdated, TbQueueCallback callback) {
+        log.trace("[{}][{}] Processing device [{}] change event, credentials updated: {}", device.getTenantId(), device.getId(), device.getName(), credentialsUpdated);
+        TransportProtos.EntityUpdateMsg.Builder entityUpdateMsg = TransportProtos.EntityUpdateMsg.newBuilder()
+                .setEntityType(EntityType.DEVICE.name())
+                .setData(ByteString.copyFrom(encodingService.encode(device)))
+                .setCredentialsUpdated(credentialsUpdated);
+        if (credentialsUpdated) {
+            // the new credentials may have been cached as invalid by the transports
+            DeviceCredentials credentials = deviceCredentialsService.findDeviceCredentialsByDeviceId(device.getTenantId(), device.getId());
+            if (credentials != null && credentials.getCredentialsId() != null) {
+                entityUpdateMsg.setCredentialsId(credentials.getCredentialsId());
+            }
+        }
+        broadcastEntityChangeToTransport(entityUpdateMsg, callback);
+    }
+
+    private void broadcastEntityChangeToTransport(TransportProtos.EntityUpdateMsg.Builder entityUpdateMsg, TbQueueCallback callback) {
         ToTransportMsg transportMsg = ToTransportMsg.newBuilder().setEntityUpdateMsg(entityUpdateMsg).build();
         broadcast(transportMsg, callback);
     }
@@ -470,7 +503,7 @@ public class DefaultTbClusterService implements TbClusterService {
     @Override
     public void onDeviceUpdated(Device device, Device old, boolean notifyEdge) {
         var created = old == null;
-        broadcastEntityChangeToTransport(device.getTenantId(), device.getId(), device, null);
+        broadcastDeviceChangeToTransport(device, created, null);
         if (old != null) {
             boolean deviceNameChanged = !device.getName().equals(old.getName());
             if (deviceNameChanged) {
@@ -77,6 +77,7 @@ import org.thingsboard.server.service.subscription.SubscriptionManagerService;
 import org.thingsboard.server.service.subscription.TbLocalSubscriptionService;
 import org.thingsboard.server.service.subscription.TbSubscriptionUtils;
 import org.thingsboard.server.service.sync.vc.GitVersionControlQueueService;
+import org.thingsboard.server.service.transport.TbTransportRateLimitLeaseService;
 import org.thingsboard.server.service.transport.msg.TransportToDeviceActorMsgWrapper;
 
 import javax.annotation.PostConstruct;
@@ -120,6 +121,7 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
     private final EdgeNotificationService edgeNotificationService;
     private final OtaPackageStateService firmwareStateService;
     private final GitVersionControlQueueService vcQueueService;
+    private final TbTransportRateLimitLeaseService rateLimitLeaseService;
     private final TbCoreConsumerStats stats;
     protected final TbQueueConsumer<TbProtoQueueMsg<ToUsageStatsServiceMsg>> usageStatsConsumer;
     private final TbQueueConsumer<TbProtoQueueMsg<ToOtaPackageStateServiceMsg>> firmwareStatesConsumer;
@@ -145,6 +147,7 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
                                         OtaPackageStateService firmwareStateService,
                                         GitVersionControlQueueService vcQueueService,
                                         PartitionService partitionService,
+                                        TbTransportRateLimitLeaseService rateLimitLeaseService,
                                         Optional<JwtSettingsService> jwtSettingsService) {
         super(actorContext, encodingService, tenantProfileCache, deviceProfileCache, assetProfileCache, apiUsageStateService, partitionService, tbCoreQueueFactory.createToCoreNotificationsMsgConsumer(), jwtSettingsService);
         this.mainConsumer = tbCoreQueueFactory.createToCoreMsgConsumer();
@@ -159,6 +162,7 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
         this.statsService = statsService;
         this.firmwareStateService = firmwareStateService;
         this.vcQueueService = vcQueueService;
+        this.rateLimitLeaseService = rateLimitLeaseService;
     }
 
     @PostConstruct
@@ -241,6 +245,9 @@ public class DefaultTbCoreConsumerService extends AbstractConsumerService<ToCore
                                 } else if (toCoreMsg.hasDeviceActivityMsg()) {
                                     log.trace("[{}] Forwarding message to device state service {}", id, toCoreMsg.getDeviceActivityMsg());
                                     forwardToStateService(toCoreMsg.getDeviceActivityMsg(), callback);
+                                } else if (toCoreMsg.hasRateLimitLeaseRequestMsg()) {
+                                    log.trace("[{}] Forwarding message to rate limit lease service {}", id, toCoreMsg.getRateLimitLeaseRequestMsg());
+                                    rateLimitLeaseService.onLeaseRequest(toCoreMsg.getRateLimitLeaseRequestMsg(), callback);
                                 } else if (!toCoreMsg.getToDeviceActorNotificationMsg().isEmpty()) {
                                     Optional<TbActorMsg> actorMsg = encodingService.decode(toCoreMsg.getToDeviceActorNotificationMsg().toByteArray());
                                     if (actorMsg.isPresent()) {
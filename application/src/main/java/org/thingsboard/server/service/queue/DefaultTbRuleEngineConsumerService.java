@@ -337,7 +337,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         log.trace("[{}] Creating callback for topic {} message: {}", id, configuration.getName(), msg.getValue());
         ToRuleEngineMsg toRuleEngineMsg = msg.getValue();
         TenantId tenantId = TenantId.fromUUID(new UUID(toRuleEngineMsg.getTenantIdMSB(), toRuleEngineMsg.getTenantIdLSB()));
-        TbMsgCallback callback = prometheusStatsEnabled ?
+        TbMsgPackCallback callback = prometheusStatsEnabled ?
                 new TbMsgPackCallback(id, tenantId, ctx, stats.getTimer(tenantId, SUCCESSFUL_STATUS), stats.getTimer(tenantId, FAILED_STATUS)) :
                 new TbMsgPackCallback(id, tenantId, ctx);
         try {
@@ -464,8 +464,12 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
         partitionService.removeQueue(queueDeleteMsg);
     }
 
-    private void forwardToRuleEngineActor(String queueName, TenantId tenantId, ToRuleEngineMsg toRuleEngineMsg, TbMsgCallback callback) {
+    private void forwardToRuleEngineActor(String queueName, TenantId tenantId, ToRuleEngineMsg toRuleEngineMsg, TbMsgPackCallback callback) {
         TbMsg tbMsg = TbMsg.fromBytes(queueName, toRuleEngineMsg.getTbMsg().toByteArray(), callback);
+        if (tbMsg.getTrace() != null) {
+            actorContext.getMsgTracingService().onConsume(tenantId, queueName, tbMsg);
+            callback.setTrace(tbMsg.getTrace(), actorContext.getMsgTracingService().getTotalTimer(tenantId, queueName, tbMsg));
+        }
         QueueToRuleEngineMsg msg;
         ProtocolStringList relationTypesList = toRuleEngineMsg.getRelationTypesList();
         Set<String> relationTypes = null;
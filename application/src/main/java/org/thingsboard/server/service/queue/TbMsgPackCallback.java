@@ -19,6 +19,7 @@ import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsgTrace;
 import org.thingsboard.server.common.msg.queue.RuleEngineException;
 import org.thingsboard.server.common.msg.queue.RuleNodeInfo;
 import org.thingsboard.server.common.msg.queue.TbMsgCallback;
@@ -34,6 +35,8 @@ public class TbMsgPackCallback implements TbMsgCallback {
     private final long startMsgProcessing;
     private final Timer successfulMsgTimer;
     private final Timer failedMsgTimer;
+    private volatile TbMsgTrace trace;
+    private volatile Timer traceTimer;
 
     public TbMsgPackCallback(UUID id, TenantId tenantId, TbMsgPackProcessingContext ctx) {
         this(id, tenantId, ctx, null, null);
@@ -48,12 +51,20 @@ public class TbMsgPackCallback implements TbMsgCallback {
         startMsgProcessing = System.currentTimeMillis();
     }
 
+    public void setTrace(TbMsgTrace trace, Timer traceTimer) {
+        this.trace = trace;
+        this.traceTimer = traceTimer;
+    }
+
     @Override
     public void onSuccess() {
         log.trace("[{}] ON SUCCESS", id);
         if (successfulMsgTimer != null) {
             successfulMsgTimer.record(System.currentTimeMillis() - startMsgProcessing, TimeUnit.MILLISECONDS);
         }
+        if (traceTimer != null) {
+            traceTimer.record(Math.max(System.currentTimeMillis() - trace.getStartTs(), 0), TimeUnit.MILLISECONDS);
+        }
         ctx.onSuccess(id);
     }
 
@@ -16,8 +16,13 @@
 package org.thingsboard.server.service.rpc;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.common.util.JacksonUtil;
 import org.thingsboard.server.common.data.id.DeviceId;
@@ -25,14 +30,34 @@ import org.thingsboard.server.common.data.id.RpcId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.common.data.page.SortOrder;
 import org.thingsboard.server.common.data.rpc.Rpc;
 import org.thingsboard.server.common.data.rpc.RpcStatus;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.rpc.RpcService;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
 import org.thingsboard.server.queue.util.TbCoreComponent;
 import org.thingsboard.server.cluster.TbClusterService;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
 @TbCoreComponent
 @Service
 @RequiredArgsConstructor
@@ -40,30 +65,151 @@ import org.thingsboard.server.cluster.TbClusterService;
 public class TbRpcService {
     private final RpcService rpcService;
     private final TbClusterService tbClusterService;
+    private final ScheduledLogExecutorComponent logExecutor;
+    private final StatsFactory statsFactory;
+
+    @Value("${sql.rpc.batch_size:1000}")
+    private int batchSize;
+
+    @Value("${sql.rpc.batch_max_delay:50}")
+    private long maxDelay;
+
+    @Value("${sql.rpc.stats_print_interval_ms:10000}")
+    private long statsPrintIntervalMs;
+
+    @Value("${sql.rpc.batch_threads:3}")
+    private int batchThreads;
+
+    // latest state update of each RPC that is not persisted yet
+    private final ConcurrentMap<RpcId, RpcStateUpdate> notPersisted = new ConcurrentHashMap<>();
+
+    private TbSqlBlockingQueueWrapper<RpcStateUpdate> queue;
+    private Timer persistenceLagTimer;
+
+    @PostConstruct
+    public void init() {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("RPC")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(statsPrintIntervalMs)
+                .statsNamePrefix("rpc")
+                .batchSortEnabled(false)
+                .build();
+        // all updates of the same RPC go to the same queue, so the status transitions are persisted in order
+        Function<RpcStateUpdate, Integer> hashcodeFunction = update -> update.getRpcId().hashCode();
+        queue = new TbSqlBlockingQueueWrapper<>(params, hashcodeFunction, batchThreads, statsFactory);
+        queue.init(logExecutor, this::saveBatch, Comparator.comparing(RpcStateUpdate::getTs));
+        persistenceLagTimer = statsFactory.createTimer("rpcPersistenceLag");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
 
-    public Rpc save(TenantId tenantId, Rpc rpc) {
-        Rpc saved = rpcService.save(rpc);
-        pushRpcMsgToRuleEngine(tenantId, saved);
-        return saved;
+    /**
+     * @return future that fails if this particular RPC state was not persisted.
+     */
+    public ListenableFuture<Void> save(TenantId tenantId, Rpc rpc) {
+        return enqueue(new RpcStateUpdate(tenantId, rpc.getId(), rpc, rpc.getStatus(), null, System.currentTimeMillis()));
     }
 
-    public void save(TenantId tenantId, RpcId rpcId, RpcStatus newStatus, JsonNode response) {
-        Rpc foundRpc = rpcService.findById(tenantId, rpcId);
-        if (foundRpc != null) {
-            foundRpc.setStatus(newStatus);
-            if (response != null) {
-                foundRpc.setResponse(response);
+    public ListenableFuture<Void> save(TenantId tenantId, RpcId rpcId, RpcStatus newStatus, JsonNode response) {
+        return enqueue(new RpcStateUpdate(tenantId, rpcId, null, newStatus, response, System.currentTimeMillis()));
+    }
+
+    private ListenableFuture<Void> enqueue(RpcStateUpdate update) {
+        notPersisted.put(update.getRpcId(), update);
+        queue.add(update);
+        return update.getPersisted();
+    }
+
+    /**
+     * Returns QUEUED RPCs of the device, including the ones whose state is not persisted yet.
+     */
+    public List<Rpc> findQueuedRpcs(TenantId tenantId, DeviceId deviceId) {
+        // taken before the database read, so a state that is persisted in between is read from the database
+        Map<RpcId, RpcStateUpdate> notPersistedSnapshot = new HashMap<>(notPersisted);
+        List<Rpc> result = new ArrayList<>();
+        Set<RpcId> found = new HashSet<>();
+        PageLink pageLink = new PageLink(1024, 0, null, new SortOrder("createdTime"));
+        PageData<Rpc> pageData;
+        do {
+            pageData = rpcService.findAllByDeviceIdAndStatus(tenantId, deviceId, RpcStatus.QUEUED, pageLink);
+            for (Rpc rpc : pageData.getData()) {
+                RpcStateUpdate update = notPersistedSnapshot.get(rpc.getId());
+                if (update == null || update.getStatus() == RpcStatus.QUEUED) {
+                    result.add(rpc);
+                }
+                found.add(rpc.getId());
+            }
+            if (pageData.hasNext()) {
+                pageLink = pageLink.nextPageLink();
+            }
+        } while (pageData.hasNext());
+        notPersistedSnapshot.values().stream()
+                .filter(update -> update.getRpc() != null && update.getStatus() == RpcStatus.QUEUED)
+                .filter(update -> deviceId.equals(update.getRpc().getDeviceId()) && !found.contains(update.getRpcId()))
+                .map(RpcStateUpdate::getRpc)
+                .sorted(Comparator.comparingLong(Rpc::getCreatedTime))
+                .forEach(result::add);
+        return result;
+    }
+
+    void saveBatch(List<RpcStateUpdate> updates) {
+        // consecutive transitions of the same RPC are merged into a single write, but each of them is still pushed to the rule engine
+        Map<RpcId, Rpc> states = new LinkedHashMap<>();
+        Map<RpcId, List<RpcStateUpdate>> merged = new HashMap<>();
+        Map<RpcId, List<TbMsg>> msgs = new HashMap<>();
+        try {
+            for (RpcStateUpdate update : updates) {
+                Rpc rpc = update.getRpc();
+                if (rpc == null) {
+                    rpc = states.get(update.getRpcId());
+                    if (rpc == null) {
+                        rpc = rpcService.findById(update.getTenantId(), update.getRpcId());
+                    }
+                    if (rpc == null) {
+                        log.warn("[{}] Failed to update RPC status because RPC was already deleted", update.getRpcId());
+                        update.getPersisted().setException(new IllegalStateException("RPC was already deleted"));
+                        continue;
+                    }
+                    rpc.setStatus(update.getStatus());
+                    if (update.getResponse() != null) {
+                        rpc.setResponse(update.getResponse());
+                    }
+                }
+                states.put(update.getRpcId(), rpc);
+                merged.computeIfAbsent(update.getRpcId(), id -> new ArrayList<>()).add(update);
+                msgs.computeIfAbsent(update.getRpcId(), id -> new ArrayList<>()).add(toRuleEngineMsg(rpc));
+            }
+            for (Rpc rpc : states.values()) {
+                try {
+                    rpcService.save(rpc);
+                } catch (Exception e) {
+                    log.error("[{}] Failed to save RPC", rpc.getId(), e);
+                    merged.get(rpc.getId()).forEach(update -> update.getPersisted().setException(e));
+                    continue;
+                }
+                merged.get(rpc.getId()).forEach(update -> update.getPersisted().set(null));
+                msgs.get(rpc.getId()).forEach(msg -> tbClusterService.pushMsgToRuleEngine(rpc.getTenantId(), rpc.getDeviceId(), msg, null));
+            }
+        } finally {
+            long persistedTs = System.currentTimeMillis();
+            for (RpcStateUpdate update : updates) {
+                notPersisted.remove(update.getRpcId(), update);
+                // no-op for the updates that are already completed
+                update.getPersisted().setException(new IllegalStateException("RPC state was not persisted"));
+                persistenceLagTimer.record(persistedTs - update.getTs(), TimeUnit.MILLISECONDS);
             }
-            Rpc saved = rpcService.save(foundRpc);
-            pushRpcMsgToRuleEngine(tenantId, saved);
-        } else {
-            log.warn("[{}] Failed to update RPC status because RPC was already deleted", rpcId);
         }
     }
 
-    private void pushRpcMsgToRuleEngine(TenantId tenantId, Rpc rpc) {
-        TbMsg msg = TbMsg.newMsg("RPC_" + rpc.getStatus().name(), rpc.getDeviceId(), TbMsgMetaData.EMPTY, JacksonUtil.toString(rpc));
-        tbClusterService.pushMsgToRuleEngine(tenantId, rpc.getDeviceId(), msg, null);
+    private TbMsg toRuleEngineMsg(Rpc rpc) {
+        return TbMsg.newMsg("RPC_" + rpc.getStatus().name(), rpc.getDeviceId(), TbMsgMetaData.EMPTY, JacksonUtil.toString(rpc));
     }
 
     public Rpc findRpcById(TenantId tenantId, RpcId rpcId) {
@@ -74,4 +220,17 @@ public class TbRpcService {
         return rpcService.findAllByDeviceIdAndStatus(tenantId, deviceId, rpcStatus, pageLink);
     }
 
+    // identity equality, so an update is removed from the not persisted ones only if it was not superseded
+    @Getter
+    @RequiredArgsConstructor
+    static class RpcStateUpdate {
+        private final TenantId tenantId;
+        private final RpcId rpcId;
+        private final Rpc rpc;
+        private final RpcStatus status;
+        private final JsonNode response;
+        private final long ts;
+        private final SettableFuture<Void> persisted = SettableFuture.create();
+    }
+
 }
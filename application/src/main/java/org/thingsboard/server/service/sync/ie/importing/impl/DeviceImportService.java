@@ -70,7 +70,9 @@ public class DeviceImportService extends BaseEntityImportService<DeviceId, Devic
         if (exportData.getCredentials() != null && ctx.isSaveCredentials()) {
             exportData.getCredentials().setId(null);
             exportData.getCredentials().setDeviceId(null);
-            return deviceService.saveDeviceWithCredentials(device, exportData.getCredentials());
+            Device savedDevice = deviceService.saveDeviceWithCredentials(device, exportData.getCredentials());
+            clusterService.onDeviceCredentialsUpdated(savedDevice, null);
+            return savedDevice;
         } else {
             return deviceService.saveDevice(device);
         }
@@ -86,6 +88,7 @@ public class DeviceImportService extends BaseEntityImportService<DeviceId, Devic
             credentials.setDeviceId(prepared.getId());
             if (!existing.equals(credentials)) {
                 credentialsService.updateDeviceCredentials(ctx.getTenantId(), credentials);
+                clusterService.onDeviceCredentialsUpdated(prepared, null);
                 updated = true;
             }
         }
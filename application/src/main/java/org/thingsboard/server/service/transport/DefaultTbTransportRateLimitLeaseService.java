@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.transport;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.StringUtils;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
+import org.thingsboard.server.common.msg.queue.TbCallback;
+import org.thingsboard.server.common.msg.tools.TbRateLimits;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.gen.transport.TransportProtos.RateLimitLeaseRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.RateLimitLeaseResponseMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToTransportMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TransportRateLimitType;
+import org.thingsboard.server.queue.util.TbCoreComponent;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Owns the cluster-wide transport rate limits of the tenants whose core partition is assigned to this node
+ * and grants the token budgets requested by the transport nodes.
+ */
+@Slf4j
+@Service
+@TbCoreComponent
+@RequiredArgsConstructor
+public class DefaultTbTransportRateLimitLeaseService implements TbTransportRateLimitLeaseService {
+
+    private final ConcurrentMap<TenantId, TenantRateLimits> tenantRateLimits = new ConcurrentHashMap<>();
+
+    private final TbTenantProfileCache tenantProfileCache;
+    private final TbCoreToTransportService coreToTransportService;
+    private final StatsFactory statsFactory;
+
+    @Value("${transport.rate_limits.distributed.inactivity_timeout_ms:600000}")
+    private long inactivityTimeoutMs;
+
+    private DefaultCounter leaseRequestsCounter;
+    private DefaultCounter grantedTokensCounter;
+    private DefaultCounter deniedTokensCounter;
+
+    @PostConstruct
+    public void init() {
+        leaseRequestsCounter = statsFactory.createDefaultCounter("transportRateLimitLeaseRequestsReceived");
+        grantedTokensCounter = statsFactory.createDefaultCounter("transportRateLimitGrantedTokens");
+        deniedTokensCounter = statsFactory.createDefaultCounter("transportRateLimitDeniedTokens");
+    }
+
+    @Override
+    public void onLeaseRequest(RateLimitLeaseRequestMsg msg, TbCallback callback) {
+        TenantId tenantId = TenantId.fromUUID(new UUID(msg.getTenantIdMSB(), msg.getTenantIdLSB()));
+        long requested = msg.getTokens();
+        leaseRequestsCounter.increment();
+        try {
+            String configuration = getConfiguration(tenantProfileCache.get(tenantId), msg.getType());
+            long granted = requested;
+            if (StringUtils.isNotEmpty(configuration)) {
+                TenantRateLimits rateLimits = tenantRateLimits.computeIfAbsent(tenantId, id -> new TenantRateLimits());
+                rateLimits.lastActivityTs = System.currentTimeMillis();
+                granted = grant(rateLimits.get(msg.getType(), configuration), requested);
+            }
+            grantedTokensCounter.add(granted);
+            if (granted < requested) {
+                deniedTokensCounter.add(requested - granted);
+            }
+            log.trace("[{}][{}] Granted {} of {} {} tokens", tenantId, msg.getServiceId(), granted, requested, msg.getType());
+            RateLimitLeaseResponseMsg responseMsg = RateLimitLeaseResponseMsg.newBuilder()
+                    .setTenantIdMSB(msg.getTenantIdMSB())
+                    .setTenantIdLSB(msg.getTenantIdLSB())
+                    .setType(msg.getType())
+                    .setTokens(granted)
+                    .build();
+            coreToTransportService.process(msg.getServiceId(), ToTransportMsg.newBuilder().setRateLimitLeaseResponseMsg(responseMsg).build());
+            callback.onSuccess();
+        } catch (Exception e) {
+            log.warn("[{}] Failed to process rate limit lease request: {}", tenantId, msg, e);
+            callback.onFailure(e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${transport.rate_limits.distributed.inactivity_timeout_ms:600000}")
+    public void cleanUp() {
+        long expTs = System.currentTimeMillis() - inactivityTimeoutMs;
+        tenantRateLimits.entrySet().removeIf(entry -> entry.getValue().lastActivityTs < expTs);
+    }
+
+    // the transport node gets the part of the requested budget that is still available
+    private static long grant(TbRateLimits rateLimits, long requested) {
+        long granted = requested;
+        while (granted > 0 && !rateLimits.tryConsume(granted)) {
+            granted /= 2;
+        }
+        return granted;
+    }
+
+    private static String getConfiguration(TenantProfile tenantProfile, TransportRateLimitType type) {
+        DefaultTenantProfileConfiguration profile = tenantProfile != null ? tenantProfile.getDefaultProfileConfiguration() : null;
+        if (profile == null) {
+            return null;
+        }
+        switch (type) {
+            case REGULAR_MSGS:
+                return profile.getTransportTenantMsgRateLimit();
+            case TELEMETRY_MSGS:
+                return profile.getTransportTenantTelemetryMsgRateLimit();
+            case TELEMETRY_DATA_POINTS:
+                return profile.getTransportTenantTelemetryDataPointsRateLimit();
+            default:
+                return null;
+        }
+    }
+
+    private static class TenantRateLimits {
+        private final Map<TransportRateLimitType, TbRateLimits> rateLimits = new ConcurrentHashMap<>();
+        private volatile long lastActivityTs;
+
+        private TbRateLimits get(TransportRateLimitType type, String configuration) {
+            // the limits are recreated once the tenant profile is updated
+            return rateLimits.compute(type, (t, limits) ->
+                    limits != null && limits.getConfiguration().equals(configuration) ? limits : new TbRateLimits(configuration));
+        }
+    }
+}
@@ -84,6 +84,8 @@ import org.thingsboard.server.gen.transport.TransportProtos.GetEntityProfileRequ
 import org.thingsboard.server.gen.transport.TransportProtos.GetEntityProfileResponseMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDeviceFromGatewayRequestMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDeviceFromGatewayResponseMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDevicesFromGatewayRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDevicesFromGatewayResponseMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.GetResourceRequestMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.GetSnmpDevicesRequestMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.GetSnmpDevicesResponseMsg;
@@ -101,6 +103,7 @@ import org.thingsboard.server.service.executors.DbCallbackExecutorService;
 import org.thingsboard.server.service.profile.TbDeviceProfileCache;
 import org.thingsboard.server.service.resource.TbResourceService;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -161,6 +164,8 @@ public class DefaultTransportApiService implements TransportApiService {
             result = validateCredentials(msg.getHash(), DeviceCredentialsType.X509_CERTIFICATE);
         } else if (transportApiRequestMsg.hasGetOrCreateDeviceRequestMsg()) {
             result = handle(transportApiRequestMsg.getGetOrCreateDeviceRequestMsg());
+        } else if (transportApiRequestMsg.hasGetOrCreateDevicesRequestMsg()) {
+            result = handle(transportApiRequestMsg.getGetOrCreateDevicesRequestMsg());
         } else if (transportApiRequestMsg.hasEntityProfileRequestMsg()) {
             result = handle(transportApiRequestMsg.getEntityProfileRequestMsg());
         } else if (transportApiRequestMsg.hasLwM2MRequestMsg()) {
@@ -277,72 +282,94 @@ public class DefaultTransportApiService implements TransportApiService {
     private ListenableFuture<TransportApiResponseMsg> handle(GetOrCreateDeviceFromGatewayRequestMsg requestMsg) {
         DeviceId gatewayId = new DeviceId(new UUID(requestMsg.getGatewayIdMSB(), requestMsg.getGatewayIdLSB()));
         ListenableFuture<Device> gatewayFuture = deviceService.findDeviceByIdAsync(TenantId.SYS_TENANT_ID, gatewayId);
-        return Futures.transform(gatewayFuture, gateway -> {
-            Lock deviceCreationLock = deviceCreationLocks.computeIfAbsent(requestMsg.getDeviceName(), id -> new ReentrantLock());
-            deviceCreationLock.lock();
-            try {
-                Device device = deviceService.findDeviceByTenantIdAndName(gateway.getTenantId(), requestMsg.getDeviceName());
-                if (device == null) {
-                    TenantId tenantId = gateway.getTenantId();
-                    device = new Device();
-                    device.setTenantId(tenantId);
-                    device.setName(requestMsg.getDeviceName());
-                    device.setType(requestMsg.getDeviceType());
-                    device.setCustomerId(gateway.getCustomerId());
-                    DeviceProfile deviceProfile = deviceProfileCache.findOrCreateDeviceProfile(gateway.getTenantId(), requestMsg.getDeviceType());
-                    device.setDeviceProfileId(deviceProfile.getId());
-                    ObjectNode additionalInfo = JacksonUtil.newObjectNode();
-                    additionalInfo.put(DataConstants.LAST_CONNECTED_GATEWAY, gatewayId.toString());
-                    device.setAdditionalInfo(additionalInfo);
-                    Device savedDevice = deviceService.saveDevice(device);
-                    tbClusterService.onDeviceUpdated(savedDevice, null);
-                    device = savedDevice;
+        return Futures.transform(gatewayFuture, gateway -> TransportApiResponseMsg.newBuilder()
+                .setGetOrCreateDeviceResponseMsg(getOrCreateDevice(gateway, gatewayId, requestMsg.getDeviceName(), requestMsg.getDeviceType()))
+                .build(), dbCallbackExecutorService);
+    }
 
-                    relationService.saveRelation(TenantId.SYS_TENANT_ID, new EntityRelation(gateway.getId(), device.getId(), "Created"));
+    private ListenableFuture<TransportApiResponseMsg> handle(GetOrCreateDevicesFromGatewayRequestMsg requestMsg) {
+        DeviceId gatewayId = new DeviceId(new UUID(requestMsg.getGatewayIdMSB(), requestMsg.getGatewayIdLSB()));
+        ListenableFuture<Device> gatewayFuture = deviceService.findDeviceByIdAsync(TenantId.SYS_TENANT_ID, gatewayId);
+        return Futures.transformAsync(gatewayFuture, gateway -> {
+            List<ListenableFuture<GetOrCreateDeviceFromGatewayResponseMsg>> deviceFutures = new ArrayList<>(requestMsg.getDevicesCount());
+            for (TransportProtos.GatewayDeviceProto deviceProto : requestMsg.getDevicesList()) {
+                String deviceName = deviceProto.getDeviceName();
+                ListenableFuture<GetOrCreateDeviceFromGatewayResponseMsg> deviceFuture = dbCallbackExecutorService.executeAsync(() ->
+                        getOrCreateDevice(gateway, gatewayId, deviceName, deviceProto.getDeviceType()).toBuilder().setDeviceName(deviceName).build());
+                deviceFutures.add(Futures.catching(deviceFuture, Throwable.class, e -> {
+                    log.warn("[{}] Failed to get or create device [{}] for the gateway", gatewayId, deviceName, e);
+                    return GetOrCreateDeviceFromGatewayResponseMsg.newBuilder().setDeviceName(deviceName).build();
+                }, MoreExecutors.directExecutor()));
+            }
+            return Futures.transform(Futures.allAsList(deviceFutures), responses -> TransportApiResponseMsg.newBuilder()
+                    .setGetOrCreateDevicesResponseMsg(GetOrCreateDevicesFromGatewayResponseMsg.newBuilder().addAllDevices(responses).build())
+                    .build(), MoreExecutors.directExecutor());
+        }, dbCallbackExecutorService);
+    }
 
-                    TbMsgMetaData metaData = new TbMsgMetaData();
-                    CustomerId customerId = gateway.getCustomerId();
-                    if (customerId != null && !customerId.isNullUid()) {
-                        metaData.putValue("customerId", customerId.toString());
-                    }
-                    metaData.putValue("gatewayId", gatewayId.toString());
+    private GetOrCreateDeviceFromGatewayResponseMsg getOrCreateDevice(Device gateway, DeviceId gatewayId, String deviceName, String deviceType) {
+        Lock deviceCreationLock = deviceCreationLocks.computeIfAbsent(deviceName, id -> new ReentrantLock());
+        deviceCreationLock.lock();
+        try {
+            Device device = deviceService.findDeviceByTenantIdAndName(gateway.getTenantId(), deviceName);
+            if (device == null) {
+                TenantId tenantId = gateway.getTenantId();
+                device = new Device();
+                device.setTenantId(tenantId);
+                device.setName(deviceName);
+                device.setType(deviceType);
+                device.setCustomerId(gateway.getCustomerId());
+                DeviceProfile deviceProfile = deviceProfileCache.findOrCreateDeviceProfile(gateway.getTenantId(), deviceType);
+                device.setDeviceProfileId(deviceProfile.getId());
+                ObjectNode additionalInfo = JacksonUtil.newObjectNode();
+                additionalInfo.put(DataConstants.LAST_CONNECTED_GATEWAY, gatewayId.toString());
+                device.setAdditionalInfo(additionalInfo);
+                Device savedDevice = deviceService.saveDevice(device);
+                tbClusterService.onDeviceUpdated(savedDevice, null);
+                device = savedDevice;
+
+                relationService.saveRelation(TenantId.SYS_TENANT_ID, new EntityRelation(gateway.getId(), device.getId(), "Created"));
+
+                TbMsgMetaData metaData = new TbMsgMetaData();
+                CustomerId customerId = gateway.getCustomerId();
+                if (customerId != null && !customerId.isNullUid()) {
+                    metaData.putValue("customerId", customerId.toString());
+                }
+                metaData.putValue("gatewayId", gatewayId.toString());
 
-                    DeviceId deviceId = device.getId();
-                    ObjectNode entityNode = mapper.valueToTree(device);
-                    TbMsg tbMsg = TbMsg.newMsg(DataConstants.ENTITY_CREATED, deviceId, customerId, metaData, TbMsgDataType.JSON, mapper.writeValueAsString(entityNode));
-                    tbClusterService.pushMsgToRuleEngine(tenantId, deviceId, tbMsg, null);
-                } else {
-                    JsonNode deviceAdditionalInfo = device.getAdditionalInfo();
-                    if (deviceAdditionalInfo == null) {
-                        deviceAdditionalInfo = JacksonUtil.newObjectNode();
-                    }
-                    if (deviceAdditionalInfo.isObject() &&
-                            (!deviceAdditionalInfo.has(DataConstants.LAST_CONNECTED_GATEWAY)
-                                    || !gatewayId.toString().equals(deviceAdditionalInfo.get(DataConstants.LAST_CONNECTED_GATEWAY).asText()))) {
-                        ObjectNode newDeviceAdditionalInfo = (ObjectNode) deviceAdditionalInfo;
-                        newDeviceAdditionalInfo.put(DataConstants.LAST_CONNECTED_GATEWAY, gatewayId.toString());
-                        Device savedDevice = deviceService.saveDevice(device);
-                        tbClusterService.onDeviceUpdated(savedDevice, device);
-                    }
+                DeviceId deviceId = device.getId();
+                ObjectNode entityNode = mapper.valueToTree(device);
+                TbMsg tbMsg = TbMsg.newMsg(DataConstants.ENTITY_CREATED, deviceId, customerId, metaData, TbMsgDataType.JSON, mapper.writeValueAsString(entityNode));
+                tbClusterService.pushMsgToRuleEngine(tenantId, deviceId, tbMsg, null);
+            } else {
+                JsonNode deviceAdditionalInfo = device.getAdditionalInfo();
+                if (deviceAdditionalInfo == null) {
+                    deviceAdditionalInfo = JacksonUtil.newObjectNode();
                 }
-                GetOrCreateDeviceFromGatewayResponseMsg.Builder builder = GetOrCreateDeviceFromGatewayResponseMsg.newBuilder()
-                        .setDeviceInfo(getDeviceInfoProto(device));
-                DeviceProfile deviceProfile = deviceProfileCache.get(device.getTenantId(), device.getDeviceProfileId());
-                if (deviceProfile != null) {
-                    builder.setProfileBody(ByteString.copyFrom(dataDecodingEncodingService.encode(deviceProfile)));
-                } else {
-                    log.warn("[{}] Failed to find device profile [{}] for device. ", device.getId(), device.getDeviceProfileId());
+                if (deviceAdditionalInfo.isObject() &&
+                        (!deviceAdditionalInfo.has(DataConstants.LAST_CONNECTED_GATEWAY)
+                                || !gatewayId.toString().equals(deviceAdditionalInfo.get(DataConstants.LAST_CONNECTED_GATEWAY).asText()))) {
+                    ObjectNode newDeviceAdditionalInfo = (ObjectNode) deviceAdditionalInfo;
+                    newDeviceAdditionalInfo.put(DataConstants.LAST_CONNECTED_GATEWAY, gatewayId.toString());
+                    Device savedDevice = deviceService.saveDevice(device);
+                    tbClusterService.onDeviceUpdated(savedDevice, device);
                 }
-                return TransportApiResponseMsg.newBuilder()
-                        .setGetOrCreateDeviceResponseMsg(builder.build())
-                        .build();
-            } catch (JsonProcessingException e) {
-                log.warn("[{}] Failed to lookup device by gateway id and name: [{}]", gatewayId, requestMsg.getDeviceName(), e);
-                throw new RuntimeException(e);
-            } finally {
-                deviceCreationLock.unlock();
             }
-        }, dbCallbackExecutorService);
+            GetOrCreateDeviceFromGatewayResponseMsg.Builder builder = GetOrCreateDeviceFromGatewayResponseMsg.newBuilder()
+                    .setDeviceInfo(getDeviceInfoProto(device));
+            DeviceProfile deviceProfile = deviceProfileCache.get(device.getTenantId(), device.getDeviceProfileId());
+            if (deviceProfile != null) {
+                builder.setProfileBody(ByteString.copyFrom(dataDecodingEncodingService.encode(deviceProfile)));
+            } else {
+                log.warn("[{}] Failed to find device profile [{}] for device. ", device.getId(), device.getDeviceProfileId());
+            }
+            return builder.build();
+        } catch (JsonProcessingException e) {
+            log.warn("[{}] Failed to lookup device by gateway id and name: [{}]", gatewayId, deviceName, e);
+            throw new RuntimeException(e);
+        } finally {
+            deviceCreationLock.unlock();
+        }
     }
 
     private ListenableFuture<TransportApiResponseMsg> handle(ProvisionDeviceRequestMsg requestMsg) {
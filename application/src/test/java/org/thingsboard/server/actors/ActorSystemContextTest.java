@@ -0,0 +1,168 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import com.google.common.util.concurrent.Futures;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.event.Event;
+import org.thingsboard.server.common.data.event.RuleChainDebugEvent;
+import org.thingsboard.server.common.data.event.RuleNodeDebugEvent;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.stats.DefaultStatsFactory;
+import org.thingsboard.server.dao.event.EventService;
+import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ActorSystemContextTest {
+
+    private static final String STATS_KEY = "ruleNodeDebugEvents";
+
+    ActorSystemContext actorSystemContext;
+    EventService eventService;
+    MeterRegistry meterRegistry;
+
+    final TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+    final RuleChainId ruleChainId = new RuleChainId(UUID.randomUUID());
+    final RuleNodeId ruleNodeId = new RuleNodeId(UUID.randomUUID());
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        DefaultStatsFactory statsFactory = new DefaultStatsFactory();
+        ReflectionTestUtils.setField(statsFactory, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(statsFactory, "metricsEnabled", true);
+        ReflectionTestUtils.setField(statsFactory, "timerPercentilesStr", "0.5");
+        statsFactory.init();
+
+        eventService = mock(EventService.class);
+        willReturn(Futures.immediateFuture(null)).given(eventService).saveAsync(any(Event.class));
+        TbServiceInfoProvider serviceInfoProvider = mock(TbServiceInfoProvider.class);
+        willReturn("test-service").given(serviceInfoProvider).getServiceId();
+
+        actorSystemContext = new ActorSystemContext();
+        ReflectionTestUtils.setField(actorSystemContext, "statsFactory", statsFactory);
+        ReflectionTestUtils.setField(actorSystemContext, "eventService", eventService);
+        actorSystemContext.setServiceInfoProvider(serviceInfoProvider);
+        ReflectionTestUtils.setField(actorSystemContext, "debugPerTenantEnabled", false);
+        ReflectionTestUtils.setField(actorSystemContext, "debugPerRuleNodeEnabled", false);
+        actorSystemContext.init();
+    }
+
+    @Test
+    void givenRuleNodeLimit_whenExceeded_thenOnlyNoisyRuleNodeIsDropped() {
+        enableRuleNodeLimit("2:60");
+        RuleNodeId otherRuleNodeId = new RuleNodeId(UUID.randomUUID());
+
+        for (int i = 0; i < 3; i++) {
+            actorSystemContext.persistDebugInput(tenantId, ruleNodeId, newMsg(), "Success");
+        }
+        actorSystemContext.persistDebugInput(tenantId, otherRuleNodeId, newMsg(), "Success");
+
+        verify(eventService, times(3)).saveAsync(any(RuleNodeDebugEvent.class));
+        assertThat(count("persisted")).isEqualTo(3);
+        assertThat(count("droppedByRuleNodeLimit")).isEqualTo(1);
+        assertThat(count("droppedByTenantLimit")).isZero();
+    }
+
+    @Test
+    void givenRuleNodeLimits_whenRemoved_thenRuleNodeGetsNewBudget() {
+        enableRuleNodeLimit("1:60");
+
+        actorSystemContext.persistDebugInput(tenantId, ruleNodeId, newMsg(), "Success");
+        actorSystemContext.persistDebugInput(tenantId, ruleNodeId, newMsg(), "Success");
+        actorSystemContext.removeDebugPerRuleNodeLimits(ruleNodeId);
+        actorSystemContext.persistDebugInput(tenantId, ruleNodeId, newMsg(), "Success");
+
+        verify(eventService, times(2)).saveAsync(any(RuleNodeDebugEvent.class));
+        assertThat(count("droppedByRuleNodeLimit")).isEqualTo(1);
+    }
+
+    @Test
+    void givenTenantLimit_whenExceeded_thenRuleChainEventIsSavedOnce() {
+        enableTenantLimit("2:60");
+
+        for (int i = 0; i < 4; i++) {
+            actorSystemContext.persistDebugOutput(tenantId, ruleNodeId, newMsg(), "Success");
+        }
+
+        verify(eventService, times(2)).saveAsync(any(RuleNodeDebugEvent.class));
+        verify(eventService, times(1)).saveAsync(any(RuleChainDebugEvent.class));
+        assertThat(count("persisted")).isEqualTo(2);
+        assertThat(count("droppedByTenantLimit")).isEqualTo(2);
+    }
+
+    @Test
+    void givenBothLimits_whenRuleNodeLimitExceeded_thenTenantBudgetIsNotConsumed() {
+        enableRuleNodeLimit("1:60");
+        enableTenantLimit("2:60");
+        RuleNodeId otherRuleNodeId = new RuleNodeId(UUID.randomUUID());
+
+        for (int i = 0; i < 3; i++) {
+            actorSystemContext.persistDebugInput(tenantId, ruleNodeId, newMsg(), "Success");
+        }
+        actorSystemContext.persistDebugInput(tenantId, otherRuleNodeId, newMsg(), "Success");
+
+        verify(eventService, times(2)).saveAsync(any(RuleNodeDebugEvent.class));
+        assertThat(count("droppedByRuleNodeLimit")).isEqualTo(2);
+        assertThat(count("droppedByTenantLimit")).isZero();
+    }
+
+    @Test
+    void givenSaveFailure_whenPersistDebug_thenFailureIsCounted() {
+        willReturn(Futures.immediateFailedFuture(new RuntimeException("test"))).given(eventService).saveAsync(any(Event.class));
+
+        actorSystemContext.persistDebugInput(tenantId, ruleNodeId, newMsg(), "Success");
+
+        assertThat(count("persisted")).isZero();
+        assertThat(count("failed")).isEqualTo(1);
+    }
+
+    private void enableRuleNodeLimit(String configuration) {
+        ReflectionTestUtils.setField(actorSystemContext, "debugPerRuleNodeEnabled", true);
+        ReflectionTestUtils.setField(actorSystemContext, "debugPerRuleNodeLimitsConfiguration", configuration);
+    }
+
+    private void enableTenantLimit(String configuration) {
+        ReflectionTestUtils.setField(actorSystemContext, "debugPerTenantEnabled", true);
+        ReflectionTestUtils.setField(actorSystemContext, "debugPerTenantLimitsConfiguration", configuration);
+    }
+
+    private TbMsg newMsg() {
+        return TbMsg.newMsg(null, "POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{\"temperature\":42}", ruleChainId, ruleNodeId);
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter(STATS_KEY, "result", result).count();
+    }
+
+}
@@ -15,20 +15,44 @@
  */
 package org.thingsboard.server.actors.device;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.thingsboard.common.util.LinkedHashMapRemoveEldest;
+import org.thingsboard.rule.engine.api.msg.DeviceEdgeUpdateMsg;
 import org.thingsboard.server.actors.ActorSystemContext;
+import org.thingsboard.server.actors.TbActorCtx;
+import org.thingsboard.server.cluster.TbClusterService;
 import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EdgeId;
 import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.rpc.RpcError;
+import org.thingsboard.server.common.data.rpc.ToDeviceRpcRequestBody;
+import org.thingsboard.server.common.msg.rpc.FromDeviceRpcResponse;
+import org.thingsboard.server.common.msg.rpc.ToDeviceRpcRequest;
 import org.thingsboard.server.dao.device.DeviceService;
+import org.thingsboard.server.dao.edge.EdgeEventService;
+import org.thingsboard.server.gen.transport.TransportProtos.SessionType;
+import org.thingsboard.server.service.executors.DbCallbackExecutorService;
+import org.thingsboard.server.service.rpc.RemoveRpcActorMsg;
+import org.thingsboard.server.service.rpc.TbCoreDeviceRpcService;
+import org.thingsboard.server.service.rpc.ToDeviceRpcRequestActorMsg;
+
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 public class DeviceActorMessageProcessorTest {
 
@@ -55,4 +79,75 @@ public class DeviceActorMessageProcessorTest {
         assertThat(processor.sessions.getMaxEntries(), is(MAX_CONCURRENT_SESSIONS_PER_DEVICE));
         assertThat(processor.sessions.getRemovalConsumer(), notNullValue());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void givenNoSessions_whenSessionAdded_thenNotIdle() {
+        assertThat(processor.isIdle(), is(true));
+        processor.sessions.put(UUID.randomUUID(), new SessionInfoMetaData(new SessionInfo(SessionType.ASYNC, "node")));
+        assertThat(processor.isIdle(), is(false));
+    }
+
+    @Test
+    public void givenEdgeQueueSaveFailed_whenOnewayRpc_thenErrorIsReplied() {
+        TbCoreDeviceRpcService rpcService = mockEdgeRpc(Futures.immediateFailedFuture(new RuntimeException("DB is down")));
+        TbActorCtx ctx = mock(TbActorCtx.class);
+
+        ToDeviceRpcRequest request = rpcRequest(true);
+        processor.processRpcRequest(ctx, new ToDeviceRpcRequestActorMsg("test", request));
+
+        assertThat(getRpcResponse(rpcService).getError(), is(Optional.of(RpcError.INTERNAL)));
+        verify(ctx, never()).tell(any());
+    }
+
+    @Test
+    public void givenEdgeQueueSaveFailed_whenTwoWayRpc_thenErrorIsRepliedAndPendingRpcIsRemoved() {
+        TbCoreDeviceRpcService rpcService = mockEdgeRpc(Futures.immediateFailedFuture(new RuntimeException("DB is down")));
+        TbActorCtx ctx = mock(TbActorCtx.class);
+
+        ToDeviceRpcRequest request = rpcRequest(false);
+        processor.processRpcRequest(ctx, new ToDeviceRpcRequestActorMsg("test", request));
+
+        assertThat(getRpcResponse(rpcService).getError(), is(Optional.of(RpcError.INTERNAL)));
+        ArgumentCaptor<RemoveRpcActorMsg> removeMsg = ArgumentCaptor.forClass(RemoveRpcActorMsg.class);
+        verify(ctx).tell(removeMsg.capture());
+        assertThat(removeMsg.getValue().getRequestId(), is(request.getId()));
+    }
+
+    @Test
+    public void givenEdgeQueueSaved_whenOnewayRpc_thenSuccessIsReplied() {
+        TbCoreDeviceRpcService rpcService = mockEdgeRpc(Futures.immediateFuture(null));
+
+        processor.processRpcRequest(mock(TbActorCtx.class), new ToDeviceRpcRequestActorMsg("test", rpcRequest(true)));
+
+        assertThat(getRpcResponse(rpcService).getError(), is(Optional.empty()));
+    }
+
+    private TbCoreDeviceRpcService mockEdgeRpc(ListenableFuture<Void> saveFuture) {
+        TbCoreDeviceRpcService rpcService = mock(TbCoreDeviceRpcService.class);
+        EdgeEventService edgeEventService = mock(EdgeEventService.class);
+        DbCallbackExecutorService dbCallbackExecutor = mock(DbCallbackExecutorService.class);
+        willAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).given(dbCallbackExecutor).execute(any());
+        willReturn(saveFuture).given(edgeEventService).saveAsync(any());
+        willReturn(true).given(systemContext).isEdgesEnabled();
+        willReturn(edgeEventService).given(systemContext).getEdgeEventService();
+        willReturn(dbCallbackExecutor).given(systemContext).getDbCallbackExecutor();
+        willReturn(mock(TbClusterService.class)).given(systemContext).getClusterService();
+        willReturn(rpcService).given(systemContext).getTbCoreDeviceRpcService();
+        processor.processEdgeUpdate(new DeviceEdgeUpdateMsg(tenantId, deviceId, new EdgeId(UUID.randomUUID())));
+        return rpcService;
+    }
+
+    private ToDeviceRpcRequest rpcRequest(boolean oneway) {
+        return new ToDeviceRpcRequest(UUID.randomUUID(), tenantId, deviceId, oneway, System.currentTimeMillis() + 60000,
+                new ToDeviceRpcRequestBody("setGpio", "{}"), false, 0, null);
+    }
+
+    private FromDeviceRpcResponse getRpcResponse(TbCoreDeviceRpcService rpcService) {
+        ArgumentCaptor<FromDeviceRpcResponse> response = ArgumentCaptor.forClass(FromDeviceRpcResponse.class);
+        verify(rpcService).processRpcResponseFromDeviceActor(response.capture());
+        return response.getValue();
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.device;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.rule.engine.api.msg.DeviceNameOrTypeUpdateMsg;
+import org.thingsboard.server.actors.ActorSystemContext;
+import org.thingsboard.server.actors.TbActorCtx;
+import org.thingsboard.server.actors.TbActorException;
+import org.thingsboard.server.actors.TbActorRef;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RpcId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.rpc.Rpc;
+import org.thingsboard.server.common.data.rpc.RpcStatus;
+import org.thingsboard.server.common.data.rpc.ToDeviceRpcRequestBody;
+import org.thingsboard.server.common.msg.rpc.ToDeviceRpcRequest;
+import org.thingsboard.server.common.msg.timeout.DeviceActorServerSideRpcTimeoutMsg;
+import org.thingsboard.server.dao.device.DeviceService;
+import org.thingsboard.server.service.rpc.TbRpcService;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DeviceActorTest {
+
+    ActorSystemContext systemContext;
+    TbRpcService rpcService;
+    TbActorCtx ctx;
+    TbActorRef parent;
+    TenantId tenantId = TenantId.SYS_TENANT_ID;
+    DeviceId deviceId = DeviceId.fromString("78bf9b26-74ef-4af2-9cfb-ad6cf24ad2ec");
+    long generation = 3;
+
+    @Before
+    public void setUp() {
+        systemContext = mock(ActorSystemContext.class);
+        rpcService = mock(TbRpcService.class);
+        willReturn(10L).given(systemContext).getMaxConcurrentSessionsPerDevice();
+        willReturn(mock(DeviceService.class)).given(systemContext).getDeviceService();
+        willReturn(rpcService).given(systemContext).getTbRpcService();
+        willReturn("test").given(systemContext).getServiceId();
+        willReturn(true).given(systemContext).isDevicePassivationEnabled();
+        willReturn(0L).given(systemContext).getDevicePassivationIdleTimeout();
+        willReturn(Collections.emptyList()).given(rpcService).findQueuedRpcs(tenantId, deviceId);
+        ctx = mock(TbActorCtx.class);
+        parent = mock(TbActorRef.class);
+        willReturn(parent).given(ctx).getParentRef();
+    }
+
+    @Test
+    public void givenQueuedRpc_whenActorCreated_thenRpcIsPendingAndActorIsNotIdle() throws Exception {
+        Rpc rpc = queuedRpc(System.currentTimeMillis() + 60000);
+        willReturn(List.of(rpc)).given(rpcService).findQueuedRpcs(tenantId, deviceId);
+
+        DeviceActor actor = createDeviceActor();
+
+        verify(systemContext).scheduleMsgWithDelay(eq(ctx), any(DeviceActorServerSideRpcTimeoutMsg.class), anyLong());
+        verify(rpcService, never()).save(any(), any(RpcId.class), any(), any());
+        Thread.sleep(10);
+        actor.process(SessionTimeoutCheckMsg.instance());
+        verify(parent, never()).tell(any());
+    }
+
+    @Test
+    public void givenExpiredQueuedRpc_whenActorCreated_thenRpcIsExpiredAndActorIsIdle() throws Exception {
+        Rpc rpc = queuedRpc(System.currentTimeMillis() - 1000);
+        willReturn(List.of(rpc)).given(rpcService).findQueuedRpcs(tenantId, deviceId);
+
+        DeviceActor actor = createDeviceActor();
+
+        verify(rpcService).save(tenantId, rpc.getId(), RpcStatus.EXPIRED, null);
+        verify(systemContext, never()).scheduleMsgWithDelay(any(), any(), anyLong());
+        Thread.sleep(10);
+        actor.process(SessionTimeoutCheckMsg.instance());
+        verify(parent).tell(new DeviceActorIdleMsg(deviceId, generation, 1, ctx));
+    }
+
+    @Test
+    public void givenProcessedMsg_whenActorIdle_thenProcessedMsgsAreReported() throws Exception {
+        DeviceActor actor = createDeviceActor();
+
+        actor.process(new DeviceNameOrTypeUpdateMsg(tenantId, deviceId, "Device A", "default"));
+        Thread.sleep(10);
+        actor.process(SessionTimeoutCheckMsg.instance());
+
+        // the session timeout check itself is taken from the mailbox too, so it is counted
+        verify(parent).tell(new DeviceActorIdleMsg(deviceId, generation, 2, ctx));
+    }
+
+    private DeviceActor createDeviceActor() throws TbActorException {
+        DeviceActor actor = new DeviceActor(systemContext, tenantId, deviceId, generation);
+        actor.init(ctx);
+        return actor;
+    }
+
+    private Rpc queuedRpc(long expirationTime) {
+        UUID id = UUID.randomUUID();
+        ToDeviceRpcRequest request = new ToDeviceRpcRequest(id, tenantId, deviceId, false, expirationTime,
+                new ToDeviceRpcRequestBody("setGpio", "{\"pin\":1}"), true, 0, null);
+        Rpc rpc = new Rpc(new RpcId(id));
+        rpc.setTenantId(tenantId);
+        rpc.setDeviceId(deviceId);
+        rpc.setExpirationTime(expirationTime);
+        rpc.setRequest(JacksonUtil.valueToTree(request));
+        rpc.setStatus(RpcStatus.QUEUED);
+        return rpc;
+    }
+
+}
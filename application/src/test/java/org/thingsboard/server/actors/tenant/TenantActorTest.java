@@ -0,0 +1,197 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.tenant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thingsboard.rule.engine.api.msg.DeviceNameOrTypeUpdateMsg;
+import org.thingsboard.server.actors.ActorSystemContext;
+import org.thingsboard.server.actors.TbActorCreator;
+import org.thingsboard.server.actors.TbActorCtx;
+import org.thingsboard.server.actors.TbActorException;
+import org.thingsboard.server.actors.TbActorId;
+import org.thingsboard.server.actors.TbActorRef;
+import org.thingsboard.server.actors.TbEntityActorId;
+import org.thingsboard.server.actors.device.DeviceActorIdleMsg;
+import org.thingsboard.server.common.data.Tenant;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbActorMsg;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.dao.tenant.TenantService;
+import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class TenantActorTest {
+
+    ActorSystemContext systemContext;
+    TbActorCtx ctx;
+    TenantActor tenantActor;
+
+    final TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+    final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    final TbActorId deviceActorId = new TbEntityActorId(deviceId);
+
+    final Map<TbActorId, TbActorRef> children = new HashMap<>();
+    int createdDeviceActors;
+
+    @BeforeEach
+    void setUp() throws TbActorException {
+        systemContext = mock(ActorSystemContext.class);
+        TenantService tenantService = mock(TenantService.class);
+        willReturn(new Tenant(tenantId)).given(tenantService).findTenantById(tenantId);
+        willReturn(tenantService).given(systemContext).getTenantService();
+        willReturn(mock(TbTenantProfileCache.class)).given(systemContext).getTenantProfileCache();
+        TbServiceInfoProvider serviceInfoProvider = mock(TbServiceInfoProvider.class);
+        willReturn(true).given(serviceInfoProvider).isService(ServiceType.TB_CORE);
+        willReturn(serviceInfoProvider).given(systemContext).getServiceInfoProvider();
+        willReturn(true).given(systemContext).isDevicePassivationEnabled();
+
+        // keeps the children like the actor system does: the creator is called only if the actor does not exist
+        ctx = mock(TbActorCtx.class);
+        willAnswer(invocation -> {
+            TbActorId actorId = invocation.getArgument(0);
+            Supplier<TbActorCreator> creator = invocation.getArgument(2);
+            return children.computeIfAbsent(actorId, id -> {
+                creator.get();
+                createdDeviceActors++;
+                return createDeviceActorRef();
+            });
+        }).given(ctx).getOrCreateChildActor(any(), any(), any());
+        willAnswer(invocation -> children.remove(invocation.<TbActorId>getArgument(0))).given(ctx).stop(any());
+
+        tenantActor = createTenantActor();
+    }
+
+    @Test
+    void givenMessagesInMailbox_whenDeviceActorIdle_thenActorIsNotStopped() {
+        sendToDevice(3);
+
+        tenantActor.process(idleMsg(1, 2));
+
+        verify(ctx, never()).stop(any());
+        verify(systemContext, never()).onDeviceActorPassivated();
+        assertThat(children).containsKey(deviceActorId);
+    }
+
+    @Test
+    void givenAllMessagesProcessed_whenDeviceActorIdle_thenActorIsStopped() {
+        sendToDevice(3);
+
+        tenantActor.process(idleMsg(1, 3));
+
+        verify(ctx).stop(deviceActorId);
+        verify(systemContext).onDeviceActorPassivated();
+        assertThat(children).doesNotContainKey(deviceActorId);
+    }
+
+    @Test
+    void givenMessageNotRoutedByTenant_whenDeviceActorIdle_thenActorIsNotStopped() {
+        sendToDevice(2);
+        // e.g. a lifecycle msg sent with the actor ref obtained from the actor system
+        children.get(deviceActorId).tellWithHighPriority(mock(TbActorMsg.class));
+
+        tenantActor.process(idleMsg(1, 2));
+        verify(ctx, never()).stop(any());
+
+        tenantActor.process(idleMsg(1, 3));
+        verify(ctx).stop(deviceActorId);
+    }
+
+    @Test
+    void givenPassivatedDeviceActor_whenNextMessage_thenActorIsCreatedAgain() {
+        sendToDevice(2);
+        TbActorRef passivated = children.get(deviceActorId);
+        tenantActor.process(idleMsg(1, 2));
+
+        sendToDevice(1);
+
+        assertThat(createdDeviceActors).isEqualTo(2);
+        TbActorRef recreated = children.get(deviceActorId);
+        assertThat(recreated).isNotSameAs(passivated);
+        verify(recreated).tellWithHighPriority(any(DeviceNameOrTypeUpdateMsg.class));
+
+        tenantActor.process(idleMsg(2, 1));
+        verify(ctx, times(2)).stop(deviceActorId);
+    }
+
+    @Test
+    void givenIdleMsgOfStoppedDeviceActor_whenNewActorCreated_thenNewActorIsNotStopped() {
+        sendToDevice(2);
+        TbActorRef passivated = children.get(deviceActorId);
+        tenantActor.process(idleMsg(1, 2));
+        sendToDevice(1);
+
+        // a duplicate idle msg of the stopped actor, its counts match its own mailbox
+        tenantActor.process(new DeviceActorIdleMsg(deviceId, 1, 2, passivated));
+
+        verify(ctx, times(1)).stop(any());
+        assertThat(children).containsKey(deviceActorId);
+    }
+
+    @Test
+    void givenPassivationDisabled_whenDeviceActorIdle_thenActorIsNotStopped() throws TbActorException {
+        willReturn(false).given(systemContext).isDevicePassivationEnabled();
+        tenantActor = createTenantActor();
+        sendToDevice(1);
+
+        tenantActor.process(idleMsg(1, 1));
+
+        verify(ctx, never()).stop(any());
+    }
+
+    private TenantActor createTenantActor() throws TbActorException {
+        TenantActor actor = (TenantActor) new TenantActor.ActorCreator(systemContext, tenantId).createActor();
+        actor.init(ctx);
+        return actor;
+    }
+
+    private DeviceActorIdleMsg idleMsg(long generation, long processedMsgs) {
+        return new DeviceActorIdleMsg(deviceId, generation, processedMsgs, children.get(deviceActorId));
+    }
+
+    // counts the received messages like the actor mailbox does
+    private TbActorRef createDeviceActorRef() {
+        TbActorRef actorRef = mock(TbActorRef.class);
+        AtomicLong receivedMsgs = new AtomicLong();
+        willAnswer(invocation -> receivedMsgs.incrementAndGet()).given(actorRef).tell(any());
+        willAnswer(invocation -> receivedMsgs.incrementAndGet()).given(actorRef).tellWithHighPriority(any());
+        willAnswer(invocation -> receivedMsgs.get()).given(actorRef).getReceivedMsgsCount();
+        return actorRef;
+    }
+
+    private void sendToDevice(int count) {
+        for (int i = 0; i < count; i++) {
+            tenantActor.process(new DeviceNameOrTypeUpdateMsg(tenantId, deviceId, "Device A", "default"));
+        }
+    }
+
+}
@@ -150,6 +150,71 @@ public class HashPartitionServiceTest {
         checkDispersion(start, map, tenantCount * queueCount * partitionCount, 10.0);
     }
 
+    @Test
+    public void testPartitionsMovedOnTopologyChangeWithConsistentHashing() {
+        ReflectionTestUtils.setField(clusterRoutingService, "assignmentStrategy", "consistent_hash");
+        ReflectionTestUtils.setField(clusterRoutingService, "virtualNodesSize", 128);
+
+        List<QueueKey> queueKeys = new ArrayList<>();
+        queueKeys.add(new QueueKey(ServiceType.TB_CORE));
+        queueKeys.add(new QueueKey(ServiceType.TB_RULE_ENGINE));
+        for (int i = 0; i < 100; i++) {
+            queueKeys.add(new QueueKey(ServiceType.TB_RULE_ENGINE, "Main", new TenantId(Uuids.timeBased())));
+        }
+        int partitionCount = 100;
+        int totalPartitions = queueKeys.size() * partitionCount;
+
+        List<TransportProtos.ServiceInfo> services = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            services.add(TransportProtos.ServiceInfo.newBuilder().setServiceId("tb-rule-engine-" + i).build());
+        }
+        Map<String, String> assignment = assignPartitions(services, queueKeys, partitionCount);
+
+        for (int serverCount = 6; serverCount <= 10; serverCount++) {
+            TransportProtos.ServiceInfo added = TransportProtos.ServiceInfo.newBuilder().setServiceId("tb-rule-engine-" + (serverCount - 1)).build();
+            services.add(added);
+            Map<String, String> newAssignment = assignPartitions(services, queueKeys, partitionCount);
+            int moved = countMovedPartitions(assignment, newAssignment, added.getServiceId());
+            System.out.println("Scale up to " + serverCount + " servers: moved " + moved + " of " + totalPartitions + " partitions");
+            Assert.assertTrue(moved < 1.5 * totalPartitions / serverCount);
+            assignment = newAssignment;
+        }
+
+        for (int serverCount = 9; serverCount >= 5; serverCount--) {
+            TransportProtos.ServiceInfo removed = services.remove(0);
+            Map<String, String> newAssignment = assignPartitions(services, queueKeys, partitionCount);
+            int moved = countMovedPartitions(newAssignment, assignment, removed.getServiceId());
+            System.out.println("Scale down to " + serverCount + " servers: moved " + moved + " of " + totalPartitions + " partitions");
+            Assert.assertTrue(moved < 1.5 * totalPartitions / (serverCount + 1));
+            assignment = newAssignment;
+        }
+    }
+
+    private Map<String, String> assignPartitions(List<TransportProtos.ServiceInfo> services, List<QueueKey> queueKeys, int partitionCount) {
+        Map<String, String> assignment = new HashMap<>();
+        for (QueueKey queueKey : queueKeys) {
+            for (int partition = 0; partition < partitionCount; partition++) {
+                assignment.put(queueKey + "-" + partition, clusterRoutingService.resolveByPartitionIdx(services, queueKey, partition).getServiceId());
+            }
+        }
+        return assignment;
+    }
+
+    /*
+     * Counts the partitions with a changed owner and checks that every one of them was moved to (or from) the changed server only.
+     */
+    private int countMovedPartitions(Map<String, String> before, Map<String, String> after, String changedServiceId) {
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String newOwner = after.get(entry.getKey());
+            if (!entry.getValue().equals(newOwner)) {
+                Assert.assertEquals(changedServiceId, newOwner);
+                moved++;
+            }
+        }
+        return moved;
+    }
+
     private <T> void checkDispersion(long start, Map<T, Integer> map, int iterations, double maxDiffPercent) {
         List<Map.Entry<T, Integer>> data = map.entrySet().stream().sorted(Comparator.comparingInt(Map.Entry::getValue)).collect(Collectors.toList());
         long end = System.currentTimeMillis();
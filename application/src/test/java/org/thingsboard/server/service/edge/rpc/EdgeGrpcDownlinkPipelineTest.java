@@ -0,0 +1,202 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.edge.rpc;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.server.gen.edge.v1.DownlinkMsg;
+import org.thingsboard.server.gen.edge.v1.ResponseMsg;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EdgeGrpcDownlinkPipelineTest {
+
+    @Mock
+    private ServerCallStreamObserver<ResponseMsg> outputStream;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private final AtomicInteger queueSizeGauge = new AtomicInteger();
+    private Runnable onReadyHandler;
+
+    @Test
+    public void testMsgsAreQueuedWhileStreamIsNotReadyAndSentInOrderWhenReady() {
+        EdgeGrpcDownlinkPipeline pipeline = createPipeline(Integer.MAX_VALUE, null);
+        willReturn(false).given(outputStream).isReady();
+
+        pipeline.send(msg(1), false);
+        pipeline.send(msg(2), false);
+        runTasks();
+
+        verify(outputStream, never()).onNext(any());
+        Assert.assertEquals(2, pipeline.getQueueSize());
+        Assert.assertEquals(2, queueSizeGauge.get());
+
+        willReturn(true).given(outputStream).isReady();
+        onReadyHandler.run();
+        runTasks();
+
+        InOrder inOrder = inOrder(outputStream);
+        inOrder.verify(outputStream).onNext(msg(1));
+        inOrder.verify(outputStream).onNext(msg(2));
+        Assert.assertEquals(0, pipeline.getQueueSize());
+        Assert.assertEquals(0, queueSizeGauge.get());
+    }
+
+    @Test
+    public void testSendingStopsWhenStreamBecomesNotReadyAndResumesOnReady() {
+        EdgeGrpcDownlinkPipeline pipeline = createPipeline(Integer.MAX_VALUE, null);
+        // the transport buffer fills up after the first message
+        willReturn(true, false).given(outputStream).isReady();
+
+        pipeline.send(msg(1), false);
+        pipeline.send(msg(2), false);
+        pipeline.send(msg(3), false);
+        runTasks();
+
+        verify(outputStream, times(1)).onNext(any());
+        Assert.assertEquals(2, pipeline.getQueueSize());
+
+        willReturn(true).given(outputStream).isReady();
+        onReadyHandler.run();
+        runTasks();
+
+        verify(outputStream, times(3)).onNext(any());
+        Assert.assertEquals(0, pipeline.getQueueSize());
+    }
+
+    @Test
+    public void testOneDrainTaskSendsAtMostMaxBatchBytes() {
+        int msgSize = msg(1).getSerializedSize();
+        EdgeGrpcDownlinkPipeline pipeline = createPipeline(msgSize * 2, null);
+        willReturn(true).given(outputStream).isReady();
+
+        for (int i = 1; i <= 5; i++) {
+            pipeline.send(msg(i), false);
+        }
+        // only one drain task is in flight no matter how many messages are queued
+        Assert.assertEquals(1, tasks.size());
+
+        tasks.poll().run();
+        verify(outputStream, times(2)).onNext(any());
+        // the next part is sent by a new task, so other edges get their turn on the executor
+        Assert.assertEquals(1, tasks.size());
+
+        runTasks();
+        verify(outputStream, times(5)).onNext(any());
+        Assert.assertEquals(0, pipeline.getQueueSize());
+    }
+
+    @Test
+    public void testStreamErrorClosesPipelineAndNotifiesSession() {
+        EdgeGrpcDownlinkPipeline pipeline = createPipeline(Integer.MAX_VALUE, null);
+        willReturn(true).given(outputStream).isReady();
+        RuntimeException streamError = new RuntimeException("Stream is cancelled");
+        willThrow(streamError).given(outputStream).onNext(msg(1));
+
+        pipeline.send(msg(1), false);
+        pipeline.send(msg(2), false);
+        runTasks();
+
+        Assert.assertSame(streamError, error.get());
+        Assert.assertEquals(0, pipeline.getQueueSize());
+        verify(outputStream, never()).onNext(msg(2));
+
+        // messages sent after the failure are dropped
+        pipeline.send(msg(3), false);
+        runTasks();
+        verify(outputStream, never()).onNext(msg(3));
+    }
+
+    @Test
+    public void testCloseDropsQueuedMsgs() {
+        EdgeGrpcDownlinkPipeline pipeline = createPipeline(Integer.MAX_VALUE, null);
+        pipeline.send(msg(1), false);
+        pipeline.send(msg(2), false);
+
+        // the session is closed before the scheduled drain task runs
+        pipeline.close();
+        runTasks();
+        onReadyHandler.run();
+        runTasks();
+
+        verify(outputStream, never()).onNext(any());
+        Assert.assertEquals(0, pipeline.getQueueSize());
+        Assert.assertEquals(0, queueSizeGauge.get());
+        Assert.assertNull(error.get());
+    }
+
+    @Test
+    public void testCompressionIsEnabledPerMsg() {
+        EdgeGrpcDownlinkPipeline pipeline = createPipeline(Integer.MAX_VALUE, "gzip");
+        verify(outputStream).setCompression("gzip");
+        willReturn(true).given(outputStream).isReady();
+
+        pipeline.send(msg(1), true);
+        pipeline.send(msg(2), false);
+        runTasks();
+
+        ArgumentCaptor<Boolean> compression = ArgumentCaptor.forClass(Boolean.class);
+        verify(outputStream, times(3)).setMessageCompression(compression.capture());
+        // disabled on creation, then set for each message
+        Assert.assertEquals(List.of(false, true, false), compression.getAllValues());
+    }
+
+    private EdgeGrpcDownlinkPipeline createPipeline(int maxBatchBytes, String compression) {
+        EdgeGrpcDownlinkPipeline pipeline = new EdgeGrpcDownlinkPipeline(UUID.randomUUID(), outputStream, tasks::add,
+                maxBatchBytes, compression, error::set);
+        ArgumentCaptor<Runnable> onReady = ArgumentCaptor.forClass(Runnable.class);
+        verify(outputStream).setOnReadyHandler(onReady.capture());
+        onReadyHandler = onReady.getValue();
+        pipeline.initStats(queueSizeGauge, new SimpleMeterRegistry().timer("sendLatency"));
+        return pipeline;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static ResponseMsg msg(int id) {
+        return ResponseMsg.newBuilder()
+                .setDownlinkMsg(DownlinkMsg.newBuilder().setDownlinkMsgId(id).build())
+                .build();
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.edge.rpc;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.common.util.ListeningExecutor;
+import org.thingsboard.server.common.data.edge.Edge;
+import org.thingsboard.server.common.data.edge.EdgeEvent;
+import org.thingsboard.server.common.data.id.EdgeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.service.edge.rpc.fetch.EdgeEventFetcher;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class EdgeSyncPageReaderTest {
+
+    private static final int PAGE_SIZE = 3;
+
+    private ListeningExecutorService executorService;
+    private ListeningExecutor executor;
+    private Edge edge;
+
+    @Before
+    public void setUp() {
+        executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+        executor = new ListeningExecutor() {
+            @Override
+            public <T> ListenableFuture<T> executeAsync(Callable<T> task) {
+                return executorService.submit(task);
+            }
+
+            @Override
+            public void execute(Runnable command) {
+                executorService.execute(command);
+            }
+        };
+        edge = new Edge(new EdgeId(UUID.randomUUID()));
+        edge.setTenantId(TenantId.fromUUID(UUID.randomUUID()));
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testMultiPageSyncReturnsEveryEntityOnceInFetcherOrder() throws Exception {
+        // sizes below, equal to and above the page size, including exact multiples of it
+        List<InMemoryFetcher> fetchers = List.of(
+                new InMemoryFetcher(7, false),
+                new InMemoryFetcher(0, false),
+                new InMemoryFetcher(PAGE_SIZE * 2, false),
+                new InMemoryFetcher(PAGE_SIZE, true),
+                new InMemoryFetcher(1, false),
+                new InMemoryFetcher(10, true));
+        EdgeSyncPageReader reader = new EdgeSyncPageReader(edge, new ArrayList<>(fetchers), executor, PAGE_SIZE, 2, 2);
+
+        List<UUID> received = readAll(reader);
+
+        List<UUID> expected = fetchers.stream().flatMap(fetcher -> fetcher.entityIds.stream()).collect(Collectors.toList());
+        Assert.assertEquals(expected, received);
+        Assert.assertEquals(received.size(), new HashSet<>(received).size());
+        Assert.assertEquals(fetchers.size(), reader.getCompletedFetchers());
+    }
+
+    @Test
+    public void testMultiPageSyncWithSingleFetcherAndPrefetchedPage() throws Exception {
+        InMemoryFetcher fetcher = new InMemoryFetcher(PAGE_SIZE * 5, false);
+        EdgeSyncPageReader reader = new EdgeSyncPageReader(edge, List.of(fetcher), executor, PAGE_SIZE, 1, 1);
+
+        Assert.assertEquals(fetcher.entityIds, readAll(reader));
+        // the last page is followed by the end of the sync
+        Assert.assertTrue(reader.next().get(10, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testFetcherErrorIsReturnedAfterPagesOfPreviousFetchers() throws Exception {
+        InMemoryFetcher first = new InMemoryFetcher(PAGE_SIZE, false);
+        EdgeEventFetcher failing = new InMemoryFetcher(PAGE_SIZE, false) {
+            @Override
+            public PageData<EdgeEvent> fetchEdgeEvents(TenantId tenantId, Edge edge, PageLink pageLink) {
+                throw new RuntimeException("Failed to fetch");
+            }
+        };
+        EdgeSyncPageReader reader = new EdgeSyncPageReader(edge, List.of(first, failing), executor, PAGE_SIZE, 2, 2);
+
+        Assert.assertEquals(PAGE_SIZE, reader.next().get(10, TimeUnit.SECONDS).size());
+        try {
+            reader.next().get(10, TimeUnit.SECONDS);
+            Assert.fail("Fetcher error is expected");
+        } catch (ExecutionException e) {
+            Assert.assertEquals("Failed to fetch", e.getCause().getMessage());
+        }
+    }
+
+    private List<UUID> readAll(EdgeSyncPageReader reader) throws Exception {
+        List<UUID> received = new ArrayList<>();
+        while (true) {
+            List<EdgeEvent> page = reader.next().get(10, TimeUnit.SECONDS);
+            if (page.isEmpty()) {
+                return received;
+            }
+            Assert.assertTrue(page.size() <= PAGE_SIZE);
+            page.forEach(edgeEvent -> received.add(edgeEvent.getEntityId()));
+        }
+    }
+
+    private static class InMemoryFetcher implements EdgeEventFetcher {
+
+        private final List<UUID> entityIds = new ArrayList<>();
+        // offset based queries report one more page when the entities count is a multiple of the page size
+        private final boolean trailingEmptyPage;
+
+        InMemoryFetcher(int entitiesCount, boolean trailingEmptyPage) {
+            for (int i = 0; i < entitiesCount; i++) {
+                entityIds.add(UUID.randomUUID());
+            }
+            this.trailingEmptyPage = trailingEmptyPage;
+        }
+
+        @Override
+        public PageLink getPageLink(int pageSize) {
+            return new PageLink(pageSize);
+        }
+
+        @Override
+        public PageData<EdgeEvent> fetchEdgeEvents(TenantId tenantId, Edge edge, PageLink pageLink) {
+            int from = Math.min(pageLink.getPage() * pageLink.getPageSize(), entityIds.size());
+            int to = Math.min(from + pageLink.getPageSize(), entityIds.size());
+            List<EdgeEvent> data = entityIds.subList(from, to).stream().map(entityId -> {
+                EdgeEvent edgeEvent = new EdgeEvent();
+                edgeEvent.setTenantId(tenantId);
+                edgeEvent.setEdgeId(edge.getId());
+                edgeEvent.setEntityId(entityId);
+                return edgeEvent;
+            }).collect(Collectors.toList());
+            boolean hasNext = trailingEmptyPage ? to == from + pageLink.getPageSize() : to < entityIds.size();
+            int totalPages = (entityIds.size() + pageLink.getPageSize() - 1) / pageLink.getPageSize();
+            return new PageData<>(data, totalPages, entityIds.size(), hasNext);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.rpc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.cluster.TbClusterService;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RpcId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.rpc.Rpc;
+import org.thingsboard.server.common.data.rpc.RpcStatus;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.rpc.RpcService;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TbRpcServiceTest {
+
+    private final TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    private RpcService rpcService;
+    private TbClusterService clusterService;
+    private TbSqlBlockingQueueWrapper<TbRpcService.RpcStateUpdate> queue;
+    private TbRpcService service;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        rpcService = mock(RpcService.class);
+        clusterService = mock(TbClusterService.class);
+        queue = mock(TbSqlBlockingQueueWrapper.class);
+        service = new TbRpcService(rpcService, clusterService, mock(ScheduledLogExecutorComponent.class), mock(StatsFactory.class));
+        ReflectionTestUtils.setField(service, "queue", queue);
+        ReflectionTestUtils.setField(service, "persistenceLagTimer", new SimpleMeterRegistry().timer("rpcPersistenceLag"));
+        willReturn(new PageData<>(Collections.emptyList(), 0, 0, false)).given(rpcService)
+                .findAllByDeviceIdAndStatus(eq(tenantId), eq(deviceId), eq(RpcStatus.QUEUED), any());
+    }
+
+    @Test
+    public void testTransitionsOfSameRpcAreMergedIntoSingleWrite() throws Exception {
+        Rpc rpc = newRpc();
+        Future<Void> created = service.save(tenantId, rpc);
+        Future<Void> sent = service.save(tenantId, rpc.getId(), RpcStatus.SENT, null);
+        Future<Void> delivered = service.save(tenantId, rpc.getId(), RpcStatus.DELIVERED, null);
+
+        service.saveBatch(enqueuedUpdates(3));
+
+        ArgumentCaptor<Rpc> saved = ArgumentCaptor.forClass(Rpc.class);
+        verify(rpcService, times(1)).save(saved.capture());
+        assertThat(saved.getValue().getStatus()).isEqualTo(RpcStatus.DELIVERED);
+        // each transition is still pushed to the rule engine
+        verify(clusterService, times(3)).pushMsgToRuleEngine(eq(tenantId), eq(deviceId), any(), any());
+        created.get();
+        sent.get();
+        delivered.get();
+    }
+
+    @Test
+    public void testStatusUpdateOfPersistedRpc() throws Exception {
+        Rpc rpc = newRpc();
+        willReturn(rpc).given(rpcService).findById(tenantId, rpc.getId());
+
+        Future<Void> future = service.save(tenantId, rpc.getId(), RpcStatus.SUCCESSFUL, null);
+        service.saveBatch(enqueuedUpdates(1));
+
+        verify(rpcService).save(rpc);
+        assertThat(rpc.getStatus()).isEqualTo(RpcStatus.SUCCESSFUL);
+        future.get();
+    }
+
+    @Test
+    public void testFailedWriteFailsOnlyItsRpcFutures() throws Exception {
+        Rpc failed = newRpc();
+        Rpc persisted = newRpc();
+        willThrow(new RuntimeException("DB is down")).given(rpcService).save(failed);
+
+        Future<Void> failedCreated = service.save(tenantId, failed);
+        Future<Void> failedSent = service.save(tenantId, failed.getId(), RpcStatus.SENT, null);
+        Future<Void> persistedCreated = service.save(tenantId, persisted);
+        service.saveBatch(enqueuedUpdates(3));
+
+        assertThatThrownBy(failedCreated::get).isInstanceOf(ExecutionException.class);
+        assertThatThrownBy(failedSent::get).isInstanceOf(ExecutionException.class);
+        persistedCreated.get();
+        verify(clusterService, times(1)).pushMsgToRuleEngine(eq(tenantId), eq(deviceId), any(), any());
+    }
+
+    @Test
+    public void testStatusUpdateOfDeletedRpcFails() {
+        Future<Void> future = service.save(tenantId, new RpcId(UUID.randomUUID()), RpcStatus.SENT, null);
+        service.saveBatch(enqueuedUpdates(1));
+
+        assertThatThrownBy(future::get).isInstanceOf(ExecutionException.class);
+    }
+
+    @Test
+    public void testFindQueuedRpcsIncludesNotPersistedRpcs() {
+        Rpc rpc = newRpc();
+        service.save(tenantId, rpc);
+
+        assertThat(service.findQueuedRpcs(tenantId, deviceId)).containsExactly(rpc);
+        assertThat(service.findQueuedRpcs(tenantId, new DeviceId(UUID.randomUUID()))).isEmpty();
+
+        service.saveBatch(enqueuedUpdates(1));
+        willReturn(new PageData<>(List.of(rpc), 1, 1, false)).given(rpcService)
+                .findAllByDeviceIdAndStatus(eq(tenantId), eq(deviceId), eq(RpcStatus.QUEUED), any());
+
+        assertThat(service.findQueuedRpcs(tenantId, deviceId)).containsExactly(rpc);
+    }
+
+    @Test
+    public void testFindQueuedRpcsSkipsRpcsWithNotPersistedTransition() {
+        Rpc rpc = newRpc();
+        willReturn(new PageData<>(List.of(rpc), 1, 1, false)).given(rpcService)
+                .findAllByDeviceIdAndStatus(eq(tenantId), eq(deviceId), eq(RpcStatus.QUEUED), any());
+
+        service.save(tenantId, rpc.getId(), RpcStatus.DELIVERED, null);
+
+        assertThat(service.findQueuedRpcs(tenantId, deviceId)).isEmpty();
+    }
+
+    private List<TbRpcService.RpcStateUpdate> enqueuedUpdates(int expected) {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<TbRpcService.RpcStateUpdate> captor = ArgumentCaptor.forClass(TbRpcService.RpcStateUpdate.class);
+        verify(queue, times(expected)).add(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private Rpc newRpc() {
+        Rpc rpc = new Rpc(new RpcId(UUID.randomUUID()));
+        rpc.setCreatedTime(System.currentTimeMillis());
+        rpc.setTenantId(tenantId);
+        rpc.setDeviceId(deviceId);
+        rpc.setExpirationTime(System.currentTimeMillis() + 60000);
+        rpc.setStatus(RpcStatus.QUEUED);
+        return rpc;
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.transport;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
+import org.thingsboard.server.common.data.tenant.profile.TenantProfileData;
+import org.thingsboard.server.common.msg.queue.TbCallback;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.gen.transport.TransportProtos.RateLimitLeaseRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToTransportMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TransportRateLimitType;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DefaultTbTransportRateLimitLeaseServiceTest {
+
+    private static final String SERVICE_ID = "tb-transport-0";
+
+    private final TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+
+    private TbTenantProfileCache tenantProfileCache;
+    private TbCoreToTransportService coreToTransportService;
+    private DefaultTbTransportRateLimitLeaseService service;
+    private DefaultTenantProfileConfiguration profileConfiguration;
+
+    @Before
+    public void setUp() {
+        tenantProfileCache = mock(TbTenantProfileCache.class);
+        coreToTransportService = mock(TbCoreToTransportService.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StatsFactory statsFactory = mock(StatsFactory.class, invocation -> new DefaultCounter(new AtomicInteger(), meterRegistry.counter("test")));
+        service = new DefaultTbTransportRateLimitLeaseService(tenantProfileCache, coreToTransportService, statsFactory);
+        ReflectionTestUtils.setField(service, "inactivityTimeoutMs", 600000L);
+        service.init();
+
+        profileConfiguration = new DefaultTenantProfileConfiguration();
+        profileConfiguration.setTransportTenantMsgRateLimit("100:60");
+        TenantProfileData profileData = new TenantProfileData();
+        profileData.setConfiguration(profileConfiguration);
+        TenantProfile tenantProfile = new TenantProfile();
+        tenantProfile.setProfileData(profileData);
+        willReturn(tenantProfile).given(tenantProfileCache).get(tenantId);
+    }
+
+    @Test
+    public void testAvailablePartOfBudgetIsGranted() {
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 80)).isEqualTo(80);
+        // 20 tokens are left, the request is halved until it fits
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 80)).isEqualTo(20);
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 80)).isEqualTo(0);
+    }
+
+    @Test
+    public void testRequestIsGrantedIfLimitIsNotConfigured() {
+        assertThat(requestLease(TransportRateLimitType.TELEMETRY_MSGS, 1000)).isEqualTo(1000);
+        assertThat(requestLease(TransportRateLimitType.TELEMETRY_MSGS, 1000)).isEqualTo(1000);
+    }
+
+    @Test
+    public void testLimitsAreRecreatedOnProfileUpdate() {
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 100)).isEqualTo(100);
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 10)).isEqualTo(0);
+
+        profileConfiguration.setTransportTenantMsgRateLimit("200:60");
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 200)).isEqualTo(200);
+    }
+
+    @Test
+    public void testInactiveTenantLimitsAreCleanedUp() {
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 100)).isEqualTo(100);
+
+        service.cleanUp();
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 10)).isEqualTo(0);
+
+        ReflectionTestUtils.setField(service, "inactivityTimeoutMs", -1L);
+        service.cleanUp();
+        assertThat(requestLease(TransportRateLimitType.REGULAR_MSGS, 100)).isEqualTo(100);
+    }
+
+    private long requestLease(TransportRateLimitType type, long tokens) {
+        RateLimitLeaseRequestMsg requestMsg = RateLimitLeaseRequestMsg.newBuilder()
+                .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getId().getLeastSignificantBits())
+                .setServiceId(SERVICE_ID)
+                .setType(type)
+                .setTokens(tokens)
+                .build();
+        service.onLeaseRequest(requestMsg, TbCallback.EMPTY);
+        ArgumentCaptor<ToTransportMsg> captor = ArgumentCaptor.forClass(ToTransportMsg.class);
+        verify(coreToTransportService, atLeastOnce()).process(eq(SERVICE_ID), captor.capture());
+        return captor.getValue().getRateLimitLeaseResponseMsg().getTokens();
+    }
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.transport;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.Futures;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.server.cache.ota.OtaPackageDataCache;
+import org.thingsboard.server.cluster.TbClusterService;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.Device;
+import org.thingsboard.server.common.data.DeviceProfile;
+import org.thingsboard.server.common.data.device.data.DefaultDeviceTransportConfiguration;
+import org.thingsboard.server.common.data.device.data.DeviceData;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.DeviceProfileId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.relation.EntityRelation;
+import org.thingsboard.server.dao.device.DeviceCredentialsService;
+import org.thingsboard.server.dao.device.DeviceProvisionService;
+import org.thingsboard.server.dao.device.DeviceService;
+import org.thingsboard.server.dao.ota.OtaPackageService;
+import org.thingsboard.server.dao.queue.QueueService;
+import org.thingsboard.server.dao.relation.RelationService;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.gen.transport.TransportProtos.GatewayDeviceProto;
+import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDeviceFromGatewayResponseMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDevicesFromGatewayRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TransportApiRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TransportApiResponseMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.util.DataDecodingEncodingService;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+import org.thingsboard.server.service.executors.DbCallbackExecutorService;
+import org.thingsboard.server.service.profile.TbDeviceProfileCache;
+import org.thingsboard.server.service.resource.TbResourceService;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DefaultTransportApiServiceTest {
+
+    private final TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+    private final DeviceProfileId deviceProfileId = new DeviceProfileId(UUID.randomUUID());
+
+    private TbDeviceProfileCache deviceProfileCache;
+    private DeviceService deviceService;
+    private RelationService relationService;
+    private TbClusterService tbClusterService;
+    private DbCallbackExecutorService dbCallbackExecutorService;
+    private DefaultTransportApiService service;
+    private Device gateway;
+
+    @Before
+    public void setUp() {
+        deviceProfileCache = mock(TbDeviceProfileCache.class);
+        deviceService = mock(DeviceService.class);
+        relationService = mock(RelationService.class);
+        tbClusterService = mock(TbClusterService.class);
+        dbCallbackExecutorService = new DbCallbackExecutorService();
+        ReflectionTestUtils.setField(dbCallbackExecutorService, "dbCallbackExecutorThreadPoolSize", 4);
+        dbCallbackExecutorService.init();
+        service = new DefaultTransportApiService(deviceProfileCache, mock(TbTenantProfileCache.class), mock(TbApiUsageStateService.class),
+                deviceService, relationService, mock(DeviceCredentialsService.class), dbCallbackExecutorService, tbClusterService,
+                mock(DataDecodingEncodingService.class), mock(DeviceProvisionService.class), mock(TbResourceService.class),
+                mock(OtaPackageService.class), mock(OtaPackageDataCache.class), mock(QueueService.class));
+
+        gateway = newDevice("gateway");
+        willReturn(Futures.immediateFuture(gateway)).given(deviceService).findDeviceByIdAsync(TenantId.SYS_TENANT_ID, gateway.getId());
+        DeviceProfile deviceProfile = new DeviceProfile(deviceProfileId);
+        willReturn(deviceProfile).given(deviceProfileCache).findOrCreateDeviceProfile(eq(tenantId), anyString());
+    }
+
+    @After
+    public void tearDown() {
+        dbCallbackExecutorService.destroy();
+    }
+
+    @Test
+    public void testBatchWithNewExistingAndFailedDevices() throws Exception {
+        Device existing = newDevice("existing");
+        ObjectNode additionalInfo = JacksonUtil.newObjectNode();
+        additionalInfo.put(DataConstants.LAST_CONNECTED_GATEWAY, gateway.getId().toString());
+        existing.setAdditionalInfo(additionalInfo);
+        willReturn(existing).given(deviceService).findDeviceByTenantIdAndName(tenantId, "existing");
+        willReturn(null).given(deviceService).findDeviceByTenantIdAndName(tenantId, "new");
+        willThrow(new RuntimeException("DB is down")).given(deviceService).findDeviceByTenantIdAndName(tenantId, "failed");
+        willAnswer(invocation -> {
+            Device device = new Device(invocation.<Device>getArgument(0));
+            device.setId(new DeviceId(UUID.randomUUID()));
+            device.setDeviceData(newDeviceData());
+            return device;
+        }).given(deviceService).saveDevice(any(Device.class));
+
+        Map<String, GetOrCreateDeviceFromGatewayResponseMsg> responses = getOrCreateDevices("existing", "new", "failed");
+
+        assertThat(responses).containsOnlyKeys("existing", "new", "failed");
+        assertThat(responses.get("existing").hasDeviceInfo()).isTrue();
+        assertThat(responses.get("existing").getDeviceInfo().getDeviceIdMSB()).isEqualTo(existing.getId().getId().getMostSignificantBits());
+        assertThat(responses.get("new").hasDeviceInfo()).isTrue();
+        assertThat(responses.get("new").getDeviceInfo().getDeviceName()).isEqualTo("new");
+        assertThat(responses.get("failed").hasDeviceInfo()).isFalse();
+
+        verify(deviceService, times(1)).saveDevice(any(Device.class));
+        verify(relationService, times(1)).saveRelation(eq(TenantId.SYS_TENANT_ID), any(EntityRelation.class));
+        verify(tbClusterService, times(1)).pushMsgToRuleEngine(eq(tenantId), any(DeviceId.class), any(), any());
+    }
+
+    @Test
+    public void testBatchWithOnlyExistingDevices() throws Exception {
+        Device first = newDevice("first");
+        Device second = newDevice("second");
+        willReturn(first).given(deviceService).findDeviceByTenantIdAndName(tenantId, "first");
+        willReturn(second).given(deviceService).findDeviceByTenantIdAndName(tenantId, "second");
+        willAnswer(invocation -> invocation.getArgument(0)).given(deviceService).saveDevice(any(Device.class));
+
+        Map<String, GetOrCreateDeviceFromGatewayResponseMsg> responses = getOrCreateDevices("first", "second");
+
+        assertThat(responses).containsOnlyKeys("first", "second");
+        assertThat(responses.values()).allMatch(GetOrCreateDeviceFromGatewayResponseMsg::hasDeviceInfo);
+        // Existing devices only get the last connected gateway updated, no relations or entity created events
+        verify(deviceService, times(2)).saveDevice(any(Device.class));
+        verify(relationService, never()).saveRelation(any(), any());
+        verify(tbClusterService, never()).pushMsgToRuleEngine(any(TenantId.class), any(EntityId.class), any(), any());
+    }
+
+    private Map<String, GetOrCreateDeviceFromGatewayResponseMsg> getOrCreateDevices(String... deviceNames) throws Exception {
+        GetOrCreateDevicesFromGatewayRequestMsg.Builder requestMsg = GetOrCreateDevicesFromGatewayRequestMsg.newBuilder()
+                .setGatewayIdMSB(gateway.getId().getId().getMostSignificantBits())
+                .setGatewayIdLSB(gateway.getId().getId().getLeastSignificantBits());
+        for (String deviceName : deviceNames) {
+            requestMsg.addDevices(GatewayDeviceProto.newBuilder().setDeviceName(deviceName).setDeviceType("default").build());
+        }
+        TbProtoQueueMsg<TransportApiRequestMsg> msg = new TbProtoQueueMsg<>(UUID.randomUUID(),
+                TransportApiRequestMsg.newBuilder().setGetOrCreateDevicesRequestMsg(requestMsg).build());
+        TransportApiResponseMsg response = service.handle(msg).get(10, TimeUnit.SECONDS).getValue();
+        return response.getGetOrCreateDevicesResponseMsg().getDevicesList().stream()
+                .collect(Collectors.toMap(GetOrCreateDeviceFromGatewayResponseMsg::getDeviceName, Function.identity()));
+    }
+
+    private Device newDevice(String name) {
+        Device device = new Device(new DeviceId(UUID.randomUUID()));
+        device.setTenantId(tenantId);
+        device.setName(name);
+        device.setType("default");
+        device.setDeviceProfileId(deviceProfileId);
+        device.setDeviceData(newDeviceData());
+        return device;
+    }
+
+    private DeviceData newDeviceData() {
+        DeviceData deviceData = new DeviceData();
+        deviceData.setTransportConfiguration(new DefaultDeviceTransportConfiguration());
+        return deviceData;
+    }
+
+}
@@ -48,18 +48,34 @@ public class DefaultTbActorSystem implements TbActorSystem {
     private final TbActorSystemSettings settings;
     @Getter
     private final ScheduledExecutorService scheduler;
+    private final TbActorSystemStats stats;
 
     public DefaultTbActorSystem(TbActorSystemSettings settings) {
+        this(settings, null);
+    }
+
+    /**
+     * @param stats metrics of the actor system, 'null' if the metrics are disabled.
+     */
+    public DefaultTbActorSystem(TbActorSystemSettings settings, TbActorSystemStats stats) {
         this.settings = settings;
         this.scheduler = Executors.newScheduledThreadPool(settings.getSchedulerPoolSize(), ThingsBoardThreadFactory.forName("actor-system-scheduler"));
+        this.stats = stats;
+        if (stats != null) {
+            scheduler.scheduleWithFixedDelay(this::updateStats, stats.getUpdateIntervalMs(), stats.getUpdateIntervalMs(), TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void createDispatcher(String dispatcherId, ExecutorService executor) {
-        Dispatcher current = dispatchers.putIfAbsent(dispatcherId, new Dispatcher(dispatcherId, executor));
+        Dispatcher dispatcher = new Dispatcher(dispatcherId, executor);
+        Dispatcher current = dispatchers.putIfAbsent(dispatcherId, dispatcher);
         if (current != null) {
             throw new RuntimeException("Dispatcher with id [" + dispatcherId + "] is already registered!");
         }
+        if (stats != null) {
+            stats.onDispatcherCreated(dispatcher);
+        }
     }
 
     @Override
@@ -113,8 +129,12 @@ public class DefaultTbActorSystem implements TbActorSystem {
                             throw new TbActorNotRegisteredException(parent, "Parent Actor with id [" + parent + "] is not registered!");
                         }
                     }
-                    TbActorMailbox mailbox = new TbActorMailbox(this, settings, actorId, parentRef, actor, dispatcher);
+                    TbActorSystemStats.ActorTypeStats actorTypeStats = stats != null ? stats.getActorTypeStats(actorId) : null;
+                    TbActorMailbox mailbox = new TbActorMailbox(this, settings, actorId, parentRef, actor, dispatcher, actorTypeStats);
                     actors.put(actorId, mailbox);
+                    if (actorTypeStats != null) {
+                        actorTypeStats.onCreated();
+                    }
                     mailbox.initActor();
                     actorMailbox = mailbox;
                     if (parent != null) {
@@ -196,6 +216,14 @@ public class DefaultTbActorSystem implements TbActorSystem {
         }
     }
 
+    private void updateStats() {
+        try {
+            stats.update(dispatchers.values(), actors.values());
+        } catch (Exception e) {
+            log.warn("Failed to update actor system stats", e);
+        }
+    }
+
     @Override
     public void stop() {
         dispatchers.values().forEach(dispatcher -> {
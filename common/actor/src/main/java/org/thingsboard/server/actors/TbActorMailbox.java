@@ -26,6 +26,8 @@ import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -47,8 +49,12 @@ public final class TbActorMailbox implements TbActorCtx {
     private final TbActorRef parentRef;
     private final TbActor actor;
     private final Dispatcher dispatcher;
+    private final TbActorSystemStats.ActorTypeStats actorTypeStats;
     private final ConcurrentLinkedQueue<TbActorMsg> highPriorityMsgs = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<TbActorMsg> normalPriorityMsgs = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() walks the whole queue, the stats read this counter instead
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong receivedMsgs = new AtomicLong();
     private final AtomicBoolean busy = new AtomicBoolean(FREE);
     private final AtomicBoolean ready = new AtomicBoolean(NOT_READY);
     private final AtomicBoolean destroyInProgress = new AtomicBoolean();
@@ -70,6 +76,9 @@ public final class TbActorMailbox implements TbActorCtx {
             }
         } catch (Throwable t) {
             log.debug("[{}] Failed to init actor, attempt: {}", selfId, attempt, t);
+            if (actorTypeStats != null) {
+                actorTypeStats.onInitFailed();
+            }
             int attemptIdx = attempt + 1;
             InitFailureStrategy strategy = actor.onInitFailure(attempt, t);
             if (strategy.isStop() || (settings.getMaxActorInitAttempts() > 0 && attemptIdx > settings.getMaxActorInitAttempts())) {
@@ -90,6 +99,9 @@ public final class TbActorMailbox implements TbActorCtx {
 
     private void enqueue(TbActorMsg msg, boolean highPriority) {
         if (!destroyInProgress.get()) {
+            // counted before the add, so that a concurrent poll never takes the size below zero
+            queueSize.incrementAndGet();
+            receivedMsgs.incrementAndGet();
             if (highPriority) {
                 highPriorityMsgs.add(msg);
             } else {
@@ -137,9 +149,16 @@ public final class TbActorMailbox implements TbActorCtx {
                 msg = normalPriorityMsgs.poll();
             }
             if (msg != null) {
+                queueSize.decrementAndGet();
                 try {
                     log.debug("[{}] Going to process message: {}", selfId, msg);
-                    actor.process(msg);
+                    if (actorTypeStats != null) {
+                        long startTs = System.nanoTime();
+                        actor.process(msg);
+                        actorTypeStats.onMsgProcessed(msg.getMsgType(), System.nanoTime() - startTs);
+                    } else {
+                        actor.process(msg);
+                    }
                 } catch (TbRuleNodeUpdateException updateException) {
                     stopReason = TbActorStopReason.INIT_FAILED;
                     destroy();
@@ -212,6 +231,9 @@ public final class TbActorMailbox implements TbActorCtx {
         if (stopReason == null) {
             stopReason = TbActorStopReason.STOPPED;
         }
+        if (actorTypeStats != null) {
+            actorTypeStats.onDestroyed();
+        }
         destroyInProgress.set(true);
         dispatcher.getExecutor().execute(() -> {
             try {
@@ -225,11 +247,20 @@ public final class TbActorMailbox implements TbActorCtx {
         });
     }
 
+    int getMailboxSize() {
+        return queueSize.get();
+    }
+
     @Override
     public TbActorId getActorId() {
         return selfId;
     }
 
+    @Override
+    public long getReceivedMsgsCount() {
+        return receivedMsgs.get();
+    }
+
     @Override
     public void tell(TbActorMsg actorMsg) {
         enqueue(actorMsg, NORMAL_PRIORITY);
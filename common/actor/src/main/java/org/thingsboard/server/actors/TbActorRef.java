@@ -25,4 +25,9 @@ public interface TbActorRef {
 
     void tellWithHighPriority(TbActorMsg actorMsg);
 
+    /**
+     * Returns the number of messages accepted by the actor mailbox since the actor was created, regardless of the sender.
+     */
+    long getReceivedMsgsCount();
+
 }
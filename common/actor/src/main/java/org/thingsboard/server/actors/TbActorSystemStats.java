@@ -0,0 +1,191 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.msg.MsgType;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Metrics of the actor system: dispatcher threads and queues, actors and mailbox sizes by actor type,
+ * actor lifecycle counters and processing time by actor and message type.
+ * Gauges are updated by a periodic scan of the actor system, so the message processing path only records the timer.
+ */
+@Slf4j
+public class TbActorSystemStats {
+
+    private static final String DISPATCHER_TAG = "dispatcher";
+    private static final String ACTOR_TYPE_TAG = "actorType";
+    private static final String MSG_TYPE_TAG = "msgType";
+    private static final MsgType[] MSG_TYPES = MsgType.values();
+
+    private final StatsFactory statsFactory;
+    @Getter
+    private final long updateIntervalMs;
+    private final int topMailboxesCount;
+
+    private final ConcurrentMap<String, ActorTypeStats> actorTypeStats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DispatcherStats> dispatcherStats = new ConcurrentHashMap<>();
+
+    public TbActorSystemStats(StatsFactory statsFactory, long updateIntervalMs, int topMailboxesCount) {
+        this.statsFactory = statsFactory;
+        this.updateIntervalMs = updateIntervalMs;
+        this.topMailboxesCount = topMailboxesCount;
+    }
+
+    ActorTypeStats getActorTypeStats(TbActorId actorId) {
+        String actorType = actorId.getEntityType() != null ? actorId.getEntityType().name() : actorId.toString();
+        return actorTypeStats.computeIfAbsent(actorType, ActorTypeStats::new);
+    }
+
+    void onDispatcherCreated(Dispatcher dispatcher) {
+        dispatcherStats.computeIfAbsent(dispatcher.getDispatcherId(), DispatcherStats::new);
+    }
+
+    void update(Collection<Dispatcher> dispatchers, Collection<TbActorMailbox> mailboxes) {
+        for (Dispatcher dispatcher : dispatchers) {
+            DispatcherStats stats = dispatcherStats.get(dispatcher.getDispatcherId());
+            if (stats != null) {
+                stats.update(dispatcher.getExecutor());
+            }
+        }
+
+        Map<ActorTypeStats, long[]> actorsByType = new HashMap<>();
+        PriorityQueue<MailboxSize> topMailboxes = new PriorityQueue<>(Comparator.comparingInt(MailboxSize::getSize));
+        for (TbActorMailbox mailbox : mailboxes) {
+            int size = mailbox.getMailboxSize();
+            // actors count, total and max mailbox size
+            long[] counts = actorsByType.computeIfAbsent(mailbox.getActorTypeStats(), type -> new long[3]);
+            counts[0]++;
+            counts[1] += size;
+            counts[2] = Math.max(counts[2], size);
+            if (size > 0 && topMailboxesCount > 0) {
+                if (topMailboxes.size() < topMailboxesCount) {
+                    topMailboxes.add(new MailboxSize(mailbox.getSelfId(), size));
+                } else if (topMailboxes.peek().getSize() < size) {
+                    topMailboxes.poll();
+                    topMailboxes.add(new MailboxSize(mailbox.getSelfId(), size));
+                }
+            }
+        }
+        actorTypeStats.values().forEach(stats -> stats.update(actorsByType.getOrDefault(stats, new long[3])));
+
+        if (!topMailboxes.isEmpty() && log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder();
+            topMailboxes.stream().sorted(Comparator.comparingInt(MailboxSize::getSize).reversed())
+                    .forEach(mailbox -> sb.append(" [").append(mailbox.getActorId()).append("]: ").append(mailbox.getSize()));
+            log.debug("Largest actor mailboxes:{}", sb);
+        }
+    }
+
+    class ActorTypeStats {
+        private final String actorType;
+        private final DefaultCounter createdCounter;
+        private final DefaultCounter initFailedCounter;
+        private final DefaultCounter destroyedCounter;
+        private final AtomicLong actorsCount;
+        private final AtomicLong mailboxSize;
+        private final AtomicLong maxMailboxSize;
+        private final AtomicReferenceArray<Timer> msgTimers = new AtomicReferenceArray<>(MSG_TYPES.length);
+
+        private ActorTypeStats(String actorType) {
+            this.actorType = actorType;
+            this.createdCounter = statsFactory.createDefaultCounter("actorsCreated", ACTOR_TYPE_TAG, actorType);
+            this.initFailedCounter = statsFactory.createDefaultCounter("actorsInitFailed", ACTOR_TYPE_TAG, actorType);
+            this.destroyedCounter = statsFactory.createDefaultCounter("actorsDestroyed", ACTOR_TYPE_TAG, actorType);
+            this.actorsCount = statsFactory.createGauge("actorsCount", new AtomicLong(), ACTOR_TYPE_TAG, actorType);
+            this.mailboxSize = statsFactory.createGauge("actorMailboxSize", new AtomicLong(), ACTOR_TYPE_TAG, actorType);
+            this.maxMailboxSize = statsFactory.createGauge("actorMaxMailboxSize", new AtomicLong(), ACTOR_TYPE_TAG, actorType);
+        }
+
+        void onCreated() {
+            createdCounter.increment();
+        }
+
+        void onInitFailed() {
+            initFailedCounter.increment();
+        }
+
+        void onDestroyed() {
+            destroyedCounter.increment();
+        }
+
+        void onMsgProcessed(MsgType msgType, long durationNanos) {
+            Timer timer = msgTimers.get(msgType.ordinal());
+            if (timer == null) {
+                timer = statsFactory.createTimer("actorMsgProcessing", ACTOR_TYPE_TAG, actorType, MSG_TYPE_TAG, msgType.name());
+                msgTimers.compareAndSet(msgType.ordinal(), null, timer);
+            }
+            timer.record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void update(long[] counts) {
+            actorsCount.set(counts[0]);
+            mailboxSize.set(counts[1]);
+            maxMailboxSize.set(counts[2]);
+        }
+    }
+
+    private class DispatcherStats {
+        private final AtomicLong activeThreads;
+        private final AtomicLong queuedTasks;
+
+        private DispatcherStats(String dispatcherId) {
+            this.activeThreads = statsFactory.createGauge("actorDispatcherActiveThreads", new AtomicLong(), DISPATCHER_TAG, dispatcherId);
+            this.queuedTasks = statsFactory.createGauge("actorDispatcherQueuedTasks", new AtomicLong(), DISPATCHER_TAG, dispatcherId);
+        }
+
+        private void update(ExecutorService executor) {
+            if (executor instanceof ForkJoinPool) {
+                ForkJoinPool pool = (ForkJoinPool) executor;
+                activeThreads.set(pool.getActiveThreadCount());
+                queuedTasks.set(pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount());
+            } else if (executor instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+                activeThreads.set(pool.getActiveCount());
+                queuedTasks.set(pool.getQueue().size());
+            }
+        }
+    }
+
+    @Getter
+    private static class MailboxSize {
+        private final TbActorId actorId;
+        private final int size;
+
+        private MailboxSize(TbActorId actorId, int size) {
+            this.actorId = actorId;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.data.EntityType;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.MsgType;
+import org.thingsboard.server.common.msg.TbActorMsg;
+import org.thingsboard.server.common.stats.DefaultStatsFactory;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+
+public class ActorSystemStatsTest {
+
+    private static final String DISPATCHER = "test-dispatcher";
+
+    private MeterRegistry meterRegistry;
+    private TbActorSystem actorSystem;
+    private ExecutorService executor;
+
+    @Before
+    public void initActorSystem() {
+        meterRegistry = new SimpleMeterRegistry();
+        DefaultStatsFactory statsFactory = new DefaultStatsFactory();
+        ReflectionTestUtils.setField(statsFactory, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(statsFactory, "metricsEnabled", true);
+        ReflectionTestUtils.setField(statsFactory, "timerPercentilesStr", "0.5,0.99");
+        statsFactory.init();
+        TbActorSystemStats stats = new TbActorSystemStats(statsFactory, 100, 10);
+        actorSystem = new DefaultTbActorSystem(new TbActorSystemSettings(5, 1, 42), stats);
+        executor = Executors.newFixedThreadPool(1, ThingsBoardThreadFactory.forName(getClass().getSimpleName()));
+        actorSystem.createDispatcher(DISPATCHER, executor);
+    }
+
+    @After
+    public void shutdownActorSystem() {
+        actorSystem.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testActorStats() throws InterruptedException {
+        int actorsCount = 3;
+        CountDownLatch latch = new CountDownLatch(actorsCount);
+        TbActorRef[] actors = new TbActorRef[actorsCount];
+        for (int i = 0; i < actorsCount; i++) {
+            ActorTestCtx testCtx = new ActorTestCtx(latch, new AtomicInteger(), 1, new AtomicLong());
+            actors[i] = actorSystem.createRootActor(DISPATCHER,
+                    new TestRootActor.TestRootActorCreator(new TbEntityActorId(new DeviceId(UUID.randomUUID())), testCtx));
+        }
+        for (TbActorRef actor : actors) {
+            actor.tell(new IntTbActorMsg(42));
+        }
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        Tags deviceTags = Tags.of("actorType", EntityType.DEVICE.name());
+        Timer timer = meterRegistry.find("actorMsgProcessing").tags(deviceTags).tag("msgType", MsgType.QUEUE_TO_RULE_ENGINE_MSG.name()).timer();
+        Assert.assertNotNull(timer);
+        Assert.assertEquals(actorsCount, timer.count());
+        Assert.assertEquals(2, timer.takeSnapshot().percentileValues().length);
+        Assert.assertEquals(actorsCount, meterRegistry.get("actorsCreated").tags(deviceTags).counter().count(), 0);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> meterRegistry.get("actorsCount").tags(deviceTags).gauge().value() == actorsCount);
+        Assert.assertNotNull(meterRegistry.find("actorDispatcherActiveThreads").tag("dispatcher", DISPATCHER).gauge());
+
+        actorSystem.stop(actors[0].getActorId());
+        Assert.assertEquals(1, meterRegistry.get("actorsDestroyed").tags(deviceTags).counter().count(), 0);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> meterRegistry.get("actorsCount").tags(deviceTags).gauge().value() == actorsCount - 1);
+    }
+
+    @Test
+    public void testMailboxSizeTracksQueuedMessages() throws InterruptedException {
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TbActorId actorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef actorRef = actorSystem.createRootActor(DISPATCHER, new TbActorCreator() {
+            @Override
+            public TbActorId createActorId() {
+                return actorId;
+            }
+
+            @Override
+            public TbActor createActor() {
+                return new AbstractTbActor() {
+                    @Override
+                    public boolean process(TbActorMsg msg) {
+                        processing.countDown();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return true;
+                    }
+                };
+            }
+        });
+        TbActorMailbox mailbox = (TbActorMailbox) actorRef;
+
+        for (int i = 0; i < 10; i++) {
+            actorRef.tell(new IntTbActorMsg(i));
+        }
+        Assert.assertTrue(processing.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(9, mailbox.getMailboxSize());
+
+        release.countDown();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> mailbox.getMailboxSize() == 0);
+    }
+}
@@ -84,6 +84,8 @@ public interface TbClusterService extends TbQueueClusterService {
 
     void onDeviceDeleted(Device device, TbQueueCallback callback);
 
+    void onDeviceCredentialsUpdated(Device device, TbQueueCallback callback);
+
     void onResourceChange(TbResource resource, TbQueueCallback callback);
 
     void onResourceDeleted(TbResource resource, TbQueueCallback callback);
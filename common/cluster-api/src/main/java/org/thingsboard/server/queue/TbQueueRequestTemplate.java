@@ -17,6 +17,7 @@ package org.thingsboard.server.queue;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import org.thingsboard.server.common.stats.MessagesStats;
+import org.thingsboard.server.common.stats.StatsFactory;
 
 public interface TbQueueRequestTemplate<Request extends TbQueueMsg, Response extends TbQueueMsg> {
 
@@ -29,4 +30,7 @@ public interface TbQueueRequestTemplate<Request extends TbQueueMsg, Response ext
     void stop();
 
     void setMessagesStats(MessagesStats messagesStats);
+
+    default void initStats(StatsFactory statsFactory, String statsKey) {
+    }
 }
@@ -22,12 +22,17 @@ import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.TimePageLink;
 
+import java.util.List;
+import java.util.UUID;
+
 public interface EdgeEventService {
 
     ListenableFuture<Void> saveAsync(EdgeEvent edgeEvent);
 
     PageData<EdgeEvent> findEdgeEvents(TenantId tenantId, EdgeId edgeId, TimePageLink pageLink, boolean withTsUpdate);
 
+    List<EdgeEvent> findEdgeEventsAfter(TenantId tenantId, EdgeId edgeId, long startTime, UUID startId, int limit);
+
     /**
      * Executes stored procedure to cleanup old edge events.
      * @param ttl the ttl for edge events in seconds
@@ -104,6 +104,11 @@ public enum MsgType {
 
     REMOVE_RPC_TO_DEVICE_ACTOR_MSG,
 
+    /**
+     * Message that is sent by the Device Actor to the Tenant Actor when the device has no sessions and pending RPC requests.
+     */
+    DEVICE_ACTOR_IDLE_MSG,
+
     /**
      * Message that is sent from the Device Actor to Rule Engine. Requires acknowledgement
      */
@@ -295,6 +295,18 @@ public final class TbMsg implements Serializable {
         return ctx.pop();
     }
 
+    /**
+     * @return tracing timestamps if the message was sampled for latency tracing, 'null' otherwise.
+     */
+    @JsonIgnore
+    public TbMsgTrace getTrace() {
+        return ctx.getTrace();
+    }
+
+    public void startTrace(long startTs) {
+        ctx.setTrace(new TbMsgTrace(startTs, 0L));
+    }
+
     /**
      * Checks if the message is still valid for processing. May be invalid if the message pack is timed-out or canceled.
      * @return 'true' if message is valid for processing, 'false' otherwise.
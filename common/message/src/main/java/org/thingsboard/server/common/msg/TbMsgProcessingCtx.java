@@ -32,6 +32,7 @@ public final class TbMsgProcessingCtx implements Serializable {
 
     private final AtomicInteger ruleNodeExecCounter;
     private volatile LinkedList<TbMsgProcessingStackItem> stack;
+    private volatile TbMsgTrace trace;
 
     public TbMsgProcessingCtx() {
         this(0);
@@ -51,11 +52,22 @@ public final class TbMsgProcessingCtx implements Serializable {
     }
 
     public TbMsgProcessingCtx copy() {
+        TbMsgProcessingCtx copy;
         if (stack == null || stack.isEmpty()) {
-            return new TbMsgProcessingCtx(ruleNodeExecCounter.get());
+            copy = new TbMsgProcessingCtx(ruleNodeExecCounter.get());
         } else {
-            return new TbMsgProcessingCtx(ruleNodeExecCounter.get(), new LinkedList<>(stack));
+            copy = new TbMsgProcessingCtx(ruleNodeExecCounter.get(), new LinkedList<>(stack));
         }
+        copy.trace = trace;
+        return copy;
+    }
+
+    public TbMsgTrace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(TbMsgTrace trace) {
+        this.trace = trace;
     }
 
     public void push(RuleChainId ruleChainId, RuleNodeId ruleNodeId) {
@@ -71,15 +83,20 @@ public final class TbMsgProcessingCtx implements Serializable {
 
     public static TbMsgProcessingCtx fromProto(MsgProtos.TbMsgProcessingCtxProto ctx) {
         int ruleNodeExecCounter = ctx.getRuleNodeExecCounter();
+        TbMsgProcessingCtx result;
         if (ctx.getStackCount() > 0) {
             LinkedList<TbMsgProcessingStackItem> stack = new LinkedList<>();
             for (MsgProtos.TbMsgProcessingStackItemProto item : ctx.getStackList()) {
                 stack.add(TbMsgProcessingStackItem.fromProto(item));
             }
-            return new TbMsgProcessingCtx(ruleNodeExecCounter, stack);
+            result = new TbMsgProcessingCtx(ruleNodeExecCounter, stack);
         } else {
-            return new TbMsgProcessingCtx(ruleNodeExecCounter);
+            result = new TbMsgProcessingCtx(ruleNodeExecCounter);
+        }
+        if (ctx.hasTrace()) {
+            result.trace = TbMsgTrace.fromProto(ctx.getTrace());
         }
+        return result;
     }
 
     public MsgProtos.TbMsgProcessingCtxProto toProto() {
@@ -90,6 +107,10 @@ public final class TbMsgProcessingCtx implements Serializable {
                 ctxBuilder.addStack(item.toProto());
             }
         }
+        if (trace != null) {
+            // the context is serialized right before the message is pushed to the queue
+            ctxBuilder.setTrace(trace.toProto(System.currentTimeMillis()));
+        }
         return ctxBuilder.build();
     }
 }
@@ -0,0 +1,45 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import lombok.Data;
+import org.thingsboard.server.common.msg.gen.MsgProtos;
+
+import java.io.Serializable;
+
+/**
+ * Timestamps of a message sampled for latency tracing.
+ * The start timestamp is set once by the service that created the message,
+ * the produce timestamp is refreshed every time the message is serialized to be pushed to the queue.
+ */
+@Data
+public class TbMsgTrace implements Serializable {
+
+    private final long startTs;
+    private final long produceTs;
+
+    MsgProtos.TbMsgTraceProto toProto(long produceTs) {
+        return MsgProtos.TbMsgTraceProto.newBuilder()
+                .setStartTs(startTs)
+                .setProduceTs(produceTs)
+                .build();
+    }
+
+    static TbMsgTrace fromProto(MsgProtos.TbMsgTraceProto proto) {
+        return new TbMsgTrace(proto.getStartTs(), proto.getProduceTs());
+    }
+
+}
@@ -15,20 +15,32 @@
  */
 package org.thingsboard.server.common.msg.tools;
 
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket4j;
-import io.github.bucket4j.Refill;
-import io.github.bucket4j.local.LocalBucket;
-import io.github.bucket4j.local.LocalBucketBuilder;
 import lombok.Getter;
 
-import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
+ * Token bucket with one or more bandwidths configured as "capacity:seconds,capacity:seconds".
+ * The state of each bandwidth is a single long updated with CAS, so consuming tokens neither locks nor allocates.
+ * With the greedy refill tokens are regenerated continuously (the state is the time when the bandwidth becomes full),
+ * with the interval refill all tokens are regenerated at once every period (the state is the period number and consumed tokens).
+ *
  * Created by ashvayka on 22.10.18.
  */
 public class TbRateLimits {
-    private final LocalBucket bucket;
+
+    private static final int MAX_CACHED_CONFIGURATIONS = 1024;
+    private static final ConcurrentMap<String, Bandwidth[]> configurations = new ConcurrentHashMap<>();
+
+    private static final long MAX_INTERVAL_CAPACITY = 0xFFFFFFFFL;
+
+    private final Bandwidth[] bandwidths;
+    private final boolean refillIntervally;
+    private final long startNanos;
+    private final AtomicLongArray states;
 
     @Getter
     private final String configuration;
@@ -38,29 +50,132 @@ public class TbRateLimits {
     }
 
     public TbRateLimits(String limitsConfiguration, boolean refillIntervally) {
-        LocalBucketBuilder builder = Bucket4j.builder();
-        boolean initialized = false;
-        for (String limitSrc : limitsConfiguration.split(",")) {
-            long capacity = Long.parseLong(limitSrc.split(":")[0]);
-            long duration = Long.parseLong(limitSrc.split(":")[1]);
-            Refill refill = refillIntervally ? Refill.intervally(capacity, Duration.ofSeconds(duration)) : Refill.greedy(capacity, Duration.ofSeconds(duration));
-            builder.addLimit(Bandwidth.classic(capacity, refill));
-            initialized = true;
-        }
-        if (initialized) {
-            bucket = builder.build();
-        } else {
-            throw new IllegalArgumentException("Failed to parse rate limits configuration: " + limitsConfiguration);
+        this.bandwidths = getBandwidths(limitsConfiguration);
+        this.refillIntervally = refillIntervally;
+        this.startNanos = System.nanoTime();
+        this.states = new AtomicLongArray(bandwidths.length);
+        if (!refillIntervally) {
+            for (int i = 0; i < bandwidths.length; i++) {
+                states.set(i, startNanos);
+            }
         }
         this.configuration = limitsConfiguration;
     }
 
     public boolean tryConsume() {
-        return bucket.tryConsume(1);
+        return tryConsume(1);
     }
 
     public boolean tryConsume(long number) {
-        return bucket.tryConsume(number);
+        if (number <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < bandwidths.length; i++) {
+            if (!tryConsume(i, number, now)) {
+                for (int j = 0; j < i; j++) {
+                    rollback(j, number, now);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean tryConsume(int idx, long number, long now) {
+        Bandwidth bandwidth = bandwidths[idx];
+        if (number > bandwidth.capacity) {
+            return false;
+        }
+        if (refillIntervally) {
+            long period = getPeriod(bandwidth, now);
+            while (true) {
+                long state = states.get(idx);
+                long consumed = (state >>> 32) == period ? state & MAX_INTERVAL_CAPACITY : 0;
+                if (consumed + number > bandwidth.capacity) {
+                    return false;
+                }
+                if (states.compareAndSet(idx, state, (period << 32) | (consumed + number))) {
+                    return true;
+                }
+            }
+        } else {
+            long cost = bandwidth.getCost(number);
+            while (true) {
+                long fullAt = states.get(idx);
+                long newFullAt = (fullAt - now > 0 ? fullAt : now) + cost;
+                if (newFullAt - now > bandwidth.periodNanos) {
+                    return false;
+                }
+                if (states.compareAndSet(idx, fullAt, newFullAt)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private void rollback(int idx, long number, long now) {
+        Bandwidth bandwidth = bandwidths[idx];
+        if (refillIntervally) {
+            long period = getPeriod(bandwidth, now);
+            while (true) {
+                long state = states.get(idx);
+                if ((state >>> 32) != period || states.compareAndSet(idx, state, state - number)) {
+                    return;
+                }
+            }
+        } else {
+            states.addAndGet(idx, -bandwidth.getCost(number));
+        }
+    }
+
+    private long getPeriod(Bandwidth bandwidth, long now) {
+        return (Math.max(now - startNanos, 0) / bandwidth.periodNanos) & MAX_INTERVAL_CAPACITY;
+    }
+
+    private static Bandwidth[] getBandwidths(String limitsConfiguration) {
+        Bandwidth[] bandwidths = configurations.get(limitsConfiguration);
+        if (bandwidths == null) {
+            bandwidths = parse(limitsConfiguration);
+            if (configurations.size() < MAX_CACHED_CONFIGURATIONS) {
+                configurations.putIfAbsent(limitsConfiguration, bandwidths);
+            }
+        }
+        return bandwidths;
+    }
+
+    private static Bandwidth[] parse(String limitsConfiguration) {
+        String[] limits = limitsConfiguration.split(",");
+        Bandwidth[] bandwidths = new Bandwidth[limits.length];
+        for (int i = 0; i < limits.length; i++) {
+            long capacity = Long.parseLong(limits[i].split(":")[0]);
+            long duration = Long.parseLong(limits[i].split(":")[1]);
+            if (capacity <= 0 || duration <= 0) {
+                throw new IllegalArgumentException("Failed to parse rate limits configuration: " + limitsConfiguration);
+            }
+            bandwidths[i] = new Bandwidth(Math.min(capacity, MAX_INTERVAL_CAPACITY), TimeUnit.SECONDS.toNanos(duration));
+        }
+        if (bandwidths.length == 0) {
+            throw new IllegalArgumentException("Failed to parse rate limits configuration: " + limitsConfiguration);
+        }
+        return bandwidths;
+    }
+
+    private static final class Bandwidth {
+        private final long capacity;
+        private final long periodNanos;
+        private final long tokenNanos;
+
+        private Bandwidth(long capacity, long periodNanos) {
+            this.capacity = capacity;
+            this.periodNanos = periodNanos;
+            this.tokenNanos = periodNanos / capacity;
+        }
+
+        private long getCost(long number) {
+            // the token cost is rounded down so that the whole capacity always fits into the period
+            return Math.max(number * tokenNanos, 1);
+        }
     }
 
 }
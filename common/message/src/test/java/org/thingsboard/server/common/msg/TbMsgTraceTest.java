@@ -0,0 +1,51 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import org.junit.jupiter.api.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TbMsgTraceTest {
+
+    @Test
+    void testTraceIsSerializedWithProduceTs() {
+        TbMsg msg = TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{}");
+        long startTs = System.currentTimeMillis() - 100;
+        msg.startTrace(startTs);
+
+        TbMsg decoded = TbMsg.fromBytes("Main", TbMsg.toByteArray(msg), TbMsgCallback.EMPTY);
+
+        assertThat(decoded.getTrace()).isNotNull();
+        assertThat(decoded.getTrace().getStartTs()).isEqualTo(startTs);
+        assertThat(decoded.getTrace().getProduceTs()).isGreaterThanOrEqualTo(startTs + 100);
+        assertThat(TbMsg.transformMsg(decoded, "HighPriority").getTrace()).isEqualTo(decoded.getTrace());
+    }
+
+    @Test
+    void testNotSampledMsgHasNoTrace() {
+        TbMsg msg = TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{}");
+
+        TbMsg decoded = TbMsg.fromBytes("Main", TbMsg.toByteArray(msg), TbMsgCallback.EMPTY);
+
+        assertThat(decoded.getTrace()).isNull();
+    }
+
+}
@@ -19,8 +19,15 @@ import org.awaitility.pollinterval.FixedPollInterval;
 import org.awaitility.pollinterval.PollInterval;
 import org.junit.Test;
 
-import java.time.Duration;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
@@ -85,4 +92,80 @@ public class RateLimitsTest {
                 });
     }
 
+    @Test
+    public void testRateLimits_multipleBandwidths() {
+        TbRateLimits rateLimits = new TbRateLimits("5:1,8:60");
+
+        assertThat(rateLimits.tryConsume(5)).isTrue();
+        assertThat(rateLimits.tryConsume()).as("short bandwidth is exhausted").isFalse();
+
+        await("short bandwidth refill")
+                .pollInterval(new FixedPollInterval(10, TimeUnit.MILLISECONDS))
+                .atMost(1500, TimeUnit.MILLISECONDS)
+                .untilAsserted(() -> assertThat(rateLimits.tryConsume(3)).isTrue());
+        assertThat(rateLimits.tryConsume()).as("long bandwidth is exhausted").isFalse();
+        assertThat(rateLimits.tryConsume(9)).as("more than capacity").isFalse();
+    }
+
+    @Test
+    public void testRateLimits_concurrentConsumption() throws Exception {
+        int capacity = 10000;
+        int threads = 32;
+        TbRateLimits greedy = new TbRateLimits(capacity + ":3600");
+        TbRateLimits intervally = new TbRateLimits(capacity + ":3600", true);
+        AtomicInteger greedyConsumed = new AtomicInteger();
+        AtomicInteger intervallyConsumed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < capacity; i++) {
+                        if (greedy.tryConsume()) {
+                            greedyConsumed.incrementAndGet();
+                        }
+                        if (intervally.tryConsume()) {
+                            intervallyConsumed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(greedyConsumed.get()).isBetween(capacity, capacity + 1);
+        assertThat(intervallyConsumed.get()).isEqualTo(capacity);
+    }
+
+    @Test
+    public void testRateLimits_tryConsumeDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int iterations = 1_000_000;
+        for (boolean refillIntervally : new boolean[]{false, true}) {
+            TbRateLimits rateLimits = new TbRateLimits("1000:1,10000:60", refillIntervally);
+            for (int i = 0; i < iterations; i++) {
+                rateLimits.tryConsume();
+            }
+
+            long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < iterations; i++) {
+                rateLimits.tryConsume();
+            }
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            // accepted and rejected calls together, far less than one byte per call
+            assertThat(allocated).as("bytes allocated by %s tryConsume calls", iterations).isLessThan(iterations / 10);
+        }
+    }
+
 }
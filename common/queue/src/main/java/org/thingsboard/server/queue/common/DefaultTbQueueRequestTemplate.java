@@ -18,6 +18,7 @@ package org.thingsboard.server.queue.common;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import io.micrometer.core.instrument.Timer;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -31,28 +32,42 @@ import org.thingsboard.server.queue.TbQueueMsg;
 import org.thingsboard.server.queue.TbQueueMsgMetadata;
 import org.thingsboard.server.queue.TbQueueProducer;
 import org.thingsboard.server.queue.TbQueueRequestTemplate;
+import org.thingsboard.server.common.stats.DefaultCounter;
 import org.thingsboard.server.common.stats.MessagesStats;
+import org.thingsboard.server.common.stats.StatsFactory;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
-import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Sends requests to the queue and correlates the responses with the pending requests.
+ * Request ids share a random most significant part generated once per template and use a sequence number as the least significant part,
+ * so pending requests are tracked by a long key. Expirations are tracked by a hashed timer wheel with the poll interval as a tick,
+ * which is advanced by the polling thread after each poll.
+ */
 @Slf4j
 public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response extends TbQueueMsg> extends AbstractTbQueueTemplate
         implements TbQueueRequestTemplate<Request, Response> {
 
+    private static final int MAX_WHEEL_SIZE = 1 << 16;
+
     private final TbQueueAdmin queueAdmin;
     private final TbQueueProducer<Request> requestTemplate;
     private final TbQueueConsumer<Response> responseTemplate;
-    final ConcurrentHashMap<UUID, DefaultTbQueueRequestTemplate.ResponseMetaData<Response>> pendingRequests = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Long, DefaultTbQueueRequestTemplate.ResponseMetaData<Response>> pendingRequests = new ConcurrentHashMap<>();
     final boolean internalExecutor;
     final ExecutorService executor;
     final long maxRequestTimeoutNs;
@@ -60,12 +75,22 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
     final long maxPendingRequests;
     final long pollInterval;
     volatile boolean stopped = false;
-    long nextCleanupNs = 0L;
-    private final Lock cleanerLock = new ReentrantLock();
+
+    private final long requestIdMsb = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong requestIdSeq = new AtomicLong();
+
+    final long tickNs;
+    private final Queue<ResponseMetaData<Response>>[] wheel;
+    // the last tick with expirations being processed or processed, updated by the polling thread only before it polls the buckets
+    private volatile long lastExpiredTick = Long.MIN_VALUE;
 
     private MessagesStats messagesStats;
+    private AtomicInteger pendingRequestsGauge;
+    private DefaultCounter timeoutsCounter;
+    private Timer roundTripTimer;
 
     @Builder
+    @SuppressWarnings("unchecked")
     public DefaultTbQueueRequestTemplate(TbQueueAdmin queueAdmin,
                                          TbQueueProducer<Request> requestTemplate,
                                          TbQueueConsumer<Response> responseTemplate,
@@ -82,6 +107,12 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         this.pollInterval = pollInterval;
         this.internalExecutor = (executor == null);
         this.executor = internalExecutor ? createExecutor() : executor;
+        this.tickNs = TimeUnit.MILLISECONDS.toNanos(Math.max(1, pollInterval));
+        int wheelSize = (int) Math.min(MAX_WHEEL_SIZE, maxRequestTimeoutNs / tickNs + 2);
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
     }
 
     ExecutorService createExecutor() {
@@ -114,38 +145,60 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         log.trace("Starting template pool topic {}, for pendingRequests {}", responseTemplate.getTopic(), pendingRequestsCount);
         List<Response> responses = doPoll(); //poll js responses
         log.trace("Completed template poll topic {}, for pendingRequests [{}], received [{}] responses", responseTemplate.getTopic(), pendingRequestsCount, responses.size());
-        responses.forEach(this::processResponse); //this can take a long time
+        List<ResponseMetaData<Response>> completed = new ArrayList<>(responses.size());
+        for (Response response : responses) {
+            ResponseMetaData<Response> expectedResponse = processResponse(response);
+            if (expectedResponse != null) {
+                completed.add(expectedResponse);
+            }
+        }
         responseTemplate.commit();
-        tryCleanStaleRequests();
+        // the whole batch is matched and committed before the futures are completed, since their listeners may take a long time
+        long currentNs = getCurrentClockNs();
+        for (ResponseMetaData<Response> expectedResponse : completed) {
+            if (roundTripTimer != null) {
+                roundTripTimer.record(currentNs - expectedResponse.getSubmitTime(), TimeUnit.NANOSECONDS);
+            }
+            expectedResponse.future.set(expectedResponse.response);
+        }
+        expireStaleRequests(currentNs);
+        if (pendingRequestsGauge != null) {
+            pendingRequestsGauge.set((int) pendingRequests.mappingCount());
+        }
     }
 
-    private boolean tryCleanStaleRequests() {
-        if (!cleanerLock.tryLock()) {
-            return false;
+    void expireStaleRequests(long currentNs) {
+        long currentTick = Math.floorDiv(currentNs, tickNs);
+        long lastTick = lastExpiredTick;
+        // only the fully elapsed ticks are processed, so every request in their buckets from the current rotation is expired
+        long ticksToProcess = lastTick == Long.MIN_VALUE ? wheel.length : Math.min(currentTick - 1 - lastTick, wheel.length);
+        if (ticksToProcess > 0) {
+            // published before the buckets are polled, see scheduleExpiration
+            lastExpiredTick = currentTick - 1;
         }
-        try {
-            log.trace("tryCleanStaleRequest...");
-            final long currentNs = getCurrentClockNs();
-            if (nextCleanupNs < currentNs) {
-                pendingRequests.forEach((key, value) -> {
-                    if (value.expTime < currentNs) {
-                        ResponseMetaData<Response> staleRequest = pendingRequests.remove(key);
-                        if (staleRequest != null) {
-                            setTimeoutException(key, staleRequest, currentNs);
-                        }
+        for (long tick = currentTick - ticksToProcess; tick < currentTick; tick++) {
+            Queue<ResponseMetaData<Response>> bucket = wheel[(int) Math.floorMod(tick, (long) wheel.length)];
+            List<ResponseMetaData<Response>> notExpired = null;
+            ResponseMetaData<Response> request;
+            while ((request = bucket.poll()) != null) {
+                if (request.future.isDone()) {
+                    continue;
+                }
+                if (request.expTime <= currentNs) {
+                    if (pendingRequests.remove(request.requestId, request)) {
+                        setTimeoutException(request.requestId, request, currentNs);
+                    }
+                } else {
+                    if (notExpired == null) {
+                        notExpired = new ArrayList<>();
                     }
-                });
-                setupNextCleanup();
+                    notExpired.add(request);
+                }
+            }
+            if (notExpired != null) {
+                bucket.addAll(notExpired);
             }
-        } finally {
-            cleanerLock.unlock();
         }
-        return true;
-    }
-
-    void setupNextCleanup() {
-        nextCleanupNs = getCurrentClockNs() + maxRequestTimeoutNs;
-        log.trace("setupNextCleanup {}", nextCleanupNs);
     }
 
     List<Response> doPoll() {
@@ -156,30 +209,34 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         LockSupport.parkNanos(nanos);
     }
 
-    void setTimeoutException(UUID key, ResponseMetaData<Response> staleRequest, long currentNs) {
+    void setTimeoutException(long requestId, ResponseMetaData<Response> staleRequest, long currentNs) {
         if (currentNs >= staleRequest.getSubmitTime() + staleRequest.getTimeout()) {
-            log.debug("Request timeout detected, currentNs [{}], {}, key [{}]", currentNs, staleRequest, key);
+            log.debug("Request timeout detected, currentNs [{}], {}, key [{}]", currentNs, staleRequest, requestId);
         } else {
-            log.info("Request timeout detected, currentNs [{}], {}, key [{}]", currentNs, staleRequest, key);
+            log.info("Request timeout detected, currentNs [{}], {}, key [{}]", currentNs, staleRequest, requestId);
+        }
+        if (timeoutsCounter != null) {
+            timeoutsCounter.increment();
         }
         staleRequest.future.setException(new TimeoutException());
     }
 
-    void processResponse(Response response) {
+    ResponseMetaData<Response> processResponse(Response response) {
         byte[] requestIdHeader = response.getHeaders().get(REQUEST_ID_HEADER);
-        UUID requestId;
         if (requestIdHeader == null) {
             log.error("[{}] Missing requestId in header and body", response);
-        } else {
-            requestId = bytesToUuid(requestIdHeader);
-            log.trace("[{}] Response received: {}", requestId, response);
-            ResponseMetaData<Response> expectedResponse = pendingRequests.remove(requestId);
-            if (expectedResponse == null) {
-                log.debug("[{}] Invalid or stale request, response: {}", requestId, String.valueOf(response).replace("\n", " "));
-            } else {
-                expectedResponse.future.set(response);
-            }
+            return null;
+        }
+        UUID requestId = bytesToUuid(requestIdHeader);
+        log.trace("[{}] Response received: {}", requestId, response);
+        ResponseMetaData<Response> expectedResponse = requestId.getMostSignificantBits() == requestIdMsb ?
+                pendingRequests.remove(requestId.getLeastSignificantBits()) : null;
+        if (expectedResponse == null) {
+            log.debug("[{}] Invalid or stale request, response: {}", requestId, String.valueOf(response).replace("\n", " "));
+            return null;
         }
+        expectedResponse.response = response;
+        return expectedResponse;
     }
 
     @Override
@@ -204,6 +261,13 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         this.messagesStats = messagesStats;
     }
 
+    @Override
+    public void initStats(StatsFactory statsFactory, String statsKey) {
+        this.pendingRequestsGauge = statsFactory.createGauge(statsKey + ".pendingRequests", new AtomicInteger());
+        this.timeoutsCounter = statsFactory.createDefaultCounter(statsKey + ".timeouts");
+        this.roundTripTimer = statsFactory.createTimer(statsKey + ".roundTrip");
+    }
+
     @Override
     public ListenableFuture<Response> send(Request request) {
         return send(request, this.maxRequestTimeoutNs);
@@ -215,22 +279,39 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
             log.warn("Pending request map is full [{}]! Consider to increase maxPendingRequests or increase processing performance. Request is {}", maxPendingRequests, request);
             return Futures.immediateFailedFuture(new RuntimeException("Pending request map is full!"));
         }
-        UUID requestId = UUID.randomUUID();
-        request.getHeaders().put(REQUEST_ID_HEADER, uuidToBytes(requestId));
+        long requestId = requestIdSeq.incrementAndGet();
+        request.getHeaders().put(REQUEST_ID_HEADER, uuidToBytes(new UUID(requestIdMsb, requestId)));
         request.getHeaders().put(RESPONSE_TOPIC_HEADER, stringToBytes(responseTemplate.getTopic()));
         request.getHeaders().put(EXPIRE_TS_HEADER, longToBytes(getCurrentTimeMs() + maxRequestTimeout));
         long currentClockNs = getCurrentClockNs();
         SettableFuture<Response> future = SettableFuture.create();
-        ResponseMetaData<Response> responseMetaData = new ResponseMetaData<>(currentClockNs + requestTimeoutNs, future, currentClockNs, requestTimeoutNs);
+        ResponseMetaData<Response> responseMetaData = new ResponseMetaData<>(requestId, currentClockNs + requestTimeoutNs, future, currentClockNs, requestTimeoutNs);
         log.trace("pending {}", responseMetaData);
         if (pendingRequests.putIfAbsent(requestId, responseMetaData) != null) {
             log.warn("Pending request already exists [{}]!", maxPendingRequests);
             return Futures.immediateFailedFuture(new RuntimeException("Pending request already exists !" + requestId));
         }
+        scheduleExpiration(responseMetaData);
         sendToRequestTemplate(request, requestId, future, responseMetaData);
         return future;
     }
 
+    private void scheduleExpiration(ResponseMetaData<Response> responseMetaData) {
+        // the bucket of an already processed tick would be visited only after the full rotation
+        long tick = Math.max(Math.floorDiv(responseMetaData.expTime, tickNs), lastExpiredTick + 1);
+        while (true) {
+            wheel[(int) Math.floorMod(tick, (long) wheel.length)].add(responseMetaData);
+            // the polling thread publishes the tick before it polls the bucket, so if the tick is still ahead it will see the request.
+            // Otherwise the bucket may have been polled before the add and the request is added to the next tick as well,
+            // the duplicate is skipped once the future is done
+            long lastTick = lastExpiredTick;
+            if (lastTick < tick) {
+                return;
+            }
+            tick = lastTick + 1;
+        }
+    }
+
     /**
      * MONOTONIC clock instead jumping wall clock.
      * Wrapped into the method for the test purposes to travel through the time
@@ -246,7 +327,7 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         return System.currentTimeMillis();
     }
 
-    void sendToRequestTemplate(Request request, UUID requestId, SettableFuture<Response> future, ResponseMetaData<Response> responseMetaData) {
+    void sendToRequestTemplate(Request request, long requestId, SettableFuture<Response> future, ResponseMetaData<Response> responseMetaData) {
         log.trace("[{}] Sending request, key [{}], expTime [{}], request {}", requestId, request.getKey(), responseMetaData.expTime, request);
         if (messagesStats != null) {
             messagesStats.incrementTotal();
@@ -273,12 +354,15 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
 
     @Getter
     static class ResponseMetaData<T> {
+        private final long requestId;
         private final long submitTime;
         private final long timeout;
         private final long expTime;
         private final SettableFuture<T> future;
+        private T response;
 
-        ResponseMetaData(long ts, SettableFuture<T> future, long submitTime, long timeout) {
+        ResponseMetaData(long requestId, long ts, SettableFuture<T> future, long submitTime, long timeout) {
+            this.requestId = requestId;
             this.submitTime = submitTime;
             this.timeout = timeout;
             this.expTime = ts;
@@ -288,7 +372,8 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         @Override
         public String toString() {
             return "ResponseMetaData{" +
-                    "submitTime=" + submitTime +
+                    "requestId=" + requestId +
+                    ", submitTime=" + submitTime +
                     ", calculatedExpTime=" + (submitTime + timeout) +
                     ", deltaMs=" + (expTime - submitTime) +
                     ", expTime=" + expTime +
@@ -16,6 +16,7 @@
 package org.thingsboard.server.queue.discovery;
 
 import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -46,6 +47,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -62,6 +64,10 @@ public class HashPartitionService implements PartitionService {
     private Integer vcPartitions;
     @Value("${queue.partitions.hash_function_name:murmur3_128}")
     private String hashFunctionName;
+    @Value("${queue.partitions.assignment_strategy:modulo}")
+    private String assignmentStrategy;
+    @Value("${queue.partitions.virtual_nodes_size:128}")
+    private int virtualNodesSize;
 
     private final ApplicationEventPublisher applicationEventPublisher;
     private final TbServiceInfoProvider serviceInfoProvider;
@@ -219,9 +225,13 @@ public class HashPartitionService implements PartitionService {
 
         ConcurrentMap<QueueKey, List<Integer>> oldPartitions = myPartitions;
         myPartitions = new ConcurrentHashMap<>();
+        Map<List<ServiceInfo>, ConsistentHashCircle<ServiceInfo>> circles = new HashMap<>();
         partitionSizesMap.forEach((queueKey, size) -> {
+            List<ServiceInfo> servers = queueServicesMap.get(queueKey);
+            ConsistentHashCircle<ServiceInfo> circle = isConsistentHashing() && servers != null && !servers.isEmpty() ?
+                    circles.computeIfAbsent(servers, this::buildCircle) : null;
             for (int i = 0; i < size; i++) {
-                ServiceInfo serviceInfo = resolveByPartitionIdx(queueServicesMap.get(queueKey), queueKey, i);
+                ServiceInfo serviceInfo = resolveByPartitionIdx(servers, circle, queueKey, i);
                 if (currentService.equals(serviceInfo)) {
                     myPartitions.computeIfAbsent(queueKey, key -> new ArrayList<>()).add(i);
                 }
@@ -400,11 +410,28 @@ public class HashPartitionService implements PartitionService {
     }
 
     protected ServiceInfo resolveByPartitionIdx(List<ServiceInfo> servers, QueueKey queueKey, int partition) {
+        ConsistentHashCircle<ServiceInfo> circle = isConsistentHashing() && servers != null && !servers.isEmpty() ? buildCircle(servers) : null;
+        return resolveByPartitionIdx(servers, circle, queueKey, partition);
+    }
+
+    private ServiceInfo resolveByPartitionIdx(List<ServiceInfo> servers, ConsistentHashCircle<ServiceInfo> circle, QueueKey queueKey, int partition) {
         if (servers == null || servers.isEmpty()) {
             return null;
         }
 
-        if (!ServiceType.TB_RULE_ENGINE.equals(queueKey.getType()) || TenantId.SYS_TENANT_ID.equals(queueKey.getTenantId())) {
+        if (circle != null) {
+            // only the partitions that fall on the arcs of the added or removed server change their owner
+            Hasher hasher = hashFunction.newHasher()
+                    .putString(queueKey.getType().name(), StandardCharsets.UTF_8)
+                    .putString(queueKey.getQueueName(), StandardCharsets.UTF_8);
+            if (!TenantId.SYS_TENANT_ID.equals(queueKey.getTenantId())) {
+                hasher.putLong(queueKey.getTenantId().getId().getMostSignificantBits())
+                        .putLong(queueKey.getTenantId().getId().getLeastSignificantBits());
+            }
+            long hash = hasher.putInt(partition).hash().padToLong();
+            ConcurrentNavigableMap<Long, ServiceInfo> tailMap = circle.tailMap(hash);
+            return circle.get(tailMap.isEmpty() ? circle.firstKey() : tailMap.firstKey());
+        } else if (!ServiceType.TB_RULE_ENGINE.equals(queueKey.getType()) || TenantId.SYS_TENANT_ID.equals(queueKey.getTenantId())) {
             return servers.get(partition % servers.size());
         } else {
             int hash = hashFunction.newHasher().putLong(queueKey.getTenantId().getId().getMostSignificantBits())
@@ -416,6 +443,20 @@ public class HashPartitionService implements PartitionService {
         }
     }
 
+    private boolean isConsistentHashing() {
+        return "consistent_hash".equalsIgnoreCase(assignmentStrategy);
+    }
+
+    private ConsistentHashCircle<ServiceInfo> buildCircle(List<ServiceInfo> servers) {
+        ConsistentHashCircle<ServiceInfo> circle = new ConsistentHashCircle<>();
+        for (ServiceInfo server : servers) {
+            for (int i = 0; i < virtualNodesSize; i++) {
+                circle.put(hashFunction.newHasher().putString(server.getServiceId(), StandardCharsets.UTF_8).putInt(i).hash().padToLong(), server);
+            }
+        }
+        return circle;
+    }
+
     public static HashFunction forName(String name) {
         switch (name) {
             case "murmur3_32":
@@ -48,7 +48,15 @@ public class NotificationsTopicService {
         }
     }
 
+    /**
+     * Common prefix of the notification topics of the given service type.
+     * Used as the default topic of the notification producers to pick their producer properties.
+     */
+    public static String getNotificationsTopicPrefix(ServiceType serviceType) {
+        return serviceType.name().toLowerCase() + ".notifications";
+    }
+
     private TopicPartitionInfo buildNotificationsTopicPartitionInfo(ServiceType serviceType, String serviceId) {
-        return new TopicPartitionInfo(serviceType.name().toLowerCase() + ".notifications." + serviceId, null, null, false);
+        return new TopicPartitionInfo(getNotificationsTopicPrefix(serviceType) + "." + serviceId, null, null, false);
     }
 }
\ No newline at end of file
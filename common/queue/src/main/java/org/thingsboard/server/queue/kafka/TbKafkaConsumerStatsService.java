@@ -47,6 +47,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 @Component
@@ -54,6 +55,7 @@ import java.util.concurrent.TimeUnit;
 @ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "kafka")
 public class TbKafkaConsumerStatsService {
     private final Set<String> monitoredGroups = ConcurrentHashMap.newKeySet();
+    private final Map<String, ConsumerTimeStats> consumerTimeStats = new ConcurrentHashMap<>();
 
     private final TbKafkaSettings kafkaSettings;
     private final TbKafkaConsumerStatisticConfig statsConfig;
@@ -85,6 +87,7 @@ public class TbKafkaConsumerStatsService {
     private void startLogScheduling() {
         Duration timeoutDuration = Duration.ofMillis(statsConfig.getKafkaResponseTimeoutMs());
         statsPrintScheduler.scheduleWithFixedDelay(() -> {
+            printTimeStats();
             if (!isStatsPrintRequired()) {
                 return;
             }
@@ -114,6 +117,18 @@ public class TbKafkaConsumerStatsService {
         }, statsConfig.getPrintIntervalMs(), statsConfig.getPrintIntervalMs(), TimeUnit.MILLISECONDS);
     }
 
+    private void printTimeStats() {
+        consumerTimeStats.forEach((clientId, stats) -> {
+            if (stats.getBatches() > 0 && log.isInfoEnabled()) {
+                log.info("[{}] Consumer time split: batches [{}] fetch [{}]ms process [{}]ms commit [{}]ms", clientId, stats.getBatches(),
+                        TimeUnit.NANOSECONDS.toMillis(stats.fetchNanos.sumThenReset()),
+                        TimeUnit.NANOSECONDS.toMillis(stats.processNanos.sumThenReset()),
+                        TimeUnit.NANOSECONDS.toMillis(stats.commitNanos.sumThenReset()));
+                stats.batches.reset();
+            }
+        });
+    }
+
     private boolean isStatsPrintRequired() {
         boolean isMyRuleEnginePartition = partitionService.resolve(ServiceType.TB_RULE_ENGINE, TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID).isMyPartition();
         boolean isMyCorePartition = partitionService.resolve(ServiceType.TB_CORE, TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID).isMyPartition();
@@ -152,6 +167,19 @@ public class TbKafkaConsumerStatsService {
         }
     }
 
+    public ConsumerTimeStats registerTimeStats(String clientId) {
+        if (statsConfig.getEnabled() && !StringUtils.isEmpty(clientId)) {
+            return consumerTimeStats.computeIfAbsent(clientId, id -> new ConsumerTimeStats());
+        }
+        return null;
+    }
+
+    public void unregisterTimeStats(String clientId) {
+        if (statsConfig.getEnabled() && !StringUtils.isEmpty(clientId)) {
+            consumerTimeStats.remove(clientId);
+        }
+    }
+
     @PreDestroy
     public void destroy() {
         if (statsPrintScheduler != null) {
@@ -166,6 +194,33 @@ public class TbKafkaConsumerStatsService {
     }
 
 
+    /**
+     * Time the consumer spends waiting for records, processing them and committing the offsets.
+     */
+    public static class ConsumerTimeStats {
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+        private final LongAdder processNanos = new LongAdder();
+        private final LongAdder commitNanos = new LongAdder();
+
+        public void recordFetch(long nanos) {
+            batches.increment();
+            fetchNanos.add(nanos);
+        }
+
+        public void recordProcess(long nanos) {
+            processNanos.add(nanos);
+        }
+
+        public void recordCommit(long nanos) {
+            commitNanos.add(nanos);
+        }
+
+        long getBatches() {
+            return batches.sum();
+        }
+    }
+
     @Builder
     @Data
     private static class GroupTopicStats {
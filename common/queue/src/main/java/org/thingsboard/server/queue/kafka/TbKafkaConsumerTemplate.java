@@ -17,11 +17,17 @@ package org.thingsboard.server.queue.kafka;
 
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.util.StopWatch;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.queue.TbQueueAdmin;
 import org.thingsboard.server.queue.TbQueueMsg;
 import org.thingsboard.server.queue.common.AbstractTbQueueConsumerTemplate;
@@ -29,9 +35,22 @@ import org.thingsboard.server.queue.common.AbstractTbQueueConsumerTemplate;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Created by ashvayka on 24.09.18.
@@ -39,42 +58,110 @@ import java.util.Properties;
 @Slf4j
 public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQueueConsumerTemplate<ConsumerRecord<String, byte[]>, T> {
 
+    private static final long FETCH_POLL_TIMEOUT_MS = 100;
+
     private final TbQueueAdmin admin;
-    private final KafkaConsumer<String, byte[]> consumer;
+    private final Consumer<String, byte[]> consumer;
     private final TbKafkaDecoder<T> decoder;
 
     private final TbKafkaConsumerStatsService statsService;
+    private final TbKafkaConsumerStatsService.ConsumerTimeStats timeStats;
     private final String groupId;
+    private final String clientId;
+
+    /*
+     * In the pipelined mode the Kafka consumer is owned by a dedicated fetcher thread that keeps polling
+     * while the previous batch is processed. Subscriptions and commits are passed to that thread as commands.
+     */
+    private final boolean pipelined;
+    private final int maxBufferedRecords;
+    private final BlockingQueue<List<ConsumerRecord<String, byte[]>>> fetchedBatches = new LinkedBlockingQueue<>();
+    private final AtomicInteger bufferedRecords = new AtomicInteger();
+    private final BlockingQueue<Runnable> fetcherCommands = new LinkedBlockingQueue<>();
+    private final Map<TopicPartition, OffsetAndMetadata> uncommittedOffsets = new HashMap<>();
+    private ExecutorService fetcher;
+    private volatile boolean fetcherStopped;
+    private volatile Set<String> activeTopics = Collections.emptySet();
+    private long batchPolledNanos;
 
     @Builder
     private TbKafkaConsumerTemplate(TbKafkaSettings settings, TbKafkaDecoder<T> decoder,
                                     String clientId, String groupId, String topic,
-                                    TbQueueAdmin admin, TbKafkaConsumerStatsService statsService) {
-        super(topic);
-        Properties props = settings.toConsumerProps(topic);
-        props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
-        if (groupId != null) {
-            props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        }
+                                    TbQueueAdmin admin, TbKafkaConsumerStatsService statsService,
+                                    boolean pipelined) {
+        this(createConsumer(settings, clientId, groupId, topic), decoder, clientId, groupId, topic, admin, statsService,
+                pipelined, settings.getConsumerPipeliningMaxBufferedRecords());
+    }
 
+    TbKafkaConsumerTemplate(Consumer<String, byte[]> consumer, TbKafkaDecoder<T> decoder,
+                            String clientId, String groupId, String topic,
+                            TbQueueAdmin admin, TbKafkaConsumerStatsService statsService,
+                            boolean pipelined, int maxBufferedRecords) {
+        super(topic);
         this.statsService = statsService;
         this.groupId = groupId;
+        this.clientId = clientId;
 
         if (statsService != null) {
             statsService.registerClientGroup(groupId);
+            this.timeStats = statsService.registerTimeStats(clientId);
+        } else {
+            this.timeStats = null;
         }
 
         this.admin = admin;
-        this.consumer = new KafkaConsumer<>(props);
+        this.consumer = consumer;
         this.decoder = decoder;
+
+        this.pipelined = pipelined;
+        this.maxBufferedRecords = maxBufferedRecords;
+        if (pipelined) {
+            this.fetcher = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("kafka-fetcher-" + clientId));
+            this.fetcher.submit(this::fetchLoop);
+        }
+    }
+
+    private static KafkaConsumer<String, byte[]> createConsumer(TbKafkaSettings settings, String clientId, String groupId, String topic) {
+        Properties props = settings.toConsumerProps(topic);
+        props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+        if (groupId != null) {
+            props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        }
+        return new KafkaConsumer<>(props);
     }
 
     @Override
     protected void doSubscribe(List<String> topicNames) {
+        if (pipelined) {
+            Set<String> topics = new HashSet<>(topicNames);
+            activeTopics = topics;
+            // the next doPoll must not return records of the topics this node no longer owns
+            dropFetchedRecords(partition -> !topics.contains(partition.topic()));
+            uncommittedOffsets.keySet().removeIf(partition -> !topics.contains(partition.topic()));
+            submitFetcherCommand(() -> subscribeConsumer(topicNames), true);
+        } else {
+            subscribeConsumer(topicNames);
+        }
+    }
+
+    private void subscribeConsumer(List<String> topicNames) {
         if (!topicNames.isEmpty()) {
             topicNames.forEach(admin::createTopicIfNotExists);
             log.info("subscribe topics {}", topicNames);
-            consumer.subscribe(topicNames);
+            if (pipelined) {
+                consumer.subscribe(topicNames, new ConsumerRebalanceListener() {
+                    @Override
+                    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                        dropFetchedRecords(partitions::contains);
+                    }
+
+                    @Override
+                    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                    }
+                });
+            } else {
+                consumer.subscribe(topicNames);
+            }
         } else {
             log.info("unsubscribe due to empty topic list");
             consumer.unsubscribe();
@@ -83,6 +170,9 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
 
     @Override
     protected List<ConsumerRecord<String, byte[]>> doPoll(long durationInMillis) {
+        if (pipelined) {
+            return pollFetchedRecords(durationInMillis);
+        }
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
@@ -96,12 +186,47 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
         if (records.isEmpty()) {
             return Collections.emptyList();
         } else {
+            if (timeStats != null) {
+                timeStats.recordFetch(TimeUnit.MILLISECONDS.toNanos(stopWatch.getTotalTimeMillis()));
+            }
+            batchPolledNanos = System.nanoTime();
             List<ConsumerRecord<String, byte[]>> recordList = new ArrayList<>(256);
             records.forEach(recordList::add);
             return recordList;
         }
     }
 
+    private List<ConsumerRecord<String, byte[]>> pollFetchedRecords(long durationInMillis) {
+        long startNanos = System.nanoTime();
+        List<ConsumerRecord<String, byte[]>> records;
+        try {
+            records = fetchedBatches.poll(durationInMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return Collections.emptyList();
+        }
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        bufferedRecords.addAndGet(-records.size());
+        // the fetcher may have added a batch polled before the latest subscription change
+        Set<String> topics = activeTopics;
+        if (records.stream().anyMatch(record -> !topics.contains(record.topic()))) {
+            records = records.stream().filter(record -> topics.contains(record.topic())).collect(Collectors.toList());
+            if (records.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+        // records of each partition are ordered, so the last one holds the offset to commit
+        for (ConsumerRecord<String, byte[]> record : records) {
+            uncommittedOffsets.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+        }
+        batchPolledNanos = System.nanoTime();
+        if (timeStats != null) {
+            timeStats.recordFetch(batchPolledNanos - startNanos);
+        }
+        return records;
+    }
+
     @Override
     public T decode(ConsumerRecord<String, byte[]> record) throws IOException {
         return decoder.decode(new KafkaTbQueueMsg(record));
@@ -109,18 +234,148 @@ public class TbKafkaConsumerTemplate<T extends TbQueueMsg> extends AbstractTbQue
 
     @Override
     protected void doCommit() {
-        consumer.commitSync();
+        long startNanos = System.nanoTime();
+        if (timeStats != null && batchPolledNanos > 0) {
+            timeStats.recordProcess(startNanos - batchPolledNanos);
+            batchPolledNanos = 0;
+        }
+        if (pipelined) {
+            if (uncommittedOffsets.isEmpty()) {
+                return;
+            }
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(uncommittedOffsets);
+            uncommittedOffsets.clear();
+            // commands are executed by the single fetcher thread and Kafka completes async commits in order
+            submitFetcherCommand(() -> {
+                Set<TopicPartition> assignment = consumer.assignment();
+                Map<TopicPartition, OffsetAndMetadata> assignedOffsets = offsets.entrySet().stream()
+                        .filter(entry -> assignment.contains(entry.getKey()))
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                if (assignedOffsets.isEmpty()) {
+                    return;
+                }
+                consumer.commitAsync(assignedOffsets, (committed, e) -> {
+                    if (e != null) {
+                        log.warn("[{}] Failed to commit offsets {}", clientId, committed, e);
+                    } else if (timeStats != null) {
+                        timeStats.recordCommit(System.nanoTime() - startNanos);
+                    }
+                });
+            }, false);
+        } else {
+            consumer.commitSync();
+            if (timeStats != null) {
+                timeStats.recordCommit(System.nanoTime() - startNanos);
+            }
+        }
     }
 
     @Override
     protected void doUnsubscribe() {
         log.info("unsubscribe topic and close consumer for topic {}", getTopic());
-        if (consumer != null) {
+        if (pipelined) {
+            fetcherStopped = true;
+            consumer.wakeup();
+            fetcher.shutdown();
+            try {
+                if (!fetcher.awaitTermination(30, TimeUnit.SECONDS)) {
+                    log.warn("[{}] Fetcher was not stopped in time", clientId);
+                    fetcher.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                fetcher.shutdownNow();
+            }
+        } else if (consumer != null) {
             consumer.unsubscribe();
             consumer.close();
         }
         if (statsService != null) {
             statsService.unregisterClientGroup(groupId);
+            statsService.unregisterTimeStats(clientId);
+        }
+    }
+
+    private void submitFetcherCommand(Runnable command, boolean wakeup) {
+        fetcherCommands.add(command);
+        // commits wait for the current fetch to complete, subscription changes abort it
+        if (wakeup) {
+            consumer.wakeup();
+        }
+    }
+
+    private void fetchLoop() {
+        while (!fetcherStopped) {
+            try {
+                Runnable command;
+                while ((command = fetcherCommands.poll()) != null) {
+                    command.run();
+                }
+                if (consumer.subscription().isEmpty()) {
+                    command = fetcherCommands.poll(FETCH_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (command != null) {
+                        command.run();
+                    }
+                    continue;
+                }
+                // the consumer keeps polling while paused, so it stays in the group even if processing is slow
+                int buffered = bufferedRecords.get();
+                if (buffered >= maxBufferedRecords) {
+                    consumer.pause(consumer.assignment());
+                } else if (buffered < maxBufferedRecords / 2 && !consumer.paused().isEmpty()) {
+                    consumer.resume(consumer.paused());
+                }
+                ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(FETCH_POLL_TIMEOUT_MS));
+                if (!records.isEmpty()) {
+                    List<ConsumerRecord<String, byte[]>> recordList = new ArrayList<>(records.count());
+                    records.forEach(recordList::add);
+                    bufferedRecords.addAndGet(recordList.size());
+                    synchronized (fetchedBatches) {
+                        fetchedBatches.add(recordList);
+                    }
+                }
+            } catch (WakeupException e) {
+                log.trace("[{}] Fetcher woken up", clientId);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                if (!fetcherStopped) {
+                    log.warn("[{}] Failed to fetch records for topic {}", clientId, getTopic(), t);
+                    try {
+                        Thread.sleep(FETCH_POLL_TIMEOUT_MS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        try {
+            Runnable command;
+            while ((command = fetcherCommands.poll()) != null) {
+                command.run();
+            }
+            consumer.unsubscribe();
+        } catch (Throwable t) {
+            log.warn("[{}] Failed to process pending commands on stop", clientId, t);
+        } finally {
+            // close waits for the pending async commits
+            consumer.close();
+        }
+    }
+
+    private void dropFetchedRecords(Predicate<TopicPartition> dropped) {
+        // the lock keeps a concurrently fetched batch from overtaking the retained ones
+        synchronized (fetchedBatches) {
+            List<List<ConsumerRecord<String, byte[]>>> batches = new ArrayList<>();
+            fetchedBatches.drainTo(batches);
+            for (List<ConsumerRecord<String, byte[]>> batch : batches) {
+                List<ConsumerRecord<String, byte[]>> retained = batch.stream()
+                        .filter(record -> !dropped.test(new TopicPartition(record.topic(), record.partition())))
+                        .collect(Collectors.toList());
+                bufferedRecords.addAndGet(retained.size() - batch.size());
+                if (!retained.isEmpty()) {
+                    fetchedBatches.add(retained);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,155 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.kafka;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.data.StringUtils;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "queue", value = "type", havingValue = "kafka")
+public class TbKafkaProducerStatsService {
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    private static final String BATCH_SIZE_AVG = "batch-size-avg";
+    private static final String RECORDS_PER_REQUEST_AVG = "records-per-request-avg";
+
+    private final Map<String, ProducerStats> producerStats = new ConcurrentHashMap<>();
+
+    private final StatsFactory statsFactory;
+
+    @Value("${queue.kafka.producer-stats.enabled:true}")
+    private boolean enabled;
+
+    @Value("${queue.kafka.producer-stats.print-interval-ms:60000}")
+    private long printIntervalMs;
+
+    private ScheduledExecutorService statsPrintScheduler;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        this.statsPrintScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("kafka-producer-stats"));
+        statsPrintScheduler.scheduleWithFixedDelay(this::printStats, printIntervalMs, printIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public ProducerStats registerProducer(String clientId, String topic, Producer<?, ?> producer) {
+        if (enabled && !StringUtils.isEmpty(clientId)) {
+            return producerStats.computeIfAbsent(clientId, id -> new ProducerStats(topic, producer,
+                    statsFactory.createTimer("kafkaProduceLatency", "topic", topic),
+                    statsFactory.createGauge("kafkaProducerBatchSize", new AtomicLong(), "topic", topic, "clientId", clientId)));
+        }
+        return null;
+    }
+
+    public void unregisterProducer(String clientId) {
+        if (enabled && !StringUtils.isEmpty(clientId)) {
+            producerStats.remove(clientId);
+        }
+    }
+
+    private void printStats() {
+        producerStats.forEach((clientId, stats) -> {
+            try {
+                long sent = stats.sent.sumThenReset();
+                long failed = stats.failed.sumThenReset();
+                long latencyNanos = stats.latencyNanos.sumThenReset();
+                double batchSizeAvg = getProducerMetric(stats.producer, BATCH_SIZE_AVG);
+                stats.batchSize.set(Math.round(batchSizeAvg));
+                if ((sent > 0 || failed > 0) && log.isInfoEnabled()) {
+                    log.info("[{}][{}] Producer stats: sent [{}] failed [{}] avg produce latency [{}]ms avg batch size [{}] bytes avg records per request [{}]",
+                            clientId, stats.topic, sent, failed,
+                            sent > 0 ? TimeUnit.NANOSECONDS.toMillis(latencyNanos / sent) : 0,
+                            Math.round(batchSizeAvg), Math.round(getProducerMetric(stats.producer, RECORDS_PER_REQUEST_AVG)));
+                }
+            } catch (Exception e) {
+                log.warn("[{}] Failed to print producer stats", clientId, e);
+            }
+        });
+    }
+
+    private static double getProducerMetric(Producer<?, ?> producer, String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            MetricName metricName = entry.getKey();
+            if (name.equals(metricName.name()) && PRODUCER_METRICS_GROUP.equals(metricName.group())) {
+                Object value = entry.getValue().metricValue();
+                // the client reports NaN until the first batch is sent
+                return value instanceof Number && !Double.isNaN(((Number) value).doubleValue()) ? ((Number) value).doubleValue() : 0;
+            }
+        }
+        return 0;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (statsPrintScheduler != null) {
+            statsPrintScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Time between handing a record over to the producer and the broker acknowledgement.
+     */
+    public static class ProducerStats {
+        private final String topic;
+        private final Producer<?, ?> producer;
+        private final Timer produceLatencyTimer;
+        private final AtomicLong batchSize;
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+
+        private ProducerStats(String topic, Producer<?, ?> producer, Timer produceLatencyTimer, AtomicLong batchSize) {
+            this.topic = topic;
+            this.producer = producer;
+            this.produceLatencyTimer = produceLatencyTimer;
+            this.batchSize = batchSize;
+        }
+
+        public void recordSuccess(long nanos) {
+            sent.increment();
+            latencyNanos.add(nanos);
+            produceLatencyTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void recordFailure() {
+            failed.increment();
+        }
+    }
+}
@@ -30,10 +30,12 @@ import org.thingsboard.server.queue.TbQueueCallback;
 import org.thingsboard.server.queue.TbQueueMsg;
 import org.thingsboard.server.queue.TbQueueProducer;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * Created by ashvayka on 24.09.18.
@@ -53,9 +55,14 @@ public class TbKafkaProducerTemplate<T extends TbQueueMsg> implements TbQueuePro
 
     private final Set<TopicPartitionInfo> topics;
 
+    private final String clientId;
+    private final TbKafkaProducerStatsService statsService;
+    private final TbKafkaProducerStatsService.ProducerStats stats;
+
     @Builder
-    private TbKafkaProducerTemplate(TbKafkaSettings settings, String defaultTopic, String clientId, TbQueueAdmin admin) {
-        Properties props = settings.toProducerProps();
+    private TbKafkaProducerTemplate(TbKafkaSettings settings, String defaultTopic, String clientId, TbQueueAdmin admin,
+                                    TbKafkaProducerStatsService statsService) {
+        Properties props = settings.toProducerProps(defaultTopic);
 
         if (!StringUtils.isEmpty(clientId)) {
             props.put(ProducerConfig.CLIENT_ID_CONFIG, clientId);
@@ -66,6 +73,9 @@ public class TbKafkaProducerTemplate<T extends TbQueueMsg> implements TbQueuePro
         this.defaultTopic = defaultTopic;
         this.admin = admin;
         topics = ConcurrentHashMap.newKeySet();
+        this.clientId = clientId;
+        this.statsService = statsService;
+        this.stats = statsService != null ? statsService.registerProducer(clientId, defaultTopic, producer) : null;
     }
 
     @Override
@@ -78,10 +88,21 @@ public class TbKafkaProducerTemplate<T extends TbQueueMsg> implements TbQueuePro
             createTopicIfNotExist(tpi);
             String key = msg.getKey().toString();
             byte[] data = msg.getData();
-            ProducerRecord<String, byte[]> record;
-            Iterable<Header> headers = msg.getHeaders().getData().entrySet().stream().map(e -> new RecordHeader(e.getKey(), e.getValue())).collect(Collectors.toList());
-            record = new ProducerRecord<>(tpi.getFullTopicName(), null, key, data, headers);
+            Map<String, byte[]> headersData = msg.getHeaders().getData();
+            List<Header> headers = new ArrayList<>(headersData.size());
+            for (Map.Entry<String, byte[]> header : headersData.entrySet()) {
+                headers.add(new RecordHeader(header.getKey(), header.getValue()));
+            }
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(tpi.getFullTopicName(), null, key, data, headers);
+            long sendTs = stats != null ? System.nanoTime() : 0;
             producer.send(record, (metadata, exception) -> {
+                if (stats != null) {
+                    if (exception == null) {
+                        stats.recordSuccess(System.nanoTime() - sendTs);
+                    } else {
+                        stats.recordFailure();
+                    }
+                }
                 if (exception == null) {
                     if (callback != null) {
                         callback.onSuccess(new KafkaTbQueueMsgMetadata(metadata));
@@ -114,6 +135,9 @@ public class TbKafkaProducerTemplate<T extends TbQueueMsg> implements TbQueuePro
 
     @Override
     public void stop() {
+        if (statsService != null) {
+            statsService.unregisterProducer(clientId);
+        }
         if (producer != null) {
             producer.close();
         }
@@ -89,6 +89,14 @@ public class TbKafkaSettings {
     @Value("${queue.kafka.fetch_max_bytes:134217728}")
     private int fetchMaxBytes;
 
+    @Value("${queue.kafka.consumer_pipelining.enabled:false}")
+    @Getter
+    private boolean consumerPipeliningEnabled;
+
+    @Value("${queue.kafka.consumer_pipelining.max_buffered_records:16384}")
+    @Getter
+    private int consumerPipeliningMaxBufferedRecords;
+
     @Value("${queue.kafka.use_confluent_cloud:false}")
     private boolean useConfluent;
 
@@ -110,6 +118,9 @@ public class TbKafkaSettings {
     @Setter
     private Map<String, List<TbProperty>> consumerPropertiesPerTopic = Collections.emptyMap();
 
+    @Setter
+    private Map<String, List<TbProperty>> producerPropertiesPerTopic = Collections.emptyMap();
+
     public Properties toAdminProps() {
         Properties props = toProps();
         props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, servers);
@@ -135,7 +146,7 @@ public class TbKafkaSettings {
         return props;
     }
 
-    public Properties toProducerProps() {
+    public Properties toProducerProps(String topic) {
         Properties props = toProps();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, servers);
         props.put(ProducerConfig.RETRIES_CONFIG, retries);
@@ -148,6 +159,10 @@ public class TbKafkaSettings {
         props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
         props.put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, maxRequestSize);
         props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlightRequestsPerConnection);
+
+        producerPropertiesPerTopic
+                .getOrDefault(topic, Collections.emptyList())
+                .forEach(kv -> props.put(kv.getKey(), kv.getValue()));
         return props;
     }
 
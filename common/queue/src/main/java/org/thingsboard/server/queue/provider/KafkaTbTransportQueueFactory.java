@@ -34,6 +34,7 @@ import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
 import org.thingsboard.server.queue.kafka.TbKafkaAdmin;
 import org.thingsboard.server.queue.kafka.TbKafkaConsumerStatsService;
 import org.thingsboard.server.queue.kafka.TbKafkaConsumerTemplate;
+import org.thingsboard.server.queue.kafka.TbKafkaProducerStatsService;
 import org.thingsboard.server.queue.kafka.TbKafkaProducerTemplate;
 import org.thingsboard.server.queue.kafka.TbKafkaSettings;
 import org.thingsboard.server.queue.kafka.TbKafkaTopicConfigs;
@@ -56,6 +57,7 @@ public class KafkaTbTransportQueueFactory implements TbTransportQueueFactory {
     private final TbQueueTransportApiSettings transportApiSettings;
     private final TbQueueTransportNotificationSettings transportNotificationSettings;
     private final TbKafkaConsumerStatsService consumerStatsService;
+    private final TbKafkaProducerStatsService producerStatsService;
 
     private final TbQueueAdmin coreAdmin;
     private final TbQueueAdmin ruleEngineAdmin;
@@ -70,6 +72,7 @@ public class KafkaTbTransportQueueFactory implements TbTransportQueueFactory {
                                         TbQueueTransportApiSettings transportApiSettings,
                                         TbQueueTransportNotificationSettings transportNotificationSettings,
                                         TbKafkaConsumerStatsService consumerStatsService,
+                                        TbKafkaProducerStatsService producerStatsService,
                                         TbKafkaTopicConfigs kafkaTopicConfigs) {
         this.kafkaSettings = kafkaSettings;
         this.serviceInfoProvider = serviceInfoProvider;
@@ -78,6 +81,7 @@ public class KafkaTbTransportQueueFactory implements TbTransportQueueFactory {
         this.transportApiSettings = transportApiSettings;
         this.transportNotificationSettings = transportNotificationSettings;
         this.consumerStatsService = consumerStatsService;
+        this.producerStatsService = producerStatsService;
 
         this.coreAdmin = new TbKafkaAdmin(kafkaSettings, kafkaTopicConfigs.getCoreConfigs());
         this.ruleEngineAdmin = new TbKafkaAdmin(kafkaSettings, kafkaTopicConfigs.getRuleEngineConfigs());
@@ -92,6 +96,7 @@ public class KafkaTbTransportQueueFactory implements TbTransportQueueFactory {
         requestBuilder.settings(kafkaSettings);
         requestBuilder.clientId("transport-api-request-" + serviceInfoProvider.getServiceId());
         requestBuilder.defaultTopic(transportApiSettings.getRequestsTopic());
+        requestBuilder.statsService(producerStatsService);
         requestBuilder.admin(transportApiRequestAdmin);
 
         TbKafkaConsumerTemplate.TbKafkaConsumerTemplateBuilder<TbProtoQueueMsg<TransportApiResponseMsg>> responseBuilder = TbKafkaConsumerTemplate.builder();
@@ -120,6 +125,7 @@ public class KafkaTbTransportQueueFactory implements TbTransportQueueFactory {
         requestBuilder.settings(kafkaSettings);
         requestBuilder.clientId("transport-node-rule-engine-" + serviceInfoProvider.getServiceId());
         requestBuilder.defaultTopic(ruleEngineSettings.getTopic());
+        requestBuilder.statsService(producerStatsService);
         requestBuilder.admin(ruleEngineAdmin);
         return requestBuilder.build();
     }
@@ -130,6 +136,7 @@ public class KafkaTbTransportQueueFactory implements TbTransportQueueFactory {
         requestBuilder.settings(kafkaSettings);
         requestBuilder.clientId("transport-node-core-" + serviceInfoProvider.getServiceId());
         requestBuilder.defaultTopic(coreSettings.getTopic());
+        requestBuilder.statsService(producerStatsService);
         requestBuilder.admin(coreAdmin);
         return requestBuilder.build();
     }
@@ -153,6 +160,7 @@ public class KafkaTbTransportQueueFactory implements TbTransportQueueFactory {
         requestBuilder.settings(kafkaSettings);
         requestBuilder.clientId("transport-node-us-producer-" + serviceInfoProvider.getServiceId());
         requestBuilder.defaultTopic(coreSettings.getUsageStatsTopic());
+        requestBuilder.statsService(producerStatsService);
         requestBuilder.admin(coreAdmin);
         return requestBuilder.build();
     }
@@ -15,12 +15,10 @@
  */
 package org.thingsboard.server.queue.usagestats;
 
-import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.thingsboard.server.common.data.ApiUsageRecordKey;
-import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
@@ -29,6 +27,7 @@ import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.common.stats.TbApiUsageReportClient;
 import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsKVProto;
+import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsProto;
 import org.thingsboard.server.queue.TbQueueProducer;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
 import org.thingsboard.server.queue.discovery.PartitionService;
@@ -36,27 +35,48 @@ import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.queue.scheduler.SchedulerComponent;
 
 import javax.annotation.PostConstruct;
-import java.util.EnumMap;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Accumulates the API usage of tenants and customers in striped counters, so reporting from many threads
+ * for the same tenant neither contends on a single value nor allocates.
+ * Accumulated values are sent once per interval as a single message per core partition.
+ * Packing is enabled only once all core nodes are upgraded, before that each tenant and customer is sent in the legacy single-owner format.
+ */
 @Component
 @Slf4j
 public class DefaultTbApiUsageReportClient implements TbApiUsageReportClient {
 
+    private static final ApiUsageRecordKey[] KEYS = ApiUsageRecordKey.values();
+    private static final int MAX_IDLE_INTERVALS = 6;
+    private static final int EVICTED_EMPTY_DRAINS = 2;
+
     @Value("${usage.stats.report.enabled:true}")
     private boolean enabled;
     @Value("${usage.stats.report.enabled_per_customer:false}")
     private boolean enabledPerCustomer;
     @Value("${usage.stats.report.interval:10}")
     private int interval;
+    @Value("${usage.stats.report.pack_enabled:false}")
+    private boolean packEnabled;
+    @Value("${usage.stats.report.pack_size:1024}")
+    private int packSize;
 
-    private final EnumMap<ApiUsageRecordKey, ConcurrentMap<OwnerId, AtomicLong>> stats = new EnumMap<>(ApiUsageRecordKey.class);
+    private final ConcurrentMap<TenantId, OwnerStats> tenantStats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CustomerId, OwnerStats> customerStats = new ConcurrentHashMap<>();
+    private final OwnerStats sysTenantStats = new OwnerStats(TenantId.SYS_TENANT_ID, null);
+    // evicted stats are drained until they are empty twice in a row, to pick up values added by threads that fetched them before the eviction
+    private final List<OwnerStats> evictedStats = new ArrayList<>();
 
     private final PartitionService partitionService;
     private final SchedulerComponent scheduler;
@@ -73,9 +93,6 @@ public class DefaultTbApiUsageReportClient implements TbApiUsageReportClient {
     private void init() {
         if (enabled) {
             msgProducer = this.producerProvider.getTbUsageStatsMsgProducer();
-            for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-                stats.put(key, new ConcurrentHashMap<>());
-            }
             scheduler.scheduleWithFixedDelay(() -> {
                 try {
                     reportStats();
@@ -87,59 +104,99 @@ public class DefaultTbApiUsageReportClient implements TbApiUsageReportClient {
     }
 
     private void reportStats() {
-        ConcurrentMap<OwnerId, ToUsageStatsServiceMsg.Builder> report = new ConcurrentHashMap<>();
+        Map<TopicPartitionInfo, ToUsageStatsServiceMsg.Builder> report = new HashMap<>();
 
-        for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-            ConcurrentMap<OwnerId, AtomicLong> statsForKey = stats.get(key);
-            statsForKey.forEach((ownerId, statsValue) -> {
-                long value = statsValue.get();
-                if (value == 0) return;
+        drainEvictedStats(report);
+        collectStats(sysTenantStats, report);
+        collectStats(tenantStats.values(), report);
+        collectStats(customerStats.values(), report);
 
-                ToUsageStatsServiceMsg.Builder statsMsgBuilder = report.computeIfAbsent(ownerId, id -> {
-                    ToUsageStatsServiceMsg.Builder newStatsMsgBuilder = ToUsageStatsServiceMsg.newBuilder();
-
-                    TenantId tenantId = ownerId.getTenantId();
-                    newStatsMsgBuilder.setTenantIdMSB(tenantId.getId().getMostSignificantBits());
-                    newStatsMsgBuilder.setTenantIdLSB(tenantId.getId().getLeastSignificantBits());
-
-                    EntityId entityId = ownerId.getEntityId();
-                    if (entityId != null && entityId.getEntityType() == EntityType.CUSTOMER) {
-                        newStatsMsgBuilder.setCustomerIdMSB(entityId.getId().getMostSignificantBits());
-                        newStatsMsgBuilder.setCustomerIdLSB(entityId.getId().getLeastSignificantBits());
-                    }
+        int owners = 0;
+        for (Map.Entry<TopicPartitionInfo, ToUsageStatsServiceMsg.Builder> entry : report.entrySet()) {
+            owners += entry.getValue().getMsgsCount();
+            send(entry.getKey(), entry.getValue());
+        }
 
-                    return newStatsMsgBuilder;
-                });
+        if (owners > 0) {
+            log.debug("Reporting API usage statistics for {} tenants and customers in {} partitions", owners, report.size());
+        }
+    }
 
-                statsMsgBuilder.addValues(UsageStatsKVProto.newBuilder().setKey(key.name()).setValue(value).build());
-            });
-            statsForKey.clear();
+    private void drainEvictedStats(Map<TopicPartitionInfo, ToUsageStatsServiceMsg.Builder> report) {
+        Iterator<OwnerStats> iterator = evictedStats.iterator();
+        while (iterator.hasNext()) {
+            OwnerStats stats = iterator.next();
+            if (collectStats(stats, report)) {
+                stats.emptyDrainsAfterEviction = 0;
+            } else if (++stats.emptyDrainsAfterEviction >= EVICTED_EMPTY_DRAINS) {
+                iterator.remove();
+            }
         }
+    }
 
-        report.forEach(((ownerId, statsMsg) -> {
-            //TODO: figure out how to minimize messages into the queue. Maybe group by 100s of messages?
+    private void collectStats(Iterable<OwnerStats> statsList, Map<TopicPartitionInfo, ToUsageStatsServiceMsg.Builder> report) {
+        Iterator<OwnerStats> iterator = statsList.iterator();
+        while (iterator.hasNext()) {
+            OwnerStats stats = iterator.next();
+            if (!collectStats(stats, report) && stats.idleIntervals >= MAX_IDLE_INTERVALS) {
+                iterator.remove();
+                stats.emptyDrainsAfterEviction = 0;
+                evictedStats.add(stats);
+            }
+        }
+    }
 
-            TenantId tenantId = ownerId.getTenantId();
-            EntityId entityId = Optional.ofNullable(ownerId.getEntityId()).orElse(tenantId);
-            TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, entityId).newByTopic(msgProducer.getDefaultTopic());
-            msgProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), statsMsg.build()), null);
-        }));
+    private boolean collectStats(OwnerStats stats, Map<TopicPartitionInfo, ToUsageStatsServiceMsg.Builder> report) {
+        UsageStatsProto.Builder statsProto = null;
+        for (ApiUsageRecordKey key : KEYS) {
+            long value = stats.values[key.ordinal()].sumThenReset();
+            if (value != 0) {
+                if (statsProto == null) {
+                    statsProto = stats.newProtoBuilder();
+                }
+                statsProto.addValues(UsageStatsKVProto.newBuilder().setKey(key.name()).setValue(value).build());
+            }
+        }
+        if (statsProto == null) {
+            stats.idleIntervals++;
+            return false;
+        }
+        stats.idleIntervals = 0;
+
+        EntityId entityId = stats.customerId != null ? stats.customerId : stats.tenantId;
+        TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, stats.tenantId, entityId).newByTopic(msgProducer.getDefaultTopic());
+        ToUsageStatsServiceMsg.Builder msg = report.computeIfAbsent(tpi, id -> ToUsageStatsServiceMsg.newBuilder());
+        msg.addMsgs(statsProto);
+        if (!packEnabled || msg.getMsgsCount() >= packSize) {
+            send(tpi, msg);
+            report.remove(tpi);
+        }
+        return true;
+    }
 
-        if (!report.isEmpty()) {
-            log.debug("Reporting API usage statistics for {} tenants and customers", report.size());
+    private void send(TopicPartitionInfo tpi, ToUsageStatsServiceMsg.Builder msg) {
+        if (msg.getMsgsCount() == 1) {
+            // the legacy format is understood by the core nodes that are not upgraded yet
+            UsageStatsProto stats = msg.getMsgs(0);
+            msg = ToUsageStatsServiceMsg.newBuilder()
+                    .setTenantIdMSB(stats.getTenantIdMSB())
+                    .setTenantIdLSB(stats.getTenantIdLSB())
+                    .setCustomerIdMSB(stats.getCustomerIdMSB())
+                    .setCustomerIdLSB(stats.getCustomerIdLSB())
+                    .addAllValues(stats.getValuesList());
         }
+        msgProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), msg.build()), null);
     }
 
     @Override
     public void report(TenantId tenantId, CustomerId customerId, ApiUsageRecordKey key, long value) {
         if (enabled) {
-            ConcurrentMap<OwnerId, AtomicLong> statsForKey = stats.get(key);
-
-            statsForKey.computeIfAbsent(new OwnerId(tenantId), id -> new AtomicLong()).addAndGet(value);
-            statsForKey.computeIfAbsent(new OwnerId(TenantId.SYS_TENANT_ID), id -> new AtomicLong()).addAndGet(value);
+            int idx = key.ordinal();
+            getStats(tenantStats, tenantId, tenantId, null).values[idx].add(value);
+            sysTenantStats.values[idx].add(value);
 
             if (enabledPerCustomer && customerId != null && !customerId.isNullUid()) {
-                statsForKey.computeIfAbsent(new OwnerId(tenantId, customerId), id -> new AtomicLong()).addAndGet(value);
+                getStats(customerStats, customerId, tenantId, customerId).values[idx].add(value);
             }
         }
     }
@@ -149,18 +206,40 @@ public class DefaultTbApiUsageReportClient implements TbApiUsageReportClient {
         report(tenantId, customerId, key, 1);
     }
 
-    @Data
-    private static class OwnerId {
-        private TenantId tenantId;
-        private EntityId entityId;
+    private static <K> OwnerStats getStats(ConcurrentMap<K, OwnerStats> statsMap, K key, TenantId tenantId, CustomerId customerId) {
+        // plain lookup first, so that the hot path does not allocate the mapping function
+        OwnerStats stats = statsMap.get(key);
+        if (stats == null) {
+            stats = statsMap.computeIfAbsent(key, id -> new OwnerStats(tenantId, customerId));
+        }
+        return stats;
+    }
+
+    private static class OwnerStats {
+        private final TenantId tenantId;
+        private final CustomerId customerId;
+        private final LongAdder[] values = new LongAdder[KEYS.length];
+        // accessed only by the report thread
+        private int idleIntervals;
+        private int emptyDrainsAfterEviction;
 
-        public OwnerId(TenantId tenantId) {
+        private OwnerStats(TenantId tenantId, CustomerId customerId) {
             this.tenantId = tenantId;
+            this.customerId = customerId;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new LongAdder();
+            }
         }
 
-        public OwnerId(TenantId tenantId, EntityId entityId) {
-            this.tenantId = tenantId;
-            this.entityId = entityId;
+        private UsageStatsProto.Builder newProtoBuilder() {
+            UsageStatsProto.Builder builder = UsageStatsProto.newBuilder()
+                    .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                    .setTenantIdLSB(tenantId.getId().getLeastSignificantBits());
+            if (customerId != null) {
+                builder.setCustomerIdMSB(customerId.getId().getMostSignificantBits())
+                        .setCustomerIdLSB(customerId.getId().getLeastSignificantBits());
+            }
+            return builder;
         }
     }
 }
@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.util;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgTrace;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples messages for end-to-end latency tracing and aggregates the time spent on each stage:
+ * from the message creation to the queue produce, waiting in the queue, up to the completion of each rule node
+ * and up to the acknowledgement of the message by the rule engine.
+ * Stages that span several services rely on the wall clock, so the hosts are expected to be time synchronized.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TbMsgTracingService {
+
+    private static final String PRODUCE_TIMER = "msgTraceProduce";
+    private static final String QUEUE_TIMER = "msgTraceQueue";
+    private static final String RULE_NODE_TIMER = "msgTraceRuleNode";
+    private static final String TOTAL_TIMER = "msgTraceTotal";
+
+    private static final String TENANT_ID_TAG = "tenantId";
+    private static final String QUEUE_TAG = "queue";
+    private static final String RULE_CHAIN_TAG = "ruleChain";
+    private static final String RULE_NODE_TYPE_TAG = "ruleNodeType";
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final StatsFactory statsFactory;
+
+    @Value("${queue.tracing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${queue.tracing.sample_rate:0.001}")
+    private double sampleRate;
+
+    /**
+     * Starts tracing of the message if it is picked by the sampler and is not traced yet.
+     */
+    public void startTrace(TbMsg msg) {
+        if (enabled && msg.getTrace() == null && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            msg.startTrace(System.currentTimeMillis());
+        }
+    }
+
+    public void onConsume(TenantId tenantId, String queueName, TbMsg msg) {
+        TbMsgTrace trace = msg.getTrace();
+        if (!enabled || trace == null) {
+            return;
+        }
+        long ts = System.currentTimeMillis();
+        String tenantIdStr = tenantId.getId().toString();
+        record(getTimer(PRODUCE_TIMER, TENANT_ID_TAG, tenantIdStr, QUEUE_TAG, queueName), trace.getProduceTs() - trace.getStartTs());
+        record(getTimer(QUEUE_TIMER, TENANT_ID_TAG, tenantIdStr, QUEUE_TAG, queueName), ts - trace.getProduceTs());
+    }
+
+    public void onRuleNodeProcessed(TenantId tenantId, RuleChainId ruleChainId, String ruleNodeType, TbMsg msg) {
+        TbMsgTrace trace = msg.getTrace();
+        if (!enabled || trace == null) {
+            return;
+        }
+        String nodeType = ruleNodeType.substring(ruleNodeType.lastIndexOf('.') + 1);
+        record(getTimer(RULE_NODE_TIMER, TENANT_ID_TAG, tenantId.getId().toString(), RULE_CHAIN_TAG, ruleChainId.getId().toString(),
+                RULE_NODE_TYPE_TAG, nodeType), System.currentTimeMillis() - trace.getStartTs());
+    }
+
+    /**
+     * @return timer of the whole message processing or 'null' if the message is not traced.
+     */
+    public Timer getTotalTimer(TenantId tenantId, String queueName, TbMsg msg) {
+        if (!enabled || msg.getTrace() == null) {
+            return null;
+        }
+        return getTimer(TOTAL_TIMER, TENANT_ID_TAG, tenantId.getId().toString(), QUEUE_TAG, queueName);
+    }
+
+    private Timer getTimer(String name, String... tags) {
+        return timers.computeIfAbsent(name + String.join(",", tags), key -> statsFactory.createTimer(name, tags));
+    }
+
+    private static void record(Timer timer, long durationMs) {
+        // negative durations are possible due to the clock skew between the hosts
+        timer.record(Math.max(durationMs, 0), TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -15,6 +15,8 @@
  */
 package org.thingsboard.server.queue.common;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.After;
 import org.junit.Before;
@@ -23,16 +25,21 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.thingsboard.server.queue.TbQueueAdmin;
 import org.thingsboard.server.queue.TbQueueConsumer;
 import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
 import org.thingsboard.server.queue.TbQueueProducer;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -106,7 +113,6 @@ public class DefaultTbQueueRequestTemplateTest {
     @Test
     public void givenExternalExecutor_whenInitStop_thenOK() {
         inst.init();
-        assertThat(inst.nextCleanupNs, equalTo(0L));
         verify(queueAdmin, times(1)).createTopicIfNotExists(topic);
         verify(requestTemplate, times(1)).init();
         verify(responseTemplate, times(1)).subscribe();
@@ -145,19 +151,19 @@ public class DefaultTbQueueRequestTemplateTest {
 
     @Test
     public void givenMessages_whenSend_thenOK() {
-        willDoNothing().given(inst).sendToRequestTemplate(any(), any(), any(), any());
+        willDoNothing().given(inst).sendToRequestTemplate(any(), anyLong(), any(), any());
         inst.init();
         final int msgCount = 10;
         for (int i = 0; i < msgCount; i++) {
             inst.send(getRequestMsgMock());
         }
         assertThat(inst.pendingRequests.mappingCount(), equalTo((long) msgCount));
-        verify(inst, times(msgCount)).sendToRequestTemplate(any(), any(), any(), any());
+        verify(inst, times(msgCount)).sendToRequestTemplate(any(), anyLong(), any(), any());
     }
 
     @Test
     public void givenMessagesOverMaxPendingRequests_whenSend_thenImmediateFailedFutureForTheOfRequests() {
-        willDoNothing().given(inst).sendToRequestTemplate(any(), any(), any(), any());
+        willDoNothing().given(inst).sendToRequestTemplate(any(), anyLong(), any(), any());
         inst.init();
         int msgOverflowCount = 10;
         for (int i = 0; i < inst.maxPendingRequests; i++) {
@@ -167,7 +173,7 @@ public class DefaultTbQueueRequestTemplateTest {
             assertThat("max pending requests overflow", inst.send(getRequestMsgMock()).isDone(), is(true)); //overflow, immediate failed future
         }
         assertThat(inst.pendingRequests.mappingCount(), equalTo(inst.maxPendingRequests));
-        verify(inst, times((int) inst.maxPendingRequests)).sendToRequestTemplate(any(), any(), any(), any());
+        verify(inst, times((int) inst.maxPendingRequests)).sendToRequestTemplate(any(), anyLong(), any(), any());
     }
 
     @SuppressWarnings("unchecked")
@@ -180,7 +186,6 @@ public class DefaultTbQueueRequestTemplateTest {
             return currentTime.get();
         }).given(inst).getCurrentClockNs();
         inst.init();
-        inst.setupNextCleanup();
         willReturn(Collections.emptyList()).given(inst).doPoll();
 
         //when
@@ -195,9 +200,9 @@ public class DefaultTbQueueRequestTemplateTest {
 
         //then
         ArgumentCaptor<DefaultTbQueueRequestTemplate.ResponseMetaData> argumentCaptorResp = ArgumentCaptor.forClass(DefaultTbQueueRequestTemplate.ResponseMetaData.class);
-        ArgumentCaptor<UUID> argumentCaptorUUID = ArgumentCaptor.forClass(UUID.class);
+        ArgumentCaptor<Long> argumentCaptorRequestId = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long> argumentCaptorLong = ArgumentCaptor.forClass(Long.class);
-        verify(inst, atLeastOnce()).setTimeoutException(argumentCaptorUUID.capture(), argumentCaptorResp.capture(), argumentCaptorLong.capture());
+        verify(inst, atLeastOnce()).setTimeoutException(argumentCaptorRequestId.capture(), argumentCaptorResp.capture(), argumentCaptorLong.capture());
 
         List<DefaultTbQueueRequestTemplate.ResponseMetaData> responseMetaDataList = argumentCaptorResp.getAllValues();
         List<Long> tickTsList = argumentCaptorLong.getAllValues();
@@ -206,6 +211,176 @@ public class DefaultTbQueueRequestTemplateTest {
         }
     }
 
+    @Test
+    public void givenManyInFlightRequests_whenTimeoutPassed_thenAllExpiredByTimerWheel() {
+        int msgCount = 100_000;
+        AtomicLong currentTime = new AtomicLong();
+        AtomicLong timeouts = new AtomicLong();
+        DefaultTbQueueRequestTemplate<TbQueueMsg, TbQueueMsg> template = new DefaultTbQueueRequestTemplate<>(
+                queueAdmin, requestTemplate, responseTemplate,
+                maxRequestTimeout, msgCount, pollInterval, executorMock) {
+            @Override
+            long getCurrentClockNs() {
+                return currentTime.get();
+            }
+
+            @Override
+            List<TbQueueMsg> doPoll() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            void sendToRequestTemplate(TbQueueMsg request, long requestId, SettableFuture<TbQueueMsg> future, ResponseMetaData<TbQueueMsg> responseMetaData) {
+            }
+
+            @Override
+            void setTimeoutException(long requestId, ResponseMetaData<TbQueueMsg> staleRequest, long currentNs) {
+                assertThat(currentNs, greaterThanOrEqualTo(staleRequest.getExpTime()));
+                timeouts.incrementAndGet();
+                super.setTimeoutException(requestId, staleRequest, currentNs);
+            }
+        };
+        template.init();
+
+        List<ListenableFuture<TbQueueMsg>> futures = new ArrayList<>(msgCount);
+        for (int i = 0; i < msgCount; i++) {
+            futures.add(template.send(getRequestMsg()));
+        }
+        assertThat(template.pendingRequests.mappingCount(), equalTo((long) msgCount));
+
+        currentTime.addAndGet(template.maxRequestTimeoutNs / 2);
+        template.fetchAndProcessResponses();
+        assertThat(template.pendingRequests.mappingCount(), equalTo((long) msgCount));
+
+        currentTime.addAndGet(template.maxRequestTimeoutNs / 2 + 2 * template.tickNs);
+        template.fetchAndProcessResponses();
+        assertThat(template.pendingRequests.mappingCount(), equalTo(0L));
+        assertThat(timeouts.get(), equalTo((long) msgCount));
+        for (ListenableFuture<TbQueueMsg> future : futures) {
+            assertThat(future.isDone(), is(true));
+        }
+    }
+
+    @Test
+    public void givenConcurrentSendAndExpiration_whenTimeoutPassed_thenAllExpiredWithoutFullRotation() throws Exception {
+        int sendersCount = 4;
+        int msgCount = 50_000;
+        // the wheel has 202 ticks, so a request added to an already polled bucket would stay pending after the final ticks below
+        long requestTimeout = 1000;
+        AtomicLong currentTime = new AtomicLong();
+        DefaultTbQueueRequestTemplate<TbQueueMsg, TbQueueMsg> template = new DefaultTbQueueRequestTemplate<>(
+                queueAdmin, requestTemplate, responseTemplate,
+                requestTimeout, (long) sendersCount * msgCount, pollInterval, executorMock) {
+            @Override
+            long getCurrentClockNs() {
+                return currentTime.get();
+            }
+
+            @Override
+            void sendToRequestTemplate(TbQueueMsg request, long requestId, SettableFuture<TbQueueMsg> future, ResponseMetaData<TbQueueMsg> responseMetaData) {
+            }
+        };
+        template.init();
+
+        executor = Executors.newFixedThreadPool(sendersCount);
+        CountDownLatch sent = new CountDownLatch(sendersCount);
+        List<ListenableFuture<TbQueueMsg>> futures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < sendersCount; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < msgCount; j++) {
+                    futures.add(template.send(getRequestMsg(), template.tickNs));
+                }
+                sent.countDown();
+            });
+        }
+        while (sent.getCount() > 0) {
+            currentTime.addAndGet(template.tickNs);
+            template.expireStaleRequests(currentTime.get());
+        }
+        assertThat(sent.await(10, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 3; i++) {
+            currentTime.addAndGet(template.tickNs);
+            template.expireStaleRequests(currentTime.get());
+        }
+
+        assertThat(template.pendingRequests.mappingCount(), equalTo(0L));
+        assertThat(futures.size(), equalTo(sendersCount * msgCount));
+        for (ListenableFuture<TbQueueMsg> future : futures) {
+            assertThat(future.isDone(), is(true));
+        }
+    }
+
+    @Test
+    public void givenRequestsSentEveryTick_whenExpired_thenEachRequestIsVisitedOnce() {
+        int ticks = 400;
+        int msgsPerTick = 250;
+        long requestTimeout = 1000;
+        AtomicLong currentTime = new AtomicLong();
+        DefaultTbQueueRequestTemplate<TbQueueMsg, TbQueueMsg> template = new DefaultTbQueueRequestTemplate<>(
+                queueAdmin, requestTemplate, responseTemplate,
+                requestTimeout, (long) ticks * msgsPerTick, pollInterval, executorMock) {
+            @Override
+            long getCurrentClockNs() {
+                return currentTime.get();
+            }
+
+            @Override
+            void sendToRequestTemplate(TbQueueMsg request, long requestId, SettableFuture<TbQueueMsg> future, ResponseMetaData<TbQueueMsg> responseMetaData) {
+            }
+        };
+        // counts every request taken out of a bucket, including the ones put back because they are not expired yet
+        AtomicLong visits = new AtomicLong();
+        Object[] wheel = (Object[]) ReflectionTestUtils.getField(template, "wheel");
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<Object>() {
+                @Override
+                public Object poll() {
+                    Object request = super.poll();
+                    if (request != null) {
+                        visits.incrementAndGet();
+                    }
+                    return request;
+                }
+            };
+        }
+        template.init();
+
+        for (int i = 0; i < ticks; i++) {
+            for (int j = 0; j < msgsPerTick; j++) {
+                template.send(getRequestMsg());
+            }
+            currentTime.addAndGet(template.tickNs);
+            template.expireStaleRequests(currentTime.get());
+        }
+        currentTime.addAndGet(template.maxRequestTimeoutNs + 2 * template.tickNs);
+        template.expireStaleRequests(currentTime.get());
+
+        // the previous implementation scanned every pending request once per timeout period,
+        // about 50k requests were pending at any time during the 2 seconds above
+        assertThat(template.pendingRequests.mappingCount(), equalTo(0L));
+        assertThat(visits.get(), equalTo((long) ticks * msgsPerTick));
+    }
+
+    TbQueueMsg getRequestMsg() {
+        DefaultTbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+        return new TbQueueMsg() {
+            @Override
+            public UUID getKey() {
+                return null;
+            }
+
+            @Override
+            public TbQueueMsgHeaders getHeaders() {
+                return headers;
+            }
+
+            @Override
+            public byte[] getData() {
+                return new byte[0];
+            }
+        };
+    }
+
     TbQueueMsg getRequestMsgMock() {
         return mock(TbQueueMsg.class, RETURNS_DEEP_STUBS);
     }
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.queue.TbQueueAdmin;
+import org.thingsboard.server.queue.TbQueueMsg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+
+public class TbKafkaConsumerTemplateTest {
+
+    private static final String TOPIC = "tb_rule_engine.main";
+
+    private final TestConsumer consumer = new TestConsumer();
+    private TbKafkaConsumerTemplate<TbQueueMsg> template;
+
+    @After
+    public void tearDown() {
+        if (template != null) {
+            template.unsubscribe();
+        }
+    }
+
+    @Test
+    public void testFetcherPausesWhenBufferIsFullAndResumesWhenDrained() {
+        template = createTemplate(2);
+        TopicPartition tp = subscribe(new TopicPartitionInfo(TOPIC, null, 0, true)).get(0);
+
+        for (int i = 0; i < 3; i++) {
+            addRecord(tp, i);
+        }
+        await().atMost(5, TimeUnit.SECONDS).until(() -> consumer.paused().contains(tp));
+
+        List<TbQueueMsg> msgs = pollRecords(3);
+        Assert.assertEquals(3, msgs.size());
+        await().atMost(5, TimeUnit.SECONDS).until(() -> consumer.paused().isEmpty());
+
+        addRecord(tp, 3);
+        Assert.assertEquals(1, pollRecords(1).size());
+    }
+
+    @Test
+    public void testAsyncCommitsAreSubmittedInOrderWithoutWakeup() {
+        template = createTemplate(100);
+        TopicPartition tp = subscribe(new TopicPartitionInfo(TOPIC, null, 0, true)).get(0);
+        int wakeupsAfterSubscribe = consumer.wakeups.get();
+
+        addRecord(tp, 0);
+        addRecord(tp, 1);
+        Assert.assertEquals(2, pollRecords(2).size());
+        template.commit();
+
+        addRecord(tp, 2);
+        addRecord(tp, 3);
+        Assert.assertEquals(2, pollRecords(2).size());
+        template.commit();
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> consumer.commits.size() == 2);
+        Assert.assertEquals(2, consumer.commits.get(0).get(tp).offset());
+        Assert.assertEquals(4, consumer.commits.get(1).get(tp).offset());
+        Assert.assertEquals(wakeupsAfterSubscribe, consumer.wakeups.get());
+    }
+
+    @Test
+    public void testResubscribeDropsBufferedRecordsOfRevokedTopics() {
+        template = createTemplate(100);
+        TopicPartitionInfo kept = new TopicPartitionInfo(TOPIC, null, 0, true);
+        TopicPartitionInfo revoked = new TopicPartitionInfo(TOPIC, null, 1, true);
+        List<TopicPartition> partitions = subscribe(kept, revoked);
+        TopicPartition keptTp = partitions.get(0);
+        TopicPartition revokedTp = partitions.get(1);
+
+        addRecord(keptTp, 0);
+        addRecord(revokedTp, 0);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> consumer.position(keptTp) == 1 && consumer.position(revokedTp) == 1);
+
+        template.subscribe(Collections.singleton(kept));
+        List<TbQueueMsg> msgs = pollRecords(1);
+        Assert.assertEquals(1, msgs.size());
+        Assert.assertEquals(keyOf(keptTp, 0), msgs.get(0).getKey());
+        Assert.assertTrue(template.poll(100).isEmpty());
+
+        template.commit();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> consumer.commits.size() == 1);
+        Assert.assertFalse(consumer.commits.get(0).containsKey(revokedTp));
+    }
+
+    private TbKafkaConsumerTemplate<TbQueueMsg> createTemplate(int maxBufferedRecords) {
+        return new TbKafkaConsumerTemplate<>(consumer, msg -> msg, "test-client", "test-group", TOPIC,
+                mock(TbQueueAdmin.class), null, true, maxBufferedRecords);
+    }
+
+    private List<TopicPartition> subscribe(TopicPartitionInfo... tpis) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (TopicPartitionInfo tpi : tpis) {
+            partitions.add(new TopicPartition(tpi.getFullTopicName(), 0));
+        }
+        consumer.updateBeginningOffsets(partitions.stream().collect(Collectors.toMap(tp -> tp, tp -> 0L)));
+        template.subscribe(Set.of(tpis));
+        // the subscription is applied by the fetcher thread
+        template.poll(10);
+        Set<String> topics = partitions.stream().map(TopicPartition::topic).collect(Collectors.toSet());
+        await().atMost(5, TimeUnit.SECONDS).until(() -> consumer.subscription().equals(topics));
+        consumer.rebalance(partitions);
+        return partitions;
+    }
+
+    private List<TbQueueMsg> pollRecords(int expected) {
+        List<TbQueueMsg> result = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (result.size() < expected && System.currentTimeMillis() < deadline) {
+            result.addAll(template.poll(100));
+        }
+        return result;
+    }
+
+    private void addRecord(TopicPartition tp, long offset) {
+        consumer.addRecord(new ConsumerRecord<>(tp.topic(), tp.partition(), offset, keyOf(tp, offset).toString(), new byte[0]));
+    }
+
+    private static UUID keyOf(TopicPartition tp, long offset) {
+        return new UUID(tp.topic().hashCode(), offset);
+    }
+
+    private static class TestConsumer extends MockConsumer<String, byte[]> {
+
+        private final List<Map<TopicPartition, OffsetAndMetadata>> commits = new CopyOnWriteArrayList<>();
+        private final AtomicInteger wakeups = new AtomicInteger();
+
+        TestConsumer() {
+            super(OffsetResetStrategy.EARLIEST);
+        }
+
+        @Override
+        public synchronized void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+            commits.add(offsets);
+            super.commitAsync(offsets, callback);
+        }
+
+        @Override
+        public synchronized void wakeup() {
+            wakeups.incrementAndGet();
+            super.wakeup();
+        }
+
+    }
+
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.usagestats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.ApiUsageRecordKey;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsProto;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultTbApiUsageReportClientTest {
+
+    private static final String TOPIC = "tb_usage_stats";
+
+    @Mock
+    private PartitionService partitionService;
+    @Mock
+    private SchedulerComponent scheduler;
+    @Mock
+    private TbQueueProducerProvider producerProvider;
+    @Mock
+    private TbQueueProducer<TbProtoQueueMsg<ToUsageStatsServiceMsg>> producer;
+
+    private DefaultTbApiUsageReportClient client;
+
+    @Before
+    public void setUp() {
+        when(producerProvider.getTbUsageStatsMsgProducer()).thenReturn(producer);
+        when(producer.getDefaultTopic()).thenReturn(TOPIC);
+        client = new DefaultTbApiUsageReportClient(partitionService, scheduler, producerProvider);
+        ReflectionTestUtils.setField(client, "enabled", true);
+        ReflectionTestUtils.setField(client, "enabledPerCustomer", true);
+        ReflectionTestUtils.setField(client, "interval", 10);
+        ReflectionTestUtils.setField(client, "packEnabled", true);
+        ReflectionTestUtils.setField(client, "packSize", 1024);
+        ReflectionTestUtils.invokeMethod(client, "init");
+    }
+
+    @Test
+    public void testStatsAreMergedPerPartition() {
+        TenantId tenantId1 = TenantId.fromUUID(UUID.randomUUID());
+        TenantId tenantId2 = TenantId.fromUUID(UUID.randomUUID());
+        CustomerId customerId = new CustomerId(UUID.randomUUID());
+        // all the owners are in the same partition except for the second tenant
+        mockPartition(TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID, 0);
+        mockPartition(tenantId1, tenantId1, 0);
+        mockPartition(tenantId1, customerId, 0);
+        mockPartition(tenantId2, tenantId2, 1);
+
+        for (int i = 0; i < 5; i++) {
+            client.report(tenantId1, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+        }
+        client.report(tenantId1, null, ApiUsageRecordKey.TRANSPORT_DP_COUNT, 10);
+        client.report(tenantId2, null, ApiUsageRecordKey.RE_EXEC_COUNT, 3);
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+
+        List<ToUsageStatsServiceMsg> msgs = captureMsgs(2);
+        Map<Integer, ToUsageStatsServiceMsg> msgsByPartition = msgs.stream()
+                .collect(Collectors.toMap(msg -> msg.getMsgsCount() == 0 ? 1 : 0, msg -> msg));
+
+        ToUsageStatsServiceMsg msg = msgsByPartition.get(0);
+        assertEquals(3, msg.getMsgsCount());
+        assertEquals(5, getValue(msg, TenantId.SYS_TENANT_ID, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT));
+        assertEquals(3, getValue(msg, TenantId.SYS_TENANT_ID, null, ApiUsageRecordKey.RE_EXEC_COUNT));
+        assertEquals(5, getValue(msg, tenantId1, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT));
+        assertEquals(10, getValue(msg, tenantId1, null, ApiUsageRecordKey.TRANSPORT_DP_COUNT));
+        assertEquals(5, getValue(msg, tenantId1, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT));
+        // a single owner is sent in the legacy format
+        assertEquals(3, getValue(msgsByPartition.get(1), tenantId2, null, ApiUsageRecordKey.RE_EXEC_COUNT));
+    }
+
+    @Test
+    public void testEachOwnerIsSentInLegacyFormatIfPackingIsDisabled() {
+        ReflectionTestUtils.setField(client, "packEnabled", false);
+        TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+        CustomerId customerId = new CustomerId(UUID.randomUUID());
+        mockPartition(TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID, 0);
+        mockPartition(tenantId, tenantId, 0);
+        mockPartition(tenantId, customerId, 0);
+
+        client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT, 4);
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+
+        List<ToUsageStatsServiceMsg> msgs = captureMsgs(3);
+        for (ToUsageStatsServiceMsg msg : msgs) {
+            assertEquals(0, msg.getMsgsCount());
+            assertEquals(1, msg.getValuesCount());
+        }
+        assertEquals(4, msgs.stream().mapToLong(msg -> getValue(msg, tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT)).sum());
+        assertEquals(4, msgs.stream().mapToLong(msg -> getValue(msg, tenantId, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT)).sum());
+    }
+
+    @Test
+    public void testValuesAddedToEvictedStatsAreReported() {
+        TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+        mockPartition(TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID, 0);
+        mockPartition(tenantId, tenantId, 0);
+
+        client.report(tenantId, null, ApiUsageRecordKey.JS_EXEC_COUNT);
+        for (int i = 0; i < 7; i++) {
+            ReflectionTestUtils.invokeMethod(client, "reportStats");
+        }
+        captureMsgs(1);
+        Map<?, ?> tenantStats = (Map<?, ?>) ReflectionTestUtils.getField(client, "tenantStats");
+        List<?> evictedStats = (List<?>) ReflectionTestUtils.getField(client, "evictedStats");
+        assertEquals(0, tenantStats.size());
+        assertEquals(1, evictedStats.size());
+
+        // a reporting thread that fetched the stats before the eviction
+        LongAdder[] values = (LongAdder[]) ReflectionTestUtils.getField(evictedStats.get(0), "values");
+        values[ApiUsageRecordKey.JS_EXEC_COUNT.ordinal()].add(5);
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+        List<ToUsageStatsServiceMsg> msgs = captureMsgs(2);
+        assertEquals(5, getValue(msgs.get(1), tenantId, null, ApiUsageRecordKey.JS_EXEC_COUNT));
+
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+        assertEquals(1, evictedStats.size());
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+        assertEquals(0, evictedStats.size());
+    }
+
+    @Test
+    public void testStatsAreResetAfterReport() {
+        TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+        mockPartition(TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID, 0);
+        mockPartition(tenantId, tenantId, 0);
+
+        client.report(tenantId, null, ApiUsageRecordKey.JS_EXEC_COUNT);
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+        captureMsgs(1);
+
+        client.report(tenantId, null, ApiUsageRecordKey.JS_EXEC_COUNT, 2);
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+        List<ToUsageStatsServiceMsg> msgs = captureMsgs(2);
+        assertEquals(2, getValue(msgs.get(1), tenantId, null, ApiUsageRecordKey.JS_EXEC_COUNT));
+    }
+
+    @Test
+    public void testNoIncrementsAreLostWhileReporting() throws Exception {
+        TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+        mockPartition(TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID, 0);
+        mockPartition(tenantId, tenantId, 0);
+        int threads = 8;
+        int reportsPerThread = 100_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < reportsPerThread; i++) {
+                        client.report(tenantId, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            while (!futures.stream().allMatch(Future::isDone)) {
+                ReflectionTestUtils.invokeMethod(client, "reportStats");
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+
+        List<ToUsageStatsServiceMsg> msgs = captureAllMsgs();
+        assertEquals((long) threads * reportsPerThread, msgs.stream()
+                .mapToLong(msg -> getValue(msg, tenantId, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT)).sum());
+        assertEquals((long) threads * reportsPerThread, msgs.stream()
+                .mapToLong(msg -> getValue(msg, TenantId.SYS_TENANT_ID, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT)).sum());
+    }
+
+    @Test
+    public void testReportDoesNotAllocateForKnownOwner() {
+        TenantId tenantId = TenantId.fromUUID(UUID.randomUUID());
+        CustomerId customerId = new CustomerId(UUID.randomUUID());
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int iterations = 1_000_000;
+        for (int i = 0; i < iterations; i++) {
+            client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+        }
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // the previous implementation allocated an owner id on every call
+        assertThat(allocated).as("bytes allocated by %s report calls", iterations).isLessThan(iterations / 10);
+    }
+
+    private void mockPartition(TenantId tenantId, EntityId entityId, int partition) {
+        when(partitionService.resolve(ServiceType.TB_CORE, tenantId, entityId))
+                .thenReturn(new TopicPartitionInfo("tb_core", null, partition, true));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ToUsageStatsServiceMsg> captureMsgs(int count) {
+        ArgumentCaptor<TbProtoQueueMsg<ToUsageStatsServiceMsg>> captor = ArgumentCaptor.forClass(TbProtoQueueMsg.class);
+        verify(producer, times(count)).send(any(), captor.capture(), isNull());
+        List<ToUsageStatsServiceMsg> msgs = new ArrayList<>();
+        captor.getAllValues().forEach(msg -> msgs.add(msg.getValue()));
+        return msgs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ToUsageStatsServiceMsg> captureAllMsgs() {
+        ArgumentCaptor<TbProtoQueueMsg<ToUsageStatsServiceMsg>> captor = ArgumentCaptor.forClass(TbProtoQueueMsg.class);
+        verify(producer, atLeastOnce()).send(any(), captor.capture(), isNull());
+        List<ToUsageStatsServiceMsg> msgs = new ArrayList<>();
+        captor.getAllValues().forEach(msg -> msgs.add(msg.getValue()));
+        return msgs;
+    }
+
+    private static long getValue(ToUsageStatsServiceMsg msg, TenantId tenantId, CustomerId customerId, ApiUsageRecordKey key) {
+        if (msg.getMsgsCount() == 0) {
+            UsageStatsProto legacy = UsageStatsProto.newBuilder()
+                    .setTenantIdMSB(msg.getTenantIdMSB())
+                    .setTenantIdLSB(msg.getTenantIdLSB())
+                    .setCustomerIdMSB(msg.getCustomerIdMSB())
+                    .setCustomerIdLSB(msg.getCustomerIdLSB())
+                    .addAllValues(msg.getValuesList())
+                    .build();
+            msg = msg.toBuilder().addMsgs(legacy).build();
+        }
+        for (UsageStatsProto stats : msg.getMsgsList()) {
+            if (stats.getTenantIdMSB() == tenantId.getId().getMostSignificantBits()
+                    && stats.getTenantIdLSB() == tenantId.getId().getLeastSignificantBits()
+                    && stats.getCustomerIdMSB() == (customerId != null ? customerId.getId().getMostSignificantBits() : 0)) {
+                return stats.getValuesList().stream().filter(kv -> kv.getKey().equals(key.name()))
+                        .mapToLong(kv -> kv.getValue()).sum();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Packs invocations of the same script into a single queue request.
+ * A batch is sent when it reaches the current size limit or when the max delay passes after its first invocation.
+ * The size limit is halved when the queue round trip exceeds the target latency and grows by one while it stays below.
+ */
+@Slf4j
+class RemoteJsInvokeBatcher {
+
+    private final Function<JsInvokeProtos.RemoteJsRequest, ListenableFuture<JsInvokeProtos.RemoteJsResponse>> sender;
+    private final ScheduledExecutorService scheduler;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final long targetLatencyMs;
+
+    private final ConcurrentMap<String, PendingBatch> batches = new ConcurrentHashMap<>();
+    private final AtomicInteger batchSizeLimit;
+
+    private final AtomicInteger sentBatches = new AtomicInteger();
+    private final AtomicInteger sentInvokes = new AtomicInteger();
+    private final AtomicLong totalRoundTripMs = new AtomicLong();
+    private final AtomicLong maxRoundTripMs = new AtomicLong();
+
+    RemoteJsInvokeBatcher(Function<JsInvokeProtos.RemoteJsRequest, ListenableFuture<JsInvokeProtos.RemoteJsResponse>> sender,
+                          ScheduledExecutorService scheduler, int maxBatchSize, long maxDelayMs, long targetLatencyMs) {
+        this.sender = sender;
+        this.scheduler = scheduler;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayMs = maxDelayMs;
+        this.targetLatencyMs = targetLatencyMs;
+        this.batchSizeLimit = new AtomicInteger(this.maxBatchSize);
+    }
+
+    ListenableFuture<JsInvokeProtos.JsInvokeResponse> invoke(JsInvokeProtos.JsInvokeRequest request) {
+        SettableFuture<JsInvokeProtos.JsInvokeResponse> future = SettableFuture.create();
+        PendingInvoke invoke = new PendingInvoke(request, future);
+        String scriptHash = request.getScriptHash();
+        PendingBatch[] fullBatch = new PendingBatch[1];
+        batches.compute(scriptHash, (hash, batch) -> {
+            if (batch == null) {
+                batch = new PendingBatch();
+                if (maxDelayMs > 0 && batchSizeLimit.get() > 1) {
+                    PendingBatch scheduled = batch;
+                    scheduler.schedule(() -> flush(hash, scheduled), maxDelayMs, TimeUnit.MILLISECONDS);
+                }
+            }
+            batch.invokes.add(invoke);
+            if (batch.invokes.size() >= batchSizeLimit.get() || maxDelayMs <= 0) {
+                fullBatch[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (fullBatch[0] != null) {
+            send(fullBatch[0]);
+        }
+        return future;
+    }
+
+    int getBatchSizeLimit() {
+        return batchSizeLimit.get();
+    }
+
+    void printStats(String statsName) {
+        int batchesCount = sentBatches.getAndSet(0);
+        int invokesCount = sentInvokes.getAndSet(0);
+        long roundTripMs = totalRoundTripMs.getAndSet(0);
+        long maxRoundTrip = maxRoundTripMs.getAndSet(0);
+        if (batchesCount > 0) {
+            log.info("{}: batches [{}] invokes [{}] avg batch size [{}] batch size limit [{}] avg round trip [{}]ms max round trip [{}]ms",
+                    statsName, batchesCount, invokesCount, invokesCount / batchesCount, batchSizeLimit.get(),
+                    roundTripMs / batchesCount, maxRoundTrip);
+        }
+    }
+
+    void stop() {
+        batches.values().forEach(batch -> batch.invokes.forEach(invoke ->
+                invoke.future.setException(new IllegalStateException("JS invoke service is stopped"))));
+        batches.clear();
+    }
+
+    private void flush(String scriptHash, PendingBatch batch) {
+        if (batches.remove(scriptHash, batch)) {
+            send(batch);
+        }
+    }
+
+    private void send(PendingBatch batch) {
+        List<PendingInvoke> invokes = batch.invokes;
+        JsInvokeProtos.JsInvokeBatchRequest.Builder batchRequest = JsInvokeProtos.JsInvokeBatchRequest.newBuilder();
+        invokes.forEach(invoke -> batchRequest.addInvokeRequests(invoke.request));
+        JsInvokeProtos.RemoteJsRequest request = JsInvokeProtos.RemoteJsRequest.newBuilder()
+                .setInvokeBatchRequest(batchRequest)
+                .build();
+        long startTs = System.currentTimeMillis();
+        ListenableFuture<JsInvokeProtos.RemoteJsResponse> future;
+        try {
+            future = sender.apply(request);
+        } catch (Exception e) {
+            future = Futures.immediateFailedFuture(e);
+        }
+        Futures.addCallback(future, new FutureCallback<>() {
+            @Override
+            public void onSuccess(JsInvokeProtos.RemoteJsResponse response) {
+                onBatchProcessed(invokes.size(), System.currentTimeMillis() - startTs);
+                List<JsInvokeProtos.JsInvokeResponse> responses = response.getInvokeBatchResponse().getInvokeResponsesList();
+                if (responses.size() != invokes.size()) {
+                    onFailure(new RuntimeException("Batch response contains " + responses.size() + " results for " + invokes.size() + " invokes"));
+                    return;
+                }
+                for (int i = 0; i < invokes.size(); i++) {
+                    invokes.get(i).future.set(responses.get(i));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                invokes.forEach(invoke -> invoke.future.setException(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void onBatchProcessed(int batchSize, long roundTripMs) {
+        sentBatches.incrementAndGet();
+        sentInvokes.addAndGet(batchSize);
+        totalRoundTripMs.addAndGet(roundTripMs);
+        maxRoundTripMs.accumulateAndGet(roundTripMs, Math::max);
+        if (roundTripMs > targetLatencyMs) {
+            batchSizeLimit.updateAndGet(limit -> Math.max(1, limit / 2));
+        } else {
+            batchSizeLimit.updateAndGet(limit -> Math.min(maxBatchSize, limit + 1));
+        }
+    }
+
+    private static class PendingBatch {
+        private final List<PendingInvoke> invokes = new ArrayList<>();
+    }
+
+    private static class PendingInvoke {
+        private final JsInvokeProtos.JsInvokeRequest request;
+        private final SettableFuture<JsInvokeProtos.JsInvokeResponse> future;
+
+        private PendingInvoke(JsInvokeProtos.JsInvokeRequest request, SettableFuture<JsInvokeProtos.JsInvokeResponse> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+}
@@ -31,6 +31,8 @@ import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.script.api.TbScriptException;
 import org.thingsboard.script.api.js.AbstractJsInvokeService;
 import org.thingsboard.script.api.js.JsScriptInfo;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.stats.StatsType;
 import org.thingsboard.server.common.stats.TbApiUsageReportClient;
 import org.thingsboard.server.common.stats.TbApiUsageStateClient;
 import org.thingsboard.server.gen.js.JsInvokeProtos;
@@ -47,6 +49,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
@@ -80,6 +83,18 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     @Value("${js.remote.stats.enabled:false}")
     private boolean statsEnabled;
 
+    @Value("${js.remote.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${js.remote.batch.max_size:100}")
+    private int batchMaxSize;
+
+    @Value("${js.remote.batch.max_delay_ms:5}")
+    private long batchMaxDelayMs;
+
+    @Value("${js.remote.batch.target_latency_ms:100}")
+    private long batchTargetLatencyMs;
+
     private final ExecutorService callbackExecutor = Executors.newFixedThreadPool(
             Runtime.getRuntime().availableProcessors(), ThingsBoardThreadFactory.forName("js-executor-remote-callback"));
 
@@ -100,6 +115,9 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     @Scheduled(fixedDelayString = "${js.remote.stats.print_interval_ms}")
     public void printStats() {
         super.printStats();
+        if (isStatsEnabled() && invokeBatcher != null) {
+            invokeBatcher.printStats(getStatsName());
+        }
     }
 
     @Autowired
@@ -108,15 +126,37 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     protected final Map<String, String> scriptHashToBodysMap = new ConcurrentHashMap<>();
     private final Lock scriptsLock = new ReentrantLock();
 
+    private ScheduledExecutorService batchScheduler;
+    private RemoteJsInvokeBatcher invokeBatcher;
+
+    @Autowired(required = false)
+    private StatsFactory statsFactory;
+
     @PostConstruct
     public void init() {
         super.init();
+        if (statsFactory != null) {
+            requestTemplate.initStats(statsFactory, StatsType.JS_INVOKE.getName() + ".requests");
+        }
         requestTemplate.init();
+        if (batchEnabled) {
+            batchScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("js-executor-remote-batch"));
+            invokeBatcher = new RemoteJsInvokeBatcher(
+                    request -> Futures.transform(requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), request)),
+                            TbProtoQueueMsg::getValue, MoreExecutors.directExecutor()),
+                    batchScheduler, batchMaxSize, batchMaxDelayMs, batchTargetLatencyMs);
+        }
     }
 
     @PreDestroy
     public void destroy() {
         super.stop();
+        if (invokeBatcher != null) {
+            invokeBatcher.stop();
+        }
+        if (batchScheduler != null) {
+            batchScheduler.shutdownNow();
+        }
         if (requestTemplate != null) {
             requestTemplate.stop();
         }
@@ -162,6 +202,18 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
             return Futures.immediateFailedFuture(new RuntimeException("No script body found for script hash [" + scriptHash + "] (script id: [" + scriptId + "])"));
         }
 
+        if (invokeBatcher != null) {
+            UUID requestKey = UUID.randomUUID();
+            ListenableFuture<JsInvokeProtos.JsInvokeResponse> future = invokeBatcher.invoke(buildJsInvokeRequest(jsInfo, args, false, null).getInvokeRequest());
+            return Futures.transformAsync(future, invokeResult -> {
+                if (invokeResult.getSuccess()) {
+                    return Futures.immediateFuture(invokeResult.getResult());
+                } else {
+                    return handleInvokeError(requestKey, scriptId, jsInfo, invokeResult.getErrorCode(), invokeResult.getErrorDetails(), scriptBody, args);
+                }
+            }, callbackExecutor);
+        }
+
         JsInvokeProtos.RemoteJsRequest jsRequestWrapper = buildJsInvokeRequest(jsInfo, args, false, null);
 
         StopWatch stopWatch;
@@ -0,0 +1,195 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RemoteJsInvokeBatcherTest {
+
+    static final long MAX_DELAY_MS = 1000;
+    static final long TARGET_LATENCY_MS = 50;
+
+    ScheduledExecutorService scheduler;
+    List<Runnable> scheduledFlushes;
+    List<JsInvokeProtos.RemoteJsRequest> sentRequests;
+    List<SettableFuture<JsInvokeProtos.RemoteJsResponse>> sentFutures;
+
+    @Before
+    public void setUp() {
+        scheduledFlushes = new ArrayList<>();
+        sentRequests = new ArrayList<>();
+        sentFutures = new ArrayList<>();
+        // the delayed flushes are run by the test instead of the timer
+        scheduler = mock(ScheduledExecutorService.class);
+        willAnswer(invocation -> {
+            scheduledFlushes.add(invocation.getArgument(0));
+            return null;
+        }).given(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void givenBatchReachesSizeLimit_whenInvoke_thenBatchIsSent() throws Exception {
+        RemoteJsInvokeBatcher batcher = createBatcher(3);
+
+        List<ListenableFuture<JsInvokeProtos.JsInvokeResponse>> futures = invoke(batcher, "hash", 2);
+        assertThat(sentRequests).isEmpty();
+        futures.addAll(invoke(batcher, "hash", 1));
+
+        assertThat(sentRequests).hasSize(1);
+        assertThat(sentRequests.get(0).getInvokeBatchRequest().getInvokeRequestsList())
+                .extracting(JsInvokeProtos.JsInvokeRequest::getFunctionName)
+                .containsExactly("f0", "f1", "f0");
+        verify(scheduler, times(1)).schedule(any(Runnable.class), eq(MAX_DELAY_MS), eq(TimeUnit.MILLISECONDS));
+
+        // the delayed flush of the batch that is already sent does nothing
+        scheduledFlushes.forEach(Runnable::run);
+        assertThat(sentRequests).hasSize(1);
+
+        respond(0, "a", "b", "c");
+        assertThat(futures.get(0).get().getResult()).isEqualTo("a");
+        assertThat(futures.get(1).get().getResult()).isEqualTo("b");
+        assertThat(futures.get(2).get().getResult()).isEqualTo("c");
+    }
+
+    @Test
+    public void givenBatchBelowSizeLimit_whenMaxDelayPasses_thenBatchIsSent() throws Exception {
+        RemoteJsInvokeBatcher batcher = createBatcher(10);
+
+        List<ListenableFuture<JsInvokeProtos.JsInvokeResponse>> futures = invoke(batcher, "hash", 2);
+        List<ListenableFuture<JsInvokeProtos.JsInvokeResponse>> otherScriptFutures = invoke(batcher, "other", 1);
+        assertThat(sentRequests).isEmpty();
+        assertThat(scheduledFlushes).hasSize(2);
+
+        scheduledFlushes.forEach(Runnable::run);
+
+        assertThat(sentRequests).hasSize(2);
+        assertThat(sentRequests.get(0).getInvokeBatchRequest().getInvokeRequestsCount()).isEqualTo(2);
+        assertThat(sentRequests.get(1).getInvokeBatchRequest().getInvokeRequestsCount()).isEqualTo(1);
+        respond(0, "a", "b");
+        respond(1, "c");
+        assertThat(futures.get(0).get().getResult()).isEqualTo("a");
+        assertThat(futures.get(1).get().getResult()).isEqualTo("b");
+        assertThat(otherScriptFutures.get(0).get().getResult()).isEqualTo("c");
+    }
+
+    @Test
+    public void givenSlowAndFastRoundTrips_whenBatchProcessed_thenSizeLimitIsAdapted() throws Exception {
+        RemoteJsInvokeBatcher batcher = createBatcher(4);
+        assertThat(batcher.getBatchSizeLimit()).isEqualTo(4);
+
+        invoke(batcher, "hash", 4);
+        Thread.sleep(TARGET_LATENCY_MS * 2);
+        respond(0, "a", "b", "c", "d");
+        assertThat(batcher.getBatchSizeLimit()).isEqualTo(2);
+
+        invoke(batcher, "hash", 2);
+        assertThat(sentRequests).hasSize(2);
+        respond(1, "a", "b");
+        assertThat(batcher.getBatchSizeLimit()).isEqualTo(3);
+
+        invoke(batcher, "hash", 3);
+        respond(2, "a", "b", "c");
+        invoke(batcher, "hash", 4);
+        respond(3, "a", "b", "c", "d");
+        // the limit does not grow above the max batch size
+        assertThat(batcher.getBatchSizeLimit()).isEqualTo(4);
+    }
+
+    @Test
+    public void givenSizeLimitOfOne_whenInvoke_thenRequestIsSentWithoutDelay() {
+        RemoteJsInvokeBatcher batcher = createBatcher(1);
+
+        invoke(batcher, "hash", 2);
+
+        assertThat(sentRequests).hasSize(2);
+        assertThat(scheduledFlushes).isEmpty();
+    }
+
+    @Test
+    public void givenResponseSizeMismatch_whenBatchProcessed_thenAllInvokesFail() {
+        RemoteJsInvokeBatcher batcher = createBatcher(2);
+        List<ListenableFuture<JsInvokeProtos.JsInvokeResponse>> futures = invoke(batcher, "hash", 2);
+
+        respond(0, "a");
+
+        futures.forEach(future -> assertThatThrownBy(future::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("Batch response contains 1 results for 2 invokes"));
+    }
+
+    @Test
+    public void givenSendFailure_whenBatchProcessed_thenAllInvokesFail() {
+        RemoteJsInvokeBatcher batcher = createBatcher(2);
+        List<ListenableFuture<JsInvokeProtos.JsInvokeResponse>> futures = invoke(batcher, "hash", 2);
+
+        sentFutures.get(0).setException(new RuntimeException("Queue is unavailable"));
+
+        futures.forEach(future -> assertThatThrownBy(future::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("Queue is unavailable"));
+    }
+
+    private RemoteJsInvokeBatcher createBatcher(int maxBatchSize) {
+        return new RemoteJsInvokeBatcher(request -> {
+            SettableFuture<JsInvokeProtos.RemoteJsResponse> future = SettableFuture.create();
+            sentRequests.add(request);
+            sentFutures.add(future);
+            return future;
+        }, scheduler, maxBatchSize, MAX_DELAY_MS, TARGET_LATENCY_MS);
+    }
+
+    private List<ListenableFuture<JsInvokeProtos.JsInvokeResponse>> invoke(RemoteJsInvokeBatcher batcher, String scriptHash, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> batcher.invoke(JsInvokeProtos.JsInvokeRequest.newBuilder()
+                        .setScriptHash(scriptHash)
+                        .setFunctionName("f" + i)
+                        .build()))
+                .collect(Collectors.toList());
+    }
+
+    private void respond(int batchIdx, String... results) {
+        JsInvokeProtos.JsInvokeBatchResponse.Builder batchResponse = JsInvokeProtos.JsInvokeBatchResponse.newBuilder();
+        for (String result : results) {
+            batchResponse.addInvokeResponses(JsInvokeProtos.JsInvokeResponse.newBuilder().setSuccess(true).setResult(result));
+        }
+        sentFutures.get(batchIdx).set(JsInvokeProtos.RemoteJsResponse.newBuilder()
+                .setInvokeBatchResponse(batchResponse)
+                .build());
+    }
+
+}
@@ -29,6 +29,9 @@ import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.stats.TbApiUsageReportClient;
 import org.thingsboard.server.common.stats.TbApiUsageStateClient;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -155,8 +158,7 @@ public abstract class AbstractScriptInvokeService implements ScriptInvokeService
                 var task = doInvokeFunction(scriptId, args);
 
                 var resultFuture = Futures.transformAsync(task.getResultFuture(), output -> {
-                    String result = JacksonUtil.toString(output);
-                    if (resultSizeExceeded(result)) {
+                    if (resultSizeExceeded(output)) {
                         throw new TbScriptException(scriptId, TbScriptException.ErrorCode.OTHER, null, new RuntimeException(
                                 format("Script invocation result exceeds maximum allowed size of %s symbols", getMaxResultSize())
                         ));
@@ -267,19 +269,87 @@ public abstract class AbstractScriptInvokeService implements ScriptInvokeService
         for (Object arg : args) {
             if (arg instanceof CharSequence) {
                 totalArgsSize += ((CharSequence) arg).length();
-            } else {
-                var str = JacksonUtil.toString(arg);
-                if (str != null) {
-                    totalArgsSize += str.length();
-                }
+            } else if (arg != null) {
+                totalArgsSize += estimateJsonSize(arg);
             }
         }
         return totalArgsSize > getMaxTotalArgsSize();
     }
 
-    private boolean resultSizeExceeded(String result) {
+    private boolean resultSizeExceeded(Object result) {
         if (getMaxResultSize() <= 0) return false;
-        return result != null && result.length() > getMaxResultSize();
+        return result != null && estimateJsonSize(result) > getMaxResultSize();
+    }
+
+    /*
+     * Calculates the length of the JSON representation of the value without serializing it.
+     * Pre-parsed TBEL arguments and results are plain maps and collections, so walking them is much cheaper
+     * than building the JSON string for every invocation. The result matches JacksonUtil.toString(value).length(),
+     * values of other types are serialized.
+     */
+    static long estimateJsonSize(Object value) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof CharSequence) {
+            return escapedLength((CharSequence) value) + 2;
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte || value instanceof BigInteger || value instanceof BigDecimal) {
+            return value.toString().length();
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            // non-finite numbers are quoted
+            return value.toString().length() + (Double.isFinite(d) ? 0 : 2);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long size = 2 + Math.max(0, map.size() - 1);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Object key = entry.getKey();
+                if (!(key instanceof CharSequence || key instanceof Number || key instanceof UUID)) {
+                    return serializedLength(value);
+                }
+                size += escapedLength(key.toString()) + 3 + estimateJsonSize(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            long size = 2 + Math.max(0, collection.size() - 1);
+            for (Object element : collection) {
+                size += estimateJsonSize(element);
+            }
+            return size;
+        } else {
+            return serializedLength(value);
+        }
+    }
+
+    private static long serializedLength(Object value) {
+        String str = JacksonUtil.toString(value);
+        return str != null ? str.length() : 0;
+    }
+
+    // matches the default Jackson escaping: quotes, backslashes and control characters
+    private static long escapedLength(CharSequence str) {
+        int length = str.length();
+        long size = length;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                size++;
+            } else if (c < 0x20) {
+                switch (c) {
+                    case '\b':
+                    case '\t':
+                    case '\n':
+                    case '\f':
+                    case '\r':
+                        size++;
+                        break;
+                    default:
+                        size += 5;
+                }
+            }
+        }
+        return size;
     }
 
     private <T> ListenableFuture<T> error(String message) {
@@ -30,7 +30,7 @@ public class TbelScript {
         if (args == null || args.length != argNames.length) {
             throw new IllegalArgumentException("Invalid number of argument values");
         }
-        var result = new HashMap<>();
+        var result = new HashMap<>(argNames.length * 2);
         for (int i = 0; i < argNames.length; i++) {
             result.put(argNames[i], args[i]);
         }
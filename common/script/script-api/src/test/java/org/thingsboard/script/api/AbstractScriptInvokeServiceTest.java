@@ -0,0 +1,112 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.script.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.common.util.JacksonUtil;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class AbstractScriptInvokeServiceTest {
+
+    @Test
+    public void testEstimatedSizeOfScalarsMatchesSerializedLength() {
+        assertSizeMatches("");
+        assertSizeMatches("plain value");
+        assertSizeMatches("unicode: текст 😀");
+        assertSizeMatches(42);
+        assertSizeMatches(-42L);
+        assertSizeMatches((short) 7);
+        assertSizeMatches((byte) -1);
+        assertSizeMatches(3.14);
+        assertSizeMatches(1.0E20);
+        assertSizeMatches(2.5f);
+        assertSizeMatches(Double.NaN);
+        assertSizeMatches(Double.POSITIVE_INFINITY);
+        assertSizeMatches(new BigInteger("123456789012345678901234567890"));
+        assertSizeMatches(new BigDecimal("1234.5678"));
+        assertSizeMatches(true);
+        assertSizeMatches(false);
+    }
+
+    @Test
+    public void testEstimatedSizeOfEscapedStringsMatchesSerializedLength() {
+        assertSizeMatches("quotes \"inside\"");
+        assertSizeMatches("back\\slash");
+        assertSizeMatches("tab\tnew line\ncarriage return\rform feed\fbackspace\b");
+        assertSizeMatches("control \u0001\u0002\u001f chars");
+        assertSizeMatches("not escaped: / \u007f");
+    }
+
+    @Test
+    public void testEstimatedSizeOfMapsAndCollectionsMatchesSerializedLength() {
+        assertSizeMatches(Collections.emptyMap());
+        assertSizeMatches(Collections.emptyList());
+        assertSizeMatches(Arrays.asList(1, "two", null, 4.5, true));
+
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("temperature", 23.5);
+        nested.put("name", "sensor \"A\"\n");
+        nested.put("nullValue", null);
+        nested.put("list", List.of(Map.of("a", 1), List.of(), "x"));
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("msg", nested);
+        msg.put("metadata", Map.of("deviceName", "Device\t1", "ts", "1666000000000"));
+        msg.put("msgType", "POST_TELEMETRY_REQUEST");
+        assertSizeMatches(msg);
+
+        List<Object> list = new ArrayList<>();
+        list.add(msg);
+        list.add(Collections.singletonMap("k\"ey", "v"));
+        assertSizeMatches(list);
+    }
+
+    @Test
+    public void testEstimatedSizeOfMapsWithNonStringKeysMatchesSerializedLength() {
+        Map<Object, Object> map = new HashMap<>();
+        map.put(1, "one");
+        map.put(2.5, "two and a half");
+        map.put(UUID.randomUUID(), "uuid");
+        assertSizeMatches(map);
+
+        Map<Object, Object> enumKeys = new HashMap<>();
+        enumKeys.put(Thread.State.NEW, 1);
+        enumKeys.put(true, 2);
+        assertSizeMatches(enumKeys);
+    }
+
+    @Test
+    public void testEstimatedSizeOfOtherObjectsMatchesSerializedLength() {
+        assertSizeMatches(new int[]{1, 2, 3});
+        assertSizeMatches(new String[]{"a\"", "b"});
+        assertSizeMatches(JacksonUtil.toJsonNode("{\"a\":[1,2,{\"b\":\"c\\n\"}]}"));
+    }
+
+    private static void assertSizeMatches(Object value) {
+        Assert.assertEquals(JacksonUtil.toString(value).length(), AbstractScriptInvokeService.estimateJsonSize(value));
+    }
+
+}
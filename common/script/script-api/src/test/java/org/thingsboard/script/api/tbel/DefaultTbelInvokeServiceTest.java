@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.script.api.tbel;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.script.api.ScriptType;
+import org.thingsboard.server.common.data.id.TenantId;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class DefaultTbelInvokeServiceTest {
+
+    private DefaultTbelInvokeService invokeService;
+
+    @Before
+    public void before() {
+        invokeService = new DefaultTbelInvokeService(Optional.empty(), Optional.empty());
+        ReflectionTestUtils.setField(invokeService, "maxTotalArgsSize", 1000L);
+        ReflectionTestUtils.setField(invokeService, "maxResultSize", 1000L);
+        ReflectionTestUtils.setField(invokeService, "maxScriptBodySize", 1000L);
+        ReflectionTestUtils.setField(invokeService, "maxErrors", 3);
+        ReflectionTestUtils.setField(invokeService, "maxBlackListDurationSec", 60);
+        ReflectionTestUtils.setField(invokeService, "maxInvokeRequestsTimeout", 500L);
+        ReflectionTestUtils.setField(invokeService, "threadPoolSize", 4);
+        ReflectionTestUtils.setField(invokeService, "maxMemoryLimitMb", 1L);
+        ReflectionTestUtils.setField(invokeService, "compiledScriptsCacheSize", 100);
+        invokeService.init();
+    }
+
+    @After
+    public void after() {
+        invokeService.destroy();
+        invokeService.stop();
+    }
+
+    @Test
+    public void testPreParsedArgumentsArePassedToScript() throws Exception {
+        UUID scriptId = evalScript("return msg.temperature > 20 && metadata.deviceType == 'thermostat';");
+
+        Object result = invokeScript(scriptId, Map.of("temperature", 25), Map.of("deviceType", "thermostat"), "POST_TELEMETRY_REQUEST");
+
+        Assert.assertEquals(true, result);
+    }
+
+    @Test
+    public void testArgsSizeLimitAppliesToPreParsedArguments() throws Exception {
+        UUID scriptId = evalScript("return msg;");
+
+        ExecutionException e = Assert.assertThrows(ExecutionException.class,
+                () -> invokeScript(scriptId, Map.of("value", "x".repeat(1000)), Map.of(), "POST_TELEMETRY_REQUEST"));
+
+        Assert.assertTrue(e.getCause().getMessage().contains("maximum allowed total args size"));
+    }
+
+    @Test
+    public void testStoppedInvocationDoesNotStopNextInvocation() throws Exception {
+        UUID scriptId = evalScript("var i = 0; while (msg.loop) { i = i + 1; } return i;");
+
+        ExecutionException e = Assert.assertThrows(ExecutionException.class,
+                () -> invokeScript(scriptId, Map.of("loop", true), Map.of(), "POST_TELEMETRY_REQUEST"));
+        Assert.assertTrue(e.getCause() instanceof TimeoutException);
+
+        Assert.assertEquals(0, invokeScript(scriptId, Map.of("loop", false), Map.of(), "POST_TELEMETRY_REQUEST"));
+    }
+
+    @Test
+    public void testMemoryLimitAppliesToEachInvocation() throws Exception {
+        UUID scriptId = evalScript("var list = []; var i = 0; while (i < msg.count) { list.add(i); i++; } return list.size();");
+
+        // each invocation stays far below the 1 MB limit, all of them together would not
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(2000, invokeScript(scriptId, Map.of("count", 2000), Map.of(), "POST_TELEMETRY_REQUEST"));
+        }
+    }
+
+    private UUID evalScript(String scriptBody) throws Exception {
+        return invokeService.eval(TenantId.SYS_TENANT_ID, ScriptType.RULE_NODE_SCRIPT, scriptBody, "msg", "metadata", "msgType")
+                .get(30, TimeUnit.SECONDS);
+    }
+
+    private Object invokeScript(UUID scriptId, Object... args) throws Exception {
+        return invokeService.invokeScript(TenantId.SYS_TENANT_ID, null, scriptId, args).get(30, TimeUnit.SECONDS);
+    }
+
+}
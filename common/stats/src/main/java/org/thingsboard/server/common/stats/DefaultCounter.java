@@ -45,4 +45,10 @@ public class DefaultCounter {
         aiCounter.addAndGet(delta);
         micrometerCounter.increment(delta);
     }
+
+    public void add(long delta) {
+        // the meter gets the exact value, the local counter saturates
+        aiCounter.accumulateAndGet((int) Math.min(delta, Integer.MAX_VALUE), (current, d) -> (int) Math.min((long) current + d, Integer.MAX_VALUE));
+        micrometerCounter.increment(delta);
+    }
 }
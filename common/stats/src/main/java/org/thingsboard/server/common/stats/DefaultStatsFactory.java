@@ -102,6 +102,11 @@ public class DefaultStatsFactory implements StatsFactory {
         return timerBuilder.register(meterRegistry);
     }
 
+    @Override
+    public void removeMeters(String key, String... tags) {
+        meterRegistry.find(key).tags(tags).meters().forEach(meterRegistry::remove);
+    }
+
     private static class StubCounter implements Counter {
         @Override
         public void increment(double amount) {
@@ -27,4 +27,6 @@ public interface StatsFactory {
     MessagesStats createMessagesStats(String key);
 
     Timer createTimer(String key, String... tags);
+
+    void removeMeters(String key, String... tags);
 }
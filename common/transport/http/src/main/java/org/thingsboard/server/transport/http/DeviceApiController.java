@@ -15,10 +15,13 @@
  */
 package org.thingsboard.server.transport.http;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import lombok.Data;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,6 +39,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.DeviceTransportType;
 import org.thingsboard.server.common.data.TbTransportService;
@@ -65,9 +69,19 @@ import org.thingsboard.server.gen.transport.TransportProtos.ToServerRpcResponseM
 import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceTokenRequestMsg;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 
@@ -428,6 +442,82 @@ public class DeviceApiController implements TbTransportService {
         return responseWriter;
     }
 
+    @ApiOperation(value = "Post time-series data and attributes of multiple devices (postBatch)",
+            notes = "Post time-series data and/or client attributes on behalf of multiple devices in a single request. " +
+                    "The request payload is a newline delimited JSON (NDJSON). Each line contains the device access token " +
+                    "and optional 'telemetry' and 'attributes' payloads in the same formats as in the single device API calls. For example:" +
+                    MARKDOWN_CODE_BLOCK_START +
+                    "{\"token\":\"DEVICE_1_ACCESS_TOKEN\", \"telemetry\":{\"temperature\":26}}\n" +
+                    "{\"token\":\"DEVICE_2_ACCESS_TOKEN\", \"telemetry\":[{\"ts\":1634712287000,\"values\":{\"temperature\":26}}], \"attributes\":{\"firmware\":\"1.0\"}}" +
+                    MARKDOWN_CODE_BLOCK_END +
+                    "Credentials of each distinct token are validated once per request. " +
+                    "The result of each line is streamed back as soon as it is processed. " +
+                    "The response is NDJSON that contains the line index and the HTTP status code of the line processing. For example: " +
+                    MARKDOWN_CODE_BLOCK_START +
+                    "{\"index\":1,\"status\":401}\n{\"index\":0,\"status\":200}" +
+                    MARKDOWN_CODE_BLOCK_END,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @RequestMapping(value = "/batch", method = RequestMethod.POST, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public DeferredResult<ResponseEntity<ResponseBodyEmitter>> postBatch(HttpServletRequest request) {
+        DeferredResult<ResponseEntity<ResponseBodyEmitter>> responseWriter = new DeferredResult<>();
+        long maxPayloadSize = transportContext.getMaxBatchPayloadSize();
+        if (request.getContentLengthLong() > maxPayloadSize) {
+            responseWriter.setResult(new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE));
+            return responseWriter;
+        }
+        InputStream body;
+        try {
+            body = request.getInputStream();
+        } catch (IOException e) {
+            log.debug("Failed to read batch request: {}", e.getMessage());
+            responseWriter.setResult(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+            return responseWriter;
+        }
+        // the body is read and parsed on the transport executor, so the request thread is released right away
+        transportContext.getExecutor().execute(() -> responseWriter.setResult(processBatch(body, maxPayloadSize)));
+        return responseWriter;
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> processBatch(InputStream body, long maxPayloadSize) {
+        Map<String, List<BatchEntry>> entriesByToken = new LinkedHashMap<>();
+        List<Integer> malformedEntries = new ArrayList<>();
+        int entriesCount = 0;
+        // the body is read line by line and the read fails as soon as it exceeds the max payload size
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new BoundedInputStream(body, maxPayloadSize), StandardCharsets.UTF_8))) {
+            String line;
+            for (int i = 0; (line = reader.readLine()) != null; i++) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                if (++entriesCount > transportContext.getMaxBatchSize()) {
+                    return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+                }
+                try {
+                    JsonObject entry = new JsonParser().parse(line).getAsJsonObject();
+                    String token = entry.get("token").getAsString();
+                    entriesByToken.computeIfAbsent(token, t -> new ArrayList<>())
+                            .add(new BatchEntry(i, entry.get("telemetry"), entry.get("attributes")));
+                } catch (Exception e) {
+                    malformedEntries.add(i);
+                }
+            }
+        } catch (PayloadTooLargeException e) {
+            return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE);
+        } catch (IOException e) {
+            log.debug("Failed to read batch request: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        BatchResponseWriter responseWriter = new BatchResponseWriter(new ResponseBodyEmitter(transportContext.getDefaultTimeout()), entriesCount);
+        malformedEntries.forEach(index -> responseWriter.onResult(index, HttpStatus.BAD_REQUEST));
+        entriesByToken.forEach((token, entries) -> {
+            transportContext.getTransportService().process(DeviceTransportType.DEFAULT, ValidateDeviceTokenRequestMsg.newBuilder().setToken(token).build(),
+                    new BatchAuthCallback(transportContext, responseWriter, entries));
+        });
+        return new ResponseEntity<>(responseWriter.getEmitter(), HttpStatus.OK);
+    }
+
     private DeferredResult<ResponseEntity> getOtaPackageCallback(String deviceToken, String title, String version, int size, int chunk, OtaPackageType firmwareType) {
         DeferredResult<ResponseEntity> responseWriter = new DeferredResult<>();
         transportContext.getTransportService().process(DeviceTransportType.DEFAULT, ValidateDeviceTokenRequestMsg.newBuilder().setToken(deviceToken).build(),
@@ -470,6 +560,161 @@ public class DeviceApiController implements TbTransportService {
         }
     }
 
+    private static class BatchAuthCallback implements TransportServiceCallback<ValidateDeviceCredentialsResponse> {
+        private final TransportContext transportContext;
+        private final BatchResponseWriter responseWriter;
+        private final List<BatchEntry> entries;
+
+        BatchAuthCallback(TransportContext transportContext, BatchResponseWriter responseWriter, List<BatchEntry> entries) {
+            this.transportContext = transportContext;
+            this.responseWriter = responseWriter;
+            this.entries = entries;
+        }
+
+        @Override
+        public void onSuccess(ValidateDeviceCredentialsResponse msg) {
+            if (msg.hasDeviceInfo()) {
+                SessionInfoProto sessionInfo = SessionInfoCreator.create(msg, transportContext, UUID.randomUUID());
+                entries.forEach(entry -> process(sessionInfo, entry));
+            } else {
+                entries.forEach(entry -> responseWriter.onResult(entry.getIndex(), HttpStatus.UNAUTHORIZED));
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            log.warn("Failed to process request", e);
+            entries.forEach(entry -> responseWriter.onResult(entry.getIndex(), HttpStatus.INTERNAL_SERVER_ERROR));
+        }
+
+        private void process(SessionInfoProto sessionInfo, BatchEntry entry) {
+            TransportProtos.PostTelemetryMsg telemetryMsg;
+            TransportProtos.PostAttributeMsg attributesMsg;
+            try {
+                telemetryMsg = entry.getTelemetry() != null ? JsonConverter.convertToTelemetryProto(entry.getTelemetry()) : null;
+                attributesMsg = entry.getAttributes() != null ? JsonConverter.convertToAttributesProto(entry.getAttributes()) : null;
+            } catch (Exception e) {
+                log.debug("Failed to convert batch entry {}: {}", entry.getIndex(), e.getMessage());
+                responseWriter.onResult(entry.getIndex(), HttpStatus.BAD_REQUEST);
+                return;
+            }
+            if (telemetryMsg == null && attributesMsg == null) {
+                responseWriter.onResult(entry.getIndex(), HttpStatus.BAD_REQUEST);
+                return;
+            }
+            TransportService transportService = transportContext.getTransportService();
+            BatchEntryCallback callback = new BatchEntryCallback(responseWriter, entry.getIndex(), telemetryMsg != null && attributesMsg != null ? 2 : 1);
+            if (telemetryMsg != null) {
+                transportService.process(sessionInfo, telemetryMsg, callback);
+            }
+            if (attributesMsg != null) {
+                transportService.process(sessionInfo, attributesMsg, callback);
+            }
+        }
+    }
+
+    private static class BatchEntryCallback implements TransportServiceCallback<Void> {
+        private final BatchResponseWriter responseWriter;
+        private final int index;
+        private final AtomicInteger pending;
+        private volatile boolean failed;
+
+        BatchEntryCallback(BatchResponseWriter responseWriter, int index, int parts) {
+            this.responseWriter = responseWriter;
+            this.index = index;
+            this.pending = new AtomicInteger(parts);
+        }
+
+        @Override
+        public void onSuccess(Void msg) {
+            onDone();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            failed = true;
+            onDone();
+        }
+
+        private void onDone() {
+            if (pending.decrementAndGet() == 0) {
+                responseWriter.onResult(index, failed ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK);
+            }
+        }
+    }
+
+    private static class BatchResponseWriter {
+        @Getter
+        private final ResponseBodyEmitter emitter;
+        private int remaining;
+
+        BatchResponseWriter(ResponseBodyEmitter emitter, int entriesCount) {
+            this.emitter = emitter;
+            this.remaining = entriesCount;
+            if (entriesCount == 0) {
+                emitter.complete();
+            }
+        }
+
+        synchronized void onResult(int index, HttpStatus status) {
+            JsonObject result = new JsonObject();
+            result.addProperty("index", index);
+            result.addProperty("status", status.value());
+            try {
+                emitter.send(result + "\n", MediaType.APPLICATION_NDJSON);
+            } catch (Exception e) {
+                log.debug("Failed to send batch entry result: {}", e.getMessage());
+            }
+            if (--remaining == 0) {
+                emitter.complete();
+            }
+        }
+    }
+
+    @Data
+    private static class BatchEntry {
+        private final int index;
+        private final JsonElement telemetry;
+        private final JsonElement attributes;
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.remaining = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                onRead(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                onRead(read);
+            }
+            return read;
+        }
+
+        private void onRead(int read) throws PayloadTooLargeException {
+            remaining -= read;
+            if (remaining < 0) {
+                throw new PayloadTooLargeException();
+            }
+        }
+    }
+
+    private static class PayloadTooLargeException extends IOException {
+    }
+
     private static class DeviceProvisionCallback implements TransportServiceCallback<ProvisionDeviceResponseMsg> {
         private final DeferredResult<ResponseEntity> responseWriter;
 
@@ -45,6 +45,14 @@ public class HttpTransportContext extends TransportContext {
     @Value("${transport.http.max_request_timeout}")
     private long maxRequestTimeout;
 
+    @Getter
+    @Value("${transport.http.max_batch_size:1000}")
+    private int maxBatchSize;
+
+    @Getter
+    @Value("${transport.http.max_batch_payload_size:4194304}")
+    private long maxBatchPayloadSize;
+
     @Bean
     public TomcatConnectorCustomizer tomcatAsyncTimeoutConnectorCustomizer() {
         return connector -> {
@@ -0,0 +1,232 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.http;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.thingsboard.server.common.data.DeviceTransportType;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.DeviceProfileId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.transport.TransportService;
+import org.thingsboard.server.common.transport.TransportServiceCallback;
+import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
+import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
+import org.thingsboard.server.gen.transport.TransportProtos.PostAttributeMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.PostTelemetryMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.SessionInfoProto;
+import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceTokenRequestMsg;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class DeviceApiControllerTest {
+
+    private static final String VALID_TOKEN = "valid";
+
+    HttpTransportContext transportContext;
+    TransportService transportService;
+    DeviceApiController controller;
+    MockMvc mockMvc;
+    ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        transportContext = mock(HttpTransportContext.class);
+        willReturn(executor).given(transportContext).getExecutor();
+        transportService = mock(TransportService.class);
+        willReturn(transportService).given(transportContext).getTransportService();
+        willReturn("test-node").given(transportContext).getNodeId();
+        willReturn(10000L).given(transportContext).getDefaultTimeout();
+        willReturn(10).given(transportContext).getMaxBatchSize();
+        willReturn(1024L).given(transportContext).getMaxBatchPayloadSize();
+
+        willAnswer(invocation -> {
+            ValidateDeviceTokenRequestMsg msg = invocation.getArgument(1);
+            TransportServiceCallback<ValidateDeviceCredentialsResponse> callback = invocation.getArgument(2);
+            callback.onSuccess(VALID_TOKEN.equals(msg.getToken()) ? validCredentials() : ValidateDeviceCredentialsResponse.builder().build());
+            return null;
+        }).given(transportService).process(eq(DeviceTransportType.DEFAULT), any(ValidateDeviceTokenRequestMsg.class), any());
+        willAnswer(invocation -> {
+            invocation.<TransportServiceCallback<Void>>getArgument(2).onSuccess(null);
+            return null;
+        }).given(transportService).process(any(SessionInfoProto.class), any(PostTelemetryMsg.class), any());
+        willAnswer(invocation -> {
+            invocation.<TransportServiceCallback<Void>>getArgument(2).onSuccess(null);
+            return null;
+        }).given(transportService).process(any(SessionInfoProto.class), any(PostAttributeMsg.class), any());
+
+        controller = new DeviceApiController();
+        ReflectionTestUtils.setField(controller, "transportContext", transportContext);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void givenBatch_whenPost_thenResultOfEachLineIsStreamed() throws Exception {
+        String batch = "{\"token\":\"valid\",\"telemetry\":{\"temperature\":26}}\n" +
+                "{\"token\":\"invalid\",\"telemetry\":{\"temperature\":26}}\r\n" +
+                "\n" +
+                "not a json\n" +
+                "{\"token\":\"valid\",\"telemetry\":{\"temperature\":27},\"attributes\":{\"firmware\":\"1.0\"}}\n" +
+                "{\"token\":\"valid\"}";
+
+        MvcResult result = mockMvc.perform(asyncDispatch(postBatch(batch)))
+                .andExpect(status().isOk())
+                .andReturn();
+        result.getAsyncResult(5000);
+
+        Map<Integer, Integer> statuses = parseStatuses(result.getResponse().getContentAsString());
+        assertThat(statuses).containsOnly(
+                Map.entry(0, HttpStatus.OK.value()),
+                Map.entry(1, HttpStatus.UNAUTHORIZED.value()),
+                Map.entry(3, HttpStatus.BAD_REQUEST.value()),
+                Map.entry(4, HttpStatus.OK.value()),
+                Map.entry(5, HttpStatus.BAD_REQUEST.value()));
+        // the credentials are validated once per distinct token
+        verify(transportService, times(2)).process(eq(DeviceTransportType.DEFAULT), any(ValidateDeviceTokenRequestMsg.class), any());
+        verify(transportService, times(2)).process(any(SessionInfoProto.class), any(PostTelemetryMsg.class), any());
+        verify(transportService, times(1)).process(any(SessionInfoProto.class), any(PostAttributeMsg.class), any());
+    }
+
+    @Test
+    public void givenTooManyLines_whenPost_thenRequestIsRejected() throws Exception {
+        String batch = "{\"token\":\"valid\",\"telemetry\":{\"temperature\":26}}\n".repeat(11);
+
+        mockMvc.perform(asyncDispatch(postBatch(batch)))
+                .andExpect(status().isPayloadTooLarge());
+
+        verify(transportService, never()).process(any(DeviceTransportType.class), any(ValidateDeviceTokenRequestMsg.class), any());
+    }
+
+    @Test
+    public void givenContentLengthAboveLimit_whenPost_thenRequestIsRejected() throws Exception {
+        String batch = "{\"token\":\"valid\",\"telemetry\":{\"key\":\"" + "a".repeat(2048) + "\"}}";
+
+        mockMvc.perform(asyncDispatch(postBatch(batch)))
+                .andExpect(status().isPayloadTooLarge());
+
+        verify(transportService, never()).process(any(DeviceTransportType.class), any(ValidateDeviceTokenRequestMsg.class), any());
+    }
+
+    @Test
+    public void givenChunkedBodyAboveLimit_whenPost_thenReadIsStoppedAndRequestIsRejected() throws IOException {
+        byte[] body = ("{\"token\":\"valid\",\"telemetry\":{\"key\":\"" + "a".repeat(1024 * 1024) + "\"}}").getBytes(StandardCharsets.UTF_8);
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        willReturn(-1L).given(request).getContentLengthLong();
+        willReturn(new DelegatingServletInputStream(in)).given(request).getInputStream();
+
+        DeferredResult<ResponseEntity<ResponseBodyEmitter>> result = controller.postBatch(request);
+
+        await().atMost(5, TimeUnit.SECONDS).until(result::hasResult);
+        @SuppressWarnings("unchecked")
+        ResponseEntity<ResponseBodyEmitter> response = (ResponseEntity<ResponseBodyEmitter>) result.getResult();
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+        // the body is not read much beyond the limit
+        assertThat(in.available()).isGreaterThan(body.length - 64 * 1024);
+        verify(transportService, never()).process(any(DeviceTransportType.class), any(ValidateDeviceTokenRequestMsg.class), any());
+    }
+
+    @Test
+    public void givenBatch_whenPost_thenBodyIsNotReadOnRequestThread() throws IOException {
+        byte[] body = "{\"token\":\"valid\"}".getBytes(StandardCharsets.UTF_8);
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        willReturn(-1L).given(request).getContentLengthLong();
+        willReturn(new DelegatingServletInputStream(in)).given(request).getInputStream();
+        ExecutorService blockedExecutor = mock(ExecutorService.class);
+        willReturn(blockedExecutor).given(transportContext).getExecutor();
+
+        DeferredResult<ResponseEntity<ResponseBodyEmitter>> result = controller.postBatch(request);
+
+        // the body is handed over to the transport executor, nothing is read or validated on the request thread
+        assertThat(result.hasResult()).isFalse();
+        assertThat(in.available()).isEqualTo(body.length);
+        verify(blockedExecutor).execute(any(Runnable.class));
+        verify(transportService, never()).process(any(DeviceTransportType.class), any(ValidateDeviceTokenRequestMsg.class), any());
+    }
+
+    private MvcResult postBatch(String batch) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/v1/batch").content(batch))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(5000);
+        return result;
+    }
+
+    private static ValidateDeviceCredentialsResponse validCredentials() {
+        TransportDeviceInfo deviceInfo = new TransportDeviceInfo();
+        deviceInfo.setTenantId(TenantId.fromUUID(UUID.randomUUID()));
+        deviceInfo.setCustomerId(new CustomerId(UUID.randomUUID()));
+        deviceInfo.setDeviceProfileId(new DeviceProfileId(UUID.randomUUID()));
+        deviceInfo.setDeviceId(new DeviceId(UUID.randomUUID()));
+        deviceInfo.setDeviceName("Device A");
+        deviceInfo.setDeviceType("default");
+        return ValidateDeviceCredentialsResponse.builder().deviceInfo(deviceInfo).build();
+    }
+
+    private static Map<Integer, Integer> parseStatuses(String ndjson) {
+        Map<Integer, Integer> statuses = new HashMap<>();
+        for (String line : ndjson.split("\n")) {
+            JsonObject result = new JsonParser().parse(line).getAsJsonObject();
+            statuses.put(result.get("index").getAsInt(), result.get("status").getAsInt());
+        }
+        return statuses;
+    }
+
+}
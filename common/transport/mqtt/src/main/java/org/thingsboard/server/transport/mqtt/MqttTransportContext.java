@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.transport.mqtt;
 
+import io.micrometer.core.instrument.Timer;
 import io.netty.handler.ssl.SslHandler;
 import lombok.Getter;
 import lombok.Setter;
@@ -23,6 +24,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.stats.StatsType;
 import org.thingsboard.server.common.transport.TransportContext;
 import org.thingsboard.server.transport.mqtt.adaptors.JsonMqttAdaptor;
 import org.thingsboard.server.transport.mqtt.adaptors.ProtoMqttAdaptor;
@@ -75,12 +78,31 @@ public class MqttTransportContext extends TransportContext {
     @Value("${transport.mqtt.proxy_enabled:false}")
     private boolean proxyEnabled;
 
+    @Getter
+    @Value("${transport.mqtt.gateway.connect_batch_size:100}")
+    private int gatewayConnectBatchSize;
+
+    @Getter
+    @Value("${transport.mqtt.gateway.max_pending_connect_requests:4}")
+    private int gatewayMaxPendingConnectRequests;
+
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Getter
+    private Timer gatewayDeviceConnectTimer;
+
+    @Getter
+    private Timer gatewayConnectRequestTimer;
+
     private final AtomicInteger connectionsCounter = new AtomicInteger();
 
     @PostConstruct
     public void init() {
         super.init();
         transportService.createGaugeStats("openConnections", connectionsCounter);
+        gatewayDeviceConnectTimer = statsFactory.createTimer(StatsType.TRANSPORT.getName() + ".gateway.deviceConnect");
+        gatewayConnectRequestTimer = statsFactory.createTimer(StatsType.TRANSPORT.getName() + ".gateway.connectRequest");
     }
 
     public void channelRegistered() {
@@ -32,6 +32,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ConcurrentReferenceHashMap;
@@ -47,6 +48,7 @@ import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
 import org.thingsboard.server.gen.transport.TransportApiProtos;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDeviceFromGatewayRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDevicesFromGatewayRequestMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.SessionInfoProto;
 import org.thingsboard.server.transport.mqtt.MqttTransportContext;
 import org.thingsboard.server.transport.mqtt.MqttTransportHandler;
@@ -55,14 +57,19 @@ import org.thingsboard.server.transport.mqtt.adaptors.MqttTransportAdaptor;
 import org.thingsboard.server.transport.mqtt.adaptors.ProtoMqttAdaptor;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -89,6 +96,10 @@ public class GatewaySessionHandler {
     private final ConcurrentMap<String, Lock> deviceCreationLockMap;
     private final ConcurrentMap<String, GatewayDeviceSessionCtx> devices;
     private final ConcurrentMap<String, ListenableFuture<GatewayDeviceSessionCtx>> deviceFutures;
+    private final Queue<PendingDeviceConnect> pendingConnects;
+    private final AtomicInteger inFlightConnectRequests;
+    private final int connectBatchSize;
+    private final int maxPendingConnectRequests;
     private final ConcurrentMap<MqttTopicMatcher, Integer> mqttQoSMap;
     private final ChannelHandlerContext channel;
     private final DeviceSessionCtx deviceSessionCtx;
@@ -101,6 +112,10 @@ public class GatewaySessionHandler {
         this.sessionId = sessionId;
         this.devices = new ConcurrentHashMap<>();
         this.deviceFutures = new ConcurrentHashMap<>();
+        this.pendingConnects = new ConcurrentLinkedQueue<>();
+        this.inFlightConnectRequests = new AtomicInteger();
+        this.connectBatchSize = Math.max(1, context.getGatewayConnectBatchSize());
+        this.maxPendingConnectRequests = Math.max(1, context.getGatewayMaxPendingConnectRequests());
         this.deviceCreationLockMap = createWeakMap();
         this.mqttQoSMap = deviceSessionCtx.getMqttQoSMap();
         this.channel = deviceSessionCtx.getChannel();
@@ -232,7 +247,7 @@ public class GatewaySessionHandler {
         }, context.getExecutor());
     }
 
-    private ListenableFuture<GatewayDeviceSessionCtx> onDeviceConnect(String deviceName, String deviceType) {
+    ListenableFuture<GatewayDeviceSessionCtx> onDeviceConnect(String deviceName, String deviceType) {
         GatewayDeviceSessionCtx result = devices.get(deviceName);
         if (result == null) {
             Lock deviceCreationLock = deviceCreationLockMap.computeIfAbsent(deviceName, s -> new ReentrantLock());
@@ -258,43 +273,141 @@ public class GatewaySessionHandler {
         if (future != null) {
             return future;
         }
-            try {
-                transportService.process(GetOrCreateDeviceFromGatewayRequestMsg.newBuilder()
-                                .setDeviceName(deviceName)
-                                .setDeviceType(deviceType)
-                                .setGatewayIdMSB(gateway.getDeviceId().getId().getMostSignificantBits())
-                                .setGatewayIdLSB(gateway.getDeviceId().getId().getLeastSignificantBits()).build(),
-                        new TransportServiceCallback<GetOrCreateDeviceFromGatewayResponse>() {
-                            @Override
-                            public void onSuccess(GetOrCreateDeviceFromGatewayResponse msg) {
-                                GatewayDeviceSessionCtx deviceSessionCtx = new GatewayDeviceSessionCtx(GatewaySessionHandler.this, msg.getDeviceInfo(), msg.getDeviceProfile(), mqttQoSMap, transportService);
-                                if (devices.putIfAbsent(deviceName, deviceSessionCtx) == null) {
-                                    log.trace("[{}] First got or created device [{}], type [{}] for the gateway session", sessionId, deviceName, deviceType);
-                                    SessionInfoProto deviceSessionInfo = deviceSessionCtx.getSessionInfo();
-                                    transportService.registerAsyncSession(deviceSessionInfo, deviceSessionCtx);
-                                    transportService.process(TransportProtos.TransportToDeviceActorMsg.newBuilder()
-                                            .setSessionInfo(deviceSessionInfo)
-                                            .setSessionEvent(SESSION_EVENT_MSG_OPEN)
-                                            .setSubscribeToAttributes(SUBSCRIBE_TO_ATTRIBUTE_UPDATES_ASYNC_MSG)
-                                            .setSubscribeToRPC(SUBSCRIBE_TO_RPC_ASYNC_MSG)
-                                            .build(), null);
-                                }
-                                futureToSet.set(devices.get(deviceName));
-                                deviceFutures.remove(deviceName);
-                            }
+        pendingConnects.add(new PendingDeviceConnect(deviceName, deviceType, futureToSet, System.nanoTime()));
+        sendPendingConnects();
+        return futureToSet;
+    }
+
+    /**
+     * Packs the queued device connect commands into bulk requests to the core.
+     * While the number of requests in flight is at the limit, new commands keep accumulating in the queue and
+     * are sent as a single request once one of the previous requests completes.
+     */
+    private void sendPendingConnects() {
+        while (!pendingConnects.isEmpty()) {
+            int inFlight = inFlightConnectRequests.get();
+            if (inFlight >= maxPendingConnectRequests) {
+                return;
+            }
+            if (!inFlightConnectRequests.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+            List<PendingDeviceConnect> batch = new ArrayList<>();
+            PendingDeviceConnect pending;
+            while (batch.size() < connectBatchSize && (pending = pendingConnects.poll()) != null) {
+                batch.add(pending);
+            }
+            if (batch.isEmpty()) {
+                inFlightConnectRequests.decrementAndGet();
+            } else if (batch.size() == 1) {
+                sendConnectRequest(batch.get(0));
+            } else {
+                sendConnectRequest(batch);
+            }
+        }
+    }
 
-                            @Override
-                            public void onError(Throwable e) {
-                                log.warn("[{}] Failed to process device connect command: {}", sessionId, deviceName, e);
-                                futureToSet.setException(e);
-                                deviceFutures.remove(deviceName);
-                            }
-                        });
-                return futureToSet;
-            } catch (Throwable e) {
-                deviceFutures.remove(deviceName);
-                throw e;
+    private void sendConnectRequest(PendingDeviceConnect pending) {
+        long requestStartTs = System.nanoTime();
+        try {
+            transportService.process(GetOrCreateDeviceFromGatewayRequestMsg.newBuilder()
+                            .setDeviceName(pending.getDeviceName())
+                            .setDeviceType(pending.getDeviceType())
+                            .setGatewayIdMSB(gateway.getDeviceId().getId().getMostSignificantBits())
+                            .setGatewayIdLSB(gateway.getDeviceId().getId().getLeastSignificantBits()).build(),
+                    new TransportServiceCallback<GetOrCreateDeviceFromGatewayResponse>() {
+                        @Override
+                        public void onSuccess(GetOrCreateDeviceFromGatewayResponse msg) {
+                            onConnectRequestDone(requestStartTs);
+                            onDeviceConnected(pending, msg);
+                        }
+
+                        @Override
+                        public void onError(Throwable e) {
+                            onConnectRequestDone(requestStartTs);
+                            onDeviceConnectFailed(pending, e);
+                        }
+                    });
+        } catch (Throwable e) {
+            inFlightConnectRequests.decrementAndGet();
+            onDeviceConnectFailed(pending, e);
+        }
+    }
+
+    private void sendConnectRequest(List<PendingDeviceConnect> batch) {
+        long requestStartTs = System.nanoTime();
+        GetOrCreateDevicesFromGatewayRequestMsg.Builder requestMsg = GetOrCreateDevicesFromGatewayRequestMsg.newBuilder()
+                .setGatewayIdMSB(gateway.getDeviceId().getId().getMostSignificantBits())
+                .setGatewayIdLSB(gateway.getDeviceId().getId().getLeastSignificantBits());
+        batch.forEach(pending -> requestMsg.addDevices(TransportProtos.GatewayDeviceProto.newBuilder()
+                .setDeviceName(pending.getDeviceName())
+                .setDeviceType(pending.getDeviceType())
+                .build()));
+        log.trace("[{}] Sending connect request for {} devices", sessionId, batch.size());
+        try {
+            transportService.process(requestMsg.build(), new TransportServiceCallback<Map<String, GetOrCreateDeviceFromGatewayResponse>>() {
+                @Override
+                public void onSuccess(Map<String, GetOrCreateDeviceFromGatewayResponse> msgs) {
+                    onConnectRequestDone(requestStartTs);
+                    for (PendingDeviceConnect pending : batch) {
+                        GetOrCreateDeviceFromGatewayResponse msg = msgs.get(pending.getDeviceName());
+                        if (msg != null) {
+                            onDeviceConnected(pending, msg);
+                        } else {
+                            onDeviceConnectFailed(pending, new RuntimeException("No response for device [" + pending.getDeviceName() + "] in the connect request"));
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    onConnectRequestDone(requestStartTs);
+                    batch.forEach(pending -> onDeviceConnectFailed(pending, e));
+                }
+            });
+        } catch (Throwable e) {
+            inFlightConnectRequests.decrementAndGet();
+            batch.forEach(pending -> onDeviceConnectFailed(pending, e));
+        }
+    }
+
+    private void onConnectRequestDone(long requestStartTs) {
+        context.getGatewayConnectRequestTimer().record(System.nanoTime() - requestStartTs, TimeUnit.NANOSECONDS);
+        inFlightConnectRequests.decrementAndGet();
+        sendPendingConnects();
+    }
+
+    private void onDeviceConnected(PendingDeviceConnect pending, GetOrCreateDeviceFromGatewayResponse msg) {
+        String deviceName = pending.getDeviceName();
+        if (msg.getDeviceInfo() == null) {
+            onDeviceConnectFailed(pending, new RuntimeException("Failed to get or create device [" + deviceName + "] for the gateway"));
+            return;
+        }
+        try {
+            GatewayDeviceSessionCtx deviceSessionCtx = new GatewayDeviceSessionCtx(GatewaySessionHandler.this, msg.getDeviceInfo(), msg.getDeviceProfile(), mqttQoSMap, transportService);
+            if (devices.putIfAbsent(deviceName, deviceSessionCtx) == null) {
+                log.trace("[{}] First got or created device [{}], type [{}] for the gateway session", sessionId, deviceName, pending.getDeviceType());
+                SessionInfoProto deviceSessionInfo = deviceSessionCtx.getSessionInfo();
+                transportService.registerAsyncSession(deviceSessionInfo, deviceSessionCtx);
+                transportService.process(TransportProtos.TransportToDeviceActorMsg.newBuilder()
+                        .setSessionInfo(deviceSessionInfo)
+                        .setSessionEvent(SESSION_EVENT_MSG_OPEN)
+                        .setSubscribeToAttributes(SUBSCRIBE_TO_ATTRIBUTE_UPDATES_ASYNC_MSG)
+                        .setSubscribeToRPC(SUBSCRIBE_TO_RPC_ASYNC_MSG)
+                        .build(), null);
             }
+            context.getGatewayDeviceConnectTimer().record(System.nanoTime() - pending.getStartTs(), TimeUnit.NANOSECONDS);
+            pending.getFuture().set(devices.get(deviceName));
+            deviceFutures.remove(deviceName);
+        } catch (Throwable e) {
+            onDeviceConnectFailed(pending, e);
+        }
+    }
+
+    private void onDeviceConnectFailed(PendingDeviceConnect pending, Throwable e) {
+        log.warn("[{}] Failed to process device connect command: {}", sessionId, pending.getDeviceName(), e);
+        pending.getFuture().setException(e);
+        deviceFutures.remove(pending.getDeviceName());
     }
 
     private int getMsgId(MqttPublishMessage mqttMsg) {
@@ -746,4 +859,12 @@ public class GatewaySessionHandler {
             }
         };
     }
+
+    @Data
+    private static class PendingDeviceConnect {
+        private final String deviceName;
+        private final String deviceType;
+        private final SettableFuture<GatewayDeviceSessionCtx> future;
+        private final long startTs;
+    }
 }
@@ -15,18 +15,46 @@
  */
 package org.thingsboard.server.transport.mqtt.session;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.DeviceProfileId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.transport.TransportService;
+import org.thingsboard.server.common.transport.TransportServiceCallback;
+import org.thingsboard.server.common.transport.auth.GetOrCreateDeviceFromGatewayResponse;
+import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.GatewayDeviceProto;
+import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDeviceFromGatewayRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.GetOrCreateDevicesFromGatewayRequestMsg;
+import org.thingsboard.server.transport.mqtt.MqttTransportContext;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.willCallRealMethod;
+import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class GatewaySessionHandlerTest {
 
@@ -58,4 +86,79 @@ public class GatewaySessionHandlerTest {
         await().atMost(10, TimeUnit.SECONDS).until(() -> !map.containsKey("device"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void givenBatchResponse_whenDevicesAreNewExistingOrFailed_thenEachPendingConnectGetsItsOwnResult() throws Exception {
+        TransportService transportService = mock(TransportService.class);
+        GatewaySessionHandler handler = createHandler(transportService);
+
+        // The first connect occupies the only in-flight slot, the following ones are queued into a single batch
+        ListenableFuture<GatewayDeviceSessionCtx> blocker = handler.onDeviceConnect("blocker", "default");
+        ListenableFuture<GatewayDeviceSessionCtx> newDevice = handler.onDeviceConnect("new", "default");
+        ListenableFuture<GatewayDeviceSessionCtx> existingDevice = handler.onDeviceConnect("existing", "default");
+        ListenableFuture<GatewayDeviceSessionCtx> failedDevice = handler.onDeviceConnect("failed", "default");
+        ListenableFuture<GatewayDeviceSessionCtx> missingDevice = handler.onDeviceConnect("missing", "default");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<TransportServiceCallback<GetOrCreateDeviceFromGatewayResponse>> singleCallback = ArgumentCaptor.forClass(TransportServiceCallback.class);
+        verify(transportService).process(any(GetOrCreateDeviceFromGatewayRequestMsg.class), singleCallback.capture());
+        singleCallback.getValue().onSuccess(newResponse("blocker"));
+
+        ArgumentCaptor<GetOrCreateDevicesFromGatewayRequestMsg> batchRequest = ArgumentCaptor.forClass(GetOrCreateDevicesFromGatewayRequestMsg.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<TransportServiceCallback<Map<String, GetOrCreateDeviceFromGatewayResponse>>> batchCallback = ArgumentCaptor.forClass(TransportServiceCallback.class);
+        verify(transportService).process(batchRequest.capture(), batchCallback.capture());
+        assertThat(batchRequest.getValue().getDevicesList().stream().map(GatewayDeviceProto::getDeviceName).collect(Collectors.toList()))
+                .containsExactly("new", "existing", "failed", "missing");
+
+        // Responses are keyed by name, so their order does not matter. "missing" has no response at all.
+        Map<String, GetOrCreateDeviceFromGatewayResponse> responses = new HashMap<>();
+        responses.put("failed", GetOrCreateDeviceFromGatewayResponse.builder().build());
+        responses.put("existing", newResponse("existing"));
+        responses.put("new", newResponse("new"));
+        batchCallback.getValue().onSuccess(responses);
+
+        assertThat(blocker.get().getDeviceInfo().getDeviceName()).isEqualTo("blocker");
+        assertThat(newDevice.get().getDeviceInfo().getDeviceName()).isEqualTo("new");
+        assertThat(existingDevice.get().getDeviceInfo().getDeviceName()).isEqualTo("existing");
+        assertThatThrownBy(failedDevice::get).isInstanceOf(ExecutionException.class);
+        assertThatThrownBy(missingDevice::get).isInstanceOf(ExecutionException.class);
+
+        // Failed devices are not cached, so the next connect retries them
+        handler.onDeviceConnect("failed", "default");
+        verify(transportService, times(2)).process(any(GetOrCreateDeviceFromGatewayRequestMsg.class), singleCallback.capture());
+    }
+
+    private GatewaySessionHandler createHandler(TransportService transportService) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MqttTransportContext context = mock(MqttTransportContext.class);
+        willReturn(transportService).given(context).getTransportService();
+        willReturn("tb-transport-0").given(context).getNodeId();
+        willReturn(MoreExecutors.newDirectExecutorService()).given(context).getExecutor();
+        willReturn(10).given(context).getGatewayConnectBatchSize();
+        willReturn(1).given(context).getGatewayMaxPendingConnectRequests();
+        willReturn(meterRegistry.timer("deviceConnect")).given(context).getGatewayDeviceConnectTimer();
+        willReturn(meterRegistry.timer("connectRequest")).given(context).getGatewayConnectRequestTimer();
+
+        DeviceSessionCtx deviceSessionCtx = mock(DeviceSessionCtx.class);
+        willReturn(context).given(deviceSessionCtx).getContext();
+        willReturn(newDeviceInfo("gateway")).given(deviceSessionCtx).getDeviceInfo();
+        willReturn(new ConcurrentHashMap<>()).given(deviceSessionCtx).getMqttQoSMap();
+        return new GatewaySessionHandler(deviceSessionCtx, UUID.randomUUID());
+    }
+
+    private GetOrCreateDeviceFromGatewayResponse newResponse(String deviceName) {
+        return GetOrCreateDeviceFromGatewayResponse.builder().deviceInfo(newDeviceInfo(deviceName)).build();
+    }
+
+    private TransportDeviceInfo newDeviceInfo(String deviceName) {
+        TransportDeviceInfo deviceInfo = new TransportDeviceInfo();
+        deviceInfo.setTenantId(TenantId.fromUUID(UUID.randomUUID()));
+        deviceInfo.setCustomerId(new CustomerId(CustomerId.NULL_UUID));
+        deviceInfo.setDeviceProfileId(new DeviceProfileId(UUID.randomUUID()));
+        deviceInfo.setDeviceId(new DeviceId(UUID.randomUUID()));
+        deviceInfo.setDeviceName(deviceName);
+        deviceInfo.setDeviceType("default");
+        return deviceInfo;
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.snmp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for periodic SNMP polling tasks.
+ * A single ticker thread advances the wheel and hands due tasks over to the dispatcher,
+ * so the number of scheduled polls does not affect the number of timers in the JVM.
+ * New tasks are queued and put into the wheel by the ticker thread, so the wheel itself is accessed by that thread only.
+ */
+@Slf4j
+public class SnmpPollingTimerWheel {
+
+    private final long tickDurationMs;
+    private final Queue<PollingTask>[] wheel;
+    private final Queue<PendingAdd> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Executor dispatcher;
+    private ScheduledExecutorService ticker;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public SnmpPollingTimerWheel(long tickDurationMs, int wheelSize, Executor dispatcher) {
+        if (tickDurationMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+        this.tickDurationMs = tickDurationMs;
+        this.dispatcher = dispatcher;
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("snmp-polling-timer"));
+        ticker.scheduleAtFixedRate(this::tick, tickDurationMs, tickDurationMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        pendingAdds.clear();
+        for (Queue<PollingTask> bucket : wheel) {
+            bucket.clear();
+        }
+    }
+
+    public PollingTask schedule(Runnable task, long initialDelayMs, long periodMs) {
+        PollingTask pollingTask = new PollingTask(task, periodMs);
+        pendingAdds.add(new PendingAdd(pollingTask, initialDelayMs));
+        return pollingTask;
+    }
+
+    private void add(PollingTask task, long delayMs) {
+        // rounded up, so the task is never polled more often than requested
+        long ticks = Math.max(1, (delayMs + tickDurationMs - 1) / tickDurationMs);
+        task.remainingRounds = (ticks - 1) / wheel.length;
+        wheel[(int) ((currentTick + ticks) % wheel.length)].add(task);
+    }
+
+    void tick() {
+        try {
+            PendingAdd pendingAdd;
+            while ((pendingAdd = pendingAdds.poll()) != null) {
+                add(pendingAdd.task, pendingAdd.delayMs);
+            }
+            long tick = ++currentTick;
+            Queue<PollingTask> bucket = wheel[(int) (tick % wheel.length)];
+            List<PollingTask> notDue = new ArrayList<>();
+            List<PollingTask> rescheduled = new ArrayList<>();
+            PollingTask task;
+            while ((task = bucket.poll()) != null) {
+                if (task.cancelled) {
+                    continue;
+                }
+                if (task.remainingRounds > 0) {
+                    task.remainingRounds--;
+                    notDue.add(task);
+                    continue;
+                }
+                try {
+                    dispatcher.execute(task.task);
+                } catch (Exception e) {
+                    log.warn("Failed to dispatch SNMP polling task: {}", e.toString());
+                }
+                if (task.periodMs > 0) {
+                    rescheduled.add(task);
+                }
+            }
+            bucket.addAll(notDue);
+            // re-added only after the bucket is drained: a period that is a multiple of the wheel span maps to the same bucket
+            for (PollingTask periodic : rescheduled) {
+                add(periodic, periodic.periodMs);
+            }
+        } catch (Throwable t) {
+            log.error("Failed to process SNMP polling timer tick", t);
+        }
+    }
+
+    public static class PollingTask {
+        private final Runnable task;
+        private final long periodMs;
+        private volatile boolean cancelled;
+        // accessed by the ticker thread only
+        private long remainingRounds;
+
+        private PollingTask(Runnable task, long periodMs) {
+            this.task = task;
+            this.periodMs = periodMs;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static class PendingAdd {
+        private final PollingTask task;
+        private final long delayMs;
+
+        private PendingAdd(PollingTask task, long delayMs) {
+            this.task = task;
+            this.delayMs = delayMs;
+        }
+    }
+
+}
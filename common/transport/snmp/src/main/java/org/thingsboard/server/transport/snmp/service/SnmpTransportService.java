@@ -17,6 +17,7 @@ package org.thingsboard.server.transport.snmp.service;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -44,6 +45,9 @@ import org.thingsboard.server.common.data.transport.snmp.SnmpMapping;
 import org.thingsboard.server.common.data.transport.snmp.SnmpMethod;
 import org.thingsboard.server.common.data.transport.snmp.config.RepeatingQueryingSnmpCommunicationConfig;
 import org.thingsboard.server.common.data.transport.snmp.config.SnmpCommunicationConfig;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.stats.StatsType;
 import org.thingsboard.server.common.transport.TransportService;
 import org.thingsboard.server.common.transport.TransportServiceCallback;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
@@ -54,17 +58,19 @@ import org.thingsboard.server.transport.snmp.session.DeviceSessionContext;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @TbSnmpTransportComponent
@@ -74,12 +80,19 @@ import java.util.stream.Collectors;
 public class SnmpTransportService implements TbTransportService {
     private final TransportService transportService;
     private final PduService pduService;
+    private final StatsFactory statsFactory;
 
     @Getter
     private Snmp snmp;
-    private ScheduledExecutorService queryingExecutor;
+    private ExecutorService queryingExecutor;
+    private SnmpPollingTimerWheel pollingTimerWheel;
     private ExecutorService responseProcessingExecutor;
 
+    private Timer pollLatencyTimer;
+    private DefaultCounter pollTimeoutsCounter;
+    private DefaultCounter pollErrorsCounter;
+    private DefaultCounter pollSkippedCounter;
+
     private final Map<SnmpCommunicationSpec, ResponseDataMapper> responseDataMappers = new EnumMap<>(SnmpCommunicationSpec.class);
     private final Map<SnmpCommunicationSpec, ResponseProcessor> responseProcessors = new EnumMap<>(SnmpCommunicationSpec.class);
 
@@ -87,12 +100,28 @@ public class SnmpTransportService implements TbTransportService {
     private Integer responseProcessingParallelismLevel;
     @Value("${transport.snmp.underlying_protocol}")
     private String snmpUnderlyingProtocol;
+    @Value("${transport.snmp.polling.tick_duration_ms:100}")
+    private long pollingTickDurationMs;
+    @Value("${transport.snmp.polling.wheel_size:512}")
+    private int pollingWheelSize;
+    @Value("${transport.snmp.polling.max_oids_per_request:64}")
+    private int maxOidsPerRequest;
+    @Value("${transport.snmp.polling.max_in_flight_requests_per_target:4}")
+    private int maxInFlightRequestsPerTarget;
 
     @PostConstruct
     private void init() throws IOException {
-        queryingExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), ThingsBoardThreadFactory.forName("snmp-querying"));
+        queryingExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), ThingsBoardThreadFactory.forName("snmp-querying"));
+        pollingTimerWheel = new SnmpPollingTimerWheel(pollingTickDurationMs, pollingWheelSize, queryingExecutor);
+        pollingTimerWheel.start();
         responseProcessingExecutor = ThingsBoardExecutors.newWorkStealingPool(responseProcessingParallelismLevel, "snmp-response-processing");
 
+        String statsKey = StatsType.TRANSPORT.getName() + ".snmp.polls";
+        pollLatencyTimer = statsFactory.createTimer(StatsType.TRANSPORT.getName() + ".snmp.pollLatency");
+        pollTimeoutsCounter = statsFactory.createDefaultCounter(statsKey, "result", "timeout");
+        pollErrorsCounter = statsFactory.createDefaultCounter(statsKey, "result", "error");
+        pollSkippedCounter = statsFactory.createDefaultCounter(statsKey, "result", "skipped");
+
         initializeSnmp();
         configureResponseDataMappers();
         configureResponseProcessors();
@@ -102,6 +131,9 @@ public class SnmpTransportService implements TbTransportService {
 
     @PreDestroy
     public void stop() {
+        if (pollingTimerWheel != null) {
+            pollingTimerWheel.stop();
+        }
         if (queryingExecutor != null) {
             queryingExecutor.shutdownNow();
         }
@@ -130,31 +162,65 @@ public class SnmpTransportService implements TbTransportService {
     }
 
     public void createQueryingTasks(DeviceSessionContext sessionContext) {
-        List<ScheduledFuture<?>> queryingTasks = sessionContext.getProfileTransportConfiguration().getCommunicationConfigs().stream()
+        Map<Long, List<RepeatingQueryingSnmpCommunicationConfig>> configsByFrequency = sessionContext.getProfileTransportConfiguration().getCommunicationConfigs().stream()
                 .filter(communicationConfig -> communicationConfig instanceof RepeatingQueryingSnmpCommunicationConfig)
-                .map(config -> {
-                    RepeatingQueryingSnmpCommunicationConfig repeatingCommunicationConfig = (RepeatingQueryingSnmpCommunicationConfig) config;
-                    Long queryingFrequency = repeatingCommunicationConfig.getQueryingFrequencyMs();
-
-                    return queryingExecutor.scheduleWithFixedDelay(() -> {
-                        try {
-                            if (sessionContext.isActive()) {
-                                sendRequest(sessionContext, repeatingCommunicationConfig);
-                            }
-                        } catch (Exception e) {
-                            log.error("Failed to send SNMP request for device {}: {}", sessionContext.getDeviceId(), e.toString());
-                        }
-                    }, queryingFrequency, queryingFrequency, TimeUnit.MILLISECONDS);
-                })
-                .collect(Collectors.toList());
-        sessionContext.getQueryingTasks().addAll(queryingTasks);
+                .map(communicationConfig -> (RepeatingQueryingSnmpCommunicationConfig) communicationConfig)
+                .collect(Collectors.groupingBy(RepeatingQueryingSnmpCommunicationConfig::getQueryingFrequencyMs, LinkedHashMap::new, Collectors.toList()));
+
+        configsByFrequency.forEach((queryingFrequency, configs) -> {
+            long initialDelay = ThreadLocalRandom.current().nextLong(queryingFrequency) + 1;
+            SnmpPollingTimerWheel.PollingTask queryingTask = pollingTimerWheel.schedule(() -> {
+                try {
+                    if (sessionContext.isActive()) {
+                        sendPollingRequests(sessionContext, configs);
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to send SNMP request for device {}: {}", sessionContext.getDeviceId(), e.toString());
+                }
+            }, initialDelay, queryingFrequency);
+            sessionContext.getQueryingTasks().add(queryingTask);
+        });
     }
 
     public void cancelQueryingTasks(DeviceSessionContext sessionContext) {
-        sessionContext.getQueryingTasks().forEach(task -> task.cancel(true));
+        sessionContext.getQueryingTasks().forEach(SnmpPollingTimerWheel.PollingTask::cancel);
         sessionContext.getQueryingTasks().clear();
     }
 
+    private void sendPollingRequests(DeviceSessionContext sessionContext, List<RepeatingQueryingSnmpCommunicationConfig> configs) {
+        Map<SnmpCommunicationSpec, List<SnmpMapping>> mappings = new EnumMap<>(SnmpCommunicationSpec.class);
+        int mappingsCount = 0;
+        for (RepeatingQueryingSnmpCommunicationConfig config : configs) {
+            for (SnmpMapping mapping : config.getAllMappings()) {
+                mappings.computeIfAbsent(config.getSpec(), spec -> new ArrayList<>()).add(mapping);
+                if (++mappingsCount == maxOidsPerRequest) {
+                    sendPollingRequest(sessionContext, mappings);
+                    mappings = new EnumMap<>(SnmpCommunicationSpec.class);
+                    mappingsCount = 0;
+                }
+            }
+        }
+        if (mappingsCount > 0) {
+            sendPollingRequest(sessionContext, mappings);
+        }
+    }
+
+    private void sendPollingRequest(DeviceSessionContext sessionContext, Map<SnmpCommunicationSpec, List<SnmpMapping>> mappings) {
+        AtomicInteger inFlightRequests = sessionContext.getInFlightPollingRequests();
+        if (inFlightRequests.incrementAndGet() > maxInFlightRequestsPerTarget) {
+            inFlightRequests.decrementAndGet();
+            pollSkippedCounter.increment();
+            log.debug("Skipping SNMP polling request for device {}: too many requests in flight", sessionContext.getDeviceId());
+            return;
+        }
+        List<SnmpMapping> allMappings = mappings.values().stream().flatMap(List::stream).collect(Collectors.toList());
+        PDU request = pduService.createGetPdu(sessionContext, allMappings);
+        RequestInfo requestInfo = new RequestInfo(mappings);
+        if (!sendRequest(sessionContext, request, requestInfo)) {
+            inFlightRequests.decrementAndGet();
+            pollErrorsCounter.increment();
+        }
+    }
 
     private void sendRequest(DeviceSessionContext sessionContext, SnmpCommunicationConfig communicationConfig) {
         sendRequest(sessionContext, communicationConfig, Collections.emptyMap());
@@ -166,15 +232,17 @@ public class SnmpTransportService implements TbTransportService {
         sendRequest(sessionContext, request, requestInfo);
     }
 
-    private void sendRequest(DeviceSessionContext sessionContext, PDU request, RequestInfo requestInfo) {
+    private boolean sendRequest(DeviceSessionContext sessionContext, PDU request, RequestInfo requestInfo) {
         if (request.size() > 0) {
             log.trace("Executing SNMP request for device {}. Variables bindings: {}", sessionContext.getDeviceId(), request.getVariableBindings());
             try {
                 snmp.send(request, sessionContext.getTarget(), requestInfo, sessionContext);
+                return true;
             } catch (IOException e) {
                 log.error("Failed to send SNMP request to device {}: {}", sessionContext.getDeviceId(), e.toString());
             }
         }
+        return false;
     }
 
     public void onAttributeUpdate(DeviceSessionContext sessionContext, TransportProtos.AttributeUpdateNotificationMsg attributeUpdateNotification) {
@@ -223,18 +291,37 @@ public class SnmpTransportService implements TbTransportService {
     public void processResponseEvent(DeviceSessionContext sessionContext, ResponseEvent event) {
         ((Snmp) event.getSource()).cancel(event.getRequest(), sessionContext);
 
+        RequestInfo requestInfo = (RequestInfo) event.getUserObject();
+        if (requestInfo.isPolling()) {
+            sessionContext.getInFlightPollingRequests().decrementAndGet();
+        }
+
         if (event.getError() != null) {
             log.warn("SNMP response error: {}", event.getError().toString());
+            if (requestInfo.isPolling()) {
+                pollErrorsCounter.increment();
+            }
             return;
         }
 
         PDU response = event.getResponse();
         if (response == null) {
             log.debug("No response from SNMP device {}, requestId: {}", sessionContext.getDeviceId(), event.getRequest().getRequestID());
+            if (requestInfo.isPolling()) {
+                pollTimeoutsCounter.increment();
+            }
             return;
         }
 
-        RequestInfo requestInfo = (RequestInfo) event.getUserObject();
+        if (requestInfo.isPolling()) {
+            pollLatencyTimer.record(System.nanoTime() - requestInfo.getSentTs(), TimeUnit.NANOSECONDS);
+            responseProcessingExecutor.execute(() -> {
+                requestInfo.getPolledMappings().forEach((communicationSpec, responseMappings) -> {
+                    processResponse(sessionContext, response, new RequestInfo(communicationSpec, responseMappings));
+                });
+            });
+            return;
+        }
         responseProcessingExecutor.execute(() -> {
             processResponse(sessionContext, response, requestInfo);
         });
@@ -318,6 +405,9 @@ public class SnmpTransportService implements TbTransportService {
     @PreDestroy
     public void shutdown() {
         log.info("Stopping SNMP transport!");
+        if (pollingTimerWheel != null) {
+            pollingTimerWheel.stop();
+        }
         if (queryingExecutor != null) {
             queryingExecutor.shutdownNow();
         }
@@ -339,6 +429,8 @@ public class SnmpTransportService implements TbTransportService {
         private Integer requestId;
         private SnmpCommunicationSpec communicationSpec;
         private List<SnmpMapping> responseMappings;
+        private Map<SnmpCommunicationSpec, List<SnmpMapping>> polledMappings;
+        private long sentTs;
 
         public RequestInfo(Integer requestId, SnmpCommunicationSpec communicationSpec, List<SnmpMapping> responseMappings) {
             this.requestId = requestId;
@@ -350,6 +442,15 @@ public class SnmpTransportService implements TbTransportService {
             this.communicationSpec = communicationSpec;
             this.responseMappings = responseMappings;
         }
+
+        public RequestInfo(Map<SnmpCommunicationSpec, List<SnmpMapping>> polledMappings) {
+            this.polledMappings = polledMappings;
+            this.sentTs = System.nanoTime();
+        }
+
+        public boolean isPolling() {
+            return polledMappings != null;
+        }
     }
 
     private interface ResponseDataMapper {
@@ -37,11 +37,11 @@ import org.thingsboard.server.gen.transport.TransportProtos.SessionCloseNotifica
 import org.thingsboard.server.gen.transport.TransportProtos.ToDeviceRpcRequestMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ToServerRpcResponseMsg;
 import org.thingsboard.server.transport.snmp.SnmpTransportContext;
+import org.thingsboard.server.transport.snmp.service.SnmpPollingTimerWheel;
 
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
@@ -65,7 +65,9 @@ public class DeviceSessionContext extends DeviceAwareSessionContext implements S
     private boolean isActive = true;
 
     @Getter
-    private final List<ScheduledFuture<?>> queryingTasks = new LinkedList<>();
+    private final List<SnmpPollingTimerWheel.PollingTask> queryingTasks = new LinkedList<>();
+    @Getter
+    private final AtomicInteger inFlightPollingRequests = new AtomicInteger(0);
 
     public DeviceSessionContext(Device device, DeviceProfile deviceProfile, String token,
                                 SnmpDeviceProfileTransportConfiguration profileTransportConfiguration,
@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.snmp.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SnmpPollingTimerWheelTest {
+
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 8;
+
+    @Test
+    public void testPeriodEqualToWheelSpan() {
+        SnmpPollingTimerWheel timerWheel = new SnmpPollingTimerWheel(TICK_MS, WHEEL_SIZE, Runnable::run);
+        AtomicInteger executions = new AtomicInteger();
+        timerWheel.schedule(executions::incrementAndGet, TICK_MS, TICK_MS * WHEEL_SIZE);
+
+        timerWheel.tick();
+        Assert.assertEquals(1, executions.get());
+
+        for (int i = 1; i < WHEEL_SIZE; i++) {
+            timerWheel.tick();
+            Assert.assertEquals(1, executions.get());
+        }
+        timerWheel.tick();
+        Assert.assertEquals(2, executions.get());
+
+        advance(timerWheel, WHEEL_SIZE);
+        Assert.assertEquals(3, executions.get());
+    }
+
+    @Test
+    public void testPeriodEqualToTwoWheelSpans() {
+        SnmpPollingTimerWheel timerWheel = new SnmpPollingTimerWheel(TICK_MS, WHEEL_SIZE, Runnable::run);
+        AtomicInteger executions = new AtomicInteger();
+        timerWheel.schedule(executions::incrementAndGet, TICK_MS, TICK_MS * WHEEL_SIZE * 2);
+
+        timerWheel.tick();
+        Assert.assertEquals(1, executions.get());
+
+        // must not fire one rotation early
+        advance(timerWheel, WHEEL_SIZE);
+        Assert.assertEquals(1, executions.get());
+        advance(timerWheel, WHEEL_SIZE - 1);
+        Assert.assertEquals(1, executions.get());
+        timerWheel.tick();
+        Assert.assertEquals(2, executions.get());
+
+        advance(timerWheel, WHEEL_SIZE * 2);
+        Assert.assertEquals(3, executions.get());
+    }
+
+    @Test
+    public void testCancelledTaskIsNotDispatched() {
+        SnmpPollingTimerWheel timerWheel = new SnmpPollingTimerWheel(TICK_MS, WHEEL_SIZE, Runnable::run);
+        AtomicInteger executions = new AtomicInteger();
+        SnmpPollingTimerWheel.PollingTask task = timerWheel.schedule(executions::incrementAndGet, TICK_MS, TICK_MS);
+
+        advance(timerWheel, 3);
+        Assert.assertEquals(3, executions.get());
+        task.cancel();
+        advance(timerWheel, 3);
+        Assert.assertEquals(3, executions.get());
+    }
+
+    @Test
+    public void testPeriodIsRoundedUpToTicks() {
+        SnmpPollingTimerWheel timerWheel = new SnmpPollingTimerWheel(TICK_MS, WHEEL_SIZE, Runnable::run);
+        AtomicInteger executions = new AtomicInteger();
+        timerWheel.schedule(executions::incrementAndGet, TICK_MS / 2, TICK_MS * 3 / 2);
+
+        timerWheel.tick();
+        Assert.assertEquals(1, executions.get());
+        timerWheel.tick();
+        Assert.assertEquals(1, executions.get());
+        timerWheel.tick();
+        Assert.assertEquals(2, executions.get());
+        advance(timerWheel, 4);
+        Assert.assertEquals(4, executions.get());
+    }
+
+    @Test
+    public void testTasksScheduledConcurrentlyWithTicksAreNotDelayedByRotation() throws Exception {
+        int threadsCount = 4;
+        int tasksPerThread = 10_000;
+        SnmpPollingTimerWheel timerWheel = new SnmpPollingTimerWheel(TICK_MS, WHEEL_SIZE, Runnable::run);
+        AtomicInteger executions = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+        try {
+            CountDownLatch scheduled = new CountDownLatch(threadsCount);
+            for (int i = 0; i < threadsCount; i++) {
+                executor.submit(() -> {
+                    for (int j = 0; j < tasksPerThread; j++) {
+                        timerWheel.schedule(executions::incrementAndGet, TICK_MS, 0);
+                    }
+                    scheduled.countDown();
+                });
+            }
+            while (scheduled.getCount() > 0) {
+                timerWheel.tick();
+            }
+            Assert.assertTrue(scheduled.await(10, TimeUnit.SECONDS));
+
+            // a task added to an already drained bucket would wait for the whole rotation
+            timerWheel.tick();
+            Assert.assertEquals(threadsCount * tasksPerThread, executions.get());
+            advance(timerWheel, WHEEL_SIZE);
+            Assert.assertEquals(threadsCount * tasksPerThread, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void advance(SnmpPollingTimerWheel timerWheel, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            timerWheel.tick();
+        }
+    }
+
+}
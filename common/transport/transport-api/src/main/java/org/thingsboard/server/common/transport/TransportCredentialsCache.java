@@ -0,0 +1,48 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport;
+
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
+
+/**
+ * Transport-local cache of device credentials validation results.
+ * Credentials key is the validation request message (token, basic MQTT credentials, X509 hash or LwM2M identity).
+ */
+public interface TransportCredentialsCache {
+
+    /**
+     * @return cached validation result or null if the credentials were not validated recently.
+     * Result without device info means the credentials are invalid.
+     */
+    ValidateDeviceCredentialsResponse get(Object credentialsKey);
+
+    /**
+     * @return stamp to take before the validation request is sent, so a response that raced with an eviction
+     * of the same device or credentials id is not cached.
+     */
+    long getEvictionStamp();
+
+    void put(Object credentialsKey, ValidateDeviceCredentialsResponse response, long evictionStamp);
+
+    void evict(DeviceId deviceId);
+
+    /**
+     * Evicts the cached invalid results of the credentials keys that resolve to the given credentials id.
+     */
+    void evictInvalid(String credentialsId);
+
+}
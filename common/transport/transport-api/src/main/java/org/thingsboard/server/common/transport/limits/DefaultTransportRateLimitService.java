@@ -26,14 +26,29 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
 import org.thingsboard.server.common.data.tenant.profile.TenantProfileData;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.common.transport.TransportTenantProfileCache;
 import org.thingsboard.server.common.transport.profile.TenantProfileUpdateResult;
+import org.thingsboard.server.gen.transport.TransportProtos.RateLimitLeaseRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.RateLimitLeaseResponseMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ToCoreMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TransportRateLimitType;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.queue.util.TbTransportComponent;
 
+import javax.annotation.PostConstruct;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiConsumer;
@@ -52,6 +67,10 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
     private final Map<InetAddress, InetAddressRateLimitStats> ipMap = new ConcurrentHashMap<>();
 
     private final TransportTenantProfileCache tenantProfileCache;
+    private final PartitionService partitionService;
+    private final TbServiceInfoProvider serviceInfoProvider;
+    private final TbQueueProducerProvider producerProvider;
+    private final StatsFactory statsFactory;
 
     @Value("${transport.rate_limits.ip_limits_enabled:false}")
     private boolean ipRateLimitsEnabled;
@@ -59,9 +78,34 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
     private int maxWrongCredentialsPerIp;
     @Value("${transport.rate_limits.ip_block_timeout:60000}")
     private long ipBlockTimeout;
+    @Value("${transport.rate_limits.distributed.enabled:false}")
+    private boolean distributedRateLimitsEnabled;
+    @Value("${transport.rate_limits.distributed.lease_percent:10}")
+    private int leasePercent;
+    @Value("${transport.rate_limits.distributed.lease_ttl_ms:1000}")
+    private long leaseTtlMs;
 
-    public DefaultTransportRateLimitService(TransportTenantProfileCache tenantProfileCache) {
+    private TbQueueProducer<TbProtoQueueMsg<ToCoreMsg>> tbCoreMsgProducer;
+    private DefaultCounter leaseRequestsCounter;
+    private DefaultCounter expiredTokensCounter;
+
+    public DefaultTransportRateLimitService(TransportTenantProfileCache tenantProfileCache, PartitionService partitionService,
+                                            TbServiceInfoProvider serviceInfoProvider, TbQueueProducerProvider producerProvider,
+                                            StatsFactory statsFactory) {
         this.tenantProfileCache = tenantProfileCache;
+        this.partitionService = partitionService;
+        this.serviceInfoProvider = serviceInfoProvider;
+        this.producerProvider = producerProvider;
+        this.statsFactory = statsFactory;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (distributedRateLimitsEnabled) {
+            tbCoreMsgProducer = producerProvider.getTbCoreMsgProducer();
+            leaseRequestsCounter = statsFactory.createDefaultCounter("transportRateLimitLeaseRequests");
+            expiredTokensCounter = statsFactory.createDefaultCounter("transportRateLimitExpiredTokens");
+        }
     }
 
     @Override
@@ -89,10 +133,9 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
     @Override
     public void update(TenantProfileUpdateResult update) {
         log.info("Received tenant profile update: {}", update.getProfile());
-        EntityTransportRateLimits tenantRateLimitPrototype = createRateLimits(update.getProfile(), true);
-        EntityTransportRateLimits deviceRateLimitPrototype = createRateLimits(update.getProfile(), false);
+        EntityTransportRateLimits deviceRateLimitPrototype = createRateLimits(null, update.getProfile(), false);
         for (TenantId tenantId : update.getAffectedTenants()) {
-            mergeLimits(tenantId, tenantRateLimitPrototype, perTenantLimits::get, perTenantLimits::put);
+            mergeLimits(tenantId, createRateLimits(tenantId, update.getProfile(), true), perTenantLimits::get, perTenantLimits::put);
             tenantDevices.get(tenantId).forEach(deviceId -> {
                 mergeLimits(deviceId, deviceRateLimitPrototype, perDeviceLimits::get, perDeviceLimits::put);
             });
@@ -101,8 +144,8 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
 
     @Override
     public void update(TenantId tenantId) {
-        EntityTransportRateLimits tenantRateLimitPrototype = createRateLimits(tenantProfileCache.get(tenantId), true);
-        EntityTransportRateLimits deviceRateLimitPrototype = createRateLimits(tenantProfileCache.get(tenantId), false);
+        EntityTransportRateLimits tenantRateLimitPrototype = createRateLimits(tenantId, tenantProfileCache.get(tenantId), true);
+        EntityTransportRateLimits deviceRateLimitPrototype = createRateLimits(null, tenantProfileCache.get(tenantId), false);
         mergeLimits(tenantId, tenantRateLimitPrototype, perTenantLimits::get, perTenantLimits::put);
         tenantDevices.get(tenantId).forEach(deviceId -> {
             mergeLimits(deviceId, deviceRateLimitPrototype, perDeviceLimits::get, perDeviceLimits::put);
@@ -126,6 +169,20 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
         tenantAllowed.put(tenantId, allowed);
     }
 
+    @Override
+    public void onLeaseResponse(RateLimitLeaseResponseMsg msg) {
+        TenantId tenantId = TenantId.fromUUID(new UUID(msg.getTenantIdMSB(), msg.getTenantIdLSB()));
+        EntityTransportRateLimits limits = perTenantLimits.get(tenantId);
+        if (limits == null) {
+            log.debug("[{}] Received lease response for unknown tenant", tenantId);
+            return;
+        }
+        TransportRateLimit limit = getLimit(limits, msg.getType());
+        if (limit instanceof LeasedTransportRateLimit) {
+            ((LeasedTransportRateLimit) limit).onLeaseResponse(msg.getTokens());
+        }
+    }
+
     @Override
     public boolean checkAddress(InetSocketAddress address) {
         if (!ipRateLimitsEnabled) {
@@ -207,7 +264,8 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
             }
             putFunction.accept(entityId, newRateLimits);
         } else {
-            EntityTransportRateLimits updated = merge(oldRateLimits, newRateLimits);
+            boolean tenant = EntityType.TENANT.equals(entityId.getEntityType());
+            EntityTransportRateLimits updated = merge(oldRateLimits, newRateLimits, tenant);
             if (updated != null) {
                 if (EntityType.TENANT.equals(entityId.getEntityType())) {
                     log.info("[{}] Updated rate limits: {}", entityId, updated);
@@ -219,29 +277,40 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
         }
     }
 
-    private EntityTransportRateLimits merge(EntityTransportRateLimits oldRateLimits, EntityTransportRateLimits newRateLimits) {
+    private EntityTransportRateLimits merge(EntityTransportRateLimits oldRateLimits, EntityTransportRateLimits newRateLimits, boolean tenant) {
         boolean regularUpdate = !oldRateLimits.getRegularMsgRateLimit().getConfiguration().equals(newRateLimits.getRegularMsgRateLimit().getConfiguration());
         boolean telemetryMsgRateUpdate = !oldRateLimits.getTelemetryMsgRateLimit().getConfiguration().equals(newRateLimits.getTelemetryMsgRateLimit().getConfiguration());
         boolean telemetryDataPointUpdate = !oldRateLimits.getTelemetryDataPointsRateLimit().getConfiguration().equals(newRateLimits.getTelemetryDataPointsRateLimit().getConfiguration());
         if (regularUpdate || telemetryMsgRateUpdate || telemetryDataPointUpdate) {
             return new EntityTransportRateLimits(
-                    regularUpdate ? newLimit(newRateLimits.getRegularMsgRateLimit().getConfiguration()) : oldRateLimits.getRegularMsgRateLimit(),
-                    telemetryMsgRateUpdate ? newLimit(newRateLimits.getTelemetryMsgRateLimit().getConfiguration()) : oldRateLimits.getTelemetryMsgRateLimit(),
-                    telemetryDataPointUpdate ? newLimit(newRateLimits.getTelemetryDataPointsRateLimit().getConfiguration()) : oldRateLimits.getTelemetryDataPointsRateLimit());
+                    regularUpdate ? copyLimit(newRateLimits.getRegularMsgRateLimit(), tenant) : oldRateLimits.getRegularMsgRateLimit(),
+                    telemetryMsgRateUpdate ? copyLimit(newRateLimits.getTelemetryMsgRateLimit(), tenant) : oldRateLimits.getTelemetryMsgRateLimit(),
+                    telemetryDataPointUpdate ? copyLimit(newRateLimits.getTelemetryDataPointsRateLimit(), tenant) : oldRateLimits.getTelemetryDataPointsRateLimit());
         } else {
             return null;
         }
     }
 
-    private EntityTransportRateLimits createRateLimits(TenantProfile tenantProfile, boolean tenant) {
+    // tenant limits are created for each tenant, while device limits are a prototype shared by the devices of the profile
+    private static TransportRateLimit copyLimit(TransportRateLimit limit, boolean tenant) {
+        return tenant ? limit : newLimit(limit.getConfiguration());
+    }
+
+    private EntityTransportRateLimits createRateLimits(TenantId tenantId, TenantProfile tenantProfile, boolean tenant) {
         TenantProfileData profileData = tenantProfile.getProfileData();
         DefaultTenantProfileConfiguration profile = (DefaultTenantProfileConfiguration) profileData.getConfiguration();
         if (profile == null) {
             return new EntityTransportRateLimits(ALLOW, ALLOW, ALLOW);
         } else {
-            TransportRateLimit regularMsgRateLimit = newLimit(tenant ? profile.getTransportTenantMsgRateLimit() : profile.getTransportDeviceMsgRateLimit());
-            TransportRateLimit telemetryMsgRateLimit = newLimit(tenant ? profile.getTransportTenantTelemetryMsgRateLimit() : profile.getTransportDeviceTelemetryMsgRateLimit());
-            TransportRateLimit telemetryDpRateLimit = newLimit(tenant ? profile.getTransportTenantTelemetryDataPointsRateLimit() : profile.getTransportTenantTelemetryDataPointsRateLimit());
+            if (tenant) {
+                return new EntityTransportRateLimits(
+                        newTenantLimit(tenantId, TransportRateLimitType.REGULAR_MSGS, profile.getTransportTenantMsgRateLimit()),
+                        newTenantLimit(tenantId, TransportRateLimitType.TELEMETRY_MSGS, profile.getTransportTenantTelemetryMsgRateLimit()),
+                        newTenantLimit(tenantId, TransportRateLimitType.TELEMETRY_DATA_POINTS, profile.getTransportTenantTelemetryDataPointsRateLimit()));
+            }
+            TransportRateLimit regularMsgRateLimit = newLimit(profile.getTransportDeviceMsgRateLimit());
+            TransportRateLimit telemetryMsgRateLimit = newLimit(profile.getTransportDeviceTelemetryMsgRateLimit());
+            TransportRateLimit telemetryDpRateLimit = newLimit(profile.getTransportTenantTelemetryDataPointsRateLimit());
             return new EntityTransportRateLimits(regularMsgRateLimit, telemetryMsgRateLimit, telemetryDpRateLimit);
         }
     }
@@ -250,10 +319,52 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
         return StringUtils.isEmpty(config) ? ALLOW : new SimpleTransportRateLimit(config);
     }
 
+    private TransportRateLimit newTenantLimit(TenantId tenantId, TransportRateLimitType type, String config) {
+        if (!distributedRateLimitsEnabled || StringUtils.isEmpty(config)) {
+            return newLimit(config);
+        }
+        return new LeasedTransportRateLimit(config, getLeaseSize(config), leaseTtlMs,
+                tokens -> requestLease(tenantId, type, tokens), tokens -> expiredTokensCounter.add((int) tokens));
+    }
+
+    private long getLeaseSize(String config) {
+        long minCapacity = Long.MAX_VALUE;
+        for (String limit : config.split(",")) {
+            minCapacity = Math.min(minCapacity, Long.parseLong(limit.split(":")[0]));
+        }
+        return Math.max(minCapacity * leasePercent / 100, 1);
+    }
+
+    private void requestLease(TenantId tenantId, TransportRateLimitType type, long tokens) {
+        TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, tenantId);
+        RateLimitLeaseRequestMsg requestMsg = RateLimitLeaseRequestMsg.newBuilder()
+                .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getId().getLeastSignificantBits())
+                .setServiceId(serviceInfoProvider.getServiceId())
+                .setType(type)
+                .setTokens(tokens)
+                .build();
+        leaseRequestsCounter.increment();
+        tbCoreMsgProducer.send(tpi, new TbProtoQueueMsg<>(tenantId.getId(), ToCoreMsg.newBuilder().setRateLimitLeaseRequestMsg(requestMsg).build()), null);
+    }
+
+    private static TransportRateLimit getLimit(EntityTransportRateLimits limits, TransportRateLimitType type) {
+        switch (type) {
+            case REGULAR_MSGS:
+                return limits.getRegularMsgRateLimit();
+            case TELEMETRY_MSGS:
+                return limits.getTelemetryMsgRateLimit();
+            case TELEMETRY_DATA_POINTS:
+                return limits.getTelemetryDataPointsRateLimit();
+            default:
+                return null;
+        }
+    }
+
     private EntityTransportRateLimits getTenantRateLimits(TenantId tenantId) {
         EntityTransportRateLimits limits = perTenantLimits.get(tenantId);
         if (limits == null) {
-            limits = createRateLimits(tenantProfileCache.get(tenantId), true);
+            limits = createRateLimits(tenantId, tenantProfileCache.get(tenantId), true);
             perTenantLimits.put(tenantId, limits);
         }
         return limits;
@@ -262,7 +373,7 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
     private EntityTransportRateLimits getDeviceRateLimits(TenantId tenantId, DeviceId deviceId) {
         EntityTransportRateLimits limits = perDeviceLimits.get(deviceId);
         if (limits == null) {
-            limits = createRateLimits(tenantProfileCache.get(tenantId), false);
+            limits = createRateLimits(null, tenantProfileCache.get(tenantId), false);
             perDeviceLimits.put(deviceId, limits);
             tenantDevices.computeIfAbsent(tenantId, id -> ConcurrentHashMap.newKeySet()).add(deviceId);
         }
@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.limits;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Rate limit that consumes tokens from a budget leased from the core service that owns the tenant.
+ * The budget is requested in batches when it drops below the half of the lease size and expires after the lease ttl,
+ * so the sum of the budgets of all transport nodes converges to the cluster-wide limit.
+ * Until the first lease response, or when the core service does not respond, the limit is checked locally.
+ * After a partial or empty grant no new lease is requested for the half of the lease ttl, so the throttled tenant does not flood the core service.
+ */
+public class LeasedTransportRateLimit implements TransportRateLimit {
+
+    private static final int FALLBACK_TTL_MULTIPLIER = 3;
+
+    @Getter
+    private final String configuration;
+    private final TransportRateLimit localLimit;
+    private final long leaseSize;
+    private final long leaseTtlMs;
+    private final LongConsumer leaseRequester;
+    private final LongConsumer expiredTokensListener;
+
+    private final AtomicLong budget = new AtomicLong();
+    private final AtomicLong leaseRequestTs = new AtomicLong();
+    private volatile long leaseBackoffTs;
+    private volatile long budgetExpirationTs;
+    private volatile long lastLeaseResponseTs;
+
+    public LeasedTransportRateLimit(String configuration, long leaseSize, long leaseTtlMs,
+                                    LongConsumer leaseRequester, LongConsumer expiredTokensListener) {
+        this.configuration = configuration;
+        this.localLimit = new SimpleTransportRateLimit(configuration);
+        this.leaseSize = Math.max(leaseSize, 1);
+        this.leaseTtlMs = leaseTtlMs;
+        this.leaseRequester = leaseRequester;
+        this.expiredTokensListener = expiredTokensListener;
+    }
+
+    @Override
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    @Override
+    public boolean tryConsume(long number) {
+        if (number <= 0) {
+            return true;
+        }
+        long ts = System.currentTimeMillis();
+        if (ts - lastLeaseResponseTs > FALLBACK_TTL_MULTIPLIER * leaseTtlMs) {
+            requestLease(ts);
+            return localLimit.tryConsume(number);
+        }
+        if (ts < budgetExpirationTs) {
+            while (true) {
+                long current = budget.get();
+                if (current < number) {
+                    break;
+                }
+                if (budget.compareAndSet(current, current - number)) {
+                    if (current - number < leaseSize / 2) {
+                        requestLease(ts);
+                    }
+                    return true;
+                }
+            }
+        }
+        requestLease(ts);
+        return false;
+    }
+
+    /**
+     * Adds the granted tokens to the budget. Tokens left from the expired lease are dropped and reported to the listener.
+     */
+    public synchronized void onLeaseResponse(long granted) {
+        long ts = System.currentTimeMillis();
+        if (ts >= budgetExpirationTs) {
+            long expired = budget.getAndSet(granted);
+            if (expired > 0) {
+                expiredTokensListener.accept(expired);
+            }
+        } else {
+            budget.addAndGet(granted);
+        }
+        budgetExpirationTs = ts + leaseTtlMs;
+        lastLeaseResponseTs = ts;
+        leaseBackoffTs = granted < leaseSize ? ts + leaseTtlMs / 2 : 0;
+        leaseRequestTs.set(0);
+    }
+
+    private void requestLease(long ts) {
+        if (ts < leaseBackoffTs) {
+            return;
+        }
+        long requestTs = leaseRequestTs.get();
+        // only one lease request is in flight, unless the response is lost
+        if ((requestTs == 0 || ts - requestTs > leaseTtlMs) && leaseRequestTs.compareAndSet(requestTs, ts)) {
+            leaseRequester.accept(leaseSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LeasedTransportRateLimit{configuration='" + configuration + "', leaseSize=" + leaseSize + "}";
+    }
+}
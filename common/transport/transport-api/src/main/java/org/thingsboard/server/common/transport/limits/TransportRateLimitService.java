@@ -19,6 +19,7 @@ import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.transport.profile.TenantProfileUpdateResult;
+import org.thingsboard.server.gen.transport.TransportProtos.RateLimitLeaseResponseMsg;
 
 import java.net.InetSocketAddress;
 
@@ -36,6 +37,8 @@ public interface TransportRateLimitService {
 
     void update(TenantId tenantId, boolean transportEnabled);
 
+    void onLeaseResponse(RateLimitLeaseResponseMsg msg);
+
     boolean checkAddress(InetSocketAddress address);
 
     void onAuthSuccess(InetSocketAddress address);
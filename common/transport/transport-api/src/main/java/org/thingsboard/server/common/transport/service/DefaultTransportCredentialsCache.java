@@ -0,0 +1,246 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.DeviceProfile;
+import org.thingsboard.server.common.data.StringUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.EncryptionUtil;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.stats.StatsType;
+import org.thingsboard.server.common.transport.TransportCredentialsCache;
+import org.thingsboard.server.common.transport.TransportDeviceProfileCache;
+import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
+import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
+import org.thingsboard.server.gen.transport.TransportProtos.ValidateBasicMqttCredRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceLwM2MCredentialsRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceTokenRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceX509CertRequestMsg;
+import org.thingsboard.server.queue.util.TbTransportComponent;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Component
+@TbTransportComponent
+public class DefaultTransportCredentialsCache implements TransportCredentialsCache {
+
+    private static final ValidateDeviceCredentialsResponse INVALID_CREDENTIALS = ValidateDeviceCredentialsResponse.builder().build();
+    private static final String STATS_KEY = StatsType.TRANSPORT.getName() + ".credentialsCache";
+
+    @Value("${transport.credentials_cache.enabled:true}")
+    private boolean enabled;
+    @Value("${transport.credentials_cache.max_size:100000}")
+    private long maxSize;
+    @Value("${transport.credentials_cache.ttl:60}")
+    private long ttlInSec;
+    @Value("${transport.credentials_cache.invalid_credentials_ttl:10}")
+    private long invalidCredentialsTtlInSec;
+
+    private final TransportDeviceProfileCache deviceProfileCache;
+    private final StatsFactory statsFactory;
+
+    private final ConcurrentMap<DeviceId, Set<Object>> deviceCredentialsKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Object>> invalidCredentialsKeys = new ConcurrentHashMap<>();
+    private Cache<Object, ValidateDeviceCredentialsResponse> validCredentials;
+    private Cache<Object, Boolean> invalidCredentials;
+
+    // incremented on each eviction
+    private final AtomicLong evictionStamp = new AtomicLong();
+    // stamps of the recent evictions by device id and by credentials id, responses requested before them are not cached
+    private Cache<Object, Long> recentEvictions;
+
+    private DefaultCounter hits;
+    private DefaultCounter misses;
+
+    public DefaultTransportCredentialsCache(TransportDeviceProfileCache deviceProfileCache, StatsFactory statsFactory) {
+        this.deviceProfileCache = deviceProfileCache;
+        this.statsFactory = statsFactory;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        validCredentials = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlInSec, TimeUnit.SECONDS)
+                .executor(Runnable::run)
+                .<Object, ValidateDeviceCredentialsResponse>removalListener((key, response, cause) -> {
+                    if (key != null && response != null && cause != RemovalCause.REPLACED) {
+                        removeKey(deviceCredentialsKeys, response.getDeviceInfo().getDeviceId(), key);
+                    }
+                })
+                .build();
+        invalidCredentials = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(invalidCredentialsTtlInSec, TimeUnit.SECONDS)
+                .executor(Runnable::run)
+                .<Object, Boolean>removalListener((key, value, cause) -> {
+                    if (key != null && cause != RemovalCause.REPLACED) {
+                        getCredentialsIds(key).forEach(credentialsId -> removeKey(invalidCredentialsKeys, credentialsId, key));
+                    }
+                })
+                .build();
+        recentEvictions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Math.max(ttlInSec, invalidCredentialsTtlInSec), TimeUnit.SECONDS)
+                .build();
+        hits = statsFactory.createDefaultCounter(STATS_KEY, "result", "hit");
+        misses = statsFactory.createDefaultCounter(STATS_KEY, "result", "miss");
+    }
+
+    @Override
+    public ValidateDeviceCredentialsResponse get(Object credentialsKey) {
+        if (!enabled) {
+            return null;
+        }
+        ValidateDeviceCredentialsResponse response = validCredentials.getIfPresent(credentialsKey);
+        if (response != null) {
+            hits.increment();
+            TransportDeviceInfo deviceInfo = response.getDeviceInfo();
+            DeviceProfile deviceProfile = response.getDeviceProfile() != null ? deviceProfileCache.get(deviceInfo.getDeviceProfileId()) : null;
+            return ValidateDeviceCredentialsResponse.builder()
+                    .deviceInfo(deviceInfo)
+                    .deviceProfile(deviceProfile)
+                    .credentials(response.getCredentials())
+                    .build();
+        }
+        if (invalidCredentials.getIfPresent(credentialsKey) != null) {
+            hits.increment();
+            return INVALID_CREDENTIALS;
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public long getEvictionStamp() {
+        return evictionStamp.get();
+    }
+
+    @Override
+    public synchronized void put(Object credentialsKey, ValidateDeviceCredentialsResponse response, long stamp) {
+        if (!enabled) {
+            return;
+        }
+        if (response.hasDeviceInfo()) {
+            DeviceId deviceId = response.getDeviceInfo().getDeviceId();
+            if (isEvictedAfter(deviceId, stamp)) {
+                log.trace("[{}] Skip caching of credentials validated before the eviction", deviceId);
+                return;
+            }
+            addKey(deviceCredentialsKeys, deviceId, credentialsKey);
+            validCredentials.put(credentialsKey, response);
+            invalidCredentials.invalidate(credentialsKey);
+        } else {
+            List<String> credentialsIds = getCredentialsIds(credentialsKey);
+            if (credentialsIds.stream().anyMatch(credentialsId -> isEvictedAfter(credentialsId, stamp))) {
+                log.trace("Skip caching of invalid credentials validated before the eviction");
+                return;
+            }
+            credentialsIds.forEach(credentialsId -> addKey(invalidCredentialsKeys, credentialsId, credentialsKey));
+            invalidCredentials.put(credentialsKey, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public synchronized void evict(DeviceId deviceId) {
+        if (!enabled) {
+            return;
+        }
+        recentEvictions.put(deviceId, evictionStamp.incrementAndGet());
+        Set<Object> keys = deviceCredentialsKeys.remove(deviceId);
+        if (keys != null) {
+            log.trace("[{}] Evicting {} cached credentials", deviceId, keys.size());
+            validCredentials.invalidateAll(keys);
+        }
+    }
+
+    @Override
+    public synchronized void evictInvalid(String credentialsId) {
+        if (!enabled) {
+            return;
+        }
+        recentEvictions.put(credentialsId, evictionStamp.incrementAndGet());
+        Set<Object> keys = invalidCredentialsKeys.remove(credentialsId);
+        if (keys != null) {
+            log.trace("[{}] Evicting {} cached invalid credentials", credentialsId, keys.size());
+            invalidCredentials.invalidateAll(keys);
+        }
+    }
+
+    private boolean isEvictedAfter(Object evictionKey, long stamp) {
+        Long evictedAt = recentEvictions.getIfPresent(evictionKey);
+        return evictedAt != null && evictedAt > stamp;
+    }
+
+    /**
+     * @return ids of the device credentials that the core looks up to validate the credentials key.
+     */
+    static List<String> getCredentialsIds(Object credentialsKey) {
+        if (credentialsKey instanceof ValidateDeviceTokenRequestMsg) {
+            return Collections.singletonList(((ValidateDeviceTokenRequestMsg) credentialsKey).getToken());
+        } else if (credentialsKey instanceof ValidateDeviceX509CertRequestMsg) {
+            return Collections.singletonList(((ValidateDeviceX509CertRequestMsg) credentialsKey).getHash());
+        } else if (credentialsKey instanceof ValidateDeviceLwM2MCredentialsRequestMsg) {
+            return Collections.singletonList(((ValidateDeviceLwM2MCredentialsRequestMsg) credentialsKey).getCredentialsId());
+        } else if (credentialsKey instanceof ValidateBasicMqttCredRequestMsg) {
+            ValidateBasicMqttCredRequestMsg mqtt = (ValidateBasicMqttCredRequestMsg) credentialsKey;
+            if (StringUtils.isEmpty(mqtt.getUserName())) {
+                return Collections.singletonList(EncryptionUtil.getSha3Hash(mqtt.getClientId()));
+            } else {
+                return Arrays.asList(EncryptionUtil.getSha3Hash("|", mqtt.getClientId(), mqtt.getUserName()), mqtt.getUserName());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static <K> void addKey(ConcurrentMap<K, Set<Object>> keysMap, K id, Object credentialsKey) {
+        keysMap.compute(id, (k, keys) -> {
+            if (keys == null) {
+                keys = new HashSet<>();
+            }
+            keys.add(credentialsKey);
+            return keys;
+        });
+    }
+
+    private static <K> void removeKey(ConcurrentMap<K, Set<Object>> keysMap, K id, Object credentialsKey) {
+        keysMap.computeIfPresent(id, (k, keys) -> {
+            keys.remove(credentialsKey);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+}
@@ -63,6 +63,7 @@ import org.thingsboard.server.common.transport.DeviceDeletedEvent;
 import org.thingsboard.server.common.transport.DeviceProfileUpdatedEvent;
 import org.thingsboard.server.common.transport.DeviceUpdatedEvent;
 import org.thingsboard.server.common.transport.SessionMsgListener;
+import org.thingsboard.server.common.transport.TransportCredentialsCache;
 import org.thingsboard.server.common.transport.TransportDeviceProfileCache;
 import org.thingsboard.server.common.transport.TransportResourceCache;
 import org.thingsboard.server.common.transport.TransportService;
@@ -97,11 +98,13 @@ import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.queue.provider.TbTransportQueueFactory;
 import org.thingsboard.server.queue.scheduler.SchedulerComponent;
 import org.thingsboard.server.queue.util.AfterStartUp;
+import org.thingsboard.server.queue.util.TbMsgTracingService;
 import org.thingsboard.server.queue.util.TbTransportComponent;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -177,6 +180,8 @@ public class DefaultTransportService implements TransportService {
     private final SchedulerComponent scheduler;
     private final ApplicationEventPublisher eventPublisher;
     private final TransportResourceCache transportResourceCache;
+    private final TransportCredentialsCache credentialsCache;
+    private final TbMsgTracingService msgTracingService;
 
     protected TbQueueRequestTemplate<TbProtoQueueMsg<TransportApiRequestMsg>, TbProtoQueueMsg<TransportApiResponseMsg>> transportApiRequestTemplate;
     protected TbQueueProducer<TbProtoQueueMsg<ToRuleEngineMsg>> ruleEngineMsgProducer;
@@ -206,7 +211,8 @@ public class DefaultTransportService implements TransportService {
                                    TransportTenantProfileCache tenantProfileCache,
                                    TransportRateLimitService rateLimitService,
                                    DataDecodingEncodingService dataDecodingEncodingService, SchedulerComponent scheduler, TransportResourceCache transportResourceCache,
-                                   ApplicationEventPublisher eventPublisher) {
+                                   TransportCredentialsCache credentialsCache, ApplicationEventPublisher eventPublisher,
+                                   TbMsgTracingService msgTracingService) {
         this.partitionService = partitionService;
         this.serviceInfoProvider = serviceInfoProvider;
         this.queueProvider = queueProvider;
@@ -219,7 +225,9 @@ public class DefaultTransportService implements TransportService {
         this.dataDecodingEncodingService = dataDecodingEncodingService;
         this.scheduler = scheduler;
         this.transportResourceCache = transportResourceCache;
+        this.credentialsCache = credentialsCache;
         this.eventPublisher = eventPublisher;
+        this.msgTracingService = msgTracingService;
     }
 
     @PostConstruct
@@ -232,6 +240,7 @@ public class DefaultTransportService implements TransportService {
         this.scheduler.scheduleAtFixedRate(this::invalidateRateLimits, new Random().nextInt((int) sessionReportTimeout), sessionReportTimeout, TimeUnit.MILLISECONDS);
         transportApiRequestTemplate = queueProvider.createTransportApiRequestTemplate();
         transportApiRequestTemplate.setMessagesStats(transportApiStats);
+        transportApiRequestTemplate.initStats(statsFactory, StatsType.TRANSPORT.getName() + ".apiRequests");
         ruleEngineMsgProducer = producerProvider.getRuleEngineMsgProducer();
         tbCoreMsgProducer = producerProvider.getTbCoreMsgProducer();
         transportNotificationsConsumer = queueProvider.createTransportNotificationsConsumer();
@@ -393,7 +402,7 @@ public class DefaultTransportService implements TransportService {
         log.trace("Processing msg: {}", msg);
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(),
                 TransportApiRequestMsg.newBuilder().setValidateTokenRequestMsg(msg).build());
-        doProcess(transportType, protoMsg, callback);
+        doProcess(transportType, msg, protoMsg, callback);
     }
 
     @Override
@@ -402,41 +411,47 @@ public class DefaultTransportService implements TransportService {
         log.trace("Processing msg: {}", msg);
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(),
                 TransportApiRequestMsg.newBuilder().setValidateBasicMqttCredRequestMsg(msg).build());
-        doProcess(transportType, protoMsg, callback);
+        doProcess(transportType, msg, protoMsg, callback);
     }
 
     @Override
     public void process(TransportProtos.ValidateDeviceLwM2MCredentialsRequestMsg requestMsg, TransportServiceCallback<ValidateDeviceCredentialsResponse> callback) {
         log.trace("Processing msg: {}", requestMsg);
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(), TransportApiRequestMsg.newBuilder().setValidateDeviceLwM2MCredentialsRequestMsg(requestMsg).build());
-        ListenableFuture<ValidateDeviceCredentialsResponse> response = Futures.transform(transportApiRequestTemplate.send(protoMsg), tmp -> {
-            TransportProtos.ValidateDeviceCredentialsResponseMsg msg = tmp.getValue().getValidateCredResponseMsg();
-            ValidateDeviceCredentialsResponse.ValidateDeviceCredentialsResponseBuilder result = ValidateDeviceCredentialsResponse.builder();
-            if (msg.hasDeviceInfo()) {
-                result.credentials(msg.getCredentialsBody());
-                TransportDeviceInfo tdi = getTransportDeviceInfo(msg.getDeviceInfo());
-                result.deviceInfo(tdi);
-                ByteString profileBody = msg.getProfileBody();
-                if (!profileBody.isEmpty()) {
-                    DeviceProfile profile = deviceProfileCache.getOrCreate(tdi.getDeviceProfileId(), profileBody);
-                    result.deviceProfile(profile);
-                }
-            }
-            return result.build();
-        }, MoreExecutors.directExecutor());
-        AsyncCallbackTemplate.withCallback(response, callback::onSuccess, callback::onError, transportCallbackExecutor);
+        AsyncCallbackTemplate.withCallback(validateCredentials(requestMsg, protoMsg), callback::onSuccess, callback::onError, transportCallbackExecutor);
     }
 
     @Override
     public void process(DeviceTransportType transportType, TransportProtos.ValidateDeviceX509CertRequestMsg msg, TransportServiceCallback<ValidateDeviceCredentialsResponse> callback) {
         log.trace("Processing msg: {}", msg);
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(), TransportApiRequestMsg.newBuilder().setValidateX509CertRequestMsg(msg).build());
-        doProcess(transportType, protoMsg, callback);
+        doProcess(transportType, msg, protoMsg, callback);
     }
 
-    private void doProcess(DeviceTransportType transportType, TbProtoQueueMsg<TransportApiRequestMsg> protoMsg,
+    private void doProcess(DeviceTransportType transportType, Object credentialsKey, TbProtoQueueMsg<TransportApiRequestMsg> protoMsg,
                            TransportServiceCallback<ValidateDeviceCredentialsResponse> callback) {
-        ListenableFuture<ValidateDeviceCredentialsResponse> response = Futures.transform(transportApiRequestTemplate.send(protoMsg), tmp -> {
+        ListenableFuture<ValidateDeviceCredentialsResponse> response = Futures.transform(validateCredentials(credentialsKey, protoMsg), result -> {
+            if (result.hasDeviceInfo()) {
+                TransportDeviceInfo tdi = result.getDeviceInfo();
+                DeviceProfile profile = result.getDeviceProfile();
+                if (transportType != DeviceTransportType.DEFAULT
+                        && profile != null && profile.getTransportType() != DeviceTransportType.DEFAULT && profile.getTransportType() != transportType) {
+                    log.debug("[{}] Device profile [{}] has different transport type: {}, expected: {}", tdi.getDeviceId(), tdi.getDeviceProfileId(), profile.getTransportType(), transportType);
+                    throw new IllegalStateException("Device profile has different transport type: " + profile.getTransportType() + ". Expected: " + transportType);
+                }
+            }
+            return result;
+        }, MoreExecutors.directExecutor());
+        AsyncCallbackTemplate.withCallback(response, callback::onSuccess, callback::onError, transportCallbackExecutor);
+    }
+
+    private ListenableFuture<ValidateDeviceCredentialsResponse> validateCredentials(Object credentialsKey, TbProtoQueueMsg<TransportApiRequestMsg> protoMsg) {
+        ValidateDeviceCredentialsResponse cached = credentialsCache.get(credentialsKey);
+        if (cached != null) {
+            return Futures.immediateFuture(cached);
+        }
+        long evictionStamp = credentialsCache.getEvictionStamp();
+        return Futures.transform(transportApiRequestTemplate.send(protoMsg), tmp -> {
             TransportProtos.ValidateDeviceCredentialsResponseMsg msg = tmp.getValue().getValidateCredResponseMsg();
             ValidateDeviceCredentialsResponse.ValidateDeviceCredentialsResponseBuilder result = ValidateDeviceCredentialsResponse.builder();
             if (msg.hasDeviceInfo()) {
@@ -445,40 +460,51 @@ public class DefaultTransportService implements TransportService {
                 result.deviceInfo(tdi);
                 ByteString profileBody = msg.getProfileBody();
                 if (!profileBody.isEmpty()) {
-                    DeviceProfile profile = deviceProfileCache.getOrCreate(tdi.getDeviceProfileId(), profileBody);
-                    if (transportType != DeviceTransportType.DEFAULT
-                            && profile != null && profile.getTransportType() != DeviceTransportType.DEFAULT && profile.getTransportType() != transportType) {
-                        log.debug("[{}] Device profile [{}] has different transport type: {}, expected: {}", tdi.getDeviceId(), tdi.getDeviceProfileId(), profile.getTransportType(), transportType);
-                        throw new IllegalStateException("Device profile has different transport type: " + profile.getTransportType() + ". Expected: " + transportType);
-                    }
-                    result.deviceProfile(profile);
+                    result.deviceProfile(deviceProfileCache.getOrCreate(tdi.getDeviceProfileId(), profileBody));
                 }
             }
-            return result.build();
+            ValidateDeviceCredentialsResponse response = result.build();
+            credentialsCache.put(credentialsKey, response, evictionStamp);
+            return response;
         }, MoreExecutors.directExecutor());
-        AsyncCallbackTemplate.withCallback(response, callback::onSuccess, callback::onError, transportCallbackExecutor);
     }
 
     @Override
     public void process(TransportProtos.GetOrCreateDeviceFromGatewayRequestMsg requestMsg, TransportServiceCallback<GetOrCreateDeviceFromGatewayResponse> callback) {
         TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(), TransportApiRequestMsg.newBuilder().setGetOrCreateDeviceRequestMsg(requestMsg).build());
         log.trace("Processing msg: {}", requestMsg);
-        ListenableFuture<GetOrCreateDeviceFromGatewayResponse> response = Futures.transform(transportApiRequestTemplate.send(protoMsg), tmp -> {
-            TransportProtos.GetOrCreateDeviceFromGatewayResponseMsg msg = tmp.getValue().getGetOrCreateDeviceResponseMsg();
-            GetOrCreateDeviceFromGatewayResponse.GetOrCreateDeviceFromGatewayResponseBuilder result = GetOrCreateDeviceFromGatewayResponse.builder();
-            if (msg.hasDeviceInfo()) {
-                TransportDeviceInfo tdi = getTransportDeviceInfo(msg.getDeviceInfo());
-                result.deviceInfo(tdi);
-                ByteString profileBody = msg.getProfileBody();
-                if (profileBody != null && !profileBody.isEmpty()) {
-                    result.deviceProfile(deviceProfileCache.getOrCreate(tdi.getDeviceProfileId(), profileBody));
-                }
+        ListenableFuture<GetOrCreateDeviceFromGatewayResponse> response = Futures.transform(transportApiRequestTemplate.send(protoMsg),
+                tmp -> toGetOrCreateDeviceFromGatewayResponse(tmp.getValue().getGetOrCreateDeviceResponseMsg()), MoreExecutors.directExecutor());
+        AsyncCallbackTemplate.withCallback(response, callback::onSuccess, callback::onError, transportCallbackExecutor);
+    }
+
+    @Override
+    public void process(TransportProtos.GetOrCreateDevicesFromGatewayRequestMsg requestMsg, TransportServiceCallback<Map<String, GetOrCreateDeviceFromGatewayResponse>> callback) {
+        TbProtoQueueMsg<TransportApiRequestMsg> protoMsg = new TbProtoQueueMsg<>(UUID.randomUUID(), TransportApiRequestMsg.newBuilder().setGetOrCreateDevicesRequestMsg(requestMsg).build());
+        log.trace("Processing msg: {}", requestMsg);
+        ListenableFuture<Map<String, GetOrCreateDeviceFromGatewayResponse>> response = Futures.transform(transportApiRequestTemplate.send(protoMsg), tmp -> {
+            Map<String, GetOrCreateDeviceFromGatewayResponse> result = new HashMap<>();
+            for (TransportProtos.GetOrCreateDeviceFromGatewayResponseMsg msg : tmp.getValue().getGetOrCreateDevicesResponseMsg().getDevicesList()) {
+                result.put(msg.getDeviceName(), toGetOrCreateDeviceFromGatewayResponse(msg));
             }
-            return result.build();
+            return result;
         }, MoreExecutors.directExecutor());
         AsyncCallbackTemplate.withCallback(response, callback::onSuccess, callback::onError, transportCallbackExecutor);
     }
 
+    private GetOrCreateDeviceFromGatewayResponse toGetOrCreateDeviceFromGatewayResponse(TransportProtos.GetOrCreateDeviceFromGatewayResponseMsg msg) {
+        GetOrCreateDeviceFromGatewayResponse.GetOrCreateDeviceFromGatewayResponseBuilder result = GetOrCreateDeviceFromGatewayResponse.builder();
+        if (msg.hasDeviceInfo()) {
+            TransportDeviceInfo tdi = getTransportDeviceInfo(msg.getDeviceInfo());
+            result.deviceInfo(tdi);
+            ByteString profileBody = msg.getProfileBody();
+            if (profileBody != null && !profileBody.isEmpty()) {
+                result.deviceProfile(deviceProfileCache.getOrCreate(tdi.getDeviceProfileId(), profileBody));
+            }
+        }
+        return result.build();
+    }
+
     @Override
     public void process(TransportProtos.LwM2MRequestMsg msg, TransportServiceCallback<TransportProtos.LwM2MResponseMsg> callback) {
         log.trace("Processing msg: {}", msg);
@@ -927,7 +953,13 @@ public class DefaultTransportService implements TransportService {
                     }
                 } else if (EntityType.DEVICE.equals(entityType)) {
                     Optional<Device> deviceOpt = dataDecodingEncodingService.decode(msg.getData().toByteArray());
-                    deviceOpt.ifPresent(this::onDeviceUpdate);
+                    deviceOpt.ifPresent(device -> {
+                        credentialsCache.evict(device.getId());
+                        if (msg.getCredentialsUpdated() && !msg.getCredentialsId().isEmpty()) {
+                            credentialsCache.evictInvalid(msg.getCredentialsId());
+                        }
+                        onDeviceUpdate(device);
+                    });
                 }
             } else if (toSessionMsg.hasEntityDeleteMsg()) {
                 TransportProtos.EntityDeleteMsg msg = toSessionMsg.getEntityDeleteMsg();
@@ -940,6 +972,7 @@ public class DefaultTransportService implements TransportService {
                 } else if (EntityType.TENANT.equals(entityType)) {
                     rateLimitService.remove(TenantId.fromUUID(entityUuid));
                 } else if (EntityType.DEVICE.equals(entityType)) {
+                    credentialsCache.evict(new DeviceId(entityUuid));
                     rateLimitService.remove(new DeviceId(entityUuid));
                     onDeviceDeleted(new DeviceId(entityUuid));
                 }
@@ -968,6 +1001,8 @@ public class DefaultTransportService implements TransportService {
                 partitionService.updateQueue(toSessionMsg.getQueueUpdateMsg());
             } else if (toSessionMsg.hasQueueDeleteMsg()) {
                 partitionService.removeQueue(toSessionMsg.getQueueDeleteMsg());
+            } else if (toSessionMsg.hasRateLimitLeaseResponseMsg()) {
+                rateLimitService.onLeaseResponse(toSessionMsg.getRateLimitLeaseResponseMsg());
             } else {
                 //TODO: should we notify the device actor about missed session?
                 log.debug("[{}] Missing session.", sessionId);
@@ -1122,6 +1157,7 @@ public class DefaultTransportService implements TransportService {
         }
 
         TbMsg tbMsg = TbMsg.newMsg(queueName, sessionMsgType.name(), deviceId, customerId, metaData, gson.toJson(json), ruleChainId, null);
+        msgTracingService.startTrace(tbMsg);
         sendToRuleEngine(tenantId, tbMsg, callback);
     }
 
@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.limits;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LeasedTransportRateLimitTest {
+
+    @Test
+    public void testLocalLimitIsUsedUntilFirstLease() {
+        AtomicInteger requests = new AtomicInteger();
+        LeasedTransportRateLimit limit = new LeasedTransportRateLimit("10:60", 5, 60000, tokens -> requests.incrementAndGet(), tokens -> {});
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limit.tryConsume());
+        }
+        Assert.assertFalse(limit.tryConsume());
+        // only one request is in flight until the response
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testLeasedBudgetIsConsumed() {
+        AtomicLong requested = new AtomicLong();
+        LeasedTransportRateLimit limit = new LeasedTransportRateLimit("1000:60", 10, 60000, requested::addAndGet, tokens -> {});
+        limit.onLeaseResponse(10);
+
+        Assert.assertTrue(limit.tryConsume(5));
+        Assert.assertEquals(0, requested.get());
+        Assert.assertTrue(limit.tryConsume(5));
+        Assert.assertEquals(10, requested.get());
+        Assert.assertFalse(limit.tryConsume());
+
+        limit.onLeaseResponse(0);
+        Assert.assertFalse(limit.tryConsume());
+        limit.onLeaseResponse(3);
+        Assert.assertTrue(limit.tryConsume(3));
+        Assert.assertFalse(limit.tryConsume());
+    }
+
+    @Test
+    public void testExpiredBudgetIsDropped() throws InterruptedException {
+        AtomicLong expired = new AtomicLong();
+        LeasedTransportRateLimit limit = new LeasedTransportRateLimit("1000:60", 10, 50, tokens -> {}, expired::addAndGet);
+        limit.onLeaseResponse(10);
+        Assert.assertTrue(limit.tryConsume(4));
+
+        Thread.sleep(100);
+        Assert.assertFalse(limit.tryConsume());
+        limit.onLeaseResponse(10);
+        Assert.assertEquals(6, expired.get());
+        Assert.assertTrue(limit.tryConsume(10));
+        Assert.assertFalse(limit.tryConsume());
+    }
+
+    @Test
+    public void testNoLeaseRequestsAfterEmptyGrantUntilBackoffEnds() throws InterruptedException {
+        AtomicInteger requests = new AtomicInteger();
+        LeasedTransportRateLimit limit = new LeasedTransportRateLimit("1000:60", 10, 200, tokens -> requests.incrementAndGet(), tokens -> {});
+        limit.onLeaseResponse(0);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(limit.tryConsume());
+        }
+        Assert.assertEquals(0, requests.get());
+
+        Thread.sleep(150);
+        Assert.assertFalse(limit.tryConsume());
+        Assert.assertFalse(limit.tryConsume());
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testNoLeaseRequestsAfterPartialGrantUntilBackoffEnds() throws InterruptedException {
+        AtomicInteger requests = new AtomicInteger();
+        LeasedTransportRateLimit limit = new LeasedTransportRateLimit("1000:60", 10, 200, tokens -> requests.incrementAndGet(), tokens -> {});
+        limit.onLeaseResponse(4);
+
+        Assert.assertTrue(limit.tryConsume(4));
+        Assert.assertFalse(limit.tryConsume());
+        Assert.assertEquals(0, requests.get());
+
+        Thread.sleep(150);
+        Assert.assertFalse(limit.tryConsume());
+        Assert.assertEquals(1, requests.get());
+    }
+}
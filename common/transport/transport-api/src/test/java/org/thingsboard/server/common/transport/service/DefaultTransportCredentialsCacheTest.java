@@ -0,0 +1,185 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.msg.EncryptionUtil;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.common.transport.TransportDeviceProfileCache;
+import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
+import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
+import org.thingsboard.server.gen.transport.TransportProtos.ValidateBasicMqttCredRequestMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceTokenRequestMsg;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+
+public class DefaultTransportCredentialsCacheTest {
+
+    private DefaultTransportCredentialsCache cache;
+
+    @Before
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StatsFactory statsFactory = mock(StatsFactory.class, invocation -> new DefaultCounter(new AtomicInteger(), meterRegistry.counter("test")));
+        cache = new DefaultTransportCredentialsCache(mock(TransportDeviceProfileCache.class), statsFactory);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxSize", 100L);
+        ReflectionTestUtils.setField(cache, "ttlInSec", 1L);
+        ReflectionTestUtils.setField(cache, "invalidCredentialsTtlInSec", 1L);
+        cache.init();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        cache.put(token("token"), validResponse(deviceId), cache.getEvictionStamp());
+        cache.put(token("invalid"), invalidResponse(), cache.getEvictionStamp());
+
+        ValidateDeviceCredentialsResponse cached = cache.get(token("token"));
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(deviceId, cached.getDeviceInfo().getDeviceId());
+        Assert.assertEquals("token", cached.getCredentials());
+
+        cached = cache.get(token("invalid"));
+        Assert.assertNotNull(cached);
+        Assert.assertFalse(cached.hasDeviceInfo());
+
+        Assert.assertNull(cache.get(token("unknown")));
+    }
+
+    @Test
+    public void testEvictDevice() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        DeviceId otherDeviceId = new DeviceId(UUID.randomUUID());
+        cache.put(token("token"), validResponse(deviceId), cache.getEvictionStamp());
+        cache.put(token("token2"), validResponse(deviceId), cache.getEvictionStamp());
+        cache.put(token("other"), validResponse(otherDeviceId), cache.getEvictionStamp());
+
+        cache.evict(deviceId);
+
+        Assert.assertNull(cache.get(token("token")));
+        Assert.assertNull(cache.get(token("token2")));
+        Assert.assertNotNull(cache.get(token("other")));
+    }
+
+    @Test
+    public void testEvictInvalidOnlyEvictsMatchingCredentials() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        cache.put(token("token"), validResponse(deviceId), cache.getEvictionStamp());
+        cache.put(token("invalid"), invalidResponse(), cache.getEvictionStamp());
+        cache.put(token("otherInvalid"), invalidResponse(), cache.getEvictionStamp());
+
+        cache.evictInvalid("invalid");
+
+        Assert.assertNull(cache.get(token("invalid")));
+        Assert.assertNotNull(cache.get(token("otherInvalid")));
+        Assert.assertNotNull(cache.get(token("token")));
+    }
+
+    @Test
+    public void testEvictInvalidBasicMqttCredentials() {
+        ValidateBasicMqttCredRequestMsg clientIdOnly = ValidateBasicMqttCredRequestMsg.newBuilder().setClientId("client").build();
+        ValidateBasicMqttCredRequestMsg clientIdAndUserName = ValidateBasicMqttCredRequestMsg.newBuilder()
+                .setClientId("client").setUserName("user").setPassword("password").build();
+        cache.put(clientIdOnly, invalidResponse(), cache.getEvictionStamp());
+        cache.put(clientIdAndUserName, invalidResponse(), cache.getEvictionStamp());
+
+        // credentials created with the user name only
+        cache.evictInvalid("user");
+        Assert.assertNotNull(cache.get(clientIdOnly));
+        Assert.assertNull(cache.get(clientIdAndUserName));
+
+        cache.evictInvalid(EncryptionUtil.getSha3Hash("client"));
+        Assert.assertNull(cache.get(clientIdOnly));
+    }
+
+    @Test
+    public void testResponseValidatedBeforeEvictionIsNotCached() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        long stamp = cache.getEvictionStamp();
+        // the eviction is processed while the validation request is in flight
+        cache.evict(deviceId);
+        cache.put(token("token"), validResponse(deviceId), stamp);
+        Assert.assertNull(cache.get(token("token")));
+
+        stamp = cache.getEvictionStamp();
+        cache.evictInvalid("invalid");
+        cache.put(token("invalid"), invalidResponse(), stamp);
+        Assert.assertNull(cache.get(token("invalid")));
+
+        cache.put(token("token"), validResponse(deviceId), cache.getEvictionStamp());
+        Assert.assertNotNull(cache.get(token("token")));
+    }
+
+    @Test
+    public void testEvictionOfOtherDeviceDoesNotPreventCaching() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        long stamp = cache.getEvictionStamp();
+        // unrelated evictions are processed while the validation requests are in flight
+        cache.evict(new DeviceId(UUID.randomUUID()));
+        cache.evictInvalid("other");
+        cache.put(token("token"), validResponse(deviceId), stamp);
+        cache.put(token("invalid"), invalidResponse(), stamp);
+
+        Assert.assertNotNull(cache.get(token("token")));
+        Assert.assertNotNull(cache.get(token("invalid")));
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        cache.put(token("token"), validResponse(deviceId), cache.getEvictionStamp());
+        cache.put(token("invalid"), invalidResponse(), cache.getEvictionStamp());
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> cache.get(token("token")) == null && cache.get(token("invalid")) == null);
+    }
+
+    @Test
+    public void testDisabledCacheDoesNotStoreResponses() {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        cache.put(token("token"), validResponse(new DeviceId(UUID.randomUUID())), cache.getEvictionStamp());
+        Assert.assertNull(cache.get(token("token")));
+    }
+
+    private static ValidateDeviceTokenRequestMsg token(String token) {
+        return ValidateDeviceTokenRequestMsg.newBuilder().setToken(token).build();
+    }
+
+    private static ValidateDeviceCredentialsResponse invalidResponse() {
+        return ValidateDeviceCredentialsResponse.builder().build();
+    }
+
+    private static ValidateDeviceCredentialsResponse validResponse(DeviceId deviceId) {
+        TransportDeviceInfo deviceInfo = new TransportDeviceInfo();
+        deviceInfo.setDeviceId(deviceId);
+        return ValidateDeviceCredentialsResponse.builder()
+                .deviceInfo(deviceInfo)
+                .credentials("token")
+                .build();
+    }
+
+}
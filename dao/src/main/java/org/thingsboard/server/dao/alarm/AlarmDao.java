@@ -62,7 +62,9 @@ public interface AlarmDao extends Dao<Alarm> {
 
     PageData<AlarmId> findAlarmsIdsByEndTsBeforeAndTenantId(Long time, TenantId tenantId, PageLink pageLink);
 
-    void createEntityAlarmRecord(EntityAlarm entityAlarm);
+    void createEntityAlarmRecords(List<EntityAlarm> entityAlarms);
+
+    List<EntityId> findPropagationEntityIds(TenantId tenantId, EntityId originator, List<String> relationTypes);
 
     List<EntityAlarm> findEntityAlarmRecords(TenantId tenantId, AlarmId id);
 
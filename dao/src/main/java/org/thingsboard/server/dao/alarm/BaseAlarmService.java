@@ -42,10 +42,6 @@ import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.query.AlarmData;
 import org.thingsboard.server.common.data.query.AlarmDataQuery;
-import org.thingsboard.server.common.data.relation.EntityRelation;
-import org.thingsboard.server.common.data.relation.EntityRelationsQuery;
-import org.thingsboard.server.common.data.relation.EntitySearchDirection;
-import org.thingsboard.server.common.data.relation.RelationsSearchParameters;
 import org.thingsboard.server.dao.entity.AbstractEntityService;
 import org.thingsboard.server.dao.entity.EntityService;
 import org.thingsboard.server.dao.service.DataValidator;
@@ -59,7 +55,6 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
@@ -106,29 +101,25 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
     @Override
     public AlarmOperationResult createOrUpdateAlarm(Alarm alarm, boolean alarmCreationEnabled) {
         alarmDataValidator.validate(alarm, Alarm::getTenantId);
-        try {
-            if (alarm.getStartTs() == 0L) {
-                alarm.setStartTs(System.currentTimeMillis());
-            }
-            if (alarm.getEndTs() == 0L) {
-                alarm.setEndTs(alarm.getStartTs());
-            }
-            alarm.setCustomerId(entityService.fetchEntityCustomerId(alarm.getTenantId(), alarm.getOriginator()));
-            if (alarm.getId() == null) {
-                Alarm existing = alarmDao.findLatestByOriginatorAndType(alarm.getTenantId(), alarm.getOriginator(), alarm.getType());
-                if (existing == null || existing.getStatus().isCleared()) {
-                    if (!alarmCreationEnabled) {
-                        throw new ApiUsageLimitsExceededException("Alarms creation is disabled");
-                    }
-                    return createAlarm(alarm);
-                } else {
-                    return updateAlarm(existing, alarm);
+        if (alarm.getStartTs() == 0L) {
+            alarm.setStartTs(System.currentTimeMillis());
+        }
+        if (alarm.getEndTs() == 0L) {
+            alarm.setEndTs(alarm.getStartTs());
+        }
+        alarm.setCustomerId(entityService.fetchEntityCustomerId(alarm.getTenantId(), alarm.getOriginator()));
+        if (alarm.getId() == null) {
+            Alarm existing = alarmDao.findLatestByOriginatorAndType(alarm.getTenantId(), alarm.getOriginator(), alarm.getType());
+            if (existing == null || existing.getStatus().isCleared()) {
+                if (!alarmCreationEnabled) {
+                    throw new ApiUsageLimitsExceededException("Alarms creation is disabled");
                 }
+                return createAlarm(alarm);
             } else {
-                return updateAlarm(alarm);
+                return updateAlarm(existing, alarm);
             }
-        } catch (ExecutionException | InterruptedException e) {
-            throw new RuntimeException(e);
+        } else {
+            return updateAlarm(alarm);
         }
     }
 
@@ -158,18 +149,18 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         return result;
     }
 
-    private AlarmOperationResult createAlarm(Alarm alarm) throws InterruptedException, ExecutionException {
+    private AlarmOperationResult createAlarm(Alarm alarm) {
         log.debug("New Alarm : {}", alarm);
         Alarm saved = alarmDao.save(alarm.getTenantId(), alarm);
         List<EntityId> propagatedEntitiesList = createEntityAlarmRecords(saved);
         return new AlarmOperationResult(saved, true, true, propagatedEntitiesList);
     }
 
-    private List<EntityId> createEntityAlarmRecords(Alarm alarm) throws InterruptedException, ExecutionException {
+    private List<EntityId> createEntityAlarmRecords(Alarm alarm) {
         Set<EntityId> propagatedEntitiesSet = new LinkedHashSet<>();
         propagatedEntitiesSet.add(alarm.getOriginator());
         if (alarm.isPropagate()) {
-            propagatedEntitiesSet.addAll(getRelatedEntities(alarm));
+            propagatedEntitiesSet.addAll(alarmDao.findPropagationEntityIds(alarm.getTenantId(), alarm.getOriginator(), alarm.getPropagateRelationTypes()));
         }
         if (alarm.isPropagateToOwner()) {
             propagatedEntitiesSet.add(alarm.getCustomerId() != null ? alarm.getCustomerId() : alarm.getTenantId());
@@ -177,24 +168,10 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         if (alarm.isPropagateToTenant()) {
             propagatedEntitiesSet.add(alarm.getTenantId());
         }
-        for (EntityId entityId : propagatedEntitiesSet) {
-            createEntityAlarmRecord(alarm.getTenantId(), entityId, alarm);
-        }
+        createEntityAlarmRecords(alarm.getTenantId(), propagatedEntitiesSet, alarm);
         return new ArrayList<>(propagatedEntitiesSet);
     }
 
-    private Set<EntityId> getRelatedEntities(Alarm alarm) throws InterruptedException, ExecutionException {
-        EntityRelationsQuery query = new EntityRelationsQuery();
-        RelationsSearchParameters parameters = new RelationsSearchParameters(alarm.getOriginator(), EntitySearchDirection.TO, Integer.MAX_VALUE, false);
-        query.setParameters(parameters);
-        List<String> propagateRelationTypes = alarm.getPropagateRelationTypes();
-        Stream<EntityRelation> relations = relationService.findByQuery(alarm.getTenantId(), query).get().stream();
-        if (!CollectionUtils.isEmpty(propagateRelationTypes)) {
-            relations = relations.filter(entityRelation -> propagateRelationTypes.contains(entityRelation.getType()));
-        }
-        return relations.map(EntityRelation::getFrom).collect(Collectors.toCollection(LinkedHashSet::new));
-    }
-
     private AlarmOperationResult updateAlarm(Alarm update) {
         alarmDataValidator.validate(update, Alarm::getTenantId);
         return getAndUpdate(update.getTenantId(), update.getId(),
@@ -208,12 +185,7 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         Alarm result = alarmDao.save(newAlarm.getTenantId(), merge(oldAlarm, newAlarm));
         List<EntityId> propagatedEntitiesList;
         if (propagationEnabled || propagationToOwnerEnabled || propagationToTenantEnabled) {
-            try {
-                propagatedEntitiesList = createEntityAlarmRecords(result);
-            } catch (InterruptedException | ExecutionException e) {
-                log.warn("Failed to update alarm relations [{}]", result, e);
-                throw new RuntimeException(e);
-            }
+            propagatedEntitiesList = createEntityAlarmRecords(result);
         } else {
             propagatedEntitiesList = new ArrayList<>(getPropagationEntityIds(result));
         }
@@ -391,12 +363,15 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         }
     }
 
-    private void createEntityAlarmRecord(TenantId tenantId, EntityId entityId, Alarm alarm) {
-        EntityAlarm entityAlarm = new EntityAlarm(tenantId, entityId, alarm.getCreatedTime(), alarm.getType(), alarm.getCustomerId(), alarm.getId());
+    private void createEntityAlarmRecords(TenantId tenantId, Collection<EntityId> entityIds, Alarm alarm) {
+        List<EntityAlarm> entityAlarms = new ArrayList<>(entityIds.size());
+        for (EntityId entityId : entityIds) {
+            entityAlarms.add(new EntityAlarm(tenantId, entityId, alarm.getCreatedTime(), alarm.getType(), alarm.getCustomerId(), alarm.getId()));
+        }
         try {
-            alarmDao.createEntityAlarmRecord(entityAlarm);
+            alarmDao.createEntityAlarmRecords(entityAlarms);
         } catch (Exception e) {
-            log.warn("[{}] Failed to create entity alarm record: {}", tenantId, entityAlarm, e);
+            log.warn("[{}] Failed to create entity alarm records: {}", tenantId, entityAlarms, e);
         }
     }
 
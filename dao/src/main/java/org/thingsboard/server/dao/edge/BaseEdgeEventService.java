@@ -26,6 +26,9 @@ import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.dao.service.DataValidator;
 
+import java.util.List;
+import java.util.UUID;
+
 @Service
 @Slf4j
 @AllArgsConstructor
@@ -46,6 +49,11 @@ public class BaseEdgeEventService implements EdgeEventService {
         return edgeEventDao.findEdgeEvents(tenantId.getId(), edgeId, pageLink, withTsUpdate);
     }
 
+    @Override
+    public List<EdgeEvent> findEdgeEventsAfter(TenantId tenantId, EdgeId edgeId, long startTime, UUID startId, int limit) {
+        return edgeEventDao.findEdgeEventsAfter(tenantId.getId(), edgeId, startTime, startId, limit);
+    }
+
     @Override
     public void cleanupEvents(long ttl) {
         edgeEventDao.cleanupEvents(ttl);
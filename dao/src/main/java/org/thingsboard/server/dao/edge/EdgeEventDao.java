@@ -22,6 +22,7 @@ import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.dao.Dao;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -48,6 +49,18 @@ public interface EdgeEventDao extends Dao<EdgeEvent> {
      */
     PageData<EdgeEvent> findEdgeEvents(UUID tenantId, EdgeId edgeId, TimePageLink pageLink, boolean withTsUpdate);
 
+    /**
+     * Find edge events created after the given position in the edge event queue, ordered by creation time and id.
+     *
+     * @param tenantId  the tenantId
+     * @param edgeId    the edgeId
+     * @param startTime the creation time of the last read event
+     * @param startId   the id of the last read event, or null to read all events created after startTime
+     * @param limit     the max number of events to return
+     * @return the event list
+     */
+    List<EdgeEvent> findEdgeEventsAfter(UUID tenantId, EdgeId edgeId, long startTime, UUID startId, int limit);
+
     /**
      * Executes stored procedure to cleanup old edge events.
      * @param ttl the ttl for edge events in seconds
@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.alarm;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.thingsboard.server.common.data.alarm.EntityAlarm;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public class AlarmPropagationRepository {
+
+    // Each relation is visited once (UNION removes duplicates), so cycles in the relation graph are safe
+    private static final String PROPAGATION_ENTITIES_QUERY =
+            "WITH RECURSIVE related(from_id, from_type, to_id, to_type, relation_type) AS (" +
+                    " SELECT from_id, from_type, to_id, to_type, relation_type FROM relation" +
+                    " WHERE to_id = :originator_id AND to_type = :originator_type AND relation_type_group = 'COMMON'" +
+                    " UNION" +
+                    " SELECT r.from_id, r.from_type, r.to_id, r.to_type, r.relation_type FROM relation r" +
+                    " INNER JOIN related re ON r.to_id = re.from_id AND r.to_type = re.from_type" +
+                    " WHERE r.relation_type_group = 'COMMON'" +
+                    ") SELECT DISTINCT from_id, from_type FROM related";
+
+    private static final String RELATION_TYPES_FILTER = " WHERE relation_type IN (:relation_types)";
+
+    private static final String INSERT =
+            "INSERT INTO entity_alarm (tenant_id, entity_type, entity_id, created_time, alarm_type, customer_id, alarm_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT DO NOTHING;";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Finds all the entities the alarm of the originator is propagated to, walking the relations
+     * towards the originator at any depth in a single query.
+     * If relation types are specified, only the entities related via these types are returned.
+     */
+    public List<EntityId> findPropagationEntityIds(EntityId originator, Collection<String> relationTypes) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("originator_id", originator.getId())
+                .addValue("originator_type", originator.getEntityType().name());
+        String query = PROPAGATION_ENTITIES_QUERY;
+        if (relationTypes != null && !relationTypes.isEmpty()) {
+            query += RELATION_TYPES_FILTER;
+            params.addValue("relation_types", relationTypes);
+        }
+        return namedParameterJdbcTemplate.query(query, params,
+                (rs, rowNum) -> EntityIdFactory.getByTypeAndUuid(rs.getString("from_type"), (UUID) rs.getObject("from_id")));
+    }
+
+    public void save(List<EntityAlarm> entityAlarms) {
+        jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                EntityAlarm entityAlarm = entityAlarms.get(i);
+                ps.setObject(1, entityAlarm.getTenantId().getId());
+                ps.setString(2, entityAlarm.getEntityId().getEntityType().name());
+                ps.setObject(3, entityAlarm.getEntityId().getId());
+                ps.setLong(4, entityAlarm.getCreatedTime());
+                ps.setString(5, entityAlarm.getAlarmType());
+                ps.setObject(6, entityAlarm.getCustomerId() != null ? entityAlarm.getCustomerId().getId() : null);
+                ps.setObject(7, entityAlarm.getAlarmId().getId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entityAlarms.size();
+            }
+        });
+    }
+}
@@ -39,7 +39,6 @@ import org.thingsboard.server.common.data.query.AlarmDataQuery;
 import org.thingsboard.server.dao.DaoUtil;
 import org.thingsboard.server.dao.alarm.AlarmDao;
 import org.thingsboard.server.dao.model.sql.AlarmEntity;
-import org.thingsboard.server.dao.model.sql.EntityAlarmEntity;
 import org.thingsboard.server.dao.sql.JpaAbstractDao;
 import org.thingsboard.server.dao.sql.query.AlarmQueryRepository;
 import org.thingsboard.server.dao.util.SqlDao;
@@ -68,6 +67,9 @@ public class JpaAlarmDao extends JpaAbstractDao<AlarmEntity, Alarm> implements A
     @Autowired
     private EntityAlarmRepository entityAlarmRepository;
 
+    @Autowired
+    private AlarmPropagationRepository alarmPropagationRepository;
+
     @Override
     protected Class<AlarmEntity> getEntityClass() {
         return AlarmEntity.class;
@@ -178,9 +180,15 @@ public class JpaAlarmDao extends JpaAbstractDao<AlarmEntity, Alarm> implements A
     }
 
     @Override
-    public void createEntityAlarmRecord(EntityAlarm entityAlarm) {
-        log.debug("Saving entity {}", entityAlarm);
-        entityAlarmRepository.save(new EntityAlarmEntity(entityAlarm));
+    public void createEntityAlarmRecords(List<EntityAlarm> entityAlarms) {
+        log.debug("Saving entity alarm records {}", entityAlarms);
+        alarmPropagationRepository.save(entityAlarms);
+    }
+
+    @Override
+    public List<EntityId> findPropagationEntityIds(TenantId tenantId, EntityId originator, List<String> relationTypes) {
+        log.trace("[{}] Try to find alarm propagation entities for [{}] using relation types {}", tenantId, originator, relationTypes);
+        return alarmPropagationRepository.findPropagationEntityIds(originator, relationTypes);
     }
 
     @Override
@@ -20,6 +20,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
@@ -44,6 +45,7 @@ import org.thingsboard.server.dao.util.SqlDao;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -57,6 +59,8 @@ import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 @Slf4j
 public class JpaBaseEdgeEventDao extends JpaAbstractSearchTextDao<EdgeEventEntity, EdgeEvent> implements EdgeEventDao {
 
+    private static final UUID MAX_UUID = new UUID(-1L, -1L);
+
     private final UUID systemTenantId = NULL_UUID;
 
     private final ScheduledLogExecutorComponent logExecutor;
@@ -196,6 +200,17 @@ public class JpaBaseEdgeEventDao extends JpaAbstractSearchTextDao<EdgeEventEntit
         }
     }
 
+    @Override
+    public List<EdgeEvent> findEdgeEventsAfter(UUID tenantId, EdgeId edgeId, long startTime, UUID startId, int limit) {
+        return DaoUtil.convertDataList(
+                edgeEventRepository.findEdgeEventsAfter(
+                        tenantId,
+                        edgeId.getId(),
+                        startTime,
+                        startId != null ? startId : MAX_UUID,
+                        PageRequest.of(0, limit)));
+    }
+
     @Override
     public void cleanupEvents(long ttl) {
         partitioningRepository.dropPartitionsBefore(TABLE_NAME, ttl, TimeUnit.HOURS.toMillis(partitionSizeInHours));
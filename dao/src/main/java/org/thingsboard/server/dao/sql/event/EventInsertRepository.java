@@ -15,9 +15,12 @@
  */
 package org.thingsboard.server.dao.sql.event;
 
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.TransactionStatus;
@@ -34,8 +37,11 @@ import org.thingsboard.server.common.data.event.StatisticsEvent;
 import org.thingsboard.server.dao.util.SqlDao;
 
 import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.StringReader;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Types;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +50,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Repository
 @Transactional
 @SqlDao
@@ -64,6 +71,11 @@ public class EventInsertRepository {
     @Value("${sql.remove_null_chars:true}")
     private boolean removeNullChars;
 
+    @Value("${sql.events.debug_copy_enabled:false}")
+    private boolean debugCopyEnabled;
+
+    private String ruleNodeCopyStmt;
+
     @PostConstruct
     public void init() {
         insertStmtMap.put(EventType.ERROR, "INSERT INTO " + EventType.ERROR.getTable() +
@@ -78,6 +90,9 @@ public class EventInsertRepository {
         insertStmtMap.put(EventType.DEBUG_RULE_NODE, "INSERT INTO " + EventType.DEBUG_RULE_NODE.getTable() +
                 " (id, tenant_id, ts, entity_id, service_id, e_type, e_entity_id, e_entity_type, e_msg_id, e_msg_type, e_data_type, e_relation_type, e_data, e_metadata, e_error) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING;");
+        ruleNodeCopyStmt = "COPY " + EventType.DEBUG_RULE_NODE.getTable() +
+                " (id, tenant_id, ts, entity_id, service_id, e_type, e_entity_id, e_entity_type, e_msg_id, e_msg_type, e_data_type, e_relation_type, e_data, e_metadata, e_error) " +
+                "FROM STDIN";
         insertStmtMap.put(EventType.DEBUG_RULE_CHAIN, "INSERT INTO " + EventType.DEBUG_RULE_CHAIN.getTable() +
                 " (id, tenant_id, ts, entity_id, service_id, e_message, e_error) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING;");
@@ -89,12 +104,84 @@ public class EventInsertRepository {
             @Override
             protected void doInTransactionWithoutResult(TransactionStatus status) {
                 for (var entry : eventsByType.entrySet()) {
+                    if (debugCopyEnabled && EventType.DEBUG_RULE_NODE.equals(entry.getKey()) && copyRuleNodeEvents(entry.getValue())) {
+                        continue;
+                    }
                     jdbcTemplate.batchUpdate(insertStmtMap.get(entry.getKey()), getStatementSetter(entry.getKey(), entry.getValue()));
                 }
             }
         });
     }
 
+    /**
+     * Streams rule node debug events with COPY, which is considerably cheaper than a batch of inserts for large payloads.
+     * COPY does not support ON CONFLICT, so in case of any error the savepoint is rolled back
+     * and the caller falls back to the regular batch insert.
+     */
+    private boolean copyRuleNodeEvents(List<Event> events) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            Savepoint savepoint = con.setSavepoint();
+            try {
+                StringBuilder rows = new StringBuilder();
+                for (Event event : events) {
+                    appendRuleNodeEventRow(rows, (RuleNodeDebugEvent) event);
+                }
+                con.unwrap(PGConnection.class).getCopyAPI().copyIn(ruleNodeCopyStmt, new StringReader(rows.toString()));
+                con.releaseSavepoint(savepoint);
+                return true;
+            } catch (SQLException | IOException e) {
+                log.debug("Failed to copy {} rule node debug events, falling back to batch insert", events.size(), e);
+                con.rollback(savepoint);
+                return false;
+            }
+        });
+    }
+
+    private void appendRuleNodeEventRow(StringBuilder sb, RuleNodeDebugEvent event) {
+        appendCopyValue(sb, event.getId().getId()).append('\t');
+        appendCopyValue(sb, event.getTenantId().getId()).append('\t');
+        appendCopyValue(sb, event.getCreatedTime()).append('\t');
+        appendCopyValue(sb, event.getEntityId()).append('\t');
+        appendCopyValue(sb, event.getServiceId()).append('\t');
+        appendCopyValue(sb, event.getEventType()).append('\t');
+        appendCopyValue(sb, event.getEventEntity() != null ? event.getEventEntity().getId() : null).append('\t');
+        appendCopyValue(sb, event.getEventEntity() != null ? event.getEventEntity().getEntityType().name() : null).append('\t');
+        appendCopyValue(sb, event.getMsgId()).append('\t');
+        appendCopyValue(sb, event.getMsgType()).append('\t');
+        appendCopyValue(sb, event.getDataType()).append('\t');
+        appendCopyValue(sb, event.getRelationType()).append('\t');
+        appendCopyValue(sb, event.getData()).append('\t');
+        appendCopyValue(sb, event.getMetadata()).append('\t');
+        appendCopyValue(sb, event.getError()).append('\n');
+    }
+
+    private StringBuilder appendCopyValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            return sb.append("\\N");
+        }
+        String str = replaceNullChars(value.toString());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb;
+    }
+
     private BatchPreparedStatementSetter getStatementSetter(EventType eventType, List<Event> events) {
         switch (eventType) {
             case ERROR:
@@ -28,11 +28,13 @@ import org.thingsboard.server.common.data.event.EventFilter;
 import org.thingsboard.server.common.data.event.EventType;
 import org.thingsboard.server.common.data.event.LifeCycleEventFilter;
 import org.thingsboard.server.common.data.event.RuleChainDebugEventFilter;
+import org.thingsboard.server.common.data.event.RuleNodeDebugEvent;
 import org.thingsboard.server.common.data.event.RuleNodeDebugEventFilter;
 import org.thingsboard.server.common.data.event.StatisticsEventFilter;
 import org.thingsboard.server.common.data.id.EventId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.stats.DefaultCounter;
 import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.DaoUtil;
 import org.thingsboard.server.dao.event.EventDao;
@@ -109,8 +111,13 @@ public class JpaBaseEventDao implements EventDao {
     @Value("${sql.batch_sort:true}")
     private boolean batchSortEnabled;
 
+    @Value("${sql.events.debug_max_data_size:0}")
+    private int debugMaxDataSize;
+
     private TbSqlBlockingQueueWrapper<Event> queue;
 
+    private DefaultCounter truncatedDebugEventsCounter;
+
     private final Map<EventType, EventRepository<?, ?>> repositories = new ConcurrentHashMap<>();
 
     @PostConstruct
@@ -131,6 +138,7 @@ public class JpaBaseEventDao implements EventDao {
         repositories.put(EventType.ERROR, errorEventRepository);
         repositories.put(EventType.DEBUG_RULE_NODE, ruleNodeDebugEventRepository);
         repositories.put(EventType.DEBUG_RULE_CHAIN, ruleChainDebugEventRepository);
+        truncatedDebugEventsCounter = statsFactory.createDefaultCounter("events", "type", EventType.DEBUG_RULE_NODE.name(), "result", "truncated");
     }
 
     @PreDestroy
@@ -155,11 +163,29 @@ public class JpaBaseEventDao implements EventDao {
                 event.setCreatedTime(System.currentTimeMillis());
             }
         }
+        if (debugMaxDataSize > 0 && EventType.DEBUG_RULE_NODE.equals(event.getType())) {
+            truncateDebugData((RuleNodeDebugEvent) event);
+        }
         partitioningRepository.createPartitionIfNotExists(event.getType().getTable(), event.getCreatedTime(),
                 partitionConfiguration.getPartitionSizeInMs(event.getType()));
         return queue.add(event);
     }
 
+    private void truncateDebugData(RuleNodeDebugEvent event) {
+        boolean truncated = false;
+        if (event.getData() != null && event.getData().length() > debugMaxDataSize) {
+            event.setData(event.getData().substring(0, debugMaxDataSize));
+            truncated = true;
+        }
+        if (event.getMetadata() != null && event.getMetadata().length() > debugMaxDataSize) {
+            event.setMetadata(event.getMetadata().substring(0, debugMaxDataSize));
+            truncated = true;
+        }
+        if (truncated) {
+            truncatedDebugEventsCounter.increment();
+        }
+    }
+
     @Override
     public PageData<? extends Event> findEvents(UUID tenantId, UUID entityId, EventType eventType, TimePageLink pageLink) {
         return DaoUtil.toPageData(getEventRepository(eventType).findEvents(tenantId, entityId, pageLink.getStartTime(), pageLink.getEndTime(), DaoUtil.toPageable(pageLink, EventEntity.eventColumnMap)));
@@ -18,6 +18,8 @@ package org.thingsboard.server.dao.sqlts.sql;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.Timer;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +29,9 @@ import org.springframework.stereotype.Component;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.model.ModelConstants;
 import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
 import org.thingsboard.server.dao.sqlts.AbstractChunkedAggregationTimeseriesDao;
 import org.thingsboard.server.dao.sqlts.insert.sql.SqlPartitioningRepository;
@@ -43,8 +48,10 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
@@ -54,6 +61,15 @@ import java.util.concurrent.locks.ReentrantLock;
 @SqlTsDao
 public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao {
 
+    private static final String TS_CLEANUP_STATS_KEY = "tsCleanup";
+    private static final String TENANT_TTL_QUERY = "SELECT tenant.id, attribute_kv.long_v FROM tenant " +
+            "LEFT JOIN attribute_kv ON attribute_kv.entity_id = tenant.id AND attribute_kv.attribute_key = 'TTL'";
+    private static final String CUSTOMER_TTL_QUERY = "SELECT customer.tenant_id, customer.id, attribute_kv.long_v FROM customer " +
+            "INNER JOIN attribute_kv ON attribute_kv.entity_id = customer.id AND attribute_kv.attribute_key = 'TTL'";
+    private static final String TENANT_CUSTOMERS_QUERY = "SELECT id FROM customer WHERE tenant_id = ?";
+    private static final String TS_KV_PARTITIONS_SIZE_QUERY = "SELECT coalesce(sum(pg_total_relation_size(i.inhrelid)), 0) FROM pg_inherits i " +
+            "WHERE i.inhparent = 'ts_kv'::regclass";
+
     private final Map<Long, SqlPartition> partitions = new ConcurrentHashMap<>();
     private static final ReentrantLock partitionCreationLock = new ReentrantLock();
 
@@ -62,9 +78,17 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
 
     private SqlTsPartitionDate tsFormat;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
     @Value("${sql.postgres.ts_key_value_partitioning:MONTHS}")
     private String partitioning;
 
+    @Value("${sql.ttl.ts.partition_aligned:false}")
+    private boolean partitionAlignedTtl;
+
+    private Timer cleanupTimer;
+    private DefaultCounter reclaimedBytesCounter;
 
     @Override
     protected void init() {
@@ -76,6 +100,8 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
             log.warn("Incorrect configuration of partitioning {}", partitioning);
             throw new RuntimeException("Failed to parse partitioning property: " + partitioning + "!");
         }
+        cleanupTimer = statsFactory.createTimer(TS_CLEANUP_STATS_KEY);
+        reclaimedBytesCounter = statsFactory.createDefaultCounter(TS_CLEANUP_STATS_KEY, "result", "reclaimedBytes");
     }
 
     @Override
@@ -99,29 +125,138 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
 
     @Override
     public void cleanup(long systemTtl) {
+        long startTs = System.nanoTime();
         cleanupPartitions(systemTtl);
-        super.cleanup(systemTtl);
+        if (partitionAlignedTtl && !tsFormat.equals(SqlTsPartitionDate.INDEFINITE)) {
+            cleanupShorterTtls(systemTtl);
+        } else {
+            super.cleanup(systemTtl);
+        }
+        cleanupTimer.record(System.nanoTime() - startTs, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Partitions older than the longest TTL in the system are already dropped by drop_partitions_by_max_ttl,
+     * so the retention of such data is rounded up to the partition size.
+     * Row level deletes are executed only for the tenants and customers with a TTL shorter than the longest one.
+     */
+    private void cleanupShorterTtls(long systemTtl) {
+        log.info("Going to cleanup old timeseries data of tenants and customers with ttl shorter than the max ttl, system ttl: {}s", systemTtl);
+        long startTs = System.currentTimeMillis();
+        try (Connection connection = dataSource.getConnection()) {
+            Map<UUID, Long> tenantTtls = new HashMap<>();
+            try (PreparedStatement stmt = connection.prepareStatement(TENANT_TTL_QUERY);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long ttl = rs.getLong(2);
+                    tenantTtls.putIfAbsent(rs.getObject(1, UUID.class), rs.wasNull() ? systemTtl : ttl);
+                }
+            }
+            Map<UUID, CustomerTtl> customerTtls = new HashMap<>();
+            try (PreparedStatement stmt = connection.prepareStatement(CUSTOMER_TTL_QUERY);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    UUID customerId = rs.getObject(2, UUID.class);
+                    customerTtls.putIfAbsent(customerId, new CustomerTtl(rs.getObject(1, UUID.class), customerId, rs.getLong(3)));
+                }
+            }
+            // same as in drop_partitions_by_max_ttl
+            long maxTtl = systemTtl;
+            for (long ttl : tenantTtls.values()) {
+                maxTtl = Math.max(maxTtl, ttl);
+            }
+            for (CustomerTtl customerTtl : customerTtls.values()) {
+                maxTtl = Math.max(maxTtl, customerTtl.getTtl());
+            }
+
+            long deleted = 0;
+            for (Map.Entry<UUID, Long> tenantTtl : tenantTtls.entrySet()) {
+                long ttl = tenantTtl.getValue();
+                if (ttl > 0 && ttl < maxTtl) {
+                    long ttlTs = startTs - TimeUnit.SECONDS.toMillis(ttl);
+                    deleted += deleteByTtl(connection, "delete_device_records_from_ts_kv", tenantTtl.getKey(), ModelConstants.NULL_UUID, ttlTs);
+                    deleted += deleteByTtl(connection, "delete_asset_records_from_ts_kv", tenantTtl.getKey(), ModelConstants.NULL_UUID, ttlTs);
+                    try (PreparedStatement stmt = connection.prepareStatement(TENANT_CUSTOMERS_QUERY)) {
+                        stmt.setObject(1, tenantTtl.getKey());
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                UUID customerId = rs.getObject(1, UUID.class);
+                                if (!customerTtls.containsKey(customerId)) {
+                                    deleted += deleteCustomerByTtl(connection, tenantTtl.getKey(), customerId, ttlTs);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            for (CustomerTtl customerTtl : customerTtls.values()) {
+                long ttl = customerTtl.getTtl();
+                if (ttl > 0 && ttl < maxTtl) {
+                    long ttlTs = startTs - TimeUnit.SECONDS.toMillis(ttl);
+                    deleted += deleteCustomerByTtl(connection, customerTtl.getTenantId(), customerTtl.getCustomerId(), ttlTs);
+                }
+            }
+            log.info("Timeseries TTL: removed [{}] records for entities with shorter ttl in [{}] ms", deleted, System.currentTimeMillis() - startTs);
+        } catch (SQLException e) {
+            log.error("SQLException occurred during timeseries TTL task execution ", e);
+        }
+    }
+
+    private long deleteCustomerByTtl(Connection connection, UUID tenantId, UUID customerId, long ttlTs) throws SQLException {
+        return deleteByTtl(connection, "delete_customer_records_from_ts_kv", tenantId, customerId, ttlTs)
+                + deleteByTtl(connection, "delete_device_records_from_ts_kv", tenantId, customerId, ttlTs)
+                + deleteByTtl(connection, "delete_asset_records_from_ts_kv", tenantId, customerId, ttlTs);
+    }
+
+    private long deleteByTtl(Connection connection, String function, UUID tenantId, UUID customerId, long ttlTs) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT " + function + "(?, ?, ?)")) {
+            stmt.setObject(1, tenantId);
+            stmt.setObject(2, customerId);
+            stmt.setLong(3, ttlTs);
+            stmt.setQueryTimeout((int) TimeUnit.HOURS.toSeconds(1));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
     }
 
     private void cleanupPartitions(long systemTtl) {
         log.info("Going to cleanup old timeseries data partitions using partition type: {} and ttl: {}s", partitioning, systemTtl);
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("call drop_partitions_by_max_ttl(?,?,?)")) {
-            stmt.setString(1, partitioning);
-            stmt.setLong(2, systemTtl);
-            stmt.setLong(3, 0);
-            stmt.setQueryTimeout((int) TimeUnit.HOURS.toSeconds(1));
-            stmt.execute();
-            printWarnings(stmt);
-            try (ResultSet resultSet = stmt.getResultSet()) {
-                resultSet.next();
-                log.info("Total partitions removed by TTL: [{}]", resultSet.getLong(1));
+        try (Connection connection = dataSource.getConnection()) {
+            long sizeBefore = getPartitionsSize(connection);
+            long removed;
+            try (PreparedStatement stmt = connection.prepareStatement("call drop_partitions_by_max_ttl(?,?,?)")) {
+                stmt.setString(1, partitioning);
+                stmt.setLong(2, systemTtl);
+                stmt.setLong(3, 0);
+                stmt.setQueryTimeout((int) TimeUnit.HOURS.toSeconds(1));
+                stmt.execute();
+                printWarnings(stmt);
+                try (ResultSet resultSet = stmt.getResultSet()) {
+                    resultSet.next();
+                    removed = resultSet.getLong(1);
+                }
             }
+            long reclaimedBytes = 0;
+            if (removed > 0) {
+                // dropped partitions are created again if late data arrives
+                partitions.clear();
+                reclaimedBytes = Math.max(0, sizeBefore - getPartitionsSize(connection));
+                reclaimedBytesCounter.add(reclaimedBytes);
+            }
+            log.info("Total partitions removed by TTL: [{}], reclaimed [{}] bytes", removed, reclaimedBytes);
         } catch (SQLException e) {
             log.error("SQLException occurred during TTL task execution ", e);
         }
     }
 
+    private long getPartitionsSize(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(TS_KV_PARTITIONS_SIZE_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
     private void savePartitionIfNotExist(long ts) {
         if (!tsFormat.equals(SqlTsPartitionDate.INDEFINITE) && ts >= 0) {
             LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
@@ -162,4 +297,11 @@ public class JpaSqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao
     private static long toMills(LocalDateTime time) {
         return time.toInstant(ZoneOffset.UTC).toEpochMilli();
     }
+
+    @Data
+    private static class CustomerTtl {
+        private final UUID tenantId;
+        private final UUID customerId;
+        private final long ttl;
+    }
 }
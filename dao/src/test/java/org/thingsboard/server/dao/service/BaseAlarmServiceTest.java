@@ -16,6 +16,8 @@
 package org.thingsboard.server.dao.service;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -30,8 +32,10 @@ import org.thingsboard.server.common.data.alarm.AlarmSearchStatus;
 import org.thingsboard.server.common.data.alarm.AlarmSeverity;
 import org.thingsboard.server.common.data.alarm.AlarmStatus;
 import org.thingsboard.server.common.data.asset.Asset;
+import org.thingsboard.server.common.data.id.AlarmId;
 import org.thingsboard.server.common.data.id.AssetId;
 import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.SortOrder;
@@ -48,9 +52,12 @@ import org.thingsboard.server.common.data.relation.RelationTypeGroup;
 import org.thingsboard.server.dao.alarm.AlarmOperationResult;
 import org.thingsboard.common.util.JacksonUtil;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
@@ -346,6 +353,98 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
         Assert.assertEquals(customerAlarm, customerAlarms.getData().get(0));
     }
 
+    @Test
+    public void testPropagateAlarmThroughRelationHierarchy() throws ExecutionException, InterruptedException {
+        List<AssetId> hierarchy = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            hierarchy.add(new AssetId(Uuids.timeBased()));
+        }
+        for (int i = 0; i < hierarchy.size() - 1; i++) {
+            String type = i == 0 ? "Manages" : EntityRelation.CONTAINS_TYPE;
+            Assert.assertTrue(relationService.saveRelationAsync(tenantId, new EntityRelation(hierarchy.get(i), hierarchy.get(i + 1), type)).get());
+        }
+        // cycle back to the originator must not break the propagation
+        AssetId originator = hierarchy.get(hierarchy.size() - 1);
+        Assert.assertTrue(relationService.saveRelationAsync(tenantId, new EntityRelation(originator, hierarchy.get(2), EntityRelation.CONTAINS_TYPE)).get());
+
+        Alarm alarm = Alarm.builder().tenantId(tenantId).originator(originator)
+                .type(TEST_ALARM)
+                .propagate(true)
+                .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
+                .startTs(System.currentTimeMillis()).build();
+        AlarmOperationResult result = alarmService.createOrUpdateAlarm(alarm);
+        Assert.assertEquals(new HashSet<>(hierarchy), new HashSet<>(result.getPropagatedEntitiesList()));
+        AlarmId propagatedAlarmId = result.getAlarm().getId();
+
+        Alarm filteredAlarm = Alarm.builder().tenantId(tenantId).originator(originator)
+                .type(TEST_ALARM + "_FILTERED")
+                .propagate(true)
+                .propagateRelationTypes(Collections.singletonList(EntityRelation.CONTAINS_TYPE))
+                .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
+                .startTs(System.currentTimeMillis()).build();
+        result = alarmService.createOrUpdateAlarm(filteredAlarm);
+        Assert.assertEquals(new HashSet<>(hierarchy.subList(1, hierarchy.size())), new HashSet<>(result.getPropagatedEntitiesList()));
+
+        PageData<AlarmInfo> alarms = alarmService.findAlarms(tenantId, AlarmQuery.builder()
+                .affectedEntityId(hierarchy.get(0))
+                .status(AlarmStatus.ACTIVE_UNACK).pageLink(
+                        new TimePageLink(10, 0, "",
+                                new SortOrder("createdTime", SortOrder.Direction.DESC), 0L, System.currentTimeMillis())
+                ).build()).get();
+        Assert.assertEquals(1, alarms.getData().size());
+        Assert.assertEquals(propagatedAlarmId, alarms.getData().get(0).getId());
+    }
+
+    @Test
+    public void testPropagateAlarmThroughDeepAndWideHierarchy() throws ExecutionException, InterruptedException {
+        AssetId originator = new AssetId(Uuids.timeBased());
+        List<AssetId> targets = new ArrayList<>();
+        List<ListenableFuture<Boolean>> futures = new ArrayList<>();
+        // a chain of 100 levels above the originator
+        AssetId child = originator;
+        for (int i = 0; i < 100; i++) {
+            AssetId parent = new AssetId(Uuids.timeBased());
+            futures.add(relationService.saveRelationAsync(tenantId, new EntityRelation(parent, child, EntityRelation.CONTAINS_TYPE)));
+            targets.add(parent);
+            child = parent;
+        }
+        // and 200 direct parents of the originator
+        for (int i = 0; i < 200; i++) {
+            AssetId parent = new AssetId(Uuids.timeBased());
+            futures.add(relationService.saveRelationAsync(tenantId, new EntityRelation(parent, originator, EntityRelation.CONTAINS_TYPE)));
+            targets.add(parent);
+        }
+        Futures.allAsList(futures).get();
+        Set<EntityId> expected = new HashSet<>(targets);
+        expected.add(originator);
+
+        Alarm alarm = Alarm.builder().tenantId(tenantId).originator(originator)
+                .type(TEST_ALARM)
+                .propagate(true)
+                .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
+                .startTs(System.currentTimeMillis()).build();
+        AlarmOperationResult result = alarmService.createOrUpdateAlarm(alarm);
+        Assert.assertEquals(expected, new HashSet<>(result.getPropagatedEntitiesList()));
+
+        // enabling one more propagation writes the records of all the entities again, existing ones are skipped
+        Alarm updated = result.getAlarm();
+        updated.setPropagateToTenant(true);
+        result = alarmService.createOrUpdateAlarm(updated);
+        expected.add(tenantId);
+        Assert.assertEquals(expected, new HashSet<>(result.getPropagatedEntitiesList()));
+
+        for (AssetId affected : Arrays.asList(targets.get(99), targets.get(100), originator)) {
+            PageData<AlarmInfo> alarms = alarmService.findAlarms(tenantId, AlarmQuery.builder()
+                    .affectedEntityId(affected)
+                    .status(AlarmStatus.ACTIVE_UNACK).pageLink(
+                            new TimePageLink(10, 0, "",
+                                    new SortOrder("createdTime", SortOrder.Direction.DESC), 0L, System.currentTimeMillis())
+                    ).build()).get();
+            Assert.assertEquals(1, alarms.getData().size());
+            Assert.assertEquals(updated.getId(), alarms.getData().get(0).getId());
+        }
+    }
+
     @Test
     public void testFindPropagatedToOwnerAndTenantAlarm() {
         Customer customer = new Customer();
@@ -40,7 +40,9 @@ import java.time.Month;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.time.DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT;
 
@@ -150,9 +152,57 @@ public abstract class BaseEdgeEventServiceTest extends AbstractServiceTest {
         Assert.assertTrue(edgeEventsWithoutTsUpdate.getData().isEmpty());
     }
 
+    @Test
+    public void findEdgeEventsAfterWithSameCreatedTime() throws Exception {
+        EdgeId edgeId = new EdgeId(Uuids.timeBased());
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        TenantId tenantId = TenantId.fromUUID(Uuids.timeBased());
+
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(saveEdgeEventWithProvidedCreatedTime(eventTime, edgeId, deviceId, tenantId));
+        }
+        futures.add(saveEdgeEventWithProvidedCreatedTime(eventTime + 1, edgeId, deviceId, tenantId));
+        futures.add(saveEdgeEventWithProvidedCreatedTime(eventTime + 1, edgeId, deviceId, tenantId));
+        Futures.allAsList(futures).get();
+
+        List<EdgeEvent> all = edgeEventService.findEdgeEventsAfter(tenantId, edgeId, 0L, null, 100);
+        Assert.assertEquals(7, all.size());
+
+        List<EdgeEvent> paged = new ArrayList<>();
+        long startTime = 0L;
+        UUID startId = null;
+        List<EdgeEvent> page;
+        do {
+            page = edgeEventService.findEdgeEventsAfter(tenantId, edgeId, startTime, startId, 2);
+            Assert.assertTrue(page.size() <= 2);
+            if (!page.isEmpty()) {
+                EdgeEvent last = page.get(page.size() - 1);
+                startTime = last.getCreatedTime();
+                startId = last.getUuidId();
+                paged.addAll(page);
+            }
+        } while (!page.isEmpty());
+
+        Assert.assertEquals(all.stream().map(EdgeEvent::getUuidId).collect(Collectors.toList()),
+                paged.stream().map(EdgeEvent::getUuidId).collect(Collectors.toList()));
+        Assert.assertEquals(7, paged.stream().map(EdgeEvent::getUuidId).distinct().count());
+        for (int i = 1; i < paged.size(); i++) {
+            Assert.assertTrue(paged.get(i - 1).getCreatedTime() <= paged.get(i).getCreatedTime());
+        }
+        Assert.assertEquals(eventTime + 1, paged.get(5).getCreatedTime());
+    }
+
     private ListenableFuture<Void> saveEdgeEventWithProvidedTime(long time, EdgeId edgeId, EntityId entityId, TenantId tenantId) throws Exception {
         EdgeEvent edgeEvent = generateEdgeEvent(tenantId, edgeId, entityId, EdgeEventActionType.ADDED);
         edgeEvent.setId(new EdgeEventId(Uuids.startOf(time)));
         return edgeEventService.saveAsync(edgeEvent);
     }
-}
\ No newline at end of file
+
+    private ListenableFuture<Void> saveEdgeEventWithProvidedCreatedTime(long createdTime, EdgeId edgeId, EntityId entityId, TenantId tenantId) throws Exception {
+        EdgeEvent edgeEvent = generateEdgeEvent(tenantId, edgeId, entityId, EdgeEventActionType.ADDED);
+        edgeEvent.setId(new EdgeEventId(Uuids.timeBased()));
+        edgeEvent.setCreatedTime(createdTime);
+        return edgeEventService.saveAsync(edgeEvent);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.event;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.event.Event;
+import org.thingsboard.server.common.data.event.EventType;
+import org.thingsboard.server.common.data.event.RuleNodeDebugEvent;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.dao.AbstractJpaDaoTest;
+import org.thingsboard.server.dao.event.EventDao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventInsertRepositoryTest extends AbstractJpaDaoTest {
+
+    private static final String BROKEN_STMT = "INSERT INTO missing_table VALUES (?)";
+
+    @Autowired
+    private EventInsertRepository eventInsertRepository;
+
+    @Autowired
+    private EventDao eventDao;
+
+    private EventInsertRepository target;
+    private Map<EventType, String> insertStmtMap;
+    private String insertStmt;
+    private String copyStmt;
+
+    private final TenantId tenantId = TenantId.fromUUID(Uuids.timeBased());
+    private final UUID ruleNodeId = Uuids.timeBased();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        target = AopTestUtils.getUltimateTargetObject(eventInsertRepository);
+        insertStmtMap = (Map<EventType, String>) ReflectionTestUtils.getField(target, "insertStmtMap");
+        insertStmt = insertStmtMap.get(EventType.DEBUG_RULE_NODE);
+        copyStmt = (String) ReflectionTestUtils.getField(target, "ruleNodeCopyStmt");
+        ReflectionTestUtils.setField(target, "debugCopyEnabled", true);
+    }
+
+    @After
+    public void after() {
+        ReflectionTestUtils.setField(target, "debugCopyEnabled", false);
+        ReflectionTestUtils.setField(target, "ruleNodeCopyStmt", copyStmt);
+        insertStmtMap.put(EventType.DEBUG_RULE_NODE, insertStmt);
+    }
+
+    @Test
+    public void testRuleNodeEventsAreCopied() throws Exception {
+        // the batch insert is broken, so the events can only be saved with COPY
+        insertStmtMap.put(EventType.DEBUG_RULE_NODE, BROKEN_STMT);
+        List<RuleNodeDebugEvent> events = createEvents();
+
+        saveAll(events);
+
+        assertThat(findEvents()).containsExactlyInAnyOrderElementsOf(events);
+    }
+
+    @Test
+    public void testBatchInsertIsUsedWhenCopyFails() throws Exception {
+        // COPY fails and the savepoint rollback has to keep the transaction usable for the batch insert
+        ReflectionTestUtils.setField(target, "ruleNodeCopyStmt", "COPY missing_table (id) FROM STDIN");
+        List<RuleNodeDebugEvent> events = createEvents();
+
+        saveAll(events);
+
+        assertThat(findEvents()).containsExactlyInAnyOrderElementsOf(events);
+    }
+
+    private List<RuleNodeDebugEvent> createEvents() {
+        long ts = System.currentTimeMillis();
+        List<RuleNodeDebugEvent> events = new ArrayList<>();
+        events.add(RuleNodeDebugEvent.builder()
+                .id(Uuids.timeBased())
+                .ts(ts)
+                .tenantId(tenantId)
+                .entityId(ruleNodeId)
+                .serviceId("server A")
+                .eventType("IN")
+                .eventEntity(new DeviceId(Uuids.timeBased()))
+                .msgId(Uuids.timeBased())
+                .msgType("POST_TELEMETRY_REQUEST")
+                .dataType("JSON")
+                .relationType("Success")
+                .data("{\"text\":\"tab\tnew line\ncarriage return\r back\\\\slash \\\\N\"}")
+                .metadata("{\"deviceName\":\"Device\\tA\"}")
+                .build());
+        events.add(RuleNodeDebugEvent.builder()
+                .id(Uuids.timeBased())
+                .ts(ts + 1)
+                .tenantId(tenantId)
+                .entityId(ruleNodeId)
+                .serviceId("server A")
+                .eventType("OUT")
+                .msgType("POST_TELEMETRY_REQUEST")
+                .dataType("JSON")
+                .relationType("Failure")
+                .error("java.lang.RuntimeException: test\n\tat org.thingsboard.Test.run(Test.java:1)")
+                .build());
+        events.add(RuleNodeDebugEvent.builder()
+                .id(Uuids.timeBased())
+                .ts(ts + 2)
+                .tenantId(tenantId)
+                .entityId(ruleNodeId)
+                .serviceId("server A")
+                .eventType("IN")
+                .data("\\N")
+                .metadata("")
+                .build());
+        return events;
+    }
+
+    private void saveAll(List<RuleNodeDebugEvent> events) throws Exception {
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (RuleNodeDebugEvent event : events) {
+            futures.add(eventDao.saveAsync(event));
+        }
+        Futures.allAsList(futures).get(1, TimeUnit.MINUTES);
+    }
+
+    private List<? extends Event> findEvents() {
+        return eventDao.findLatestEvents(tenantId.getId(), ruleNodeId, EventType.DEBUG_RULE_NODE, 10);
+    }
+
+}
@@ -18,13 +18,18 @@ package org.thingsboard.server.dao.sql.event;
 import com.datastax.oss.driver.api.core.uuid.Uuids;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.thingsboard.server.common.data.event.Event;
 import org.thingsboard.server.common.data.event.EventType;
+import org.thingsboard.server.common.data.event.RuleNodeDebugEvent;
 import org.thingsboard.server.common.data.event.StatisticsEvent;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.stats.DefaultCounter;
 import org.thingsboard.server.dao.AbstractJpaDaoTest;
 import org.thingsboard.server.dao.event.EventDao;
 
@@ -106,6 +111,56 @@ public class JpaBaseEventDaoTest extends AbstractJpaDaoTest {
 
     }
 
+    @Test
+    public void testDebugDataIsTruncated() throws Exception {
+        JpaBaseEventDao target = AopTestUtils.getUltimateTargetObject(eventDao);
+        DefaultCounter truncatedCounter = (DefaultCounter) ReflectionTestUtils.getField(target, "truncatedDebugEventsCounter");
+        Mockito.clearInvocations(truncatedCounter);
+        ReflectionTestUtils.setField(target, "debugMaxDataSize", 10);
+        try {
+            UUID entityId = Uuids.timeBased();
+            RuleNodeDebugEvent event = getRuleNodeDebugEvent(tenantId, entityId, "{\"temperature\":42}", "{}");
+            eventDao.saveAsync(event).get(1, TimeUnit.MINUTES);
+
+            RuleNodeDebugEvent found = (RuleNodeDebugEvent) eventDao.findLatestEvents(tenantId, entityId, EventType.DEBUG_RULE_NODE, 1).get(0);
+            assertEquals("{\"temperat", found.getData());
+            assertEquals("{}", found.getMetadata());
+            Mockito.verify(truncatedCounter, Mockito.times(1)).increment();
+
+            entityId = Uuids.timeBased();
+            event = getRuleNodeDebugEvent(tenantId, entityId, "{}", "{\"deviceName\":\"Device A\"}");
+            eventDao.saveAsync(event).get(1, TimeUnit.MINUTES);
+
+            found = (RuleNodeDebugEvent) eventDao.findLatestEvents(tenantId, entityId, EventType.DEBUG_RULE_NODE, 1).get(0);
+            assertEquals("{}", found.getData());
+            assertEquals("{\"deviceNa", found.getMetadata());
+            Mockito.verify(truncatedCounter, Mockito.times(2)).increment();
+
+            entityId = Uuids.timeBased();
+            event = getRuleNodeDebugEvent(tenantId, entityId, "{\"a\":1}", null);
+            eventDao.saveAsync(event).get(1, TimeUnit.MINUTES);
+
+            found = (RuleNodeDebugEvent) eventDao.findLatestEvents(tenantId, entityId, EventType.DEBUG_RULE_NODE, 1).get(0);
+            assertEquals("{\"a\":1}", found.getData());
+            Mockito.verify(truncatedCounter, Mockito.times(2)).increment();
+        } finally {
+            ReflectionTestUtils.setField(target, "debugMaxDataSize", 0);
+        }
+    }
+
+    private RuleNodeDebugEvent getRuleNodeDebugEvent(UUID tenantId, UUID entityId, String data, String metadata) {
+        return RuleNodeDebugEvent.builder()
+                .id(Uuids.timeBased())
+                .ts(System.currentTimeMillis())
+                .tenantId(new TenantId(tenantId))
+                .entityId(entityId)
+                .serviceId("server A")
+                .eventType("IN")
+                .data(data)
+                .metadata(metadata)
+                .build();
+    }
+
     private Event getStatsEvent(UUID eventId, UUID tenantId, UUID entityId) {
         StatisticsEvent.StatisticsEventBuilder event = StatisticsEvent.builder();
         event.id(eventId);
@@ -0,0 +1,142 @@
+/**
+ * Copyright © 2016-2022 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.sql;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.Device;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.dao.attributes.AttributesService;
+import org.thingsboard.server.dao.service.AbstractServiceTest;
+import org.thingsboard.server.dao.service.DaoSqlTest;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DaoSqlTest
+public class JpaSqlTimeseriesDaoTest extends AbstractServiceTest {
+
+    private static final long SYSTEM_TTL = TimeUnit.DAYS.toSeconds(30);
+
+    @Autowired
+    private JpaSqlTimeseriesDao tsDao;
+
+    @Autowired
+    private AttributesService attributesService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<TenantId> tenants = new ArrayList<>();
+
+    @Before
+    public void before() {
+        ReflectionTestUtils.setField(AopTestUtils.getUltimateTargetObject(tsDao), "partitionAlignedTtl", true);
+    }
+
+    @After
+    public void after() {
+        ReflectionTestUtils.setField(AopTestUtils.getUltimateTargetObject(tsDao), "partitionAlignedTtl", false);
+        tenants.forEach(tenantService::deleteTenant);
+    }
+
+    @Test
+    public void testPartitionsOlderThanMaxTtlAreDropped() throws Exception {
+        TenantId tenantId = createTestTenant();
+        DeviceId deviceId = createDevice(tenantId);
+        long now = System.currentTimeMillis();
+        long expiredTs = Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC).minusYears(3).toInstant().toEpochMilli();
+        saveTs(tenantId, deviceId, expiredTs);
+        // the partition of the max ttl date has to exist for drop_partitions_by_max_ttl to drop older ones
+        saveTs(tenantId, deviceId, now - TimeUnit.SECONDS.toMillis(SYSTEM_TTL));
+        saveTs(tenantId, deviceId, now - TimeUnit.HOURS.toMillis(1));
+        String expiredPartition = "ts_kv_" + DateTimeFormatter.ofPattern("yyyy_MM").withZone(ZoneOffset.UTC).format(Instant.ofEpochMilli(expiredTs));
+        assertThat(partitionExists(expiredPartition)).isTrue();
+        DefaultCounter reclaimedBytes = (DefaultCounter) ReflectionTestUtils.getField(AopTestUtils.getUltimateTargetObject(tsDao), "reclaimedBytesCounter");
+        int reclaimedBefore = reclaimedBytes.get();
+
+        tsDao.cleanup(SYSTEM_TTL);
+
+        assertThat(partitionExists(expiredPartition)).isFalse();
+        assertThat(reclaimedBytes.get()).isGreaterThan(reclaimedBefore);
+        // rows within the max ttl are never deleted row by row
+        assertThat(countTs(deviceId)).isEqualTo(2);
+    }
+
+    @Test
+    public void testRowsAreDeletedOnlyForShorterTtl() throws Exception {
+        long now = System.currentTimeMillis();
+        TenantId shortTtlTenantId = createTestTenant();
+        attributesService.save(shortTtlTenantId, shortTtlTenantId, DataConstants.SERVER_SCOPE,
+                new BaseAttributeKvEntry(new LongDataEntry("TTL", TimeUnit.DAYS.toSeconds(1)), now)).get();
+        DeviceId shortTtlDeviceId = createDevice(shortTtlTenantId);
+        TenantId systemTtlTenantId = createTestTenant();
+        DeviceId systemTtlDeviceId = createDevice(systemTtlTenantId);
+        saveTs(shortTtlTenantId, shortTtlDeviceId, now - TimeUnit.DAYS.toMillis(5));
+        saveTs(shortTtlTenantId, shortTtlDeviceId, now - TimeUnit.HOURS.toMillis(1));
+        saveTs(systemTtlTenantId, systemTtlDeviceId, now - TimeUnit.DAYS.toMillis(5));
+        saveTs(systemTtlTenantId, systemTtlDeviceId, now - TimeUnit.HOURS.toMillis(1));
+
+        tsDao.cleanup(SYSTEM_TTL);
+
+        assertThat(countTs(shortTtlDeviceId)).isEqualTo(1);
+        assertThat(countTs(systemTtlDeviceId)).isEqualTo(2);
+    }
+
+    private TenantId createTestTenant() {
+        TenantId tenantId = createTenant();
+        tenants.add(tenantId);
+        return tenantId;
+    }
+
+    private DeviceId createDevice(TenantId tenantId) {
+        Device device = new Device();
+        device.setTenantId(tenantId);
+        device.setName("Device " + tenantId.getId());
+        device.setType("default");
+        return deviceService.saveDevice(device).getId();
+    }
+
+    private void saveTs(TenantId tenantId, DeviceId deviceId, long ts) throws Exception {
+        tsDao.save(tenantId, deviceId, new BasicTsKvEntry(ts, new LongDataEntry("temperature", 42L)), 0).get(30, TimeUnit.SECONDS);
+    }
+
+    private long countTs(DeviceId deviceId) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM ts_kv WHERE entity_id = ?", Long.class, deviceId.getId());
+    }
+
+    private boolean partitionExists(String partition) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM pg_tables WHERE schemaname = 'public' AND tablename = ?", Long.class, partition) > 0;
+    }
+
+}
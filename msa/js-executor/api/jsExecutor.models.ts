@@ -25,6 +25,7 @@ export interface RemoteJsRequest {
     compileRequest?: JsCompileRequest;
     invokeRequest?: JsInvokeRequest;
     releaseRequest?: JsReleaseRequest;
+    invokeBatchRequest?: JsInvokeBatchRequest;
 }
 
 export interface JsReleaseRequest extends TbMessage {
@@ -38,6 +39,10 @@ export interface JsInvokeRequest extends TbMessage {
     args: string[];
 }
 
+export interface JsInvokeBatchRequest {
+    invokeRequests: JsInvokeRequest[];
+}
+
 export interface JsCompileRequest extends TbMessage {
     functionName: string;
     scriptBody: string;
@@ -61,10 +66,15 @@ export interface JsInvokeResponse {
     errorDetails?: string;
 }
 
+export interface JsInvokeBatchResponse {
+    invokeResponses: JsInvokeResponse[];
+}
+
 export interface RemoteJsResponse {
     requestIdMSB: string;
     requestIdLSB: string;
     compileResponse?: JsCompileResponse;
     invokeResponse?: JsInvokeResponse;
     releaseResponse?: JsReleaseResponse;
+    invokeBatchResponse?: JsInvokeBatchResponse;
 }
@@ -23,6 +23,8 @@ import { IQueue } from '../queue/queue.models';
 import {
     JsCompileRequest,
     JsCompileResponse,
+    JsInvokeBatchRequest,
+    JsInvokeBatchResponse,
     JsInvokeRequest,
     JsInvokeResponse,
     JsReleaseRequest,
@@ -96,6 +98,8 @@ export class JsInvokeMessageProcessor {
                 this.processCompileRequest(requestId, responseTopic, headers, request.compileRequest);
             } else if (request.invokeRequest) {
                 this.processInvokeRequest(requestId, responseTopic, headers, request.invokeRequest);
+            } else if (request.invokeBatchRequest) {
+                this.processInvokeBatchRequest(requestId, responseTopic, headers, request.invokeBatchRequest);
             } else if (request.releaseRequest) {
                 this.processReleaseRequest(requestId, responseTopic, headers, request.releaseRequest);
             } else {
@@ -154,6 +158,28 @@ export class JsInvokeMessageProcessor {
 
     processInvokeRequest(requestId: string, responseTopic: string, headers: any, invokeRequest: JsInvokeRequest) {
         const scriptId = JsInvokeMessageProcessor.getScriptId(invokeRequest);
+        this.invokeScript(requestId, scriptId, invokeRequest).then(
+            (invokeResponse) => {
+                this.sendResponse(requestId, responseTopic, headers, scriptId, undefined, invokeResponse);
+            }
+        );
+    }
+
+    processInvokeBatchRequest(requestId: string, responseTopic: string, headers: any, invokeBatchRequest: JsInvokeBatchRequest) {
+        const invokeRequests = invokeBatchRequest.invokeRequests || [];
+        this.logger.debug('[%s] Processing invoke batch request, size: [%s]', requestId, invokeRequests.length);
+        Promise.all(invokeRequests.map((invokeRequest) =>
+            this.invokeScript(requestId, JsInvokeMessageProcessor.getScriptId(invokeRequest), invokeRequest))
+        ).then(
+            (invokeResponses) => {
+                const invokeBatchResponse: JsInvokeBatchResponse = {invokeResponses: invokeResponses};
+                const scriptId = invokeRequests.length ? JsInvokeMessageProcessor.getScriptId(invokeRequests[0]) : '';
+                this.sendResponse(requestId, responseTopic, headers, scriptId, undefined, undefined, undefined, invokeBatchResponse);
+            }
+        );
+    }
+
+    private invokeScript(requestId: string, scriptId: string, invokeRequest: JsInvokeRequest): Promise<JsInvokeResponse> {
         this.logger.debug('[%s] Processing invoke request, scriptId: [%s]', requestId, scriptId);
         this.executedScriptsCounter++;
         if (this.executedScriptsCounter % statFrequency == 0) {
@@ -172,22 +198,20 @@ export class JsInvokeMessageProcessor {
             this.logger.info('Current memory usage: [%s]', process.memoryUsage());
         }
 
-        this.getOrCompileScript(scriptId, invokeRequest.scriptBody).then(
+        return this.getOrCompileScript(scriptId, invokeRequest.scriptBody).then(
             (script) => {
-                this.executor.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
+                return this.executor.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
                     (result: string | undefined) => {
                         if (!result || result.length <= maxResultSize) {
-                            const invokeResponse = JsInvokeMessageProcessor.createInvokeResponse(result, true);
-                            this.logger.debug('[%s] Sending success invoke response, scriptId: [%s]', requestId, scriptId);
-                            this.sendResponse(requestId, responseTopic, headers, scriptId, undefined, invokeResponse);
+                            this.logger.debug('[%s] Script invocation succeeded, scriptId: [%s]', requestId, scriptId);
+                            return JsInvokeMessageProcessor.createInvokeResponse(result, true);
                         } else {
                             const err = {
                                 name: 'Error',
                                 message: 'script invocation result exceeds maximum allowed size of ' + maxResultSize + ' symbols'
                             }
-                            const invokeResponse = JsInvokeMessageProcessor.createInvokeResponse("", false, RUNTIME_ERROR, err);
                             this.logger.debug('[%s] Script invocation result exceeds maximum allowed size of %s symbols, scriptId: [%s]', requestId, maxResultSize, scriptId);
-                            this.sendResponse(requestId, responseTopic, headers, scriptId, undefined, invokeResponse);
+                            return JsInvokeMessageProcessor.createInvokeResponse("", false, RUNTIME_ERROR, err);
                         }
                     },
                     (err: any) => {
@@ -197,9 +221,8 @@ export class JsInvokeMessageProcessor {
                         } else {
                             errorCode = RUNTIME_ERROR;
                         }
-                        const invokeResponse = JsInvokeMessageProcessor.createInvokeResponse("", false, errorCode, err);
-                        this.logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
-                        this.sendResponse(requestId, responseTopic, headers, scriptId, undefined, invokeResponse);
+                        this.logger.debug('[%s] Script invocation failed, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
+                        return JsInvokeMessageProcessor.createInvokeResponse("", false, errorCode, err);
                     }
                 )
             },
@@ -208,9 +231,8 @@ export class JsInvokeMessageProcessor {
                 if (err?.name === 'script body not found') {
                     errorCode = NOT_FOUND_ERROR;
                 }
-                const invokeResponse = JsInvokeMessageProcessor.createInvokeResponse("", false, errorCode, err);
-                this.logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
-                this.sendResponse(requestId, responseTopic, headers, scriptId, undefined, invokeResponse);
+                this.logger.debug('[%s] Script compilation failed, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
+                return JsInvokeMessageProcessor.createInvokeResponse("", false, errorCode, err);
             }
         );
     }
@@ -232,9 +254,10 @@ export class JsInvokeMessageProcessor {
     }
 
     sendResponse(requestId: string, responseTopic: string, headers: any, scriptId: string,
-                 compileResponse?: JsCompileResponse, invokeResponse?: JsInvokeResponse, releaseResponse?: JsReleaseResponse) {
+                 compileResponse?: JsCompileResponse, invokeResponse?: JsInvokeResponse, releaseResponse?: JsReleaseResponse,
+                 invokeBatchResponse?: JsInvokeBatchResponse) {
         const tStartSending = performance.now();
-        const remoteResponse = JsInvokeMessageProcessor.createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse);
+        const remoteResponse = JsInvokeMessageProcessor.createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse);
         const rawResponse = Buffer.from(JSON.stringify(remoteResponse), 'utf8');
         this.logger.debug('[%s] Sending response to queue, scriptId: [%s]', requestId, scriptId);
         this.producer.send(responseTopic, requestId, rawResponse, headers).then(
@@ -294,14 +317,16 @@ export class JsInvokeMessageProcessor {
     }
 
     private static createRemoteResponse(requestId: string, compileResponse?: JsCompileResponse,
-                                        invokeResponse?: JsInvokeResponse, releaseResponse?: JsReleaseResponse): RemoteJsResponse {
+                                        invokeResponse?: JsInvokeResponse, releaseResponse?: JsReleaseResponse,
+                                        invokeBatchResponse?: JsInvokeBatchResponse): RemoteJsResponse {
         const requestIdBits = UUIDToBits(requestId);
         return {
             requestIdMSB: requestIdBits[0],
             requestIdLSB: requestIdBits[1],
             compileResponse: compileResponse,
             invokeResponse: invokeResponse,
-            releaseResponse: releaseResponse
+            releaseResponse: releaseResponse,
+            invokeBatchResponse: invokeBatchResponse
         };
     }
 
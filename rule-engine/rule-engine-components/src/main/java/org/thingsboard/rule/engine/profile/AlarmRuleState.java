@@ -46,6 +46,8 @@ import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
@@ -61,6 +63,8 @@ class AlarmRuleState {
     private PersistedAlarmRuleState state;
     private boolean updateFlag;
     private final DynamicPredicateValueCtx dynamicPredicateValueCtx;
+    private final boolean timeSeriesDependent;
+    private final Map<AlarmConditionFilter, EntityKeyValue> constantValues;
 
     AlarmRuleState(AlarmSeverity severity, AlarmRule alarmRule, Set<AlarmConditionFilterKey> entityKeys, PersistedAlarmRuleState state, DynamicPredicateValueCtx dynamicPredicateValueCtx) {
         this.severity = severity;
@@ -73,6 +77,28 @@ class AlarmRuleState {
         }
         this.spec = getSpec(alarmRule);
         this.dynamicPredicateValueCtx = dynamicPredicateValueCtx;
+        this.timeSeriesDependent = entityKeys != null && entityKeys.stream().anyMatch(key -> key.getType().equals(AlarmConditionKeyType.TIME_SERIES));
+        this.constantValues = parseConstantValues(alarmRule.getCondition());
+    }
+
+    private static Map<AlarmConditionFilter, EntityKeyValue> parseConstantValues(AlarmCondition condition) {
+        Map<AlarmConditionFilter, EntityKeyValue> values = new IdentityHashMap<>();
+        if (condition.getCondition() == null) {
+            return values;
+        }
+        for (var filter : condition.getCondition()) {
+            if (filter.getKey().getType().equals(AlarmConditionKeyType.CONSTANT)) {
+                EntityKeyValue value;
+                try {
+                    value = getConstantValue(filter);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to parse constant value from filter: {}", filter, e);
+                    value = null;
+                }
+                values.put(filter, value);
+            }
+        }
+        return values;
     }
 
     public boolean validateTsUpdate(Set<AlarmConditionFilterKey> changedKeys) {
@@ -86,10 +112,8 @@ class AlarmRuleState {
 
     public boolean validateAttrUpdate(Set<AlarmConditionFilterKey> changedKeys) {
         //If the attribute was updated, but no new telemetry arrived - we ignore this until new telemetry is there.
-        for (AlarmConditionFilterKey key : entityKeys) {
-            if (key.getType().equals(AlarmConditionKeyType.TIME_SERIES)) {
-                return false;
-            }
+        if (timeSeriesDependent) {
+            return false;
         }
         for (AlarmConditionFilterKey key : changedKeys) {
             if (entityKeys.contains(key)) {
@@ -212,6 +236,10 @@ class AlarmRuleState {
         }
     }
 
+    public boolean isInProgress() {
+        return state.getEventCount() > 0 || state.getLastEventTs() > 0 || state.getDuration() > 0;
+    }
+
     public void clear() {
         if (state.getEventCount() > 0 || state.getLastEventTs() > 0 || state.getDuration() > 0) {
             state.setEventCount(0L);
@@ -322,12 +350,7 @@ class AlarmRuleState {
         for (var filter : condition.getCondition()) {
             EntityKeyValue value;
             if (filter.getKey().getType().equals(AlarmConditionKeyType.CONSTANT)) {
-                try {
-                    value = getConstantValue(filter);
-                } catch (RuntimeException e) {
-                    log.warn("Failed to parse constant value from filter: {}", filter, e);
-                    value = null;
-                }
+                value = constantValues.get(filter);
             } else {
                 value = data.getValue(filter.getKey());
             }
@@ -339,7 +362,7 @@ class AlarmRuleState {
         return eval;
     }
 
-    private EntityKeyValue getConstantValue(AlarmConditionFilter filter) {
+    private static EntityKeyValue getConstantValue(AlarmConditionFilter filter) {
         EntityKeyValue value = new EntityKeyValue();
         String valueStr = filter.getValue().toString();
         switch (filter.getValueType()) {
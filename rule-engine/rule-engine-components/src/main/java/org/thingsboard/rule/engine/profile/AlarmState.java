@@ -73,9 +73,7 @@ class AlarmState {
 
     public boolean process(TbContext ctx, TbMsg msg, DataSnapshot data, SnapshotUpdate update) throws ExecutionException, InterruptedException {
         initCurrentAlarm(ctx);
-        lastMsgMetaData = msg.getMetaData();
-        lastMsgQueueName = msg.getQueueName();
-        this.dataSnapshot = data;
+        updateLastMsg(msg, data);
         try {
             return createOrClearAlarms(ctx, msg, data, update, AlarmRuleState::eval);
         } catch (NumericParseException e) {
@@ -83,6 +81,13 @@ class AlarmState {
         }
     }
 
+    // also called for messages that do not affect the rules, so that the harvested alarms use the latest metadata and queue
+    public void updateLastMsg(TbMsg msg, DataSnapshot data) {
+        lastMsgMetaData = msg.getMetaData();
+        lastMsgQueueName = msg.getQueueName();
+        this.dataSnapshot = data;
+    }
+
     public boolean process(TbContext ctx, long ts) throws ExecutionException, InterruptedException {
         initCurrentAlarm(ctx);
         try {
@@ -145,6 +150,15 @@ class AlarmState {
         return stateUpdate;
     }
 
+    public boolean isInProgress() {
+        for (AlarmRuleState state : createRulesSortedBySeverityDesc) {
+            if (state.isInProgress()) {
+                return true;
+            }
+        }
+        return clearState != null && clearState.isInProgress();
+    }
+
     public boolean clearAlarmState(boolean stateUpdate, AlarmRuleState state) {
         if (state != null) {
             state.clear();
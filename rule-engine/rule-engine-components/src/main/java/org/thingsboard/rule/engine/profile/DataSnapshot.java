@@ -33,10 +33,12 @@ class DataSnapshot {
     @Setter
     private long ts;
     private final Set<AlarmConditionFilterKey> keys;
-    private final Map<AlarmConditionFilterKey, EntityKeyValue> values = new ConcurrentHashMap<>();
+    private final Map<AlarmConditionFilterKey, EntityKeyValue> values;
 
     DataSnapshot(Set<AlarmConditionFilterKey> entityKeysToFetch) {
         this.keys = entityKeysToFetch;
+        // most of the profiles use a few keys, so the default table of 16 bins is mostly empty
+        this.values = new ConcurrentHashMap<>(Math.max(1, entityKeysToFetch.size()));
     }
 
     static AlarmConditionFilterKey toConditionKey(EntityKey key) {
@@ -83,4 +85,8 @@ class DataSnapshot {
     EntityKeyValue getValue(AlarmConditionFilterKey key) {
         return values.get(key);
     }
+
+    int size() {
+        return values.size();
+    }
 }
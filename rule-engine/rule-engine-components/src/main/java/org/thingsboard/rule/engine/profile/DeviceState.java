@@ -16,6 +16,7 @@
 package org.thingsboard.rule.engine.profile;
 
 import com.google.gson.JsonParser;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.data.StringUtils;
 import org.thingsboard.rule.engine.api.TbContext;
@@ -66,6 +67,8 @@ class DeviceState {
     private DataSnapshot latestValues;
     private final ConcurrentMap<String, AlarmState> alarmStates = new ConcurrentHashMap<>();
     private final DynamicPredicateValueCtx dynamicPredicateValueCtx;
+    @Getter
+    private long lastActivityTs = System.currentTimeMillis();
 
     DeviceState(TbContext ctx, TbDeviceProfileNodeConfiguration config, DeviceId deviceId, ProfileState deviceProfile, RuleNodeState state) {
         this.persistState = config.isPersistAlarmRulesState();
@@ -132,6 +135,7 @@ class DeviceState {
     }
 
     public void process(TbContext ctx, TbMsg msg) throws ExecutionException, InterruptedException {
+        lastActivityTs = System.currentTimeMillis();
         if (latestValues == null) {
             latestValues = fetchLatestValues(ctx, deviceId);
         }
@@ -224,12 +228,7 @@ class DeviceState {
                     .peek(latestValues::removeValue)
                     .map(DataSnapshot::toConditionKey).collect(Collectors.toSet());
             SnapshotUpdate update = new SnapshotUpdate(AlarmConditionKeyType.ATTRIBUTE, removedKeys);
-
-            for (DeviceProfileAlarm alarm : deviceProfile.getAlarmSettings()) {
-                AlarmState alarmState = alarmStates.computeIfAbsent(alarm.getId(),
-                        a -> new AlarmState(this.deviceProfile, deviceId, alarm, getOrInitPersistedAlarmState(alarm), dynamicPredicateValueCtx));
-                stateChanged |= alarmState.process(ctx, msg, latestValues, update);
-            }
+            stateChanged = processUpdate(ctx, msg, update);
         }
         ctx.tellSuccess(msg);
         return stateChanged;
@@ -244,11 +243,7 @@ class DeviceState {
         Set<AttributeKvEntry> attributes = JsonConverter.convertToAttributes(new JsonParser().parse(msg.getData()));
         if (!attributes.isEmpty()) {
             SnapshotUpdate update = merge(latestValues, attributes, scope);
-            for (DeviceProfileAlarm alarm : deviceProfile.getAlarmSettings()) {
-                AlarmState alarmState = alarmStates.computeIfAbsent(alarm.getId(),
-                        a -> new AlarmState(this.deviceProfile, deviceId, alarm, getOrInitPersistedAlarmState(alarm), dynamicPredicateValueCtx));
-                stateChanged |= alarmState.process(ctx, msg, latestValues, update);
-            }
+            stateChanged = processUpdate(ctx, msg, update);
         }
         ctx.tellSuccess(msg);
         return stateChanged;
@@ -263,22 +258,34 @@ class DeviceState {
             List<KvEntry> data = entry.getValue();
             SnapshotUpdate update = merge(latestValues, ts, data);
             if (update.hasUpdate()) {
-                for (DeviceProfileAlarm alarm : deviceProfile.getAlarmSettings()) {
-                    AlarmState alarmState = alarmStates.computeIfAbsent(alarm.getId(),
-                            a -> new AlarmState(this.deviceProfile, deviceId, alarm, getOrInitPersistedAlarmState(alarm), dynamicPredicateValueCtx));
-                    try {
-                        stateChanged |= alarmState.process(ctx, msg, latestValues, update);
-                    } catch (ApiUsageLimitsExceededException e) {
-                        alarmStates.remove(alarm.getId());
-                        throw e;
-                    }
-                }
+                stateChanged |= processUpdate(ctx, msg, update);
             }
         }
         ctx.tellSuccess(msg);
         return stateChanged;
     }
 
+    private boolean processUpdate(TbContext ctx, TbMsg msg, SnapshotUpdate update) throws ExecutionException, InterruptedException {
+        boolean stateChanged = false;
+        Set<String> affectedAlarmIds = deviceProfile.getAlarmIdsByKeys(update.getKeys());
+        for (DeviceProfileAlarm alarm : deviceProfile.getAlarmSettings()) {
+            AlarmState alarmState = alarmStates.computeIfAbsent(alarm.getId(),
+                    a -> new AlarmState(this.deviceProfile, deviceId, alarm, getOrInitPersistedAlarmState(alarm), dynamicPredicateValueCtx));
+            if (!affectedAlarmIds.contains(alarm.getId())) {
+                // none of the alarm rules depend on the updated keys, only the state used by the harvesting is refreshed
+                alarmState.updateLastMsg(msg, latestValues);
+                continue;
+            }
+            try {
+                stateChanged |= alarmState.process(ctx, msg, latestValues, update);
+            } catch (ApiUsageLimitsExceededException e) {
+                alarmStates.remove(alarm.getId());
+                throw e;
+            }
+        }
+        return stateChanged;
+    }
+
     private SnapshotUpdate merge(DataSnapshot latestValues, Long newTs, List<KvEntry> data) {
         Set<AlarmConditionFilterKey> keys = new HashSet<>();
         for (KvEntry entry : data) {
@@ -403,6 +410,24 @@ class DeviceState {
         }
     }
 
+    /**
+     * The state may be removed from memory and created again from the persisted rule node state, the latest alarm
+     * and the latest values of the device when there are no repeating or duration conditions in progress.
+     */
+    boolean isEvictable() {
+        for (AlarmState alarmState : alarmStates.values()) {
+            if (alarmState.isInProgress()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getSnapshotSize() {
+        DataSnapshot snapshot = latestValues;
+        return snapshot != null ? snapshot.size() : 0;
+    }
+
     public DeviceProfileId getProfileId() {
         return deviceProfile.getProfileId();
     }
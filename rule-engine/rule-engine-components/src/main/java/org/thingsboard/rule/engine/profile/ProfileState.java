@@ -55,6 +55,7 @@ class ProfileState {
 
     private final Map<String, Map<AlarmSeverity, Set<AlarmConditionFilterKey>>> alarmCreateKeys = new HashMap<>();
     private final Map<String, Set<AlarmConditionFilterKey>> alarmClearKeys = new HashMap<>();
+    private final Map<AlarmConditionFilterKey, Set<String>> alarmIdsByKey = new HashMap<>();
 
     ProfileState(DeviceProfile deviceProfile) {
         updateDeviceProfile(deviceProfile);
@@ -65,6 +66,7 @@ class ProfileState {
         alarmSettings.clear();
         alarmCreateKeys.clear();
         alarmClearKeys.clear();
+        alarmIdsByKey.clear();
         entityKeys.clear();
         if (deviceProfile.getProfileData().getAlarms() != null) {
             alarmSettings.addAll(deviceProfile.getProfileData().getAlarms());
@@ -93,6 +95,14 @@ class ProfileState {
                     addEntityKeysFromAlarmConditionSpec(alarm.getClearRule());
                 }
             }
+            alarmCreateKeys.forEach((alarmId, severityKeys) -> severityKeys.values().forEach(keys -> addAlarmIdByKeys(alarmId, keys)));
+            alarmClearKeys.forEach(this::addAlarmIdByKeys);
+        }
+    }
+
+    private void addAlarmIdByKeys(String alarmId, Set<AlarmConditionFilterKey> keys) {
+        for (AlarmConditionFilterKey key : keys) {
+            alarmIdsByKey.computeIfAbsent(key, k -> new HashSet<>()).add(alarmId);
         }
     }
 
@@ -177,6 +187,24 @@ class ProfileState {
         }
     }
 
+    /**
+     * Returns ids of the alarms that have at least one create or clear rule referencing any of the given keys.
+     * Rules of other alarms are not affected by the update and do not need to be evaluated.
+     */
+    Set<String> getAlarmIdsByKeys(Set<AlarmConditionFilterKey> keys) {
+        Set<String> result = null;
+        for (AlarmConditionFilterKey key : keys) {
+            Set<String> alarmIds = alarmIdsByKey.get(key);
+            if (alarmIds != null) {
+                if (result == null) {
+                    result = new HashSet<>();
+                }
+                result.addAll(alarmIds);
+            }
+        }
+        return result != null ? result : Collections.emptySet();
+    }
+
     Set<AlarmConditionFilterKey> getClearAlarmKeys(String id) {
         Set<AlarmConditionFilterKey> keys = alarmClearKeys.get(id);
         if (keys == null) {
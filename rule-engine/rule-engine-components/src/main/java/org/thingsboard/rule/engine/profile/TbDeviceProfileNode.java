@@ -40,11 +40,13 @@ import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
 import org.thingsboard.common.util.JacksonUtil;
 
+import java.util.Comparator;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RuleNode(
@@ -109,7 +111,9 @@ public class TbDeviceProfileNode implements TbNode {
         EntityType originatorType = msg.getOriginator().getEntityType();
         if (msg.getType().equals(PERIODIC_MSG_TYPE)) {
             scheduleAlarmHarvesting(ctx, msg);
-            harvestAlarms(ctx, System.currentTimeMillis());
+            long ts = System.currentTimeMillis();
+            harvestAlarms(ctx, ts);
+            evictDeviceStates(ts);
         } else if (msg.getType().equals(PROFILE_UPDATE_MSG_TYPE)) {
             updateProfile(ctx, new DeviceProfileId(UUID.fromString(msg.getData())));
         } else if (msg.getType().equals(DEVICE_UPDATE_MSG_TYPE)) {
@@ -179,6 +183,36 @@ public class TbDeviceProfileNode implements TbNode {
         }
     }
 
+    protected void evictDeviceStates(long ts) {
+        if (!isDeviceStateEvictionEnabled()) {
+            return;
+        }
+        int sizeBefore = deviceStates.size();
+        long idleTimeoutMs = TimeUnit.SECONDS.toMillis(config.getDeviceStateIdleTimeoutSec());
+        if (idleTimeoutMs > 0) {
+            deviceStates.values().removeIf(state -> ts - state.getLastActivityTs() > idleTimeoutMs && state.isEvictable());
+        }
+        int maxDeviceStates = config.getMaxDeviceStates();
+        if (maxDeviceStates > 0 && deviceStates.size() > maxDeviceStates) {
+            deviceStates.entrySet().stream()
+                    .filter(entry -> entry.getValue().isEvictable())
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().getLastActivityTs()))
+                    .limit(deviceStates.size() - maxDeviceStates)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(deviceStates::remove);
+        }
+        if (log.isDebugEnabled()) {
+            long snapshotValues = deviceStates.values().stream().mapToLong(DeviceState::getSnapshotSize).sum();
+            log.debug("[{}] Device states: {} in memory, {} evicted, {} cached values", ctx.getSelfId(),
+                    deviceStates.size(), sizeBefore - deviceStates.size(), snapshotValues);
+        }
+    }
+
+    private boolean isDeviceStateEvictionEnabled() {
+        return config.getDeviceStateIdleTimeoutSec() > 0 || config.getMaxDeviceStates() > 0;
+    }
+
     protected void updateProfile(TbContext ctx, DeviceProfileId deviceProfileId) throws ExecutionException, InterruptedException {
         DeviceProfile deviceProfile = cache.get(ctx.getTenantId(), deviceProfileId);
         if (deviceProfile != null) {
@@ -232,7 +266,8 @@ public class TbDeviceProfileNode implements TbNode {
 
     private void removeDeviceState(DeviceId deviceId) {
         DeviceState state = deviceStates.remove(deviceId);
-        if (config.isPersistAlarmRulesState() && (state != null || !config.isFetchAlarmRulesStateOnStart())) {
+        // evicted device may still have the persisted state
+        if (config.isPersistAlarmRulesState() && (state != null || !config.isFetchAlarmRulesStateOnStart() || isDeviceStateEvictionEnabled())) {
             ctx.removeRuleNodeStateForEntity(deviceId);
         }
     }
@@ -25,6 +25,10 @@ public class TbDeviceProfileNodeConfiguration implements NodeConfiguration<TbDev
 
     private boolean persistAlarmRulesState;
     private boolean fetchAlarmRulesStateOnStart;
+    // 0 disables removal of the idle device states from memory
+    private long deviceStateIdleTimeoutSec;
+    // 0 means no limit for the number of device states kept in memory
+    private int maxDeviceStates;
 
     @Override
     public TbDeviceProfileNodeConfiguration defaultConfiguration() {
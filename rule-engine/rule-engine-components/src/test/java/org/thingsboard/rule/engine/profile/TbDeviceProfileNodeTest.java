@@ -19,9 +19,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -126,6 +128,31 @@ public class TbDeviceProfileNodeTest {
         verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
     }
 
+    @Test
+    public void testEvictDeviceStatesAboveLimit() throws Exception {
+        ObjectNode config = mapper.createObjectNode();
+        config.put("maxDeviceStates", 1);
+        init(config);
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        deviceProfileData.setAlarms(Collections.emptyList());
+        deviceProfile.setProfileData(deviceProfileData);
+        Mockito.when(cache.get(Mockito.eq(tenantId), Mockito.any(DeviceId.class))).thenReturn(deviceProfile);
+
+        DeviceId otherDeviceId = new DeviceId(UUID.randomUUID());
+        node.onMsg(ctx, TbMsg.newMsg("123456789", deviceId, new TbMsgMetaData(), TbMsgDataType.JSON, "{}", null, null));
+        node.onMsg(ctx, TbMsg.newMsg("123456789", otherDeviceId, new TbMsgMetaData(), TbMsgDataType.JSON, "{}", null, null));
+        verify(cache, Mockito.times(2)).get(Mockito.eq(tenantId), Mockito.any(DeviceId.class));
+
+        node.onMsg(ctx, TbMsg.newMsg("TbDeviceProfilePeriodicMsg", tenantId, new TbMsgMetaData(), TbMsgDataType.JSON, "{}", null, null));
+
+        // exactly one of the states was evicted and is created again on the next message
+        node.onMsg(ctx, TbMsg.newMsg("123456789", deviceId, new TbMsgMetaData(), TbMsgDataType.JSON, "{}", null, null));
+        node.onMsg(ctx, TbMsg.newMsg("123456789", otherDeviceId, new TbMsgMetaData(), TbMsgDataType.JSON, "{}", null, null));
+        verify(cache, Mockito.times(3)).get(Mockito.eq(tenantId), Mockito.any(DeviceId.class));
+    }
+
     @Test
     public void testEmptyProfile() throws Exception {
         init();
@@ -214,6 +241,128 @@ public class TbDeviceProfileNodeTest {
 
     }
 
+    @Test
+    public void testAlarmRulesEvaluatedOnlyForUpdatedKeys() throws Exception {
+        init();
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        List<DeviceProfileAlarm> alarms = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            AlarmConditionFilter filter = new AlarmConditionFilter();
+            filter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "key" + i));
+            filter.setValueType(EntityKeyValueType.NUMERIC);
+            NumericFilterPredicate predicate = new NumericFilterPredicate();
+            predicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+            predicate.setValue(new FilterPredicateValue<>(30.0));
+            filter.setPredicate(predicate);
+            AlarmCondition alarmCondition = new AlarmCondition();
+            alarmCondition.setCondition(Collections.singletonList(filter));
+            AlarmRule alarmRule = new AlarmRule();
+            alarmRule.setCondition(alarmCondition);
+            DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+            dpa.setId("alarmID" + i);
+            dpa.setAlarmType("alarm" + i);
+            dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+            alarms.add(dpa);
+        }
+        deviceProfileData.setAlarms(alarms);
+        deviceProfile.setProfileData(deviceProfileData);
+
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(Mockito.eq(tenantId), Mockito.eq(deviceId), Mockito.anyCollection()))
+                .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+        Mockito.when(alarmService.findLatestByOriginatorAndType(Mockito.eq(tenantId), Mockito.eq(deviceId), Mockito.anyString()))
+                .thenReturn(Futures.immediateFuture(null));
+        Mockito.when(alarmService.createOrUpdateAlarm(Mockito.any())).thenAnswer(AdditionalAnswers.returnsFirstArg());
+
+        TbMsg theMsg = TbMsg.newMsg("ALARM", deviceId, new TbMsgMetaData(), "");
+        Mockito.when(ctx.newMsg(Mockito.any(), Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyString())).thenReturn(theMsg);
+
+        ObjectNode data = mapper.createObjectNode();
+        data.put("key7", 42);
+        TbMsg msg = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        node.onMsg(ctx, msg);
+        verify(ctx).tellSuccess(msg);
+        verify(ctx).enqueueForTellNext(theMsg, "Alarm Created");
+        verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
+
+        verify(alarmService).findLatestByOriginatorAndType(tenantId, deviceId, "alarm7");
+        verify(alarmService, Mockito.times(1)).findLatestByOriginatorAndType(Mockito.eq(tenantId), Mockito.eq(deviceId), Mockito.anyString());
+        verify(alarmService, Mockito.times(1)).createOrUpdateAlarm(Mockito.any());
+    }
+
+    @Test
+    public void testHarvestedAlarmUsesLatestMsgWhenItDoesNotAffectTheRule() throws Exception {
+        init();
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        DeviceProfileAlarm temperatureAlarm = createAlarm("highTemperatureAlarm", "temperature", 30.0);
+        DurationAlarmConditionSpec durationSpec = new DurationAlarmConditionSpec();
+        durationSpec.setUnit(TimeUnit.SECONDS);
+        durationSpec.setPredicate(new FilterPredicateValue<>(1L));
+        temperatureAlarm.getCreateRules().get(AlarmSeverity.CRITICAL).getCondition().setSpec(durationSpec);
+        DeviceProfileAlarm humidityAlarm = createAlarm("highHumidityAlarm", "humidity", 100.0);
+        deviceProfileData.setAlarms(List.of(temperatureAlarm, humidityAlarm));
+        deviceProfile.setProfileData(deviceProfileData);
+
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(Mockito.eq(tenantId), Mockito.eq(deviceId), Mockito.anyCollection()))
+                .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+        Mockito.when(alarmService.findLatestByOriginatorAndType(Mockito.eq(tenantId), Mockito.eq(deviceId), Mockito.anyString()))
+                .thenReturn(Futures.immediateFuture(null));
+        Mockito.when(alarmService.createOrUpdateAlarm(Mockito.any())).thenAnswer(AdditionalAnswers.returnsFirstArg());
+        TbMsg theMsg = TbMsg.newMsg("ALARM", deviceId, new TbMsgMetaData(), "");
+        Mockito.when(ctx.newMsg(Mockito.any(), Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyString())).thenReturn(theMsg);
+
+        ObjectNode temperatureData = mapper.createObjectNode();
+        temperatureData.put("temperature", 42);
+        TbMsgMetaData firstMetaData = new TbMsgMetaData();
+        firstMetaData.putValue("source", "first");
+        TbMsg firstMsg = TbMsg.newMsg("FirstQueue", SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, firstMetaData,
+                mapper.writeValueAsString(temperatureData));
+        node.onMsg(ctx, firstMsg);
+
+        // updates only the key of the humidity alarm, so the temperature alarm rules are not evaluated
+        ObjectNode humidityData = mapper.createObjectNode();
+        humidityData.put("humidity", 50);
+        TbMsgMetaData secondMetaData = new TbMsgMetaData();
+        secondMetaData.putValue("source", "second");
+        TbMsg secondMsg = TbMsg.newMsg("SecondQueue", SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, secondMetaData,
+                mapper.writeValueAsString(humidityData));
+        node.onMsg(ctx, secondMsg);
+        verify(ctx, Mockito.never()).enqueueForTellNext(Mockito.any(), Mockito.anyString());
+
+        node.harvestAlarms(ctx, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5));
+
+        ArgumentCaptor<TbMsgMetaData> metaDataCaptor = ArgumentCaptor.forClass(TbMsgMetaData.class);
+        verify(ctx).newMsg(eq("SecondQueue"), eq("ALARM"), eq(deviceId), Mockito.any(), metaDataCaptor.capture(), Mockito.anyString());
+        Assert.assertEquals("second", metaDataCaptor.getValue().getValue("source"));
+        verify(ctx).enqueueForTellNext(theMsg, "Alarm Created");
+        verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
+    }
+
+    private DeviceProfileAlarm createAlarm(String alarmType, String key, double threshold) {
+        AlarmConditionFilter filter = new AlarmConditionFilter();
+        filter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, key));
+        filter.setValueType(EntityKeyValueType.NUMERIC);
+        NumericFilterPredicate predicate = new NumericFilterPredicate();
+        predicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        predicate.setValue(new FilterPredicateValue<>(threshold));
+        filter.setPredicate(predicate);
+        AlarmCondition alarmCondition = new AlarmCondition();
+        alarmCondition.setCondition(Collections.singletonList(filter));
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(alarmCondition);
+        DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+        dpa.setId(alarmType + "ID");
+        dpa.setAlarmType(alarmType);
+        dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+        return dpa;
+    }
+
     @Test
     public void testConstantKeyFilterSimple() throws Exception {
         init();
@@ -1590,13 +1739,17 @@ public class TbDeviceProfileNodeTest {
     }
 
     private void init() throws TbNodeException {
+        init(mapper.createObjectNode());
+    }
+
+    private void init(ObjectNode config) throws TbNodeException {
         Mockito.when(ctx.getTenantId()).thenReturn(tenantId);
         Mockito.when(ctx.getDeviceProfileCache()).thenReturn(cache);
         Mockito.when(ctx.getTimeseriesService()).thenReturn(timeseriesService);
         Mockito.when(ctx.getAlarmService()).thenReturn(alarmService);
         Mockito.when(ctx.getDeviceService()).thenReturn(deviceService);
         Mockito.when(ctx.getAttributesService()).thenReturn(attributesService);
-        TbNodeConfiguration nodeConfiguration = new TbNodeConfiguration(mapper.createObjectNode());
+        TbNodeConfiguration nodeConfiguration = new TbNodeConfiguration(config);
         node = new TbDeviceProfileNode();
         node.init(ctx, nodeConfiguration);
     }